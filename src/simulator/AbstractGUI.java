@@ -35,6 +35,11 @@ public abstract class AbstractGUI extends JInternalFrame {
 
     public AbstractWindow resolution;
 
+    //never shown, so none of the frame is built: for settings held by a machine without a desktop
+    protected AbstractGUI(Computer computer) {
+        this.computer = computer;
+    }
+
     /*
      * All GUI windows need to be able to handle additional screen resolutions.  This
      * is part of an ongoing project. Therefore, we're overloading the constructor
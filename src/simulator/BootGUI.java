@@ -35,6 +35,15 @@ public class BootGUI extends AbstractGUI {
     boolean[] diskIncluded, diskGUI, sectorGUI;
     String[] diskImage;
     String romImage, vromImage, memoryImage, datapathxml, controlxml;
+    String executionEngine, fusionFile, microcodeProfile, guestProfile;
+    //instructions between guest profile samples
+    int guestProfileInterval;
+    boolean turbo;
+    //percent of real time, 0 for as fast as possible
+    int speed;
+    //megabytes of extended memory, 0 for the default
+    int memorySize;
+    boolean flatMemory;
     int memoryImageStart;
     int[] cylinders, heads, sectors;
     String bootImageName;
@@ -69,6 +78,9 @@ public class BootGUI extends AbstractGUI {
         bootFromFloppy = loader.nextInt() == 1;
         bootImageName = loader.next();
         bootImageName = bootImageName.substring(5, bootImageName.length());
+        //states saved before the memory size was kept use the one from settings.txt
+        if (loader.hasNextInt())
+            memorySize = loader.nextInt();
         System.out.println("loaded bootgui");
     }
 
@@ -87,6 +99,8 @@ public class BootGUI extends AbstractGUI {
         for (int i = 0; i < sectors.length; i++)
             state += sectors[i] + " ";
         state += (bootFromFloppy ? 1 : 0) + " boot:" + bootImageName;
+        //the memory is made again at this size when the state is loaded
+        state += " " + memorySize;
 
         return state;
     }
@@ -97,24 +111,9 @@ public class BootGUI extends AbstractGUI {
         bootgui = this;
 
         deviceName = devices;
-        diskIncluded = new boolean[4];
-        diskImage = new String[4];
-        cylinders = new int[4];
-        heads = new int[4];
-        sectors = new int[4];
-        isCD = new boolean[4];
+        setDefaults();
         diskField = new JTextField[4];
 
-        diskIncluded[0] = false;
-        diskIncluded[1] = false;
-        diskIncluded[2] = false;
-        diskIncluded[3] = false;
-        romImage = "resource/bios.bin";
-        vromImage = "resource/vgabios.bin";
-        memoryImage = "";
-        datapathxml = "";
-        controlxml = "";
-
         try {
             FileReader fr = new FileReader("settings.txt");
             Scanner scan = new Scanner(fr);
@@ -131,6 +130,47 @@ public class BootGUI extends AbstractGUI {
         refresh();
     }
 
+    //settings only, never shown: boots a floppy image with the defaults, ignoring settings.txt
+    //used by the command line tools, which run a machine without a desktop; a null image leaves the drive empty
+    BootGUI(Computer computer, String floppyImage) {
+        super(computer);
+        bootgui = this;
+
+        setDefaults();
+        diskIncluded[0] = floppyImage != null;
+        diskImage[0] = floppyImage;
+        bootFromFloppy = true;
+        bootImageName = floppyImage;
+    }
+
+    private void setDefaults() {
+        diskIncluded = new boolean[4];
+        diskImage = new String[4];
+        cylinders = new int[4];
+        heads = new int[4];
+        sectors = new int[4];
+        isCD = new boolean[4];
+
+        diskIncluded[0] = false;
+        diskIncluded[1] = false;
+        diskIncluded[2] = false;
+        diskIncluded[3] = false;
+        romImage = "resource/bios.bin";
+        vromImage = "resource/vgabios.bin";
+        memoryImage = "";
+        datapathxml = "";
+        controlxml = "";
+        executionEngine = "switch";
+        fusionFile = "";
+        microcodeProfile = "";
+        guestProfile = "";
+        guestProfileInterval = GuestProfiler.DEFAULT_INTERVAL;
+        turbo = false;
+        speed = Pacer.REALTIME;
+        memorySize = 0;
+        flatMemory = false;
+    }
+
     public void findBootType(Scanner scan) {
         String type = scan.next();
         if (type.equals("DiskA")) {
@@ -163,6 +203,34 @@ public class BootGUI extends AbstractGUI {
         } else if (type.equals("CustomProcessor")) {
             datapathxml = scan.next();
             controlxml = scan.next();
+        } else if (type.equals("Engine")) {
+            //switch or threaded
+            executionEngine = scan.next();
+        } else if (type.equals("Fusions")) {
+            fusionFile = scan.next();
+        } else if (type.equals("ProfileMicrocode")) {
+            microcodeProfile = scan.next();
+        } else if (type.equals("ProfileGuest")) {
+            //report file, then optionally the sampling interval
+            guestProfile = scan.next();
+            if (scan.hasNextInt())
+                guestProfileInterval = scan.nextInt();
+        } else if (type.equals("Turbo")) {
+            turbo = true;
+        } else if (type.equals("Speed")) {
+            //max, realtime or a percentage of real time
+            String value = scan.next();
+            if (value.equals("max"))
+                speed = Pacer.UNTHROTTLED;
+            else if (value.equals("realtime"))
+                speed = Pacer.REALTIME;
+            else
+                speed = Integer.parseInt(value);
+        } else if (type.equals("MemorySize")) {
+            //megabytes of extended memory
+            memorySize = scan.nextInt();
+        } else if (type.equals("FlatMemory")) {
+            flatMemory = true;
         }
     }
 
@@ -563,6 +631,22 @@ public class BootGUI extends AbstractGUI {
                 pw.println("MemoryContents " + memoryImage + " " + Integer.toHexString(memoryImageStart));
             if (customprocessorbox.isSelected())
                 pw.println("CustomProcessor " + datapathxml + " " + controlxml);
+            if (!executionEngine.equals("switch"))
+                pw.println("Engine " + executionEngine);
+            if (!fusionFile.equals(""))
+                pw.println("Fusions " + fusionFile);
+            if (!microcodeProfile.equals(""))
+                pw.println("ProfileMicrocode " + microcodeProfile);
+            if (!guestProfile.equals(""))
+                pw.println("ProfileGuest " + guestProfile + " " + guestProfileInterval);
+            if (turbo)
+                pw.println("Turbo");
+            if (speed != Pacer.REALTIME)
+                pw.println("Speed " + (speed == Pacer.UNTHROTTLED ? "max" : "" + speed));
+            if (memorySize != 0)
+                pw.println("MemorySize " + memorySize);
+            if (flatMemory)
+                pw.println("FlatMemory");
             pw.close();
         } catch (IOException e) {
             e.printStackTrace();
@@ -39,7 +39,7 @@ public class CMOS extends IODevice {
         cmosdata[0x16] = (byte) (640 >> 8);
 
         //set extended memory size
-        int ramsize = (PhysicalMemory.EXTENDED_RAM_SIZE);
+        int ramsize = computer.physicalMemory.getExtendedRAMSize();
         int n = ramsize / 1024 - 1024;
         if (n > 65535)
             n = 65535;
@@ -12,12 +12,15 @@ public class Clock {
     private static final int MAX_DEVICES = 100;
 
     long ticks;
+    //earliest tick any device is waiting for; devices aren't called before then
+    long nextEvent;
 
     ClockedDevice[] devices = new ClockedDevice[MAX_DEVICES];
     int validDevices = 0;
 
     public Clock() {
         ticks = 0;
+        nextEvent = 0;
     }
 
     public String saveState() {
@@ -26,17 +29,40 @@ public class Clock {
 
     public void loadState(String state) {
         ticks = Long.parseLong(state);
+        nextEvent = 0;
     }
 
     //called on each instruction
     public void cycle() {
         ticks++;
+        if (ticks < nextEvent)
+            return;
         for (int i = 0; i < validDevices; i++)
             devices[i].onClockTick(ticks);
+        reschedule();
+    }
+
+    //call when a device's next event time changes
+    public void reschedule() {
+        long next = Long.MAX_VALUE;
+        for (int i = 0; i < validDevices; i++)
+            next = Math.min(next, devices[i].nextEventTime());
+        nextEvent = next;
+    }
+
+    //jumps to the tick before the next device event, so the next cycle() delivers it
+    //returns false if no device is waiting for anything
+    public boolean skipToNextEvent() {
+        if (nextEvent == Long.MAX_VALUE)
+            return false;
+        if (ticks < nextEvent - 1)
+            ticks = nextEvent - 1;
+        return true;
     }
 
     public void registerDevice(ClockedDevice device) {
         devices[validDevices++] = device;
+        nextEvent = 0;
     }
 
     public long getTime() {
@@ -49,5 +75,8 @@ public class Clock {
 
     public static interface ClockedDevice {
         public void onClockTick(long ticks);
+
+        //the tick of the device's next event, Long.MAX_VALUE if none, 0 to be called on every tick
+        public long nextEventTime();
     }
 }
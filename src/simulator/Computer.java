@@ -16,7 +16,8 @@ import java.util.Scanner;
 import javax.swing.*;
 
 public class Computer {
-    private static final int NICE_INTERVAL = 1000;  //pause for 1ms every n cycles so as not to overload the computer
+    private static final int PACE_INTERVAL = 1000;  //check the speed against the pacer every n cycles
+    private static final int TURBO_BATCH = 10000;  //instructions run back to back in turbo mode before the housekeeping
 
     public Processor processor;
     public PhysicalMemory physicalMemory;
@@ -63,6 +64,8 @@ public class Computer {
     public boolean boot;
     public boolean debugMode = false;
     public boolean slowMode = false;
+    public boolean turbo = false;
+    public Pacer pacer;
 
     public BootGUI bootgui;
 
@@ -111,15 +114,20 @@ public class Computer {
         String[] states = state.split("@");
         if (indexOf(states, "Settings") >= 0) bootgui.loadState(states[indexOf(states, "Settings") + 1]);
         else loaderror("Settings");
-        physicalMemory = new PhysicalMemory(this);
+        physicalMemory = newPhysicalMemory();
         if (indexOf(states, "PhysicalMemory") >= 0)
             physicalMemory.loadState(states[indexOf(states, "PhysicalMemory") + 1]);
         else loaderror("PhysicalMemory");
         linearMemory = new LinearMemory(this);
         if (indexOf(states, "LinearMemory") >= 0) linearMemory.loadState(states[indexOf(states, "LinearMemory") + 1]);
         else loaderror("LinearMemory");
+        //before the processor options, so the pacer and profiler watch the restored clock
+        clock = new Clock();
+        if (indexOf(states, "Clock") >= 0) clock.loadState(states[indexOf(states, "Clock") + 1]);
+        else loaderror("Clock");
         ioports = new IOPorts(this);
         processor = new Processor(this);
+        setProcessorOptions();
         if (indexOf(states, "Processor") >= 0) processor.loadState(states[indexOf(states, "Processor") + 1]);
         else loaderror("Processor");
         interruptController = new InterruptController(this);
@@ -138,9 +146,6 @@ public class Computer {
         cmos = new CMOS(this);
         if (indexOf(states, "CMOS") >= 0) cmos.loadState(states[indexOf(states, "CMOS") + 1]);
         else loaderror("CMOS");
-        clock = new Clock();
-        if (indexOf(states, "Clock") >= 0) clock.loadState(states[indexOf(states, "Clock") + 1]);
-        else loaderror("Clock");
         timer = new Timer(this);
         if (indexOf(states, "Timer") >= 0) timer.loadState(states[indexOf(states, "Timer") + 1]);
         else loaderror("Timer");
@@ -179,6 +184,13 @@ public class Computer {
         startComputer();
     }
 
+    //no desktop and no main loop: for the command line tools, which adjust bootgui,
+    //call initializeMachine() and then drive the machine with runBatch()
+    Computer(String floppyImage, boolean headless) {
+        computer = this;
+        bootgui = new BootGUI(this, floppyImage);
+    }
+
     public void startComputer() {
         computer = this;
         initialize();
@@ -229,6 +241,8 @@ public class Computer {
 //				customProcessor.defaultModule.doCycle();
             if (customProcessor != null)
                 customProcessor.doCycle();
+            else if (turbo && canBatch())
+                turboCycle();
             else
                 cycle();
             if (debugMode)
@@ -240,10 +254,57 @@ public class Computer {
         }
     }
 
-    public void initializeGUIs() {
+    //the memory size and how the RAM is kept are chosen at boot
+    private PhysicalMemory newPhysicalMemory() {
+        if (bootgui.flatMemory)
+            return new FlatPhysicalMemory(this, bootgui.memorySize);
+        return new PhysicalMemory(this, bootgui.memorySize);
+    }
+
+    //execution engine, run mode and profiling from settings.txt
+    private void setProcessorOptions() {
+        turbo = bootgui.turbo;
+        pacer = new Pacer(clock, bootgui.speed);
+        if (bootgui.executionEngine.equals("threaded")) {
+            processor.threadedExecutor = processor.new ThreadedExecutor();
+            if (!bootgui.fusionFile.equals("")) {
+                try {
+                    processor.threadedExecutor.setFusions(MicrocodeProfiler.loadFusions(bootgui.fusionFile));
+                } catch (IOException e) {
+                    System.out.println("Error loading fusions " + bootgui.fusionFile + ": " + e);
+                }
+            }
+        }
+        if (!bootgui.microcodeProfile.equals("")) {
+            final MicrocodeProfiler profiler = new MicrocodeProfiler();
+            processor.microcodeProfiler = profiler;
+            //the simulator is closed with System.exit, so write the profile on the way out
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    profiler.write(bootgui.microcodeProfile);
+                } catch (IOException e) {
+                    System.out.println("Error writing microcode profile: " + e);
+                }
+            }));
+        }
+        if (!bootgui.guestProfile.equals("")) {
+            final GuestProfiler profiler = new GuestProfiler(this, bootgui.guestProfileInterval);
+            processor.guestProfiler = profiler;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    profiler.write(bootgui.guestProfile);
+                } catch (IOException e) {
+                    System.out.println("Error writing guest profile: " + e);
+                }
+            }));
+        }
+    }
+
+    //the machine itself: memory, processor and devices, with no windows
+    public void initializeMachine() {
         clock = new Clock();
 
-        physicalMemory = new PhysicalMemory(computer);
+        physicalMemory = newPhysicalMemory();
         linearMemory = new LinearMemory(computer);
         try {
             physicalMemory.loadBIOS(computer.getClass().getClassLoader().getResource(bootgui.romImage), 0xf0000, 0xfffff);
@@ -259,6 +320,7 @@ public class Computer {
         }
         ioports = new IOPorts(this);
         processor = new Processor(this);
+        setProcessorOptions();
         interruptController = new InterruptController(this);
         keyboard = new Keyboard(this);
         dma1 = new DMA(this, false, true);
@@ -269,6 +331,10 @@ public class Computer {
         timer = new Timer(this);
         serialport = new SerialPort(this);
         video = new Video(this);
+    }
+
+    public void initializeGUIs() {
+        initializeMachine();
 
 		if (!bootgui.memoryImage.equals(""))
 		{
@@ -365,15 +431,46 @@ public class Computer {
             }
         }
 
-        if (computer.icount % NICE_INTERVAL == 0 || computer.updateGUIOnPlay) {
+        //play with GUI updates is slowed down so the user can watch
+        if (computer.updateGUIOnPlay) {
             try {
                 Thread.sleep(1);
             } catch (InterruptedException e) {
             }
-        }
+        } else if (computer.icount % PACE_INTERVAL == 0)
+            pacer.pace();
+
+        cycleEndLock.lockResume();
+
+    }
+
+    //batching is only safe when nothing wants to see every instruction
+    private boolean canBatch() {
+        return !debugMode && !updateGUIOnPlay && trace == null && breakpointGUI == null;
+    }
+
+    //turbo mode: does what cycle() does, but the GUI, pacing and lock housekeeping happens once per batch
+    public void turboCycle() {
+        runBatch();
+
+        if (registerGUI != null)
+            registerGUI.readRegisters();
+        computerGUI.instructionCount();
+        pacer.pace();
 
         cycleEndLock.lockResume();
+    }
 
+    //runs instructions up to the next multiple of TURBO_BATCH, or until the user pauses
+    //timer events and interrupts are still delivered between instructions by the clock and processInterrupts
+    public void runBatch() {
+        int end = icount - icount % TURBO_BATCH + TURBO_BATCH;
+        while (icount != end && !debugMode) {
+            clock.cycle();
+            processor.executeAnInstruction();
+            processor.processInterrupts();
+            icount++;
+        }
     }
 
     public static void main(String[] args) throws IOException {
@@ -245,7 +245,7 @@ public class ComputerGUI {
         if (computer.icount % INSTRUCTION_COUNT_UPDATE == 0 || computer.debugMode || computer.updateGUIOnPlay) {
 //			if (!computer.computerGUI.singleFrame) setStatusLabel("Instruction count: "+computer.icount);
             if (!computer.debugMode)
-                statusfield.setText("RUNNING " + computer.icount + " instructions");
+                statusfield.setText("RUNNING " + computer.icount + " instructions, " + computer.pacer.speedString());
             else
                 statusfield.setText("PAUSED " + computer.icount + " instructions");
 
@@ -356,6 +356,7 @@ public class ComputerGUI {
                 if (!computer.debugMode) computer.cycleEndLock.lockWait();
                 if (computer.timerGUI != null) computer.timerGUI.close();
                 computer.timerGUI = new TimerGUI(computer);
+                computer.clock.reschedule();
             } else if (e.getActionCommand().equals("Serial Port")) {
 //				if (!computer.debugMode && computer.applet==null) computer.cycleEndLock.lockWait();
                 if (!computer.debugMode) computer.cycleEndLock.lockWait();
@@ -803,6 +804,7 @@ public class ComputerGUI {
                             if (!computer.debugMode) computer.cycleEndLock.lockWait();
                             if (computer.timerGUI != null) computer.timerGUI.close();
                             computer.timerGUI = new TimerGUI(computer);
+                            computer.clock.reschedule();
                             break;
                         case RROM:
                             if (!computer.debugMode) computer.cycleEndLock.lockWait();
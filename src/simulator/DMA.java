@@ -529,6 +529,11 @@ public class DMA extends IODevice {
                 for (int i = address + position; i < address + position + length; i++)
                     memory.setByte(i, buffer[j++]);
             }
+            //the transfer may have overwritten code the processor has already decoded
+            if ((mode & DMAChannel.MODE_ADDRESS_INCREMENT) != 0)
+                cpu.invalidatePhysical(address - position - length, length);
+            else
+                cpu.invalidatePhysical(address + position, length);
         }
 
         private void doTransfer() {
@@ -0,0 +1,289 @@
+/*
+FlatPhysicalMemory.java
+
+Keeps guest RAM in one contiguous region outside the Java heap, in
+place of PhysicalMemory's 65,000 separately allocated blocks.
+
+The region is the first megabyte followed by the machine's extended
+memory, sized when the machine boots.  The 4K pages below 1M still have their own present and
+writeable flags, so the ROMs stay write protected and empty pages read
+as ff.  Extended memory starts out zeroed, where PhysicalMemory reads a
+block as ff until something is written to it.  Addresses past the end
+of RAM read as ff and ignore writes.
+
+A flat region means the bulk paths are no longer limited to a single
+block: any run of plain RAM can be copied, filled or compared in one go.
+
+To use it, put "FlatMemory" in settings.txt, and "MemorySize <megabytes>"
+to size extended memory.
+*/
+package simulator;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Scanner;
+
+public class FlatPhysicalMemory extends PhysicalMemory {
+    private ByteBuffer ram;
+    private int ramSize;
+    //two more views of ram for the bulk transfers, each moved to the run it is copying
+    private ByteBuffer from, to;
+
+    //per 4K page below 1M
+    private boolean[] present, writeable;
+
+    public FlatPhysicalMemory(Computer computer, int megabytes) {
+        super(megabytes);
+        ramSize = getTotalRAMSize();
+        ram = ByteBuffer.allocateDirect(ramSize).order(ByteOrder.LITTLE_ENDIAN);
+        from = ram.duplicate();
+        to = ram.duplicate();
+
+        present = new boolean[BASE_BLOCKS];
+        writeable = new boolean[BASE_BLOCKS];
+        //base RAM up to the ROMs
+        for (int i = 0; i < 0xd0000 / BASE_BLOCK_SIZE; i++) {
+            present[i] = true;
+            writeable[i] = true;
+        }
+    }
+
+    //same format as PhysicalMemory's, so saved states move between the two
+    public String saveState() {
+        StringBuilder state = new StringBuilder();
+        for (int i = 0; i < BASE_BLOCKS; i++) {
+            if (present[i]) {
+                state.append(i + " " + (writeable[i] ? 1 : 0) + " ");
+                for (int j = 0; j < BASE_BLOCK_SIZE; j++)
+                    state.append(ram.get(i * BASE_BLOCK_SIZE + j) + " ");
+            }
+        }
+        state.append(":");
+        //only the extended blocks that have been written to
+        for (int i = 0; (i + 1) * EXTENDED_BLOCK_SIZE + 0x100000 <= ramSize; i++) {
+            int start = i * EXTENDED_BLOCK_SIZE + 0x100000;
+            int j = 0;
+            while (j < EXTENDED_BLOCK_SIZE && ram.get(start + j) == 0)
+                j++;
+            if (j == EXTENDED_BLOCK_SIZE)
+                continue;
+            state.append(i + " 1 ");
+            for (j = 0; j < EXTENDED_BLOCK_SIZE; j++)
+                state.append(ram.get(start + j) + " ");
+        }
+        return state.toString();
+    }
+
+    public void loadState(String state) {
+        String[] states = state.split(":");
+        Scanner loader = new Scanner(states[0]);
+        while (loader.hasNextInt()) {
+            int index = loader.nextInt();
+            present[index] = true;
+            writeable[index] = loader.nextInt() == 1;
+            for (int j = 0; j < BASE_BLOCK_SIZE; j++)
+                ram.put(index * BASE_BLOCK_SIZE + j, loader.nextByte());
+        }
+        if (states.length == 1)
+            return;
+        loader = new Scanner(states[1]);
+        while (loader.hasNextInt()) {
+            int start = loader.nextInt() * EXTENDED_BLOCK_SIZE + 0x100000;
+            loader.nextInt();
+            for (int j = 0; j < EXTENDED_BLOCK_SIZE; j++) {
+                byte b = loader.nextByte();
+                if (start + j >= 0 && start + j < ramSize)
+                    ram.put(start + j, b);
+            }
+        }
+    }
+
+    protected void setROMWriteable(int start, int stop, boolean writeable) {
+        for (int i = start; i <= stop; i += BASE_BLOCK_SIZE) {
+            if (writeable) {
+                present[i / BASE_BLOCK_SIZE] = true;
+                for (int j = 0; j < BASE_BLOCK_SIZE; j++)
+                    ram.put((i & ~BASE_BLOCK_SIZE_OFFSET_MASK) + j, (byte) 0);
+            }
+            this.writeable[i / BASE_BLOCK_SIZE] = writeable;
+        }
+    }
+
+    public byte getByte(int address) {
+        MemoryMappedDevice device = mappedPage[address >>> MAPPED_PAGE_BITS];
+        if (device != null)
+            device.memoryRead(address);
+        if (address >= 0 && address < 0x100000) {
+            if (!present[address >>> BASE_BLOCK_SIZE_BITS])
+                return (byte) (-1);
+            return ram.get(address);
+        }
+        if (address < 0 || address >= ramSize)
+            return (byte) (-1);
+        return ram.get(address);
+    }
+
+    public void setByte(int address, byte value) {
+        if (address >= 0 && address < 0x100000) {
+            if (writeable[address >>> BASE_BLOCK_SIZE_BITS]) {
+                present[address >>> BASE_BLOCK_SIZE_BITS] = true;
+                ram.put(address, value);
+            }
+        } else if (address >= 0 && address < ramSize)
+            ram.put(address, value);
+        MemoryMappedDevice device = mappedPage[address >>> MAPPED_PAGE_BITS];
+        if (device != null)
+            device.memoryWrite(address, value);
+    }
+
+    //the wider accesses read or write the region directly when all of it is plain RAM
+
+    public short getWord(int address) {
+        if (isPlainRAM(address, 2, false))
+            return ram.getShort(address);
+        return (short) ((getByte(address) & 0xff) | ((getByte(address + 1) << 8) & 0xff00));
+    }
+
+    public int getDoubleWord(int address) {
+        if (isPlainRAM(address, 4, false))
+            return ram.getInt(address);
+        return (getWord(address) & 0xffff) | ((getWord(address + 2) << 16) & 0xffff0000);
+    }
+
+    public long getQuadWord(int address) {
+        if (isPlainRAM(address, 8, false))
+            return ram.getLong(address);
+        return (getDoubleWord(address) & 0xffffffffl) | ((((long) getDoubleWord(address + 4)) << 32) & 0xffffffff00000000l);
+    }
+
+    public void setWord(int address, short value) {
+        if (isPlainRAM(address, 2, true)) {
+            ram.putShort(address, value);
+            return;
+        }
+        setByte(address, (byte) value);
+        setByte(address + 1, (byte) (value >> 8));
+    }
+
+    public void setDoubleWord(int address, int value) {
+        if (isPlainRAM(address, 4, true)) {
+            ram.putInt(address, value);
+            return;
+        }
+        setByte(address, (byte) value);
+        setByte(address + 1, (byte) (value >> 8));
+        setByte(address + 2, (byte) (value >> 16));
+        setByte(address + 3, (byte) (value >> 24));
+    }
+
+    public void setQuadWord(int address, long value) {
+        if (isPlainRAM(address, 8, true)) {
+            ram.putLong(address, value);
+            return;
+        }
+        setByte(address, (byte) value);
+        setByte(address + 1, (byte) (value >> 8));
+        setByte(address + 2, (byte) (value >> 16));
+        setByte(address + 3, (byte) (value >> 24));
+        setByte(address + 4, (byte) (value >> 32));
+        setByte(address + 5, (byte) (value >> 40));
+        setByte(address + 6, (byte) (value >> 48));
+        setByte(address + 7, (byte) (value >> 56));
+    }
+
+    //bulk paths: as in PhysicalMemory, but a run only has to be plain RAM, not in a single block
+
+    public boolean copy(int source, int destination, int length) {
+        if (!isPlainRAM(source, length, false) || !isPlainRAM(destination, length, true))
+            return false;
+        //a forward MOVS over overlapping bytes repeats them
+        if (destination > source && destination < source + length)
+            return false;
+        window(from, source, length);
+        window(to, destination, length).put(from);
+        return true;
+    }
+
+    public boolean fill(int address, int length, int data, int size) {
+        if (!isPlainRAM(address, length, true))
+            return false;
+        for (int i = 0; i < length; i++)
+            ram.put(address + i, (byte) (data >> ((i & (size - 1)) << 3)));
+        return true;
+    }
+
+    public int scan(int address, int length, int size, int value, boolean whileEqual) {
+        if (!isPlainRAM(address, length, false))
+            return -1;
+        int elements = length / size;
+        for (int i = 0; i < elements; i++) {
+            if ((element(address + i * size, size) == value) != whileEqual)
+                return i;
+        }
+        return elements;
+    }
+
+    public int compare(int addressOne, int addressTwo, int length, int size, boolean whileEqual) {
+        if (!isPlainRAM(addressOne, length, false) || !isPlainRAM(addressTwo, length, false))
+            return -1;
+        int elements = length / size;
+        for (int i = 0; i < elements; i++) {
+            if ((element(addressOne + i * size, size) == element(addressTwo + i * size, size)) != whileEqual)
+                return i;
+        }
+        return elements;
+    }
+
+    //little endian, zero extended below 32 bits like the string instructions load them
+    private int element(int address, int size) {
+        if (size == 1)
+            return ram.get(address) & 0xff;
+        if (size == 2)
+            return ram.getShort(address) & 0xffff;
+        return ram.getInt(address);
+    }
+
+    //true if address..address+length-1 is all present RAM that no device watches, and writeable if write
+    public boolean isPlainRAM(int address, int length, boolean write) {
+        int last = address + length - 1;
+        if (address < 0 || last < address || last >= ramSize)
+            return false;
+        if (isMapped(address, last))
+            return false;
+        if (address >= 0x100000)
+            return true;
+        int lastPage = Math.min(last, 0xfffff) >>> BASE_BLOCK_SIZE_BITS;
+        for (int page = address >>> BASE_BLOCK_SIZE_BITS; page <= lastPage; page++) {
+            if (!present[page] || (write && !writeable[page]))
+                return false;
+        }
+        return true;
+    }
+
+    public boolean read(int address, byte[] buffer, int offset, int length) {
+        if (!isPlainRAM(address, length, false))
+            return false;
+        window(from, address, length).get(buffer, offset, length);
+        return true;
+    }
+
+    public boolean write(int address, byte[] buffer, int offset, int length) {
+        if (!isPlainRAM(address, length, true))
+            return false;
+        window(to, address, length).put(buffer, offset, length);
+        return true;
+    }
+
+    //narrows a view to address..address+length-1
+    private static ByteBuffer window(ByteBuffer view, int address, int length) {
+        view.limit(address + length);
+        view.position(address);
+        return view;
+    }
+
+    public boolean isInitialized(int address) {
+        if (address >= 0 && address < 0x100000)
+            return present[address >>> BASE_BLOCK_SIZE_BITS];
+        return address >= 0 && address < ramSize;
+    }
+}
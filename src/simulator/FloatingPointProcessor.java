@@ -27,7 +27,7 @@ public class FloatingPointProcessor {
         int displacement = 0;
         processor.fetchQueue.advance(1);
 
-        if (processor.isCode(MICROCODE.PREFIX_ADDRESS_32BIT)) {
+        if (processor.isAddress32()) {
             if (Processor.sibTable[modrm] == 1) {
                 sib = (0xff & processor.fetchQueue.readByte());
                 processor.fetchQueue.advance(1);
@@ -36,7 +36,7 @@ public class FloatingPointProcessor {
         //displacement
         if ((modrm & 0xc0) != 0xc0) {
             int hasdisplacement = 0;
-            if (processor.isCode(MICROCODE.PREFIX_ADDRESS_32BIT)) {
+            if (processor.isAddress32()) {
                 switch (modrm & 0xc0) {
                     case 0:
                         switch (modrm & 7) {
@@ -528,13 +528,13 @@ public class FloatingPointProcessor {
                         processor.pushCode(MICROCODE.OP_FPUSH);
                         break;
                     case 0x20:
-                        if (processor.isCode(MICROCODE.PREFIX_OPCODE_32BIT))
+                        if (processor.isOperand32())
                             processor.pushCode(MICROCODE.OP_FLDENV_28);
                         else
                             processor.pushCode(MICROCODE.OP_FLDENV_14);
                         break;
                     case 0x30:
-                        if (processor.isCode(MICROCODE.PREFIX_OPCODE_32BIT))
+                        if (processor.isOperand32())
                             processor.pushCode(MICROCODE.OP_FSTENV_28);
                         else
                             processor.pushCode(MICROCODE.OP_FSTENV_14);
@@ -761,13 +761,13 @@ public class FloatingPointProcessor {
                     case 0x38:
                         break;
                     case 0x20:
-                        if (processor.isCode(MICROCODE.PREFIX_OPCODE_32BIT))
+                        if (processor.isOperand32())
                             processor.pushCode(MICROCODE.OP_FRSTOR_108);
                         else
                             processor.pushCode(MICROCODE.OP_FRSTOR_94);
                         break;
                     case 0x30:
-                        if (processor.isCode(MICROCODE.PREFIX_OPCODE_32BIT))
+                        if (processor.isOperand32())
                             processor.pushCode(MICROCODE.OP_FSAVE_108);
                         else
                             processor.pushCode(MICROCODE.OP_FSAVE_94);
@@ -850,7 +850,8 @@ public class FloatingPointProcessor {
             }
         }
 
-        pushInstruction(processor.code[processor.codeLength - 1]);
+        if (processor.codeLength > 0)
+            pushInstruction(processor.code[processor.codeLength - 1]);
 
         //decode output operands
 
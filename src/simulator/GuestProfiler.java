@@ -0,0 +1,179 @@
+/*
+GuestProfiler.java
+
+Samples where the guest spends its time, cheaply enough to leave on.
+
+Every interval clock ticks (one tick per instruction) the processor
+asks the profiler to record CS:EIP, the opcode there, the interrupt
+nesting level and whether the processor is halted.  A halt that
+fast-forwards the clock over several sample points counts as that
+many halted samples, so idle time shows up as idle.
+
+The report, written when the simulator exits, lists:
+	where the time went: BIOS ROM (f0000-fffff), video ROM
+	(c0000-cffff), RAM or halted
+	interrupt nesting levels
+	the hottest linear addresses, with a CS:EIP that reached them
+	the hottest 4K code regions
+	the opcode mix (0f xx for two byte opcodes)
+
+To profile a session, put "ProfileGuest report.txt [interval]" in
+settings.txt.
+*/
+package simulator;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+public class GuestProfiler {
+    //prime, so sampling doesn't lock onto a loop
+    public static final int DEFAULT_INTERVAL = 9973;
+    //how many hot addresses and regions are listed
+    private static final int REPORT_LINES = 40;
+    private static final int MAX_NESTING = 16;
+    //opcode slot for code that couldn't be read
+    private static final int UNKNOWN_OPCODE = 0x200;
+
+    private Computer computer;
+    private int interval;
+    private long nextSample;
+
+    private long samples, biosSamples, videoBiosSamples, ramSamples, haltedSamples;
+    private long[] nesting = new long[MAX_NESTING + 1];
+    private long[] opcodes = new long[UNKNOWN_OPCODE + 1];
+    //linear address -> {samples, cs, eip}
+    private HashMap<Integer, long[]> addresses = new HashMap<Integer, long[]>();
+    //4K region -> {samples}
+    private HashMap<Integer, long[]> regions = new HashMap<Integer, long[]>();
+    private byte[] instruction = new byte[16];
+
+    public GuestProfiler(Computer computer, int interval) {
+        this.computer = computer;
+        this.interval = interval;
+        nextSample = computer.clock.getTime() + interval;
+    }
+
+    //called by the processor before every instruction
+    public void tick() {
+        long now = computer.clock.getTime();
+        if (now < nextSample)
+            return;
+        long weight = 1 + (now - nextSample) / interval;
+        nextSample += weight * interval;
+        sample(weight);
+    }
+
+    private void sample(long weight) {
+        Processor processor = computer.processor;
+        samples += weight;
+
+        int level = computer.interruptController == null ? 0 : Math.min(computer.interruptController.inServiceCount(), MAX_NESTING);
+        nesting[level] += weight;
+
+        if (processor.isHalted()) {
+            haltedSamples += weight;
+            return;
+        }
+
+        int eip = processor.eip.getValue();
+        int linear = processor.cs.address(eip);
+        int physical = processor.cs.physicalAddress(eip);
+        if (physical >= 0xf0000 && physical <= 0xfffff)
+            biosSamples += weight;
+        else if (physical >= 0xc0000 && physical <= 0xcffff)
+            videoBiosSamples += weight;
+        else
+            ramSamples += weight;
+
+        long[] address = addresses.get(linear);
+        if (address == null)
+            addresses.put(linear, address = new long[3]);
+        address[0] += weight;
+        address[1] = processor.cs.getValue();
+        address[2] = eip;
+
+        long[] region = regions.get(linear >>> 12);
+        if (region == null)
+            regions.put(linear >>> 12, region = new long[1]);
+        region[0] += weight;
+
+        opcodes[opcode(physical)] += weight;
+    }
+
+    //the opcode at a physical address, past any prefixes, without touching the devices
+    private int opcode(int physical) {
+        if (physical == -1)
+            return UNKNOWN_OPCODE;
+        int length = Math.min(instruction.length, 0x1000 - (physical & 0xfff));
+        if (!computer.physicalMemory.read(physical, instruction, 0, length))
+            return UNKNOWN_OPCODE;
+        for (int i = 0; i < length; i++) {
+            int b = instruction[i] & 0xff;
+            switch (b) {
+                case 0xf0: case 0xf2: case 0xf3:
+                case 0x2e: case 0x36: case 0x3e: case 0x26: case 0x64: case 0x65:
+                case 0x66: case 0x67:
+                    continue;
+                case 0x0f:
+                    return i + 1 < length ? 0x100 | (instruction[i + 1] & 0xff) : UNKNOWN_OPCODE;
+                default:
+                    return b;
+            }
+        }
+        return UNKNOWN_OPCODE;
+    }
+
+    private static ArrayList<Map.Entry<Integer, long[]>> hottest(HashMap<Integer, long[]> counts) {
+        ArrayList<Map.Entry<Integer, long[]>> sorted = new ArrayList<Map.Entry<Integer, long[]>>(counts.entrySet());
+        sorted.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+        return sorted;
+    }
+
+    private String percent(long count) {
+        return String.format("%6.2f%%", samples == 0 ? 0.0 : count * 100.0 / samples);
+    }
+
+    public void write(String filename) throws IOException {
+        PrintWriter pw = new PrintWriter(filename);
+        pw.println("# guest profile: " + samples + " samples, one every " + interval + " instructions");
+
+        pw.println("# time");
+        pw.println(percent(biosSamples) + " BIOS ROM");
+        pw.println(percent(videoBiosSamples) + " video ROM");
+        pw.println(percent(ramSamples) + " RAM");
+        pw.println(percent(haltedSamples) + " halted");
+
+        pw.println("# interrupt nesting");
+        for (int i = 0; i <= MAX_NESTING; i++)
+            if (nesting[i] > 0)
+                pw.println(percent(nesting[i]) + " " + i);
+
+        pw.println("# hot addresses: <percent> <linear> <cs:eip>");
+        ArrayList<Map.Entry<Integer, long[]>> sorted = hottest(addresses);
+        for (int i = 0; i < REPORT_LINES && i < sorted.size(); i++) {
+            long[] address = sorted.get(i).getValue();
+            pw.println(percent(address[0]) + String.format(" %08x %04x:%08x", sorted.get(i).getKey(), address[1], address[2]));
+        }
+
+        pw.println("# hot 4K regions: <percent> <linear start>");
+        sorted = hottest(regions);
+        for (int i = 0; i < REPORT_LINES && i < sorted.size(); i++)
+            pw.println(percent(sorted.get(i).getValue()[0]) + String.format(" %08x", sorted.get(i).getKey() << 12));
+
+        pw.println("# opcodes: <percent> <opcode>");
+        Integer[] order = new Integer[opcodes.length];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        java.util.Arrays.sort(order, (a, b) -> Long.compare(opcodes[b], opcodes[a]));
+        for (int i : order) {
+            if (opcodes[i] == 0)
+                break;
+            String name = i == UNKNOWN_OPCODE ? "unknown" : i >= 0x100 ? String.format("0f %02x", i & 0xff) : String.format("%02x", i);
+            pw.println(percent(opcodes[i]) + " " + name);
+        }
+        pw.close();
+    }
+}
@@ -162,6 +162,58 @@ public class HardDrive extends IODevice {
         }
     }
 
+    //sector transfers through the data port copy straight between the drive's buffer and the caller's
+    public void ioPortReadBlock(int address, byte[] buffer, int offset, int count, int size) {
+        if (address - ioBase1 != 0 || size == 1 || currentDrive == -1 || drive[currentDrive] == null) {
+            super.ioPortReadBlock(address, buffer, offset, count, size);
+            return;
+        }
+        Drive d = drive[currentDrive];
+        int length = count * size;
+        while (length > 0) {
+            int chunk = Math.min(length, d.dataBufferEnd - d.dataBufferOffset);
+            chunk -= chunk % size;
+            if (chunk <= 0) {
+                //no transfer in progress: let the element path do whatever it does
+                super.ioPortReadBlock(address, buffer, offset, 1, size);
+                offset += size;
+                length -= size;
+                continue;
+            }
+            System.arraycopy(d.dataBuffer, d.dataBufferOffset, buffer, offset, chunk);
+            d.dataBufferOffset += chunk;
+            offset += chunk;
+            length -= chunk;
+            if (d.dataBufferOffset >= d.dataBufferEnd)
+                d.endTransfer(d.endTransferFunction);
+        }
+    }
+
+    public void ioPortWriteBlock(int address, byte[] buffer, int offset, int count, int size) {
+        if (address - ioBase1 != 0 || size == 1 || currentDrive == -1 || drive[currentDrive] == null) {
+            super.ioPortWriteBlock(address, buffer, offset, count, size);
+            return;
+        }
+        Drive d = drive[currentDrive];
+        int length = count * size;
+        while (length > 0) {
+            int chunk = Math.min(length, d.dataBufferEnd - d.dataBufferOffset);
+            chunk -= chunk % size;
+            if (chunk <= 0) {
+                super.ioPortWriteBlock(address, buffer, offset, 1, size);
+                offset += size;
+                length -= size;
+                continue;
+            }
+            System.arraycopy(buffer, offset, d.dataBuffer, d.dataBufferOffset, chunk);
+            d.dataBufferOffset += chunk;
+            offset += chunk;
+            length -= chunk;
+            if (d.dataBufferOffset >= d.dataBufferEnd)
+                d.endTransfer(d.endTransferFunction);
+        }
+    }
+
     private void writeCommand(int data) {
         if (drive[0] == null) return;
         if (((drive[0].command & IDE_CMD_RESET) == 0) && ((data & IDE_CMD_RESET) != 0)) {
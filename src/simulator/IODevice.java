@@ -29,4 +29,35 @@ public abstract class IODevice {
         ioPortWriteWord(address, (short) (data & 0xffff));
         ioPortWriteWord(address + 2, (short) ((data >> 16) & 0xffff));
     }
+
+    //REP INS: reads count elements of size 1, 2 or 4 bytes into buffer, little endian
+    //devices that can move a whole block at once should override this
+    public void ioPortReadBlock(int address, byte[] buffer, int offset, int count, int size) {
+        for (int i = 0; i < count; i++) {
+            int data;
+            if (size == 1)
+                data = ioPortReadByte(address);
+            else if (size == 2)
+                data = ioPortReadWord(address);
+            else
+                data = ioPortReadLong(address);
+            for (int j = 0; j < size; j++)
+                buffer[offset++] = (byte) (data >> (8 * j));
+        }
+    }
+
+    //REP OUTS: writes count elements of size 1, 2 or 4 bytes from buffer, little endian
+    public void ioPortWriteBlock(int address, byte[] buffer, int offset, int count, int size) {
+        for (int i = 0; i < count; i++) {
+            int data = 0;
+            for (int j = 0; j < size; j++)
+                data |= (buffer[offset++] & 0xff) << (8 * j);
+            if (size == 1)
+                ioPortWriteByte(address, (byte) data);
+            else if (size == 2)
+                ioPortWriteWord(address, (short) data);
+            else
+                ioPortWriteLong(address, data);
+        }
+    }
 }
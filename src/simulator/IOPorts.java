@@ -71,6 +71,20 @@ public class IOPorts {
 //                ioPortWriteWord(address+2, (data>>16)&0xffff);
     }
 
+    //REP INS and OUTS; not pushed to the processor GUI, so callers only use them when it is off
+    //the IO window gets one report per block, ending on the same port and value the byte calls would have shown
+    public void ioPortReadBlock(int address, byte[] buffer, int offset, int count, int size) {
+        ioport[address].ioPortReadBlock(address, buffer, offset, count, size);
+        if (computer.ioGUI != null && size == 1 && count > 0)
+            computer.ioGUI.readPort(address, buffer[offset + count - 1] & 0xff);
+    }
+
+    public void ioPortWriteBlock(int address, byte[] buffer, int offset, int count, int size) {
+        ioport[address].ioPortWriteBlock(address, buffer, offset, count, size);
+        if (computer.ioGUI != null && size == 1 && count > 0)
+            computer.ioGUI.writePort(address, buffer[offset + count - 1] & 0xff);
+    }
+
     public void requestPorts(IODevice device, int[] ports, String deviceName, String[] portName, String[][] bitName) {
         for (int i = 0; i < ports.length; i++) {
             if (ioport[ports[i]] == nulldevice) {
@@ -125,6 +125,11 @@ public class InterruptController extends IODevice {
         }
     }
 
+    //how many interrupts are being serviced, not counting the slave's cascade line on the master
+    public int inServiceCount() {
+        return Integer.bitCount(master.interruptServiceRegister & ~4) + Integer.bitCount(slave.interruptServiceRegister);
+    }
+
     private class InterruptControllerElement {
         private int lastInterruptRequestRegister; //edge detection
         private int interruptRequestRegister;
@@ -3,7 +3,7 @@
 
 package simulator;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Scanner;
 
 public class LinearMemory implements MemoryDevice {
@@ -19,10 +19,13 @@ public class LinearMemory implements MemoryDevice {
     public int directoryBaseAddress = 0;
     public int lastPageFaultAddress = 0;
 
-    //four TLB tables
-    private PageTableEntry[] readSupervisorPageTable, readUserPageTable, writeSupervisorPageTable, writeUserPageTable;
-    //size of each page: 4k or 4M
-    private boolean[] pageSize;
+    //four TLB tables, indexed by virtual page number
+    //an entry is the physical page base address with the generation it was made in stored in the low 12 bits
+    //entries from an older generation are stale, so bumping the generation empties every table at once
+    private int[] readSupervisorPageTable, readUserPageTable, writeSupervisorPageTable, writeUserPageTable;
+    //size of each page: 4M if the entry holds the current generation, otherwise 4k
+    private int[] pageSize;
+    private int generation;
 
     //page fault error codes
     private static final int PF_RS_NOTPRESENT = 0;
@@ -35,12 +38,15 @@ public class LinearMemory implements MemoryDevice {
 
     //the non global pages are removed from the TLB on a task switch
     //this keeps track of their indices
-    private ArrayList<Integer> nonGlobalPageList;
+    private int[] nonGlobalPageList;
+    private int nonGlobalPageCount;
 
     public LinearMemory(Computer computer) {
         this.computer = computer;
         pagingDisabled = true;
-        nonGlobalPageList = new ArrayList<Integer>();
+        nonGlobalPageList = new int[16];
+        pageSize = new int[PAGES];
+        generation = 0;
         flush();
     }
 
@@ -54,43 +60,44 @@ public class LinearMemory implements MemoryDevice {
         pageCacheEnabled = s.nextInt() == 1;
         directoryBaseAddress = s.nextInt();
         lastPageFaultAddress = s.nextInt();
+        flush();
+        readSupervisorPageTable = readUserPageTable = writeSupervisorPageTable = writeUserPageTable = null;
         if (s.nextInt() != 0) {
-            readSupervisorPageTable = new PageTableEntry[PAGES];
+            readSupervisorPageTable = new int[PAGES];
             for (int i = 0; i < PAGES; i++) {
                 if (s.nextInt() != 0)
-                    readSupervisorPageTable[i] = new PageTableEntry(s.nextInt());
+                    readSupervisorPageTable[i] = s.nextInt() | generation;
             }
         }
         if (s.nextInt() != 0) {
-            writeSupervisorPageTable = new PageTableEntry[PAGES];
+            writeSupervisorPageTable = new int[PAGES];
             for (int i = 0; i < PAGES; i++) {
                 if (s.nextInt() != 0)
-                    writeSupervisorPageTable[i] = new PageTableEntry(s.nextInt());
+                    writeSupervisorPageTable[i] = s.nextInt() | generation;
             }
         }
         if (s.nextInt() != 0) {
-            readUserPageTable = new PageTableEntry[PAGES];
+            readUserPageTable = new int[PAGES];
             for (int i = 0; i < PAGES; i++) {
                 if (s.nextInt() != 0)
-                    readUserPageTable[i] = new PageTableEntry(s.nextInt());
+                    readUserPageTable[i] = s.nextInt() | generation;
             }
         }
         if (s.nextInt() != 0) {
-            writeUserPageTable = new PageTableEntry[PAGES];
+            writeUserPageTable = new int[PAGES];
             for (int i = 0; i < PAGES; i++) {
                 if (s.nextInt() != 0)
-                    writeUserPageTable[i] = new PageTableEntry(s.nextInt());
+                    writeUserPageTable[i] = s.nextInt() | generation;
             }
         }
         if (s.nextInt() != 0) {
-            pageSize = new boolean[PAGES];
             for (int i = 0; i < PAGES; i++)
-                pageSize[i] = s.nextInt() == 1;
+                pageSize[i] = s.nextInt() == 1 ? generation : 0;
         }
-        nonGlobalPageList = new ArrayList<Integer>();
+        nonGlobalPageCount = 0;
         int ngpl = s.nextInt();
         for (int i = 0; i < ngpl; i++)
-            nonGlobalPageList.add(new Integer(s.nextInt()));
+            addNonGlobalPage(s.nextInt());
     }
 
     public String saveState() {
@@ -108,10 +115,10 @@ public class LinearMemory implements MemoryDevice {
         else {
             state.append(1 + " ");
             for (int i = 0; i < readSupervisorPageTable.length; i++) {
-                if (readSupervisorPageTable[i] == null)
+                if ((readSupervisorPageTable[i] & BLOCK_OFFSET_MASK) != generation)
                     state.append("0 ");
                 else
-                    state.append("1 " + readSupervisorPageTable[i].physicalBaseAddress + " ");
+                    state.append("1 " + (readSupervisorPageTable[i] & ~BLOCK_OFFSET_MASK) + " ");
             }
         }
         if (writeSupervisorPageTable == null)
@@ -119,10 +126,10 @@ public class LinearMemory implements MemoryDevice {
         else {
             state.append(1 + " ");
             for (int i = 0; i < writeSupervisorPageTable.length; i++) {
-                if (writeSupervisorPageTable[i] == null)
+                if ((writeSupervisorPageTable[i] & BLOCK_OFFSET_MASK) != generation)
                     state.append("0 ");
                 else
-                    state.append("1 " + writeSupervisorPageTable[i].physicalBaseAddress + " ");
+                    state.append("1 " + (writeSupervisorPageTable[i] & ~BLOCK_OFFSET_MASK) + " ");
             }
         }
         if (readUserPageTable == null)
@@ -130,10 +137,10 @@ public class LinearMemory implements MemoryDevice {
         else {
             state.append(1 + " ");
             for (int i = 0; i < readUserPageTable.length; i++) {
-                if (readUserPageTable[i] == null)
+                if ((readUserPageTable[i] & BLOCK_OFFSET_MASK) != generation)
                     state.append("0 ");
                 else
-                    state.append("1 " + readUserPageTable[i].physicalBaseAddress + " ");
+                    state.append("1 " + (readUserPageTable[i] & ~BLOCK_OFFSET_MASK) + " ");
             }
         }
         if (writeUserPageTable == null)
@@ -141,22 +148,18 @@ public class LinearMemory implements MemoryDevice {
         else {
             state.append(1 + " ");
             for (int i = 0; i < writeUserPageTable.length; i++) {
-                if (writeUserPageTable[i] == null)
+                if ((writeUserPageTable[i] & BLOCK_OFFSET_MASK) != generation)
                     state.append("0 ");
                 else
-                    state.append("1 " + writeUserPageTable[i].physicalBaseAddress + " ");
+                    state.append("1 " + (writeUserPageTable[i] & ~BLOCK_OFFSET_MASK) + " ");
             }
         }
-        if (pageSize == null)
-            state.append(0 + " ");
-        else {
-            state.append(1 + " ");
-            for (int i = 0; i < pageSize.length; i++)
-                state.append((pageSize[i] ? 1 : 0) + " ");
-        }
-        state.append(nonGlobalPageList.size() + " ");
-        for (int i = 0; i < nonGlobalPageList.size(); i++)
-            state.append(nonGlobalPageList.get(i) + " ");
+        state.append(1 + " ");
+        for (int i = 0; i < pageSize.length; i++)
+            state.append((pageSize[i] == generation ? 1 : 0) + " ");
+        state.append(nonGlobalPageCount + " ");
+        for (int i = 0; i < nonGlobalPageCount; i++)
+            state.append(nonGlobalPageList[i] + " ");
         return state.toString();
     }
 
@@ -170,24 +173,41 @@ public class LinearMemory implements MemoryDevice {
 //		computer.physicalMemory.setByte(getPhysicalPageWrite(address)|(address & BLOCK_OFFSET_MASK),value);
     }
 
+    //the wider accesses translate once when they lie within one page
+    //one that crosses into the next page goes a byte at a time, so a page fault is raised on the first byte that isn't mapped
+
     public short getWord(int address) {
+        if ((address & BLOCK_OFFSET_MASK) <= BLOCK_SIZE - 2)
+            return computer.physicalMemory.getWord(getPhysicalPageRead(address));
         return (short) ((getByte(address) & 0xff) | ((getByte(address + 1) << 8) & 0xff00));
     }
 
     public int getDoubleWord(int address) {
+        if ((address & BLOCK_OFFSET_MASK) <= BLOCK_SIZE - 4)
+            return computer.physicalMemory.getDoubleWord(getPhysicalPageRead(address));
         return (getWord(address) & 0xffff) | ((getWord(address + 2) << 16) & 0xffff0000);
     }
 
     public long getQuadWord(int address) {
+        if ((address & BLOCK_OFFSET_MASK) <= BLOCK_SIZE - 8)
+            return computer.physicalMemory.getQuadWord(getPhysicalPageRead(address));
         return (getDoubleWord(address) & 0xffffffffl) | ((((long) getDoubleWord(address + 4)) << 32) & 0xffffffff00000000l);
     }
 
     public void setWord(int address, short value) {
+        if ((address & BLOCK_OFFSET_MASK) <= BLOCK_SIZE - 2) {
+            computer.physicalMemory.setWord(getPhysicalPageWrite(address), value);
+            return;
+        }
         setByte(address, (byte) value);
         setByte(address + 1, (byte) (value >> 8));
     }
 
     public void setDoubleWord(int address, int value) {
+        if ((address & BLOCK_OFFSET_MASK) <= BLOCK_SIZE - 4) {
+            computer.physicalMemory.setDoubleWord(getPhysicalPageWrite(address), value);
+            return;
+        }
         setByte(address, (byte) value);
         setByte(address + 1, (byte) (value >> 8));
         setByte(address + 2, (byte) (value >> 16));
@@ -195,6 +215,10 @@ public class LinearMemory implements MemoryDevice {
     }
 
     public void setQuadWord(int address, long value) {
+        if ((address & BLOCK_OFFSET_MASK) <= BLOCK_SIZE - 8) {
+            computer.physicalMemory.setQuadWord(getPhysicalPageWrite(address), value);
+            return;
+        }
         setByte(address, (byte) value);
         setByte(address + 1, (byte) (value >> 8));
         setByte(address + 2, (byte) (value >> 16));
@@ -205,17 +229,6 @@ public class LinearMemory implements MemoryDevice {
         setByte(address + 7, (byte) (value >> 56));
     }
 
-    static int quantity = 0;
-
-    private class PageTableEntry {
-        int physicalBaseAddress;
-
-        public PageTableEntry(int address) {
-            physicalBaseAddress = address;
-//			System.out.println("new page entry: "+address+" "+(quantity++));
-        }
-    }
-
     //used for GUI purposes, not for emulation
     //does a page table lookup, returns physical address
     public int virtualAddressLookup(int virtualAddress) {
@@ -248,58 +261,70 @@ public class LinearMemory implements MemoryDevice {
     }
 
     //given a virtual address, get the physical address
-    private int getPhysicalPageRead(int virtualAddress) {
+    int getPhysicalPageRead(int virtualAddress) {
         //if paging is disabled, the virtual address becomes the physical address
         if (pagingDisabled)
             return virtualAddress;
-        int virtualPageIndex = virtualAddress >>> PAGE_NUMBER_SHIFT;
-        int offset = virtualAddress & BLOCK_OFFSET_MASK;
         //two direct mapped page tables in the TLB: supervisor and user
+        int[] table = isSupervisor ? readSupervisorPageTable : readUserPageTable;
+        if (table != null) {
+            int entry = table[virtualAddress >>> PAGE_NUMBER_SHIFT];
+            if ((entry & BLOCK_OFFSET_MASK) == generation)
+                return (entry & ~BLOCK_OFFSET_MASK) | (virtualAddress & BLOCK_OFFSET_MASK);
+        }
+        //if the entry was missing or stale, walk the page tables and make it
+        return validateTLBEntryRead(virtualAddress);
+    }
+
+    //where a read of virtualAddress would go, from the TLB or a page table walk, without faulting or setting any bits
+    //-1 if the page isn't mapped
+    int physicalAddressIfMapped(int virtualAddress) {
+        if (pagingDisabled)
+            return virtualAddress;
+        int[] table = isSupervisor ? readSupervisorPageTable : readUserPageTable;
+        if (table != null) {
+            int entry = table[virtualAddress >>> PAGE_NUMBER_SHIFT];
+            if ((entry & BLOCK_OFFSET_MASK) == generation)
+                return (entry & ~BLOCK_OFFSET_MASK) | (virtualAddress & BLOCK_OFFSET_MASK);
+        }
+        return virtualAddressLookup(virtualAddress);
+    }
+
+    //same as read, but with the write page tables
+    int getPhysicalPageWrite(int virtualAddress) {
+        if (pagingDisabled)
+            return virtualAddress;
+        int[] table = isSupervisor ? writeSupervisorPageTable : writeUserPageTable;
+        if (table != null) {
+            int entry = table[virtualAddress >>> PAGE_NUMBER_SHIFT];
+            if ((entry & BLOCK_OFFSET_MASK) == generation)
+                return (entry & ~BLOCK_OFFSET_MASK) | (virtualAddress & BLOCK_OFFSET_MASK);
+        }
+        return validateTLBEntryWrite(virtualAddress);
+    }
+
+    //the TLB table for the current privilege level, made on first use
+    private int[] readPageTable() {
         if (isSupervisor) {
-            //if the page table doesn't exist, initialize it
-            //initially, all the entries will be NULL
             if (readSupervisorPageTable == null)
-                readSupervisorPageTable = new PageTableEntry[PAGES];
-            //get the entry's base address
-            try {
-                return (readSupervisorPageTable[virtualPageIndex].physicalBaseAddress) | offset;
-            } catch (NullPointerException e) {
-            }
-            //if the entry was NULL, construct it and repeat
-            return validateTLBEntryRead(virtualAddress);
+                readSupervisorPageTable = new int[PAGES];
+            return readSupervisorPageTable;
         } else {
             if (readUserPageTable == null)
-                readUserPageTable = new PageTableEntry[PAGES];
-            try {
-                return readUserPageTable[virtualPageIndex].physicalBaseAddress | offset;
-            } catch (NullPointerException e) {
-            }
-            return validateTLBEntryRead(virtualAddress);
+                readUserPageTable = new int[PAGES];
+            return readUserPageTable;
         }
     }
 
-    //same as read, but with the write page tables
-    private int getPhysicalPageWrite(int virtualAddress) {
-        if (pagingDisabled)
-            return virtualAddress;
-        int virtualPageIndex = virtualAddress >>> PAGE_NUMBER_SHIFT;
-        int offset = virtualAddress & BLOCK_OFFSET_MASK;
+    private int[] writePageTable() {
         if (isSupervisor) {
             if (writeSupervisorPageTable == null)
-                writeSupervisorPageTable = new PageTableEntry[PAGES];
-            try {
-                return writeSupervisorPageTable[virtualPageIndex].physicalBaseAddress | offset;
-            } catch (NullPointerException e) {
-            }
-            return validateTLBEntryWrite(virtualAddress);
+                writeSupervisorPageTable = new int[PAGES];
+            return writeSupervisorPageTable;
         } else {
             if (writeUserPageTable == null)
-                writeUserPageTable = new PageTableEntry[PAGES];
-            try {
-                return writeUserPageTable[virtualPageIndex].physicalBaseAddress | offset;
-            } catch (NullPointerException e) {
-            }
-            return validateTLBEntryWrite(virtualAddress);
+                writeUserPageTable = new int[PAGES];
+            return writeUserPageTable;
         }
     }
 
@@ -320,9 +345,9 @@ public class LinearMemory implements MemoryDevice {
         if ((directoryInformation & 1) == 0) {
             panic("directory isn't there");
             if (isSupervisor)
-                throw new Processor.Processor_Exception(computer.processor.PAGE_FAULT, PF_RS_NOTPRESENT);
+                throw computer.processor.pageFault(PF_RS_NOTPRESENT);
             else
-                throw new Processor.Processor_Exception(computer.processor.PAGE_FAULT, PF_RU_NOTPRESENT);
+                throw computer.processor.pageFault(PF_RU_NOTPRESENT);
         }
         //extract information about the page table directory
         //is it user or supervisor?
@@ -338,15 +363,15 @@ public class LinearMemory implements MemoryDevice {
             if ((pageTableEntry & 1) == 0) {
                 panic("page table entry isn't there");
                 if (isSupervisor)
-                    throw new Processor.Processor_Exception(computer.processor.PAGE_FAULT, PF_RS_NOTPRESENT);
+                    throw computer.processor.pageFault(PF_RS_NOTPRESENT);
                 else
-                    throw new Processor.Processor_Exception(computer.processor.PAGE_FAULT, PF_RU_NOTPRESENT);
+                    throw computer.processor.pageFault(PF_RU_NOTPRESENT);
             }
             boolean tableIsUser = (4 & pageTableEntry) != 0;
             //is a user accessing a supervisor page?
             if ((!tableIsUser || !directoryIsUser) && !isSupervisor) {
                 panic("user trying to access a supervisor page");
-                throw new Processor.Processor_Exception(computer.processor.PAGE_FAULT, PF_RU_PROTECTION);
+                throw computer.processor.pageFault(PF_RU_PROTECTION);
             }
             //set bit 17 to 1
             if ((pageTableEntry & 0x20) == 0) {
@@ -359,15 +384,12 @@ public class LinearMemory implements MemoryDevice {
                 return physicalBaseAddress | offset;
 
             //save the entry in the TLB
-            if (isSupervisor)
-                readSupervisorPageTable[virtualPageIndex] = new PageTableEntry(physicalBaseAddress);
-            else
-                readUserPageTable[virtualPageIndex] = new PageTableEntry(physicalBaseAddress);
+            readPageTable()[virtualPageIndex] = physicalBaseAddress | generation;
             return physicalBaseAddress | offset;
         } else {
             if (!directoryIsUser && !isSupervisor) {
                 panic("User is trying to access a supervisor directory entry");
-                throw new Processor.Processor_Exception(computer.processor.PAGE_FAULT, PF_RU_PROTECTION);
+                throw computer.processor.pageFault(PF_RU_PROTECTION);
             }
             if ((directoryInformation & 0x20) == 0) {
                 directoryInformation |= 0x20;
@@ -379,26 +401,14 @@ public class LinearMemory implements MemoryDevice {
                 return physicalBaseAddress | (virtualAddress & 0x3ffffff);
             int pageSizeIndex = (0xffc00000 & virtualAddress) >>> 12;
             //create 1024 (1Ms worth) of TLB entries
+            int[] table = readPageTable();
             for (int i = 0; i < 1024; i++) {
-                pageSize[pageSizeIndex] = true;
-                if (isSupervisor) {
-                    if (readSupervisorPageTable == null)
-                        readSupervisorPageTable = new PageTableEntry[PAGES];
-                    readSupervisorPageTable[pageSizeIndex] = new PageTableEntry(physicalBaseAddress);
-                    pageSizeIndex++;
-                    physicalBaseAddress += BLOCK_SIZE;
-                } else {
-                    if (readUserPageTable == null)
-                        readUserPageTable = new PageTableEntry[PAGES];
-                    readUserPageTable[pageSizeIndex] = new PageTableEntry(physicalBaseAddress);
-                    pageSizeIndex++;
-                    physicalBaseAddress += BLOCK_SIZE;
-                }
+                pageSize[pageSizeIndex] = generation;
+                table[pageSizeIndex] = physicalBaseAddress | generation;
+                pageSizeIndex++;
+                physicalBaseAddress += BLOCK_SIZE;
             }
-            if (isSupervisor)
-                return readSupervisorPageTable[virtualPageIndex].physicalBaseAddress | offset;
-            else
-                return readUserPageTable[virtualPageIndex].physicalBaseAddress | offset;
+            return (table[virtualPageIndex] & ~BLOCK_OFFSET_MASK) | offset;
         }
     }
 
@@ -419,9 +429,9 @@ public class LinearMemory implements MemoryDevice {
         if ((directoryInformation & 1) == 0) {
             panic("directory isn't there");
             if (isSupervisor)
-                throw new Processor.Processor_Exception(computer.processor.PAGE_FAULT, PF_WS_NOTPRESENT);
+                throw computer.processor.pageFault(PF_WS_NOTPRESENT);
             else
-                throw new Processor.Processor_Exception(computer.processor.PAGE_FAULT, PF_WU_NOTPRESENT);
+                throw computer.processor.pageFault(PF_WU_NOTPRESENT);
         }
 
         //extract information about the page table directory
@@ -440,15 +450,15 @@ public class LinearMemory implements MemoryDevice {
             if ((pageTableEntry & 1) == 0) {
                 panic("page table entry isn't there");
                 if (isSupervisor)
-                    throw new Processor.Processor_Exception(computer.processor.PAGE_FAULT, PF_WS_NOTPRESENT);
+                    throw computer.processor.pageFault(PF_WS_NOTPRESENT);
                 else
-                    throw new Processor.Processor_Exception(computer.processor.PAGE_FAULT, PF_WU_NOTPRESENT);
+                    throw computer.processor.pageFault(PF_WU_NOTPRESENT);
             }
             boolean tableIsUser = (4 & pageTableEntry) != 0;
             //is a user accessing a supervisor page?
             if ((!tableIsUser || !directoryIsUser) && !isSupervisor) {
                 panic("user trying to access a supervisor page");
-                throw new Processor.Processor_Exception(computer.processor.PAGE_FAULT, PF_WU_PROTECTION);
+                throw computer.processor.pageFault(PF_WU_PROTECTION);
             }
             //is it writeable?
             boolean tableIsReadWrite = (0x2 & pageTableEntry) != 0;
@@ -464,13 +474,13 @@ public class LinearMemory implements MemoryDevice {
                     if (isSupervisor) {
                         if (writeProtectUserPages) {
                             panic("protection violation ws");
-                            throw new Processor.Processor_Exception(computer.processor.PAGE_FAULT, PF_WS_PROTECTION);
+                            throw computer.processor.pageFault(PF_WS_PROTECTION);
                         }
                     }
                     //user is writing to a write protected page
                     else {
                         panic("protection violation wu");
-                        throw new Processor.Processor_Exception(computer.processor.PAGE_FAULT, PF_WU_PROTECTION);
+                        throw computer.processor.pageFault(PF_WU_PROTECTION);
                     }
                 }
             }
@@ -480,17 +490,17 @@ public class LinearMemory implements MemoryDevice {
                 if (pageIsReadWrite) {
                     if (!isSupervisor) {
                         panic("protection violation wu");
-                        throw new Processor.Processor_Exception(computer.processor.PAGE_FAULT, PF_WU_PROTECTION);
+                        throw computer.processor.pageFault(PF_WU_PROTECTION);
                     }
                 }
                 //trying to write to a write protected supervisor page
                 else {
                     if (isSupervisor) {
                         panic("protection violation ws");
-                        throw new Processor.Processor_Exception(computer.processor.PAGE_FAULT, PF_WS_PROTECTION);
+                        throw computer.processor.pageFault(PF_WS_PROTECTION);
                     } else {
                         panic("protection violation wu");
-                        throw new Processor.Processor_Exception(computer.processor.PAGE_FAULT, PF_WU_PROTECTION);
+                        throw computer.processor.pageFault(PF_WU_PROTECTION);
                     }
                 }
             }
@@ -506,15 +516,12 @@ public class LinearMemory implements MemoryDevice {
                 return physicalBaseAddress | offset;
 
             //save the entry in the TLB
-            if (isSupervisor)
-                writeSupervisorPageTable[virtualPageIndex] = new PageTableEntry(physicalBaseAddress);
-            else
-                writeUserPageTable[virtualPageIndex] = new PageTableEntry(physicalBaseAddress);
+            writePageTable()[virtualPageIndex] = physicalBaseAddress | generation;
             return physicalBaseAddress | offset;
         } else {
             if (!directoryIsUser && !isSupervisor) {
                 panic("User is trying to write a supervisor directory entry");
-                throw new Processor.Processor_Exception(computer.processor.PAGE_FAULT, PF_WU_PROTECTION);
+                throw computer.processor.pageFault(PF_WU_PROTECTION);
             }
             //catch write protection violations
             //user pages
@@ -525,13 +532,13 @@ public class LinearMemory implements MemoryDevice {
                     if (isSupervisor) {
                         if (writeProtectUserPages) {
                             panic("protection violation ws");
-                            throw new Processor.Processor_Exception(computer.processor.PAGE_FAULT, PF_WS_PROTECTION);
+                            throw computer.processor.pageFault(PF_WS_PROTECTION);
                         }
                     }
                     //user writing to a write protected page
                     else {
                         panic("protection violation wu");
-                        throw new Processor.Processor_Exception(computer.processor.PAGE_FAULT, PF_WU_PROTECTION);
+                        throw computer.processor.pageFault(PF_WU_PROTECTION);
                     }
                 }
             } else {
@@ -539,17 +546,17 @@ public class LinearMemory implements MemoryDevice {
                 if (directoryReadWrite) {
                     if (!isSupervisor) {
                         panic("protection violation wu");
-                        throw new Processor.Processor_Exception(computer.processor.PAGE_FAULT, PF_WU_PROTECTION);
+                        throw computer.processor.pageFault(PF_WU_PROTECTION);
                     }
                 }
                 //writing to a write protected supervisor page
                 else {
                     if (!isSupervisor) {
                         panic("protection violation wu");
-                        throw new Processor.Processor_Exception(computer.processor.PAGE_FAULT, PF_WU_PROTECTION);
+                        throw computer.processor.pageFault(PF_WU_PROTECTION);
                     } else {
                         panic("protection violation ws");
-                        throw new Processor.Processor_Exception(computer.processor.PAGE_FAULT, PF_WS_PROTECTION);
+                        throw computer.processor.pageFault(PF_WS_PROTECTION);
                     }
                 }
             }
@@ -564,26 +571,14 @@ public class LinearMemory implements MemoryDevice {
                 return physicalBaseAddress | (virtualAddress & 0x3fffff);
             int pageSizeIndex = (0xffc00000 & virtualAddress) >>> 12;
             //create 1Ms worth of TLB entries
+            int[] table = writePageTable();
             for (int i = 0; i < 1024; i++) {
-                pageSize[pageSizeIndex] = true;
-                if (isSupervisor) {
-                    if (writeSupervisorPageTable == null)
-                        writeSupervisorPageTable = new PageTableEntry[PAGES];
-                    writeSupervisorPageTable[pageSizeIndex] = new PageTableEntry(physicalBaseAddress);
-                    pageSizeIndex++;
-                    physicalBaseAddress += BLOCK_SIZE;
-                } else {
-                    if (writeUserPageTable == null)
-                        writeUserPageTable = new PageTableEntry[PAGES];
-                    writeUserPageTable[pageSizeIndex] = new PageTableEntry(physicalBaseAddress);
-                    pageSizeIndex++;
-                    physicalBaseAddress += BLOCK_SIZE;
-                }
+                pageSize[pageSizeIndex] = generation;
+                table[pageSizeIndex] = physicalBaseAddress | generation;
+                pageSizeIndex++;
+                physicalBaseAddress += BLOCK_SIZE;
             }
-            if (isSupervisor)
-                return writeSupervisorPageTable[virtualPageIndex].physicalBaseAddress | offset;
-            else
-                return writeUserPageTable[virtualPageIndex].physicalBaseAddress | offset;
+            return (table[virtualPageIndex] & ~BLOCK_OFFSET_MASK) | offset;
         }
     }
 
@@ -619,8 +614,7 @@ public class LinearMemory implements MemoryDevice {
         if (value) {
             //clear out supervisor TLB to make sure we don't violate write protections
             if (writeSupervisorPageTable != null)
-                for (int i = 0; i < PAGES; i++)
-                    writeSupervisorPageTable[i] = null;
+                Arrays.fill(writeSupervisorPageTable, 0);
 //			panic("implement write protect user pages");
         }
         writeProtectUserPages = value;
@@ -636,38 +630,51 @@ public class LinearMemory implements MemoryDevice {
     }
 
     //obliterate the TLB page tables
+    //moving to a new generation makes every entry stale, and sets all the pages back to 4k size pages
+    //only when the generation runs out of bits are the tables actually cleared
     public void flush() {
-        readUserPageTable = null;
-        readSupervisorPageTable = null;
-        writeUserPageTable = null;
-        writeSupervisorPageTable = null;
+        generation++;
+        if (generation > BLOCK_OFFSET_MASK) {
+            clear(readUserPageTable);
+            clear(readSupervisorPageTable);
+            clear(writeUserPageTable);
+            clear(writeSupervisorPageTable);
+            clear(pageSize);
+            generation = 1;
+        }
 
-        //set all the pages back to 4k size pages
-        pageSize = new boolean[PAGES];
-        for (int i = 0; i < PAGES; i++)
-            pageSize[i] = false;
+        nonGlobalPageCount = 0;
+    }
+
+    private static void clear(int[] table) {
+        if (table != null)
+            Arrays.fill(table, 0);
+    }
 
-        nonGlobalPageList.clear();
+    private void addNonGlobalPage(int index) {
+        if (nonGlobalPageCount == nonGlobalPageList.length)
+            nonGlobalPageList = Arrays.copyOf(nonGlobalPageList, nonGlobalPageList.length * 2);
+        nonGlobalPageList[nonGlobalPageCount++] = index;
     }
 
     //task switch
     //eliminate all TLB page table entries marked as non global
     private void nonGlobalFlush() {
-        for (Integer value : nonGlobalPageList) {
+        for (int i = 0; i < nonGlobalPageCount; i++) {
             //remove it from the four TLB tables (if present)
-            int index = value.intValue();
+            int index = nonGlobalPageList[i];
             if (readSupervisorPageTable != null)
-                readSupervisorPageTable[index] = null;
+                readSupervisorPageTable[index] = 0;
             if (writeSupervisorPageTable != null)
-                writeSupervisorPageTable[index] = null;
+                writeSupervisorPageTable[index] = 0;
             if (readUserPageTable != null)
-                readUserPageTable[index] = null;
+                readUserPageTable[index] = 0;
             if (writeUserPageTable != null)
-                writeUserPageTable[index] = null;
+                writeUserPageTable[index] = 0;
             //set it back to a 4k page
-            pageSize[index] = false;
+            pageSize[index] = 0;
         }
-        nonGlobalPageList.clear();
+        nonGlobalPageCount = 0;
     }
 
     private void panic(String message) {
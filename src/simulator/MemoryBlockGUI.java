@@ -48,7 +48,7 @@ public class MemoryBlockGUI extends AbstractGUI implements AdjustmentListener {
     }
 
     public void constructGUI(AbstractGUI.GUIComponent guicomponent) {
-        scrollBar = new JScrollBar(JScrollBar.VERTICAL, address, height() / BYTEHEIGHT, 0, PhysicalMemory.TOTAL_RAM_SIZE - 1);
+        scrollBar = new JScrollBar(JScrollBar.VERTICAL, address, height() / BYTEHEIGHT, 0, computer.physicalMemory.getTotalRAMSize() - 1);
         scrollBar.addAdjustmentListener(this);
 //		if (!computer.computerGUI.singleFrame)
         scrollBar.setBounds(getWidth() - SCROLLWIDTH - 5, 0, SCROLLWIDTH, height());
@@ -195,6 +195,7 @@ public class MemoryBlockGUI extends AbstractGUI implements AdjustmentListener {
         }
 
         computer.physicalMemory.setByte(drawaddress, (byte) Integer.parseInt(keys, 16));
+        computer.processor.invalidatePhysical(drawaddress, 1);
         if (computer.memoryGUI.codeFrame != null) computer.memoryGUI.codeFrame.repaint();
         if (computer.memoryGUI.stackFrame != null) computer.memoryGUI.stackFrame.repaint();
         if (computer.memoryGUI.dataFrame != null) computer.memoryGUI.dataFrame.repaint();
@@ -7,7 +7,6 @@ import java.awt.event.*;
 public class MemoryGUI extends AbstractGUI {
     private static final int BLOCKSIZE = 0x100;        //256 bytes/block
     //	private static final int TOTAL_BLOCKS=(int)(0x100000000l/BLOCKSIZE);
-    private static final int TOTAL_BLOCKS = (int) (PhysicalMemory.TOTAL_RAM_SIZE / BLOCKSIZE);
 
     public int lastCodeRead = -1, lastCodeWrite = -1, lastDataRead = -1, lastDataWrite = -1, lastStackRead = -1, lastStackWrite = -1, lastExtraRead = -1, lastExtraWrite = -1, lastInterruptRead = -1, lastInterruptWrite = -1;
     public boolean memoryRead = false, memoryWrite = false, romRead = false;
@@ -30,12 +29,17 @@ public class MemoryGUI extends AbstractGUI {
         computer.memoryGUI = null;
     }
 
+    //blocks in this machine's physical memory
+    private int totalBlocks() {
+        return computer.physicalMemory.getTotalRAMSize() / BLOCKSIZE;
+    }
+
     public int width() {
         return canvasX - 20;
     }
 
     public int height() {
-        int numBlocks = TOTAL_BLOCKS;
+        int numBlocks = totalBlocks();
         return BLOCKHEIGHT * (numBlocks / (width() / BLOCKWIDTH) + 1);
     }
 
@@ -49,13 +53,13 @@ public class MemoryGUI extends AbstractGUI {
             if (y < visibleStart - 5 || y > visibleEnd + 5)
                 continue;
 
-            if (y * xblocks >= TOTAL_BLOCKS)
+            if (y * xblocks >= totalBlocks())
                 break;
 
             for (int x = 0; x < xblocks; x++) {
                 //don't depict non-existent blocks
                 int blockNumber = y * xblocks + x;
-                if (blockNumber >= TOTAL_BLOCKS)
+                if (blockNumber >= totalBlocks())
                     break;
 
                 g.setColor(overlay.addressColor(blockNumber * BLOCKSIZE));
@@ -75,7 +79,7 @@ public class MemoryGUI extends AbstractGUI {
         int blockx = x / BLOCKWIDTH;
         int blocky = y / BLOCKHEIGHT;
         int block = blocky * (width() / BLOCKWIDTH) + blockx;
-        if (block >= TOTAL_BLOCKS)
+        if (block >= totalBlocks())
             return;
         repaint();
         String label = overlay.addressLabel(block * BLOCKSIZE);
@@ -103,7 +107,7 @@ public class MemoryGUI extends AbstractGUI {
         int blockx = x / BLOCKWIDTH;
         int blocky = y / BLOCKHEIGHT;
         int block = blocky * (width() / BLOCKWIDTH) + blockx;
-        if (block >= TOTAL_BLOCKS)
+        if (block >= totalBlocks())
             return;
 
         if (overlay.addressType(block * BLOCKSIZE) == 4)
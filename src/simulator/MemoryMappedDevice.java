@@ -0,0 +1,20 @@
+/*
+MemoryMappedDevice.java
+
+Template of a device that watches a range of physical memory
+
+The bytes themselves stay in RAM.  The device is told just before a
+byte in one of its pages is read and just after one is written.
+Devices claim their ranges with PhysicalMemory.requestMemory, the same
+way they claim ports with IOPorts.requestPorts.
+*/
+
+package simulator;
+
+public interface MemoryMappedDevice {
+    //called before a byte in one of the device's pages is read
+    public void memoryRead(int address);
+
+    //called after a byte in one of the device's pages is written
+    public void memoryWrite(int address, byte value);
+}
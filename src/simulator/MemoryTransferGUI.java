@@ -186,5 +186,6 @@ public class MemoryTransferGUI extends AbstractGUI {
         if (byteReady) {
             computer.physicalMemory.setByte(a, b);
         }
+        computer.processor.decodeCache.flush();
     }
 }
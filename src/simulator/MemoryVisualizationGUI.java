@@ -6,7 +6,6 @@ public class MemoryVisualizationGUI extends AbstractGUI {
 
     private static final int BLOCKSIZE = 0x100;        //256 bytes/block
     //	private static final int TOTAL_BLOCKS=(int)(0x100000000l/BLOCKSIZE);
-    private static final int TOTAL_BLOCKS = (int) (PhysicalMemory.TOTAL_RAM_SIZE / BLOCKSIZE);
     public static final int BLOCKWIDTH = 10;
     public static final int BLOCKHEIGHT = 6;
 
@@ -16,6 +15,11 @@ public class MemoryVisualizationGUI extends AbstractGUI {
         // TODO Auto-generated constructor stub
     }
 
+    //blocks in this machine's physical memory
+    private int totalBlocks() {
+        return computer.physicalMemory.getTotalRAMSize() / BLOCKSIZE;
+    }
+
     public void doPaint(Graphics g) {
         int xblocks = width() / BLOCKWIDTH;
         int yblocks = height() / BLOCKHEIGHT;
@@ -26,13 +30,13 @@ public class MemoryVisualizationGUI extends AbstractGUI {
             if (y < visibleStart - 5 || y > visibleEnd + 5)
                 continue;
 
-            if (y * xblocks >= TOTAL_BLOCKS)
+            if (y * xblocks >= totalBlocks())
                 break;
 
             for (int x = 0; x < xblocks; x++) {
                 //don't depict non-existent blocks
                 int blockNumber = y * xblocks + x;
-                if (blockNumber >= TOTAL_BLOCKS)
+                if (blockNumber >= totalBlocks())
                     break;
 
 
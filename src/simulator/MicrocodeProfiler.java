@@ -0,0 +1,136 @@
+/*
+MicrocodeProfiler.java
+
+Counts which runs of microcodes the processor executes most often,
+and turns that profile into a list of sequences for the threaded
+executor to fuse into superinstructions.
+
+Profile format, one sequence per line, most frequent first:
+	<count> <MICROCODE> <MICROCODE> ...
+Fusion format, one sequence per line:
+	<MICROCODE> <MICROCODE> ...
+Lines starting with # are comments in both.
+
+To re-tune the fusions for a workload, put "ProfileMicrocode profile.txt"
+in settings.txt, run the workload, then
+	java simulator.MicrocodeProfiler profile.txt fusions.txt [count]
+and put "Fusions fusions.txt" in settings.txt.
+*/
+package simulator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Scanner;
+
+public class MicrocodeProfiler {
+    //sequences of 2 to MAX_LENGTH microcodes are counted
+    public static final int MAX_LENGTH = 4;
+    //how many sequences the generator picks when not told
+    public static final int DEFAULT_FUSIONS = 32;
+
+    private static final int BITS = 10;
+    private static final Processor.MICROCODE[] MICROCODES = Processor.MICROCODE.values();
+
+    //sequence packed BITS per microcode -> times executed
+    private HashMap<Long, long[]> counts;
+
+    public MicrocodeProfiler() {
+        counts = new HashMap<Long, long[]>();
+    }
+
+    //called once per executed instruction with its microcode
+    public void count(Processor.MICROCODE[] code, int length) {
+        for (int i = 0; i < length; i++) {
+            long key = code[i].ordinal();
+            for (int n = 2; n <= MAX_LENGTH && i + n <= length; n++) {
+                key = (key << BITS) | code[i + n - 1].ordinal();
+                long[] count = counts.get(key | ((long) n << 60));
+                if (count == null)
+                    counts.put(key | ((long) n << 60), count = new long[1]);
+                count[0]++;
+            }
+        }
+    }
+
+    public void write(String filename) throws IOException {
+        ArrayList<Map.Entry<Long, long[]>> sorted = new ArrayList<Map.Entry<Long, long[]>>(counts.entrySet());
+        sorted.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+        PrintWriter pw = new PrintWriter(filename);
+        pw.println("# microcode sequence profile: <count> <microcodes>");
+        for (Map.Entry<Long, long[]> entry : sorted) {
+            pw.print(entry.getValue()[0]);
+            for (Processor.MICROCODE microcode : unpack(entry.getKey()))
+                pw.print(" " + microcode);
+            pw.println();
+        }
+        pw.close();
+    }
+
+    private static Processor.MICROCODE[] unpack(long key) {
+        int n = (int) (key >>> 60);
+        Processor.MICROCODE[] sequence = new Processor.MICROCODE[n];
+        for (int i = n - 1; i >= 0; i--) {
+            sequence[i] = MICROCODES[(int) (key & ((1 << BITS) - 1))];
+            key >>>= BITS;
+        }
+        return sequence;
+    }
+
+    //reads a fusion file written by main
+    public static ArrayList<Processor.MICROCODE[]> loadFusions(String filename) throws IOException {
+        ArrayList<Processor.MICROCODE[]> fusions = new ArrayList<Processor.MICROCODE[]>();
+        Scanner scan = new Scanner(new File(filename));
+        while (scan.hasNextLine()) {
+            String line = scan.nextLine().trim();
+            if (line.equals("") || line.startsWith("#"))
+                continue;
+            String[] names = line.split("\\s+");
+            Processor.MICROCODE[] sequence = new Processor.MICROCODE[names.length];
+            for (int i = 0; i < names.length; i++)
+                sequence[i] = Processor.MICROCODE.valueOf(names[i]);
+            fusions.add(sequence);
+        }
+        scan.close();
+        return fusions;
+    }
+
+    //generator: picks the sequences from a profile that save the most dispatches
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("usage: java simulator.MicrocodeProfiler <profile> <fusions> [count]");
+            return;
+        }
+        int wanted = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_FUSIONS;
+
+        ArrayList<String[]> sequences = new ArrayList<String[]>();
+        ArrayList<Long> saved = new ArrayList<Long>();
+        Scanner scan = new Scanner(new File(args[0]));
+        while (scan.hasNextLine()) {
+            String line = scan.nextLine().trim();
+            if (line.equals("") || line.startsWith("#"))
+                continue;
+            String[] fields = line.split("\\s+");
+            String[] sequence = new String[fields.length - 1];
+            System.arraycopy(fields, 1, sequence, 0, sequence.length);
+            //a fused sequence of n microcodes saves n-1 dispatches each time it runs
+            sequences.add(sequence);
+            saved.add(Long.parseLong(fields[0]) * (sequence.length - 1));
+        }
+        scan.close();
+
+        Integer[] order = new Integer[sequences.size()];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        java.util.Arrays.sort(order, (a, b) -> Long.compare(saved.get(b), saved.get(a)));
+
+        PrintWriter pw = new PrintWriter(args[1]);
+        pw.println("# superinstructions generated from " + args[0]);
+        for (int i = 0; i < wanted && i < order.length; i++)
+            pw.println(String.join(" ", sequences.get(order[i])));
+        pw.close();
+    }
+}
@@ -0,0 +1,94 @@
+/*
+Pacer.java
+
+Keeps the simulation running at a chosen speed.
+
+The clock counts instructions, and Clock.INSTRUCTIONS_PER_SECOND of
+them are one second of guest time.  Every so often the run loop calls
+pace(), which compares guest time against host time and sleeps off
+however far the guest has gotten ahead.  A guest that falls far behind
+(a slow host, or the user pausing) starts over from now rather than
+racing to catch up.
+
+Speed is a percentage of real time, or 0 to run flat out.
+*/
+package simulator;
+
+import java.util.concurrent.locks.LockSupport;
+
+public class Pacer {
+    public static final int UNTHROTTLED = 0;
+    public static final int REALTIME = 100;
+
+    //don't sleep for less than this: the OS can't do it accurately anyway
+    private static final long QUANTUM_NANOS = 2000000;
+    //further behind than this and the guest gives up catching up
+    private static final long MAX_LAG_NANOS = 100000000;
+    //further ahead than this and the clock must have been reset, not skipped over an idle stretch
+    private static final long MAX_LEAD_NANOS = 1000000000;
+    //how often the achieved speed is recomputed
+    private static final long SPEED_INTERVAL_NANOS = 1000000000;
+
+    private Clock clock;
+    private int percent;
+
+    //guest ticks and host time at the last resync
+    private long startTicks, startNanos;
+
+    //achieved speed, for the status bar
+    private long speedTicks, speedNanos;
+    private double instructionsPerSecond;
+
+    public Pacer(Clock clock, int percent) {
+        this.clock = clock;
+        setSpeed(percent);
+    }
+
+    public void setSpeed(int percent) {
+        this.percent = percent;
+        resync(System.nanoTime());
+        speedTicks = startTicks;
+        speedNanos = startNanos;
+    }
+
+    public int getSpeed() {
+        return percent;
+    }
+
+    private void resync(long now) {
+        startTicks = clock.getTime();
+        startNanos = now;
+    }
+
+    //call periodically from the run loop
+    public void pace() {
+        long now = System.nanoTime();
+        long ticks = clock.getTime();
+
+        if (now - speedNanos >= SPEED_INTERVAL_NANOS) {
+            instructionsPerSecond = (ticks - speedTicks) * 1e9 / (now - speedNanos);
+            speedTicks = ticks;
+            speedNanos = now;
+        }
+
+        if (percent == UNTHROTTLED)
+            return;
+
+        //host time at which the guest should reach this tick
+        long target = startNanos + (long) ((ticks - startTicks) * 1e9 * 100 / ((double) clock.getTickRate() * percent));
+        long ahead = target - now;
+        if (ahead > MAX_LEAD_NANOS || ahead < -MAX_LAG_NANOS)
+            resync(now);
+        else if (ahead >= QUANTUM_NANOS)
+            LockSupport.parkNanos(ahead);
+    }
+
+    public double getInstructionsPerSecond() {
+        return instructionsPerSecond;
+    }
+
+    //achieved speed as shown in the status bar
+    public String speedString() {
+        return String.format("%.2f MIPS (%.0f%% of real time)", instructionsPerSecond / 1e6, instructionsPerSecond * 100 / clock.getTickRate());
+    }
+}
@@ -7,15 +7,17 @@ Simulates the physical address space
 package simulator;
 
 import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.net.*;
+import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.Scanner;
 
 public class PhysicalMemory implements MemoryDevice {
-    //total amount of physical memory after FFFFF
-    public static int EXTENDED_RAM_SIZE = 0x10000000;
-
-    //total physical memory
-    public static int TOTAL_RAM_SIZE = EXTENDED_RAM_SIZE + 0x100000;
+    //amount of physical memory after FFFFF when settings.txt doesn't give a MemorySize
+    public static final int DEFAULT_EXTENDED_RAM_SIZE = 0x10000000;
+    public static final int MAX_EXTENDED_RAM_MEGABYTES = 2046;
 
     //memory is handled in units of BLOCK_SIZE
     public static int BASE_BLOCK_SIZE = 0x1000;
@@ -25,6 +27,11 @@ public class PhysicalMemory implements MemoryDevice {
     public static int BASE_BLOCK_SIZE_OFFSET_MASK = 0xfff;
     public static int EXTENDED_BLOCK_SIZE_OFFSET_MASK = 0xffff;
 
+    //little endian views of the blocks' byte arrays, so a word is read or written in one go
+    private static final VarHandle WORD = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle DOUBLEWORD = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle QUADWORD = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
     public static int BASE_BLOCKS = 0x100;
     public static int EXTENDED_BLOCKS = 0x10000 - 0x10;    //enough to populate all 4G addressable RAM
 
@@ -35,6 +42,13 @@ public class PhysicalMemory implements MemoryDevice {
 
     private Computer computer;
 
+    //this machine's amount of physical memory after FFFFF
+    private final int extendedRAMSize;
+
+    //the device watching each 4K page of the address space, or null for plain memory
+    protected static final int MAPPED_PAGE_BITS = 12;
+    protected MemoryMappedDevice[] mappedPage = new MemoryMappedDevice[1 << (32 - MAPPED_PAGE_BITS)];
+
     public String saveState() {
         StringBuilder state = new StringBuilder();
 
@@ -89,7 +103,36 @@ public class PhysicalMemory implements MemoryDevice {
         }
     }
 
-    public PhysicalMemory(Computer computer) {
+    //megabytes of extended memory, or 0 for the default
+    private static int extendedRAMSize(int megabytes) {
+        if (megabytes == 0)
+            return DEFAULT_EXTENDED_RAM_SIZE;
+        //the flat backing must fit in one buffer
+        if (megabytes < 1 || megabytes > MAX_EXTENDED_RAM_MEGABYTES) {
+            System.out.println("Memory size " + megabytes + "M is out of range, using " + (DEFAULT_EXTENDED_RAM_SIZE >>> 20) + "M");
+            return DEFAULT_EXTENDED_RAM_SIZE;
+        }
+        return megabytes << 20;
+    }
+
+    //total amount of physical memory after FFFFF
+    public int getExtendedRAMSize() {
+        return extendedRAMSize;
+    }
+
+    //total physical memory
+    public int getTotalRAMSize() {
+        return extendedRAMSize + 0x100000;
+    }
+
+    //for subclasses that keep the RAM some other way
+    protected PhysicalMemory(int megabytes) {
+        extendedRAMSize = extendedRAMSize(megabytes);
+    }
+
+    //megabytes is the MemorySize from settings.txt, or 0 for the default
+    public PhysicalMemory(Computer computer, int megabytes) {
+        this(megabytes);
         this.computer = computer;
         //initialize memory array
         baseMemoryBlock = new MemoryBlock[BASE_BLOCKS];
@@ -110,89 +153,97 @@ public class PhysicalMemory implements MemoryDevice {
     }
 
     public void loadBIOS(URL BIOS_image, int start, int stop) throws IOException {
-        for (int i = start; i <= stop; i += BASE_BLOCK_SIZE) {
-            baseMemoryBlock[i / BASE_BLOCK_SIZE].initialize();
-            baseMemoryBlock[i / BASE_BLOCK_SIZE].writeable = true;
-        }
-
-        InputStream in = null;
-        try {
-            in = BIOS_image.openConnection().getInputStream();
-            int c;
-            int i = start;
-            while ((c = in.read()) != -1) {
-                setByte(i++, (byte) c);
-            }
-        } finally {
-            if (in != null)
-                in.close();
-        }
-
-        for (int i = start; i <= stop; i += BASE_BLOCK_SIZE) {
-            baseMemoryBlock[i / BASE_BLOCK_SIZE].writeable = false;
-        }
+        loadBIOS(BIOS_image.openConnection().getInputStream(), start, stop);
     }
 
     public void loadBIOS(String path_to_BIOS_image, int start, int stop) throws IOException {
-        for (int i = start; i <= stop; i += BASE_BLOCK_SIZE) {
-            baseMemoryBlock[i / BASE_BLOCK_SIZE].initialize();
-            baseMemoryBlock[i / BASE_BLOCK_SIZE].writeable = true;
-        }
+        loadBIOS(new FileInputStream(path_to_BIOS_image), start, stop);
+    }
 
-        FileInputStream in = null;
+    //copies the image to start, then write protects start..stop
+    private void loadBIOS(InputStream in, int start, int stop) throws IOException {
+        setROMWriteable(start, stop, true);
         try {
-            in = new FileInputStream(path_to_BIOS_image);
             int c;
             int i = start;
             while ((c = in.read()) != -1) {
                 setByte(i++, (byte) c);
             }
         } finally {
-            if (in != null)
-                in.close();
+            in.close();
         }
+        setROMWriteable(start, stop, false);
+    }
 
+    //ROM below 1M is made present and writeable while its image loads, then read only
+    protected void setROMWriteable(int start, int stop, boolean writeable) {
         for (int i = start; i <= stop; i += BASE_BLOCK_SIZE) {
-            baseMemoryBlock[i / BASE_BLOCK_SIZE].writeable = false;
+            if (writeable)
+                baseMemoryBlock[i / BASE_BLOCK_SIZE].initialize();
+            baseMemoryBlock[i / BASE_BLOCK_SIZE].writeable = writeable;
         }
     }
 
     public byte getByte(int address) {
+        MemoryMappedDevice device = mappedPage[address >>> MAPPED_PAGE_BITS];
+        if (device != null)
+            device.memoryRead(address);
         if (address >= 0 && address < 0x100000) {
-            if (computer.video != null)
-                computer.video.updateVideoRead(address);
             return baseMemoryBlock[address >>> BASE_BLOCK_SIZE_BITS].getByte(address & BASE_BLOCK_SIZE_OFFSET_MASK);
         } else
             return extendedMemoryBlock[((address >>> EXTENDED_BLOCK_SIZE_BITS) & 0xffff) - 0x10].getByte(address & EXTENDED_BLOCK_SIZE_OFFSET_MASK);
     }
 
     public void setByte(int address, byte value) {
-        if (address >= 0 && address < 0x100000) {
+        if (address >= 0 && address < 0x100000)
             baseMemoryBlock[address >>> BASE_BLOCK_SIZE_BITS].setByte(address & BASE_BLOCK_SIZE_OFFSET_MASK, value);
-            if (computer.video != null)
-                computer.video.updateVideoWrite(address, value);
-        } else
+        else
             extendedMemoryBlock[((address >>> EXTENDED_BLOCK_SIZE_BITS) & 0xffff) - 0x10].setByte(address & EXTENDED_BLOCK_SIZE_OFFSET_MASK, value);
+        MemoryMappedDevice device = mappedPage[address >>> MAPPED_PAGE_BITS];
+        if (device != null)
+            device.memoryWrite(address, value);
     }
 
+    //the wider accesses read or write straight into the block when all of it is plain RAM in one block
+    //anything else, memory mapped devices included, goes a byte at a time
+
     public short getWord(int address) {
+        MemoryBlock block = ramBlock(address, 2, false);
+        if (block != null)
+            return (short) WORD.get(block.rambyte, blockOffset(address));
         return (short) ((getByte(address) & 0xff) | ((getByte(address + 1) << 8) & 0xff00));
     }
 
     public int getDoubleWord(int address) {
+        MemoryBlock block = ramBlock(address, 4, false);
+        if (block != null)
+            return (int) DOUBLEWORD.get(block.rambyte, blockOffset(address));
         return (getWord(address) & 0xffff) | ((getWord(address + 2) << 16) & 0xffff0000);
     }
 
     public long getQuadWord(int address) {
+        MemoryBlock block = ramBlock(address, 8, false);
+        if (block != null)
+            return (long) QUADWORD.get(block.rambyte, blockOffset(address));
         return (getDoubleWord(address) & 0xffffffffl) | ((((long) getDoubleWord(address + 4)) << 32) & 0xffffffff00000000l);
     }
 
     public void setWord(int address, short value) {
+        MemoryBlock block = ramBlock(address, 2, true);
+        if (block != null) {
+            WORD.set(block.rambyte, blockOffset(address), value);
+            return;
+        }
         setByte(address, (byte) value);
         setByte(address + 1, (byte) (value >> 8));
     }
 
     public void setDoubleWord(int address, int value) {
+        MemoryBlock block = ramBlock(address, 4, true);
+        if (block != null) {
+            DOUBLEWORD.set(block.rambyte, blockOffset(address), value);
+            return;
+        }
         setByte(address, (byte) value);
         setByte(address + 1, (byte) (value >> 8));
         setByte(address + 2, (byte) (value >> 16));
@@ -200,6 +251,11 @@ public class PhysicalMemory implements MemoryDevice {
     }
 
     public void setQuadWord(int address, long value) {
+        MemoryBlock block = ramBlock(address, 8, true);
+        if (block != null) {
+            QUADWORD.set(block.rambyte, blockOffset(address), value);
+            return;
+        }
         setByte(address, (byte) value);
         setByte(address + 1, (byte) (value >> 8));
         setByte(address + 2, (byte) (value >> 16));
@@ -210,6 +266,174 @@ public class PhysicalMemory implements MemoryDevice {
         setByte(address + 7, (byte) (value >> 56));
     }
 
+    //bulk paths for REP MOVS and REP STOS
+    //each does nothing and returns false unless the whole run is plain RAM in a single block
+
+    public boolean copy(int source, int destination, int length) {
+        MemoryBlock from = ramBlock(source, length, false);
+        MemoryBlock to = ramBlock(destination, length, true);
+        if (from == null || to == null)
+            return false;
+        //arraycopy moves overlapping bytes like memmove, but a forward MOVS repeats them
+        if (from == to && destination > source && destination < source + length)
+            return false;
+        System.arraycopy(from.rambyte, blockOffset(source), to.rambyte, blockOffset(destination), length);
+        return true;
+    }
+
+    //fills with size byte little endian copies of data
+    public boolean fill(int address, int length, int data, int size) {
+        MemoryBlock block = ramBlock(address, length, true);
+        if (block == null)
+            return false;
+        int offset = blockOffset(address);
+        if (size == 1)
+            Arrays.fill(block.rambyte, offset, offset + length, (byte) data);
+        else
+            for (int i = 0; i < length; i++)
+                block.rambyte[offset + i] = (byte) (data >> ((i & (size - 1)) << 3));
+        return true;
+    }
+
+    //bulk paths for REPE/REPNE SCAS and CMPS
+    //each returns how many size byte elements from the start keep the repeat going
+    //(equal to value or to each other if whileEqual, different otherwise), or -1 unless the run is plain RAM in a single block
+
+    public int scan(int address, int length, int size, int value, boolean whileEqual) {
+        MemoryBlock block = ramBlock(address, length, false);
+        if (block == null)
+            return -1;
+        byte[] ram = block.rambyte;
+        int offset = blockOffset(address);
+        int elements = length / size;
+        for (int i = 0; i < elements; i++) {
+            if ((element(ram, offset + i * size, size) == value) != whileEqual)
+                return i;
+        }
+        return elements;
+    }
+
+    public int compare(int addressOne, int addressTwo, int length, int size, boolean whileEqual) {
+        MemoryBlock one = ramBlock(addressOne, length, false);
+        MemoryBlock two = ramBlock(addressTwo, length, false);
+        if (one == null || two == null)
+            return -1;
+        int offsetOne = blockOffset(addressOne);
+        int offsetTwo = blockOffset(addressTwo);
+        int elements = length / size;
+        for (int i = 0; i < elements; i++) {
+            if ((element(one.rambyte, offsetOne + i * size, size) == element(two.rambyte, offsetTwo + i * size, size)) != whileEqual)
+                return i;
+        }
+        return elements;
+    }
+
+    //little endian, zero extended below 32 bits like the string instructions load them
+    private static int element(byte[] ram, int offset, int size) {
+        if (size == 1)
+            return ram[offset] & 0xff;
+        if (size == 2)
+            return (ram[offset] & 0xff) | ((ram[offset + 1] & 0xff) << 8);
+        return (ram[offset] & 0xff) | ((ram[offset + 1] & 0xff) << 8) | ((ram[offset + 2] & 0xff) << 16) | (ram[offset + 3] << 24);
+    }
+
+    //bulk paths for REP INS and OUTS
+
+    //true if read or write will take the run
+    public boolean isPlainRAM(int address, int length, boolean write) {
+        return ramBlock(address, length, write) != null;
+    }
+
+    public boolean read(int address, byte[] buffer, int offset, int length) {
+        MemoryBlock block = ramBlock(address, length, false);
+        if (block == null)
+            return false;
+        System.arraycopy(block.rambyte, blockOffset(address), buffer, offset, length);
+        return true;
+    }
+
+    public boolean write(int address, byte[] buffer, int offset, int length) {
+        MemoryBlock block = ramBlock(address, length, true);
+        if (block == null)
+            return false;
+        System.arraycopy(buffer, offset, block.rambyte, blockOffset(address), length);
+        return true;
+    }
+
+    //the block holding address..address+length-1, or null if that isn't all ordinary initialized RAM
+    private MemoryBlock ramBlock(int address, int length, boolean write) {
+        int last = address + length - 1;
+        MemoryBlock block;
+        if (address >= 0 && address < 0x100000) {
+            if ((address >>> BASE_BLOCK_SIZE_BITS) != (last >>> BASE_BLOCK_SIZE_BITS))
+                return null;
+            block = baseMemoryBlock[address >>> BASE_BLOCK_SIZE_BITS];
+        } else {
+            if ((address >>> EXTENDED_BLOCK_SIZE_BITS) != (last >>> EXTENDED_BLOCK_SIZE_BITS))
+                return null;
+            block = extendedMemoryBlock[((address >>> EXTENDED_BLOCK_SIZE_BITS) & 0xffff) - 0x10];
+        }
+        if (!block.initialized || (write && !block.writeable) || block.mapped)
+            return null;
+        return block;
+    }
+
+    private int blockOffset(int address) {
+        if (address >= 0 && address < 0x100000)
+            return address & BASE_BLOCK_SIZE_OFFSET_MASK;
+        return address & EXTENDED_BLOCK_SIZE_OFFSET_MASK;
+    }
+
+    //memory mapped devices
+
+    //claims the pages holding start..stop for device, unless another device has them already
+    public void requestMemory(MemoryMappedDevice device, int start, int stop) {
+        for (int page = start >>> MAPPED_PAGE_BITS; page <= stop >>> MAPPED_PAGE_BITS; page++) {
+            if (mappedPage[page] == null)
+                mappedPage[page] = device;
+        }
+        markMappedBlocks(start, stop);
+    }
+
+    public void detachMemory(int start, int stop) {
+        for (int page = start >>> MAPPED_PAGE_BITS; page <= stop >>> MAPPED_PAGE_BITS; page++)
+            mappedPage[page] = null;
+        markMappedBlocks(start, stop);
+    }
+
+    //keeps each block's mapped flag in step with the pages, so ramBlock needn't look them up
+    private void markMappedBlocks(int start, int stop) {
+        if (baseMemoryBlock == null)
+            return;
+        for (long address = start & 0xffffffffL; address <= (stop & 0xffffffffL); ) {
+            int a = (int) address;
+            MemoryBlock block;
+            int size;
+            if (a >= 0 && a < 0x100000) {
+                block = baseMemoryBlock[a >>> BASE_BLOCK_SIZE_BITS];
+                size = BASE_BLOCK_SIZE;
+            } else {
+                block = extendedMemoryBlock[((a >>> EXTENDED_BLOCK_SIZE_BITS) & 0xffff) - 0x10];
+                size = EXTENDED_BLOCK_SIZE;
+            }
+            int first = a & -size;
+            block.mapped = isMapped(first, first + size - 1);
+            address = (first & 0xffffffffL) + size;
+        }
+    }
+
+    //true if a device watches any page holding address..last
+    protected boolean isMapped(int address, int last) {
+        //anything up to a page long can only touch the pages of its two ends
+        if (last - address < (1 << MAPPED_PAGE_BITS))
+            return mappedPage[address >>> MAPPED_PAGE_BITS] != null || mappedPage[last >>> MAPPED_PAGE_BITS] != null;
+        for (int page = address >>> MAPPED_PAGE_BITS; page <= last >>> MAPPED_PAGE_BITS; page++) {
+            if (mappedPage[page] != null)
+                return true;
+        }
+        return false;
+    }
+
     public boolean isInitialized(int address) {
         if (address >= 0 && address < 0x100000)
             return baseMemoryBlock[address >>> BASE_BLOCK_SIZE_BITS].initialized;
@@ -229,6 +453,8 @@ public class PhysicalMemory implements MemoryDevice {
         byte[] rambyte;
         boolean initialized = false;
         boolean writeable = false;
+        //a device watches at least one page of it
+        boolean mapped = false;
 
         int BLOCK_SIZE;
 
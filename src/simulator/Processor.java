@@ -7,6 +7,9 @@ Simulates the x86 processor
 package simulator;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Scanner;
 
 public class Processor {
@@ -102,8 +105,9 @@ public class Processor {
         setCPL(0);
 
         fetchQueue = new FetchQueue();
+        decodeCache = new DecodeCache();
+        descriptorCache = new DescriptorCache();
 
-        initializeDecoder();
 
 
         reset();
@@ -178,6 +182,7 @@ public class Processor {
         gdtr.loadState(states[s++]);
         ldtr.loadState(states[s++]);
         tss.loadState(states[s++]);
+        descriptorCache.flush();
         eax.loadState(states[s++]);
         ebx.loadState(states[s++]);
         ecx.loadState(states[s++]);
@@ -220,6 +225,8 @@ public class Processor {
 
     public void reset() {
         resetcodes();
+        decodeCache.flush();
+        descriptorCache.flush();
         computer.linearMemory.flush();
         fpu.reset();
 
@@ -281,11 +288,21 @@ public class Processor {
             processorGUICode = new ProcessorGUICode();
 //	}
 
+        if (guestProfiler != null)
+            guestProfiler.tick();
+
         if (haltMode) {
             if (processorGUICode != null) processorGUICode.push(GUICODE.EXECUTE_HALT);
-            try {
-                Thread.sleep(10);
-            } catch (InterruptedException e) {
+            //nothing happens until a device wakes us, so skip straight to its next event
+            //and let the pacer hold the host back until then
+            if (computer.clock.skipToNextEvent()) {
+                if (computer.pacer != null) computer.pacer.pace();
+            } else {
+                //only the user can wake us now
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                }
             }
             return;
         }
@@ -296,8 +313,15 @@ public class Processor {
 
             if (processorGUICode != null) processorGUICode.pushFetch(eip.getValue());
 
-            fetchQueue.fetch();
-            decodeInstruction(cs.getDefaultSize());
+            //the GUI wants to watch the decode, so only use the cache when nobody is looking
+            boolean is32bit = cs.getDefaultSize();
+            int address = cs.address(eip.getValue());
+            if (processorGUICode != null || !decodeCache.load(address, is32bit)) {
+                fetchQueue.fetch();
+                decodeInstruction(is32bit);
+                if (processorGUICode == null)
+                    decodeCache.store(address, is32bit);
+            }
             executeInstruction();
 
             if (processorGUICode != null) {
@@ -337,14 +361,16 @@ public class Processor {
         if (value == cr0.getValue()) return;
         int changedBits = cr0.getValue() ^ value;
         cr0.setValue(value);
+        decodeCache.flush();
+        descriptorCache.flush();
         if (isModeReal()) {
             setCPL(0);
-            cs.memory = computer.physicalMemory;
-            ss.memory = computer.physicalMemory;
-            ds.memory = computer.physicalMemory;
-            es.memory = computer.physicalMemory;
-            fs.memory = computer.physicalMemory;
-            gs.memory = computer.physicalMemory;
+            cs.setMemory(computer.physicalMemory);
+            ss.setMemory(computer.physicalMemory);
+            ds.setMemory(computer.physicalMemory);
+            es.setMemory(computer.physicalMemory);
+            fs.setMemory(computer.physicalMemory);
+            gs.setMemory(computer.physicalMemory);
 
 //		current_privilege_level=0;
             if (processorGUICode != null) processorGUICode.push(GUICODE.MODE_REAL);
@@ -352,12 +378,12 @@ public class Processor {
 //		System.out.println("Switching to Real Mode");
 //		System.out.printf("New segment bases: CS: %x, SS: %x, DS: %x, ES: %x, FS: %x, GS: %x\n",cs.getBase(),ss.getBase(),ds.getBase(),es.getBase(),fs.getBase(),gs.getBase());
         } else {
-            cs.memory = computer.linearMemory;
-            ss.memory = computer.linearMemory;
-            ds.memory = computer.linearMemory;
-            es.memory = computer.linearMemory;
-            fs.memory = computer.linearMemory;
-            gs.memory = computer.linearMemory;
+            cs.setMemory(computer.linearMemory);
+            ss.setMemory(computer.linearMemory);
+            ds.setMemory(computer.linearMemory);
+            es.setMemory(computer.linearMemory);
+            fs.setMemory(computer.linearMemory);
+            gs.setMemory(computer.linearMemory);
             if (processorGUICode != null) processorGUICode.push(GUICODE.MODE_PROTECTED);
 //		System.out.println("Switching to Protected Mode");
 //		System.out.printf("New segment bases: CS: %x, SS: %x, DS: %x, ES: %x, FS: %x, GS: %x\n",cs.getBase(),ss.getBase(),ds.getBase(),es.getBase(),fs.getBase(),gs.getBase());
@@ -398,6 +424,8 @@ public class Processor {
 
     public void setCR3(int value) {
         cr3.setValue(value);
+        decodeCache.flush();
+        descriptorCache.flush();
         computer.linearMemory.setPageDirectoryBaseAddress(value);
         computer.linearMemory.setPageCacheEnabled((value & 0x10) == 0);
 //	if ((value&0x8)==0)
@@ -406,10 +434,16 @@ public class Processor {
 
     public void setCR4(int value) {
         cr4.setValue((cr4.getValue() & ~0x5f) | (value & 0x5f));
+        decodeCache.flush();
+        descriptorCache.flush();
         computer.linearMemory.setGlobalPagesEnabled((value & 0x80) != 0);
         computer.linearMemory.setPageSizeExtensionsEnabled((value & 0x10) != 0);
     }
 
+    public boolean isHalted() {
+        return haltMode;
+    }
+
     public boolean isModeReal() {
         if ((cr0.getValue() & 1) == 0) return true;
         return false;
@@ -420,47 +454,100 @@ public class Processor {
         computer.linearMemory.setSupervisor(cpl == 0);
     }
 
-    //models a register
+    //register file, indexed by REG_ constants (Register id - Register.EAX)
+    static final int REG_EAX = 0, REG_EBX = 1, REG_ECX = 2, REG_EDX = 3, REG_ESI = 4, REG_EDI = 5, REG_ESP = 6, REG_EBP = 7, REG_CR0 = 8, REG_CR2 = 9, REG_CR3 = 10, REG_CR4 = 11, REG_EIP = 12, REG_DR0 = 13, REG_DR7 = 20;
+    final int[] registers = new int[REG_DR7 + 1];
+
+    //direct access for code that never runs with the GUI watching
+    int register16(int r) {
+        return registers[r] & 0xffff;
+    }
+
+    int registerLow8(int r) {
+        return registers[r] & 0xff;
+    }
+
+    int registerHigh8(int r) {
+        return (registers[r] >> 8) & 0xff;
+    }
+
+    void setRegister16(int r, int v) {
+        registers[r] = (registers[r] & 0xffff0000) | (0x0000ffff & v);
+    }
+
+    void setRegisterLow8(int r, int v) {
+        registers[r] = (registers[r] & 0xffffff00) | (0x000000ff & v);
+    }
+
+    void setRegisterHigh8(int r, int v) {
+        registers[r] = (registers[r] & 0xffff00ff) | (0x0000ff00 & (v << 8));
+    }
+
+    //the switch executor's access: straight to the slot, but still reported when the GUI is watching
+    private int readRegister(int r) {
+        if (processorGUICode != null) processorGUICode.pushRegister(Register.EAX + r, 0, registers[r]);
+        return registers[r];
+    }
+
+    private void writeRegister(int r, int v) {
+        if (processorGUICode != null) processorGUICode.pushRegister(Register.EAX + r, 1, v);
+        registers[r] = v;
+    }
+
+    private void writeRegister16(int r, int v) {
+        writeRegister(r, (readRegister(r) & 0xffff0000) | (0x0000ffff & v));
+    }
+
+    private void writeRegisterLow8(int r, int v) {
+        writeRegister(r, (readRegister(r) & 0xffffff00) | (0x000000ff & v));
+    }
+
+    private void writeRegisterHigh8(int r, int v) {
+        writeRegister(r, (readRegister(r) & 0xffff00ff) | (0x0000ff00 & (v << 8)));
+    }
+
+    //models a register: a view of one slot in the register file that reports accesses to the GUI
 //public class Register extends MonitoredRegister
     public class Register {
         static final int EAX = 100, EBX = 101, ECX = 102, EDX = 103, ESI = 104, EDI = 105, ESP = 106, EBP = 107, CR0 = 108, CR2 = 109, CR3 = 110, CR4 = 111, EIP = 112, DR0 = 113, DR1 = 114, DR2 = 115, DR3 = 116, DR4 = 117, DR5 = 118, DR6 = 119, DR7 = 120;
         int id;
-        int value;
+        int index;
 
         public String saveState() {
             String state = "";
-            state += id + " " + value;
+            state += id + " " + registers[index];
             return state;
         }
 
         public void loadState(String state) {
             Scanner loader = new Scanner(state);
             id = loader.nextInt();
-            value = loader.nextInt();
+            index = id - EAX;
+            registers[index] = loader.nextInt();
         }
 
         public Register(int id) {
-            this.id = id;
-            this.value = 0;
+            this(id, 0);
 //		super(0);
         }
 
         public Register(int id, int value) {
             this.id = id;
-            this.value = value;
+            this.index = id - EAX;
+            registers[index] = value;
 //		super(value);
         }
 
         public int getValue() {
 //		super.updateGUI();
-            if (processorGUICode != null) processorGUICode.pushRegister(id, 0, value);
-            return value;
+            if (processorGUICode != null) processorGUICode.pushRegister(id, 0, registers[index]);
+            return registers[index];
         }
 
         public void setValue(int value) {
 //		super.updateGUI();
             if (processorGUICode != null) processorGUICode.pushRegister(id, 1, value);
-            this.value = value;
+            registers[index] = value;
         }
 
         public short getLower16Value() {
@@ -491,6 +578,8 @@ public class Processor {
     //public class Flag extends MonitoredFlag
     public class Flag {
         int type;
+        //bit in lazyFlagsPending, 0 for flags that are never evaluated lazily
+        int mask;
 
         public static final int AUXILIARYCARRY = 100, CARRY = 101, ZERO = 102, SIGN = 103, PARITY = 104, OVERFLOW = 105, OTHER = 106;
 
@@ -554,6 +643,7 @@ public class Processor {
         private long v1long;
 
         public String saveState() {
+            if ((lazyFlagsPending & mask) != 0) evaluateLazyFlags();
             String state = "";
             state += type + " " + (value ? 1 : 0) + " " + v1 + " " + v2 + " " + v3 + " " + method + " " + v1long;
             return state;
@@ -563,6 +653,7 @@ public class Processor {
             Scanner loader = new Scanner(state);
             type = loader.nextInt();
             value = loader.nextInt() == 1;
+            lazyFlagsPending &= ~mask;
             v1 = loader.nextInt();
             v2 = loader.nextInt();
             v3 = loader.nextInt();
@@ -573,27 +664,60 @@ public class Processor {
         public Flag(int type) {
 //		super(false);
             this.type = type;
+            switch (type) {
+                case CARRY:
+                    mask = LAZY_CARRY;
+                    break;
+                case PARITY:
+                    mask = LAZY_PARITY;
+                    break;
+                case AUXILIARYCARRY:
+                    mask = LAZY_AUXILIARYCARRY;
+                    break;
+                case ZERO:
+                    mask = LAZY_ZERO;
+                    break;
+                case SIGN:
+                    mask = LAZY_SIGN;
+                    break;
+                case OVERFLOW:
+                    mask = LAZY_OVERFLOW;
+                    break;
+                default:
+                    mask = 0;
+            }
         }
 
         public void clear() {
             if (processorGUICode != null) processorGUICode.pushFlag(type, 0);
             value = false;
+            lazyFlagsPending &= ~mask;
 //		super.updateGUI();
         }
 
         public void set() {
             if (processorGUICode != null) processorGUICode.pushFlag(type, 1);
             value = true;
+            lazyFlagsPending &= ~mask;
 //		super.updateGUI();
         }
 
         public boolean read() {
 //		super.updateGUI();
+            if ((lazyFlagsPending & mask) != 0) {
+                value = lazyFlag(mask);
+                lazyFlagsPending &= ~mask;
+            }
             if (processorGUICode != null) processorGUICode.pushFlag(type, 2);
             return value;
         }
 
         public void toggle() {
+            //settle a deferred value first, or this would invert the one from before it
+            if ((lazyFlagsPending & mask) != 0) {
+                value = lazyFlag(mask);
+                lazyFlagsPending &= ~mask;
+            }
             if (value)
                 clear();
             else
@@ -802,6 +926,8 @@ public class Processor {
         int base;
         private long limit;
         private MemoryDevice memory;
+        //true if accesses go through linearMemory, and so may need translating
+        private boolean paged;
 
         long descriptor;
         boolean granularity, defaultSize, present, system;
@@ -831,10 +957,15 @@ public class Processor {
         public Segment(int id, MemoryDevice memory) {
 //		super(0);
             this.id = id;
-            this.memory = memory;
+            setMemory(memory);
             limit = 0xffff;
         }
 
+        public void setMemory(MemoryDevice memory) {
+            this.memory = memory;
+            paged = memory == computer.linearMemory;
+        }
+
         public void setDescriptorValue(int value) {
             if (processorGUICode != null) processorGUICode.pushSegment(id, 1, value);
             this.value = value;
@@ -873,6 +1004,10 @@ public class Processor {
         }
 
         public void setProtectedValue(int value) {
+            if (descriptorCache.contains(value)) {
+                setProtectedValue(value, descriptorCache.get(value));
+                return;
+            }
             //first get the descriptor
             boolean sup = computer.linearMemory.isSupervisor;
             computer.linearMemory.setSupervisor(true);
@@ -881,10 +1016,11 @@ public class Processor {
             } else {
                 if (ldtr == null) {
                     System.out.println("LDTR is null");
-                    throw new Processor_Exception(GENERAL_PROTECTION);
+                    throw GENERAL_PROTECTION;
                 }
                 descriptor = ldtr.loadQuadWord(value & 0xfff8);
             }
+            descriptorCache.put(value, descriptor);
             setProtectedValue(value, descriptor);
             computer.linearMemory.setSupervisor(sup);
         }
@@ -905,6 +1041,10 @@ public class Processor {
             present = (descriptor & (1l << 47)) != 0;
             system = (descriptor & (1l << 44)) != 0;
 
+            //a new LDT: selectors with the table bit set now mean something else
+            if (id == LDTR)
+                descriptorCache.flushLocal();
+
             if (id == CS && !defaultSize)
                 System.out.println("operating in 16 bit protected mode " + descriptor + " " + value);
             else if (id == CS)
@@ -947,58 +1087,116 @@ public class Processor {
         }
 
         public int physicalAddress(int offset) {
-            if (memory == computer.physicalMemory)
+            if (!paged)
                 return base + offset;
             return computer.linearMemory.virtualAddressLookup(base + offset);
         }
 
+        //translates like a read or write of the byte at offset would, page faults included
+        public int physicalReadAddress(int offset) {
+            if (!paged)
+                return address(offset);
+            return computer.linearMemory.getPhysicalPageRead(address(offset));
+        }
+
+        public int physicalWriteAddress(int offset) {
+            if (!paged)
+                return address(offset);
+            return computer.linearMemory.getPhysicalPageWrite(address(offset));
+        }
+
         public byte loadByte(int offset) {
-            byte memvalue = memory.getByte(address(offset));
-            if (processorGUICode != null) processorGUICode.pushMemory(id, value, 0, address(offset), memvalue);
+            int address = address(offset);
+            byte memvalue = memory.getByte(address);
+            if (processorGUICode != null) processorGUICode.pushMemory(id, value, 0, address, memvalue);
             return memvalue;
         }
 
         public short loadWord(int offset) {
-            short memvalue = memory.getWord(address(offset));
-            if (processorGUICode != null) processorGUICode.pushMemory(id, value, 0, address(offset), memvalue);
+            int address = address(offset);
+            short memvalue = memory.getWord(address);
+            if (processorGUICode != null) processorGUICode.pushMemory(id, value, 0, address, memvalue);
             return memvalue;
         }
 
         public int loadDoubleWord(int offset) {
-            int memvalue = memory.getDoubleWord(address(offset));
-            if (processorGUICode != null) processorGUICode.pushMemory(id, value, 0, address(offset), memvalue);
+            int address = address(offset);
+            int memvalue = memory.getDoubleWord(address);
+            if (processorGUICode != null) processorGUICode.pushMemory(id, value, 0, address, memvalue);
             return memvalue;
         }
 
         public long loadQuadWord(int offset) {
-            long memvalue = memory.getQuadWord(address(offset));
-            if (processorGUICode != null) processorGUICode.pushMemory(id, value, 0, address(offset), memvalue);
+            int address = address(offset);
+            long memvalue = memory.getQuadWord(address);
+            if (processorGUICode != null) processorGUICode.pushMemory(id, value, 0, address, memvalue);
             return memvalue;
         }
 
         public void storeByte(int offset, byte value) {
-            if (processorGUICode != null) processorGUICode.pushMemory(id, this.value, 1, address(offset), value);
-            memory.setByte(address(offset), value);
-            fetchQueue.flush();
+            int address = address(offset);
+            if (processorGUICode != null) processorGUICode.pushMemory(id, this.value, 1, address, value);
+            memory.setByte(address, value);
+            invalidateCode(address, 1);
         }
 
         public void storeWord(int offset, short value) {
-            if (processorGUICode != null) processorGUICode.pushMemory(id, this.value, 1, address(offset), value);
-            memory.setWord(address(offset), value);
-            fetchQueue.flush();
+            int address = address(offset);
+            if (processorGUICode != null) processorGUICode.pushMemory(id, this.value, 1, address, value);
+            memory.setWord(address, value);
+            invalidateCode(address, 2);
         }
 
         public void storeDoubleWord(int offset, int value) {
-            if (processorGUICode != null) processorGUICode.pushMemory(id, this.value, 1, address(offset), value);
-            memory.setDoubleWord(address(offset), value);
-            fetchQueue.flush();
+            int address = address(offset);
+            if (processorGUICode != null) processorGUICode.pushMemory(id, this.value, 1, address, value);
+            memory.setDoubleWord(address, value);
+            invalidateCode(address, 4);
         }
 
         public void storeQuadWord(int offset, long value) {
-            if (processorGUICode != null) processorGUICode.pushMemory(id, this.value, 1, address(offset), value);
-            memory.setQuadWord(address(offset), value);
-            fetchQueue.flush();
+            int address = address(offset);
+            if (processorGUICode != null) processorGUICode.pushMemory(id, this.value, 1, address, value);
+            memory.setQuadWord(address, value);
+            invalidateCode(address, 8);
+        }
+
+        //drop any prefetched or cached decodes of the bytes being written
+        //with paging off a physical address is also the linear one, so only a store through physical memory with
+        //paging on (a descriptor table before LGDT/LIDT) has to drop everything
+        private void invalidateCode(int address, int length) {
+            if (computer.linearMemory.pagingDisabled) {
+                fetchQueue.flush(address, length);
+                decodeCache.invalidate(address, length);
+                descriptorCache.invalidate(address, length);
+            } else if (paged) {
+                //another linear address may map the same pages, so the queue and the decodes go by where the store
+                //landed; a store is a page at most, so it's in one or two physical pages
+                int first = computer.linearMemory.getPhysicalPageWrite(address);
+                int last = computer.linearMemory.getPhysicalPageWrite(address + length - 1);
+                if (((first ^ last) & ~0xfff) == 0)
+                    invalidateStore(first, length);
+                else {
+                    invalidateStore(first, 0x1000 - (first & 0xfff));
+                    invalidateStore(last & ~0xfff, (last & 0xfff) + 1);
+                }
+                descriptorCache.invalidate(address, length);
+            } else
+                invalidatePhysical(address, length);
         }
+
+        private void invalidateStore(int physical, int length) {
+            fetchQueue.flushPhysical(physical, length);
+            decodeCache.invalidate(physical, length);
+        }
+    }
+
+    //a write of length bytes at a physical address from outside the processor (DMA, the memory editor):
+    //drop whatever was prefetched, decoded or cached from the bytes it covered
+    public void invalidatePhysical(int address, int length) {
+        fetchQueue.flush();
+        decodeCache.invalidate(address, length);
+        descriptorCache.invalidatePhysical(address, length);
     }
 
     public int getFlags() {
@@ -1233,7 +1431,11 @@ public class Processor {
         private static final int MAX_INST_LENGTH = 16;
 
         private byte[] bytearray;
-        private int[] iparray;
+        //linear address of bytearray[0]
+        private int start;
+        //the physical bytes the queue was copied from, one run per page, for stores through another mapping
+        //firstLength is -1 when the queue came a byte at a time and isn't known
+        private int firstPhysical, firstLength, secondPhysical, secondLength;
         private boolean dofetch;
 
         int counter;
@@ -1242,19 +1444,42 @@ public class Processor {
         public void fetch() {
             ilength = 0;
 
+            int pc = eip.getValue();
             if (!dofetch) {
-                if (iparray[counter] != eip.getValue())
+                if (cs.address(pc) != start + counter)
                     dofetch = true;
                 if (counter > PREFETCH_QUANTITY - MAX_INST_LENGTH)
                     dofetch = true;
             }
             if (dofetch) {
                 counter = 0;
-                int pc = eip.getValue();
-                for (int i = 0; i < PREFETCH_QUANTITY; i++) {
+                start = cs.address(pc);
+                firstLength = secondLength = 0;
+                boolean known = true;
+                int i = 0;
+                while (i < PREFETCH_QUANTITY) {
+                    //copy up to the end of the page straight out of RAM when nobody is watching
+                    if (processorGUICode == null) {
+                        int chunk = Math.min(PREFETCH_QUANTITY - i, 0x1000 - ((start + i) & 0xfff));
+                        int physical = cs.physicalReadAddress(pc + i);
+                        if (computer.physicalMemory.read(physical, bytearray, i, chunk)) {
+                            if (i == 0) {
+                                firstPhysical = physical;
+                                firstLength = chunk;
+                            } else {
+                                secondPhysical = physical;
+                                secondLength = chunk;
+                            }
+                            i += chunk;
+                            continue;
+                        }
+                    }
+                    known = false;
                     bytearray[i] = cs.loadByte(pc + i);
-                    iparray[i] = pc + i;
+                    i++;
                 }
+                if (!known)
+                    firstLength = -1;
                 dofetch = false;
             }
         }
@@ -1263,9 +1488,22 @@ public class Processor {
             dofetch = true;
         }
 
+        //a write of length bytes at a linear address: only refetch if it hit the queued bytes
+        public void flush(int address, int length) {
+            int distance = address - start;
+            if (distance > -length && distance < PREFETCH_QUANTITY)
+                dofetch = true;
+        }
+
+        //the same by the physical address the write landed at, which with paging on is the only safe test
+        public void flushPhysical(int address, int length) {
+            int first = address - firstPhysical, second = address - secondPhysical;
+            if (firstLength < 0 || (first > -length && first < firstLength) || (second > -length && second < secondLength))
+                dofetch = true;
+        }
+
         public FetchQueue() {
             bytearray = new byte[PREFETCH_QUANTITY];
-            iparray = new int[PREFETCH_QUANTITY];
             counter = 0;
             ilength = 0;
             dofetch = true;
@@ -1295,6 +1533,231 @@ public class Processor {
         }
     }
 
+    public DecodeCache decodeCache;
+    public DescriptorCache descriptorCache;
+
+    //remembers the microcode of recently decoded instructions so loops don't get decoded over and over
+    //entries are keyed by linear address and code size, and are dropped when their page is written
+    public class DecodeCache {
+        private static final int ENTRIES = 0x2000;
+        private static final int PAGE_SHIFT = 12;
+        private static final int PAGES = 1 << (32 - PAGE_SHIFT);
+
+        private DecodedInstruction[] entries;
+        //entries are found by linear address but watch the physical pages their bytes are on,
+        //since with paging another linear address can map the same page
+        //bumped whenever a page holding cached code is written
+        private int[] pageGeneration;
+        private boolean[] pageHasCode;
+        //bumped to drop every entry at once
+        private int generation;
+        //entry for the instruction now in code[], or null if it didn't come through the cache
+        private DecodedInstruction current;
+
+        public DecodeCache() {
+            entries = new DecodedInstruction[ENTRIES];
+            pageGeneration = new int[PAGES];
+            pageHasCode = new boolean[PAGES];
+            generation = 0;
+        }
+
+        //copies a cached decode into the microcode arrays, returns false on a miss
+        public boolean load(int address, boolean is32bit) {
+            DecodedInstruction entry = entries[address & (ENTRIES - 1)];
+            current = null;
+            if (entry == null || entry.address != address || entry.is32bit != is32bit || entry.generation != generation)
+                return false;
+            if (pageGeneration[entry.firstPage] != entry.firstPageGeneration || pageGeneration[entry.lastPage] != entry.lastPageGeneration)
+                return false;
+            current = entry;
+            System.arraycopy(entry.code, 0, code, 0, entry.codeLength);
+            System.arraycopy(entry.icode, 0, icode, 0, entry.icodeLength);
+            codeLength = entry.codeLength;
+            icodeLength = entry.icodeLength;
+            prefixFlags = entry.prefixFlags;
+            segmentOverride = entry.segmentOverride;
+            fetchQueue.ilength = entry.length;
+            return true;
+        }
+
+        //saves the instruction that was just decoded
+        public void store(int address, boolean is32bit) {
+            int index = address & (ENTRIES - 1);
+            DecodedInstruction entry = entries[index];
+            if (entry == null)
+                entry = entries[index] = new DecodedInstruction();
+            if (entry.code.length < codeLength)
+                entry.code = new MICROCODE[codeLength];
+            if (entry.icode.length < icodeLength)
+                entry.icode = new int[icodeLength];
+            System.arraycopy(code, 0, entry.code, 0, codeLength);
+            System.arraycopy(icode, 0, entry.icode, 0, icodeLength);
+            entry.codeLength = codeLength;
+            entry.icodeLength = icodeLength;
+            entry.prefixFlags = prefixFlags;
+            entry.segmentOverride = segmentOverride;
+            entry.handlers = null;
+            current = entry;
+            entry.length = fetchQueue.instructionLength();
+            entry.address = address;
+            entry.is32bit = is32bit;
+            int first = computer.linearMemory.physicalAddressIfMapped(address);
+            int last = computer.linearMemory.physicalAddressIfMapped(address + entry.length - 1);
+            //can't be watched, so it's kept only for the threaded executor's handlers this time
+            if (first == -1 || last == -1) {
+                entry.generation = generation - 1;
+                return;
+            }
+            entry.generation = generation;
+            entry.firstPage = first >>> PAGE_SHIFT;
+            entry.lastPage = last >>> PAGE_SHIFT;
+            entry.firstPageGeneration = pageGeneration[entry.firstPage];
+            entry.lastPageGeneration = pageGeneration[entry.lastPage];
+            pageHasCode[entry.firstPage] = true;
+            pageHasCode[entry.lastPage] = true;
+        }
+
+        //more pages than this in one write, and it's cheaper to drop everything
+        private static final int INVALIDATE_PAGES = 64;
+
+        //a write of length bytes at a physical address, touching every page in between
+        public void invalidate(int address, int length) {
+            if (length <= 0)
+                return;
+            int first = address >>> PAGE_SHIFT;
+            int pages = (int) ((((address & 0xffffffffL) + length - 1) >>> PAGE_SHIFT) - first + 1);
+            if (pages > INVALIDATE_PAGES) {
+                flush();
+                return;
+            }
+            for (int i = 0; i < pages; i++)
+                invalidatePage((first + i) & (PAGES - 1));
+        }
+
+        private void invalidatePage(int page) {
+            if (pageHasCode[page]) {
+                pageGeneration[page]++;
+                pageHasCode[page] = false;
+            }
+        }
+
+        //forget everything, used when the address translation changes
+        public void flush() {
+            generation++;
+        }
+
+        //the threaded executor's handlers for the current instruction
+        MicrocodeHandler[] getHandlers() {
+            return current == null ? null : current.handlers;
+        }
+
+        void setHandlers(MicrocodeHandler[] handlers) {
+            if (current != null)
+                current.handlers = handlers;
+        }
+    }
+
+    //protected mode segment descriptors, so reloading a segment register doesn't go back to the GDT/LDT
+    public class DescriptorCache {
+        //one slot per selector index: GDT entries first, then LDT entries
+        private static final int ENTRIES = 0x2000;
+
+        private long[] descriptors;
+        //generation each slot was filled in, compared against the generation of its table
+        private int[] slotGeneration;
+        private int globalGeneration, localGeneration;
+
+        //for the hit rate
+        public long hits, misses;
+
+        public DescriptorCache() {
+            descriptors = new long[ENTRIES * 2];
+            slotGeneration = new int[ENTRIES * 2];
+            globalGeneration = 1;
+            localGeneration = 1;
+        }
+
+        private int slot(int selector) {
+            return ((selector & 4) << 11) | ((selector >>> 3) & (ENTRIES - 1));
+        }
+
+        private int generation(int selector) {
+            return (selector & 4) == 0 ? globalGeneration : localGeneration;
+        }
+
+        //the debugger wants to see the table reads, so it always misses
+        public boolean contains(int selector) {
+            if (processorGUICode == null && slotGeneration[slot(selector)] == generation(selector)) {
+                hits++;
+                return true;
+            }
+            misses++;
+            return false;
+        }
+
+        public long get(int selector) {
+            return descriptors[slot(selector)];
+        }
+
+        public void put(int selector, long descriptor) {
+            int slot = slot(selector);
+            descriptors[slot] = descriptor;
+            slotGeneration[slot] = generation(selector);
+        }
+
+        //a write of length bytes at a linear address: drop a table if it overlaps
+        public void invalidate(int address, int length) {
+            int distance = address - gdtr.base;
+            if (distance > -length && distance <= gdtr.getLimit())
+                globalGeneration++;
+            distance = address - ldtr.base;
+            if (distance > -length && distance <= ldtr.getLimit())
+                localGeneration++;
+        }
+
+        //a write that bypassed the segments: only matches linear addresses when paging is off
+        public void invalidatePhysical(int address, int length) {
+            if (computer.linearMemory.pagingDisabled)
+                invalidate(address, length);
+            else
+                flush();
+        }
+
+        //the LDT was reloaded
+        public void flushLocal() {
+            localGeneration++;
+        }
+
+        //the GDT moved, or the address translation changed under both tables
+        public void flush() {
+            globalGeneration++;
+            localGeneration++;
+        }
+
+        public double getHitRate() {
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+
+        public String toString() {
+            return String.format("descriptor cache: %d hits, %d misses (%.1f%% hit rate)", hits, misses, getHitRate() * 100);
+        }
+    }
+
+    private class DecodedInstruction {
+        MICROCODE[] code = new MICROCODE[0];
+        int[] icode = new int[0];
+        int codeLength, icodeLength, length;
+        int prefixFlags;
+        MICROCODE segmentOverride;
+        MicrocodeHandler[] handlers;
+        int address;
+        boolean is32bit;
+        int generation;
+        //physical pages of the first and last byte
+        int firstPage, lastPage;
+        int firstPageGeneration, lastPageGeneration;
+    }
+
     MICROCODE[] code = new MICROCODE[100];
     private int[] icode = new int[100];
     private int icodeLength = 0;
@@ -1302,7 +1765,20 @@ public class Processor {
     public int codeLength = 0;
     public int codesHandled = 0;
 
-    public static int[][][] operandTable;
+    //instruction header: the decoder sets one bit per PREFIX_ microcode instead of pushing it into code[]
+    private static final int LAST_PREFIX = MICROCODE.PREFIX_FLOAT.ordinal();
+    private static final int OPERAND32_MASK = 1 << MICROCODE.PREFIX_OPCODE_32BIT.ordinal();
+    private static final int ADDRESS32_MASK = 1 << MICROCODE.PREFIX_ADDRESS_32BIT.ordinal();
+    private static final int REPEAT_MASK = (1 << MICROCODE.PREFIX_REPE.ordinal()) | (1 << MICROCODE.PREFIX_REPNE.ordinal());
+    private int prefixFlags = 0;
+    //LOAD_SEG_ microcode for the segment override prefix, or null if there isn't one
+    private MICROCODE segmentOverride = null;
+
+    private final MicrocodeContext microcodeContext = new MicrocodeContext();
+    //null to run microcode through the switch in executeMicroInstructions
+    public ThreadedExecutor threadedExecutor = null;
+    public MicrocodeProfiler microcodeProfiler = null;
+    public GuestProfiler guestProfiler = null;
 
     public void resetcodes() {
         code = new MICROCODE[100];
@@ -1311,6 +1787,8 @@ public class Processor {
         icodesHandled = 0;
         codeLength = 0;
         codesHandled = 0;
+        prefixFlags = 0;
+        segmentOverride = null;
     }
 
     public void executeInstruction() {
@@ -1330,27 +1808,35 @@ public class Processor {
     }
 
     public void executeMicroInstructions() {
-        //internal registers
-        int reg0 = 0, reg1 = 0, reg2 = 0, addr = 0;
-        long reg0l = 0;
-        Segment seg = null;
-        boolean condition = false;
-        int displacement = 0;
-
         codesHandled = 0;
         icodesHandled = 0;
 
-        MICROCODE microcode;
-        boolean op32, addr32;
-
         fpu.newExecuteFloat();
 
-//	try
-//	{
-        while (codesHandled < codeLength) {
+        if (microcodeProfiler != null)
+            microcodeProfiler.count(code, codeLength);
+        microcodeContext.reset(isOperand32(), isAddress32());
+        //the threaded executor doesn't report microcodes to the GUI, so it only runs when nobody is watching
+        if (threadedExecutor != null && processorGUICode == null)
+            threadedExecutor.execute(microcodeContext);
+        else
+            executeMicroInstructions(microcodeContext, codeLength);
+    }
+
+    //runs the switch over code[codesHandled] up to code[end-1], with the internal registers kept in the context
+    private void executeMicroInstructions(MicrocodeContext context, int end) {
+        //internal registers
+        int reg0 = context.reg0, reg1 = context.reg1, reg2 = context.reg2, addr = context.addr;
+        long reg0l = context.reg0l;
+        Segment seg = context.seg;
+        boolean condition = context.condition;
+        int displacement = context.displacement;
+
+        MICROCODE microcode;
+        boolean op32 = context.op32, addr32 = context.addr32;
+
+        while (codesHandled < end) {
             microcode = getCode();
-            op32 = isCode(MICROCODE.PREFIX_OPCODE_32BIT);
-            addr32 = isCode(MICROCODE.PREFIX_ADDRESS_32BIT);
 
             if (computer.debugMode) {
                 System.out.println(code[codesHandled]);
@@ -1361,76 +1847,64 @@ public class Processor {
             switch (microcode) {
                 //reads and writes
                 case LOAD0_AX:
-                    reg0 = eax.getValue() & 0xffff;
+                    reg0 = readRegister(REG_EAX) & 0xffff;
                     break;
                 case LOAD0_BX:
-                    reg0 = ebx.getValue() & 0xffff;
+                    reg0 = readRegister(REG_EBX) & 0xffff;
                     break;
                 case LOAD0_CX:
-                    reg0 = ecx.getValue() & 0xffff;
+                    reg0 = readRegister(REG_ECX) & 0xffff;
                     break;
                 case LOAD0_DX:
-                    reg0 = edx.getValue() & 0xffff;
+                    reg0 = readRegister(REG_EDX) & 0xffff;
                     break;
                 case LOAD0_SP:
-                    reg0 = esp.getValue() & 0xffff;
+                    reg0 = readRegister(REG_ESP) & 0xffff;
                     break;
                 case LOAD0_BP:
-                    reg0 = ebp.getValue() & 0xffff;
+                    reg0 = readRegister(REG_EBP) & 0xffff;
                     break;
                 case LOAD0_SI:
-                    reg0 = esi.getValue() & 0xffff;
+                    reg0 = readRegister(REG_ESI) & 0xffff;
                     break;
                 case LOAD0_DI:
-                    reg0 = edi.getValue() & 0xffff;
+                    reg0 = readRegister(REG_EDI) & 0xffff;
                     break;
                 case LOAD0_EAX:
-                    reg0 = eax.getValue();
+                    reg0 = readRegister(REG_EAX);
                     break;
                 case LOAD0_EBX:
-                    reg0 = ebx.getValue();
+                    reg0 = readRegister(REG_EBX);
                     break;
                 case LOAD0_ECX:
-                    reg0 = ecx.getValue();
+                    reg0 = readRegister(REG_ECX);
                     break;
                 case LOAD0_EDX:
-                    reg0 = edx.getValue();
-                    break;
-                case LOAD0_ESP:
-                    reg0 = esp.getValue();
-                    break;
-                case LOAD0_EBP:
-                    reg0 = ebp.getValue();
-                    break;
-                case LOAD0_ESI:
-                    reg0 = esi.getValue();
-                    break;
-                case LOAD0_EDI:
-                    reg0 = edi.getValue();
+                    reg0 = readRegister(REG_EDX);
                     break;
                 case LOAD0_AL:
-                    reg0 = eax.getValue() & 0xff;
+                    reg0 = readRegister(REG_EAX) & 0xff;
                     break;
                 case LOAD0_AH:
-                    reg0 = (eax.getValue() >> 8) & 0xff;
+                    reg0 = (readRegister(REG_EAX) >> 8) & 0xff;
                     break;
                 case LOAD0_BL:
-                    reg0 = ebx.getValue() & 0xff;
+                    reg0 = readRegister(REG_EBX) & 0xff;
                     break;
                 case LOAD0_BH:
-                    reg0 = (ebx.getValue() >> 8) & 0xff;
+                    reg0 = (readRegister(REG_EBX) >> 8) & 0xff;
                     break;
                 case LOAD0_CL:
-                    reg0 = ecx.getValue() & 0xff;
+                    reg0 = readRegister(REG_ECX) & 0xff;
                     break;
                 case LOAD0_CH:
-                    reg0 = (ecx.getValue() >> 8) & 0xff;
+                    reg0 = (readRegister(REG_ECX) >> 8) & 0xff;
                     break;
                 case LOAD0_DL:
-                    reg0 = edx.getValue() & 0xff;
+                    reg0 = readRegister(REG_EDX) & 0xff;
                     break;
                 case LOAD0_DH:
-                    reg0 = (edx.getValue() >> 8) & 0xff;
+                    reg0 = (readRegister(REG_EDX) >> 8) & 0xff;
                     break;
                 case LOAD0_CS:
                     reg0 = cs.getValue() & 0xffff;
@@ -1444,18 +1918,9 @@ public class Processor {
                 case LOAD0_ES:
                     reg0 = es.getValue() & 0xffff;
                     break;
-                case LOAD0_FS:
-                    reg0 = fs.getValue() & 0xffff;
-                    break;
-                case LOAD0_GS:
-                    reg0 = gs.getValue() & 0xffff;
-                    break;
                 case LOAD0_FLAGS:
                     reg0 = getFlags() & 0xffff;
                     break;
-                case LOAD0_EFLAGS:
-                    reg0 = getFlags();
-                    break;
                 case LOAD0_IB:
                     reg0 = getiCode() & 0xff;
                     break;
@@ -1468,132 +1933,60 @@ public class Processor {
                 case LOAD0_ADDR:
                     reg0 = addr;
                     break;
-                case LOAD0_CR0:
-                    reg0 = cr0.getValue();
-                    break;
-                case LOAD0_CR2:
-                    reg0 = cr2.getValue();
-                    break;
-                case LOAD0_CR3:
-                    reg0 = cr3.getValue();
-                    break;
-                case LOAD0_CR4:
-                    reg0 = cr4.getValue();
-                    break;
-                case LOAD0_DR0:
-                    reg0 = dr0.getValue();
-                    break;
-                case LOAD0_DR1:
-                    reg0 = dr1.getValue();
-                    break;
-                case LOAD0_DR2:
-                    reg0 = dr2.getValue();
-                    break;
-                case LOAD0_DR3:
-                    reg0 = dr3.getValue();
-                    break;
-                case LOAD0_DR6:
-                    reg0 = dr6.getValue();
-                    break;
-                case LOAD0_DR7:
-                    reg0 = dr7.getValue();
-                    break;
 
                 case LOAD1_AX:
-                    reg1 = eax.getValue() & 0xffff;
+                    reg1 = readRegister(REG_EAX) & 0xffff;
                     break;
                 case LOAD1_BX:
-                    reg1 = ebx.getValue() & 0xffff;
+                    reg1 = readRegister(REG_EBX) & 0xffff;
                     break;
                 case LOAD1_CX:
-                    reg1 = ecx.getValue() & 0xffff;
+                    reg1 = readRegister(REG_ECX) & 0xffff;
                     break;
                 case LOAD1_DX:
-                    reg1 = edx.getValue() & 0xffff;
+                    reg1 = readRegister(REG_EDX) & 0xffff;
                     break;
                 case LOAD1_SP:
-                    reg1 = esp.getValue() & 0xffff;
+                    reg1 = readRegister(REG_ESP) & 0xffff;
                     break;
                 case LOAD1_BP:
-                    reg1 = ebp.getValue() & 0xffff;
+                    reg1 = readRegister(REG_EBP) & 0xffff;
                     break;
                 case LOAD1_SI:
-                    reg1 = esi.getValue() & 0xffff;
+                    reg1 = readRegister(REG_ESI) & 0xffff;
                     break;
                 case LOAD1_DI:
-                    reg1 = edi.getValue() & 0xffff;
+                    reg1 = readRegister(REG_EDI) & 0xffff;
                     break;
                 case LOAD1_EAX:
-                    reg1 = eax.getValue();
-                    break;
-                case LOAD1_EBX:
-                    reg1 = ebx.getValue();
-                    break;
-                case LOAD1_ECX:
-                    reg1 = ecx.getValue();
+                    reg1 = readRegister(REG_EAX);
                     break;
                 case LOAD1_EDX:
-                    reg1 = edx.getValue();
-                    break;
-                case LOAD1_ESP:
-                    reg1 = esp.getValue();
-                    break;
-                case LOAD1_EBP:
-                    reg1 = ebp.getValue();
-                    break;
-                case LOAD1_ESI:
-                    reg1 = esi.getValue();
-                    break;
-                case LOAD1_EDI:
-                    reg1 = edi.getValue();
+                    reg1 = readRegister(REG_EDX);
                     break;
                 case LOAD1_AL:
-                    reg1 = eax.getValue() & 0xff;
+                    reg1 = readRegister(REG_EAX) & 0xff;
                     break;
                 case LOAD1_AH:
-                    reg1 = (eax.getValue() >> 8) & 0xff;
+                    reg1 = (readRegister(REG_EAX) >> 8) & 0xff;
                     break;
                 case LOAD1_BL:
-                    reg1 = ebx.getValue() & 0xff;
+                    reg1 = readRegister(REG_EBX) & 0xff;
                     break;
                 case LOAD1_BH:
-                    reg1 = (ebx.getValue() >> 8) & 0xff;
+                    reg1 = (readRegister(REG_EBX) >> 8) & 0xff;
                     break;
                 case LOAD1_CL:
-                    reg1 = ecx.getValue() & 0xff;
+                    reg1 = readRegister(REG_ECX) & 0xff;
                     break;
                 case LOAD1_CH:
-                    reg1 = (ecx.getValue() >> 8) & 0xff;
+                    reg1 = (readRegister(REG_ECX) >> 8) & 0xff;
                     break;
                 case LOAD1_DL:
-                    reg1 = edx.getValue() & 0xff;
+                    reg1 = readRegister(REG_EDX) & 0xff;
                     break;
                 case LOAD1_DH:
-                    reg1 = (edx.getValue() >> 8) & 0xff;
-                    break;
-                case LOAD1_CS:
-                    reg1 = cs.getValue() & 0xffff;
-                    break;
-                case LOAD1_SS:
-                    reg1 = ss.getValue() & 0xffff;
-                    break;
-                case LOAD1_DS:
-                    reg1 = ds.getValue() & 0xffff;
-                    break;
-                case LOAD1_ES:
-                    reg1 = es.getValue() & 0xffff;
-                    break;
-                case LOAD1_FS:
-                    reg1 = fs.getValue() & 0xffff;
-                    break;
-                case LOAD1_GS:
-                    reg1 = gs.getValue() & 0xffff;
-                    break;
-                case LOAD1_FLAGS:
-                    reg1 = getFlags() & 0xffff;
-                    break;
-                case LOAD1_EFLAGS:
-                    reg1 = getFlags();
+                    reg1 = (readRegister(REG_EDX) >> 8) & 0xff;
                     break;
                 case LOAD1_IB:
                     reg1 = getiCode() & 0xff;
@@ -1605,96 +1998,65 @@ public class Processor {
                     reg1 = getiCode();
                     break;
 
-                case LOAD2_IB:
-                    reg2 = getiCode() & 0xff;
-                    break;
-                case LOAD2_AL:
-                    reg2 = eax.getValue() & 0xff;
-                    break;
-                case LOAD2_AX:
-                    reg2 = eax.getValue() & 0xffff;
-                    break;
-                case LOAD2_EAX:
-                    reg2 = eax.getValue();
-                    break;
-                case LOAD2_CL:
-                    reg2 = ecx.getValue() & 0xff;
-                    break;
-
                 case STORE0_AX:
-                    eax.setLower16Value(0xffff & reg0);
+                    writeRegister16(REG_EAX, 0xffff & reg0);
                     break;
                 case STORE0_BX:
-                    ebx.setLower16Value(0xffff & reg0);
+                    writeRegister16(REG_EBX, 0xffff & reg0);
                     break;
                 case STORE0_CX:
-                    ecx.setLower16Value(0xffff & reg0);
+                    writeRegister16(REG_ECX, 0xffff & reg0);
                     break;
                 case STORE0_DX:
-                    edx.setLower16Value(0xffff & reg0);
+                    writeRegister16(REG_EDX, 0xffff & reg0);
                     break;
                 case STORE0_SP:
-                    esp.setLower16Value(0xffff & reg0);
+                    writeRegister16(REG_ESP, 0xffff & reg0);
                     break;
                 case STORE0_BP:
-                    ebp.setLower16Value(0xffff & reg0);
+                    writeRegister16(REG_EBP, 0xffff & reg0);
                     break;
                 case STORE0_SI:
-                    esi.setLower16Value(0xffff & reg0);
+                    writeRegister16(REG_ESI, 0xffff & reg0);
                     break;
                 case STORE0_DI:
-                    edi.setLower16Value(0xffff & reg0);
+                    writeRegister16(REG_EDI, 0xffff & reg0);
                     break;
                 case STORE0_EAX:
-                    eax.setValue(reg0);
+                    writeRegister(REG_EAX, reg0);
                     break;
                 case STORE0_EBX:
-                    ebx.setValue(reg0);
+                    writeRegister(REG_EBX, reg0);
                     break;
                 case STORE0_ECX:
-                    ecx.setValue(reg0);
+                    writeRegister(REG_ECX, reg0);
                     break;
                 case STORE0_EDX:
-                    edx.setValue(reg0);
-                    break;
-                case STORE0_ESP:
-                    esp.setValue(reg0);
-                    break;
-                case STORE0_EBP:
-                    ebp.setValue(reg0);
-                    break;
-                case STORE0_ESI:
-                    esi.setValue(reg0);
-                    break;
-                case STORE0_EDI:
-                    edi.setValue(reg0);
+                    writeRegister(REG_EDX, reg0);
                     break;
                 case STORE0_AL:
-                    eax.setLower8Value(0xff & reg0);
+                    writeRegisterLow8(REG_EAX, 0xff & reg0);
                     break;
                 case STORE0_AH:
-                    eax.setUpper8Value(0xff & reg0);
+                    writeRegisterHigh8(REG_EAX, 0xff & reg0);
                     break;
                 case STORE0_BL:
-                    ebx.setLower8Value(0xff & reg0);
+                    writeRegisterLow8(REG_EBX, 0xff & reg0);
                     break;
                 case STORE0_BH:
-                    ebx.setUpper8Value(0xff & reg0);
+                    writeRegisterHigh8(REG_EBX, 0xff & reg0);
                     break;
                 case STORE0_CL:
-                    ecx.setLower8Value(0xff & reg0);
+                    writeRegisterLow8(REG_ECX, 0xff & reg0);
                     break;
                 case STORE0_CH:
-                    ecx.setUpper8Value(0xff & reg0);
+                    writeRegisterHigh8(REG_ECX, 0xff & reg0);
                     break;
                 case STORE0_DL:
-                    edx.setLower8Value(0xff & reg0);
+                    writeRegisterLow8(REG_EDX, 0xff & reg0);
                     break;
                 case STORE0_DH:
-                    edx.setUpper8Value(0xff & reg0);
-                    break;
-                case STORE0_CS:
-                    cs.setValue(0xffff & reg0);
+                    writeRegisterHigh8(REG_EDX, 0xff & reg0);
                     break;
                 case STORE0_SS:
                     ss.setValue(0xffff & reg0);
@@ -1705,126 +2067,18 @@ public class Processor {
                 case STORE0_ES:
                     es.setValue(0xffff & reg0);
                     break;
-                case STORE0_FS:
-                    fs.setValue(0xffff & reg0);
-                    break;
-                case STORE0_GS:
-                    gs.setValue(0xffff & reg0);
-                    break;
                 case STORE0_FLAGS:
                     setFlags(0xffff & reg0);
                     break;
-                case STORE0_EFLAGS:
-                    setFlags(reg0);
-                    break;
-                case STORE0_CR0:
-                    setCR0(reg0);
-                    break;
-                case STORE0_CR2:
-                    setCR2(reg0);
-                    break;
-                case STORE0_CR3:
-                    setCR3(reg0);
-                    break;
-                case STORE0_CR4:
-                    setCR4(reg0);
-                    break;
-                case STORE0_DR0:
-                    dr0.setValue(reg0);
-                    break;
-                case STORE0_DR1:
-                    dr1.setValue(reg0);
-                    break;
-                case STORE0_DR2:
-                    dr2.setValue(reg0);
-                    break;
-                case STORE0_DR3:
-                    dr3.setValue(reg0);
-                    break;
-                case STORE0_DR6:
-                    dr6.setValue(reg0);
-                    break;
-                case STORE0_DR7:
-                    dr7.setValue(reg0);
-                    break;
 
                 case STORE1_AX:
-                    eax.setLower16Value(0xffff & reg1);
-                    break;
-                case STORE1_BX:
-                    ebx.setLower16Value(0xffff & reg1);
-                    break;
-                case STORE1_CX:
-                    ecx.setLower16Value(0xffff & reg1);
-                    break;
-                case STORE1_DX:
-                    edx.setLower16Value(0xffff & reg1);
-                    break;
-                case STORE1_SP:
-                    esp.setLower16Value(0xffff & reg1);
-                    break;
-                case STORE1_BP:
-                    ebp.setLower16Value(0xffff & reg1);
-                    break;
-                case STORE1_SI:
-                    esi.setLower16Value(0xffff & reg1);
+                    writeRegister16(REG_EAX, 0xffff & reg1);
                     break;
                 case STORE1_DI:
-                    edi.setLower16Value(0xffff & reg1);
-                    break;
-                case STORE1_EAX:
-                    eax.setValue(reg1);
-                    break;
-                case STORE1_EBX:
-                    ebx.setValue(reg1);
-                    break;
-                case STORE1_ECX:
-                    ecx.setValue(reg1);
-                    break;
-                case STORE1_EDX:
-                    edx.setValue(reg1);
-                    break;
-                case STORE1_ESP:
-                    esp.setValue(reg1);
-                    break;
-                case STORE1_EBP:
-                    ebp.setValue(reg1);
-                    break;
-                case STORE1_ESI:
-                    esi.setValue(reg1);
-                    break;
-                case STORE1_EDI:
-                    edi.setValue(reg1);
-                    break;
-                case STORE1_AL:
-                    eax.setLower8Value(0xff & reg1);
-                    break;
-                case STORE1_AH:
-                    eax.setUpper8Value(0xff & reg1);
-                    break;
-                case STORE1_BL:
-                    ebx.setLower8Value(0xff & reg1);
-                    break;
-                case STORE1_BH:
-                    ebx.setUpper8Value(0xff & reg1);
+                    writeRegister16(REG_EDI, 0xffff & reg1);
                     break;
                 case STORE1_CL:
-                    ecx.setLower8Value(0xff & reg1);
-                    break;
-                case STORE1_CH:
-                    ecx.setUpper8Value(0xff & reg1);
-                    break;
-                case STORE1_DL:
-                    edx.setLower8Value(0xff & reg1);
-                    break;
-                case STORE1_DH:
-                    edx.setUpper8Value(0xff & reg1);
-                    break;
-                case STORE1_CS:
-                    cs.setValue(0xffff & reg1);
-                    break;
-                case STORE1_SS:
-                    ss.setValue(0xffff & reg1);
+                    writeRegisterLow8(REG_ECX, 0xff & reg1);
                     break;
                 case STORE1_DS:
                     ds.setValue(0xffff & reg1);
@@ -1832,18 +2086,6 @@ public class Processor {
                 case STORE1_ES:
                     es.setValue(0xffff & reg1);
                     break;
-                case STORE1_FS:
-                    fs.setValue(0xffff & reg1);
-                    break;
-                case STORE1_GS:
-                    gs.setValue(0xffff & reg1);
-                    break;
-                case STORE1_FLAGS:
-                    setFlags(0xffff & reg1);
-                    break;
-                case STORE1_EFLAGS:
-                    setFlags(reg1);
-                    break;
 
                 case LOAD0_MEM_BYTE:
                     reg0 = 0xff & seg.loadByte(addr);
@@ -1854,9 +2096,6 @@ public class Processor {
                 case STORE0_MEM_BYTE:
                     seg.storeByte(addr, (byte) reg0);
                     break;
-                case STORE1_MEM_BYTE:
-                    seg.storeByte(addr, (byte) reg1);
-                    break;
                 case LOAD0_MEM_WORD:
                     reg0 = 0xffff & seg.loadWord(addr);
                     break;
@@ -1878,175 +2117,47 @@ public class Processor {
                 case STORE0_MEM_DOUBLE:
                     seg.storeDoubleWord(addr, reg0);
                     break;
-                case STORE1_MEM_DOUBLE:
-                    seg.storeDoubleWord(addr, reg1);
-                    break;
-                case LOAD0_MEM_QUAD:
-                    reg0l = seg.loadQuadWord(addr);
-                    break;
-                case STORE0_MEM_QUAD:
-                    seg.storeQuadWord(addr, reg0l);
-                    break;
-
-                //addressing
-                case ADDR_AX:
-                    addr += (short) eax.getValue();
-                    break;
-                case ADDR_AL:
-                    addr += ((0xff) & eax.getValue());
-                    break;
                 case ADDR_BX:
-                    addr += (short) ebx.getValue();
-                    break;
-                case ADDR_CX:
-                    addr += (short) ecx.getValue();
-                    break;
-                case ADDR_DX:
-                    addr += (short) edx.getValue();
-                    break;
-                case ADDR_SP:
-                    addr += (short) esp.getValue();
+                    addr += (short) readRegister(REG_EBX);
                     break;
                 case ADDR_BP:
-                    addr += (short) ebp.getValue();
+                    addr += (short) readRegister(REG_EBP);
                     break;
                 case ADDR_SI:
-                    addr += (short) esi.getValue();
+                    addr += (short) readRegister(REG_ESI);
                     break;
                 case ADDR_DI:
-                    addr += (short) edi.getValue();
+                    addr += (short) readRegister(REG_EDI);
                     break;
-                case ADDR_EAX:
-                    addr += eax.getValue();
+
+                case ADDR_IB:
+                    displacement = ((byte) getiCode());
+                    addr += displacement;
                     break;
-                case ADDR_EBX:
-                    addr += ebx.getValue();
+                case ADDR_IW:
+                    displacement = (short) getiCode();
+                    addr += displacement;
                     break;
-                case ADDR_ECX:
-                    addr += ecx.getValue();
+
+                case ADDR_MASK_16:
+                    addr = addr & 0xffff;
                     break;
-                case ADDR_EDX:
-                    addr += edx.getValue();
+
+                case LOAD_SEG_CS:
+                    seg = cs;
+                    addr = 0;
                     break;
-                case ADDR_ESP:
-                    addr += esp.getValue();
+                case LOAD_SEG_SS:
+                    seg = ss;
+                    addr = 0;
                     break;
-                case ADDR_EBP:
-                    addr += ebp.getValue();
+                case LOAD_SEG_DS:
+                    seg = ds;
+                    addr = 0;
                     break;
-                case ADDR_ESI:
-                    addr += esi.getValue();
-                    break;
-                case ADDR_EDI:
-                    addr += edi.getValue();
-                    break;
-
-                case ADDR_2EAX:
-                    addr += (eax.getValue() << 1);
-                    break;
-                case ADDR_2EBX:
-                    addr += (ebx.getValue() << 1);
-                    break;
-                case ADDR_2ECX:
-                    addr += (ecx.getValue() << 1);
-                    break;
-                case ADDR_2EDX:
-                    addr += (edx.getValue() << 1);
-                    break;
-                case ADDR_2EBP:
-                    addr += (ebp.getValue() << 1);
-                    break;
-                case ADDR_2ESI:
-                    addr += (esi.getValue() << 1);
-                    break;
-                case ADDR_2EDI:
-                    addr += (edi.getValue() << 1);
-                    break;
-
-                case ADDR_4EAX:
-                    addr += (eax.getValue() << 2);
-                    break;
-                case ADDR_4EBX:
-                    addr += (ebx.getValue() << 2);
-                    break;
-                case ADDR_4ECX:
-                    addr += (ecx.getValue() << 2);
-                    break;
-                case ADDR_4EDX:
-                    addr += (edx.getValue() << 2);
-                    break;
-                case ADDR_4EBP:
-                    addr += (ebp.getValue() << 2);
-                    break;
-                case ADDR_4ESI:
-                    addr += (esi.getValue() << 2);
-                    break;
-                case ADDR_4EDI:
-                    addr += (edi.getValue() << 2);
-                    break;
-
-                case ADDR_8EAX:
-                    addr += (eax.getValue() << 3);
-                    break;
-                case ADDR_8EBX:
-                    addr += (ebx.getValue() << 3);
-                    break;
-                case ADDR_8ECX:
-                    addr += (ecx.getValue() << 3);
-                    break;
-                case ADDR_8EDX:
-                    addr += (edx.getValue() << 3);
-                    break;
-                case ADDR_8EBP:
-                    addr += (ebp.getValue() << 3);
-                    break;
-                case ADDR_8ESI:
-                    addr += (esi.getValue() << 3);
-                    break;
-                case ADDR_8EDI:
-                    addr += (edi.getValue() << 3);
-                    break;
-
-                case ADDR_IB:
-                    displacement = ((byte) getiCode());
-                    addr += displacement;
-                    break;
-                case ADDR_IW:
-                    displacement = (short) getiCode();
-                    addr += displacement;
-                    break;
-                case ADDR_ID:
-                    displacement = getiCode();
-                    addr += displacement;
-                    break;
-
-                case ADDR_MASK_16:
-                    addr = addr & 0xffff;
-                    break;
-
-                case LOAD_SEG_CS:
-                    seg = cs;
-                    addr = 0;
-                    break;
-                case LOAD_SEG_SS:
-                    seg = ss;
-                    addr = 0;
-                    break;
-                case LOAD_SEG_DS:
-                    seg = ds;
-                    addr = 0;
-                    break;
-                case LOAD_SEG_ES:
-                    seg = es;
-                    addr = 0;
-                    break;
-                case LOAD_SEG_FS:
-                    seg = fs;
-                    addr = 0;
-                    break;
-                case LOAD_SEG_GS:
-                    seg = gs;
-                    addr = 0;
+                case LOAD_SEG_ES:
+                    seg = es;
+                    addr = 0;
                     break;
 
                 //operations
@@ -2056,7 +2167,7 @@ public class Processor {
                     jump_far(reg0, reg1);
                     break;
                 case OP_JMP_ABS:
-                    eip.setValue(reg0);
+                    writeRegister(REG_EIP, reg0);
                     break;
                 case OP_CALL:
                     call(reg0, op32, addr32);
@@ -2079,12 +2190,6 @@ public class Processor {
                 case OP_RET_FAR_IW:
                     ret_far_iw((short) reg0, op32, addr32);
                     break;
-                case OP_ENTER:
-                    enter(reg0, reg1, op32, addr32);
-                    break;
-                case OP_LEAVE:
-                    leave(op32, addr32);
-                    break;
                 case OP_JMP_08:
                     jump_08((byte) reg0);
                     break;
@@ -2095,44 +2200,6 @@ public class Processor {
                         jump_32(reg0);
                     }
                     break;
-                case OP_JO:
-                    if (overflow.read()) {
-                        condition = true;
-                        jump_08((byte) reg0);
-                    }
-                    break;
-                case OP_JO_16_32:
-                    if (!op32) {
-                        if (overflow.read()) {
-                            condition = true;
-                            jump_16((short) reg0);
-                        }
-                    } else {
-                        if (overflow.read()) {
-                            condition = true;
-                            jump_32(reg0);
-                        }
-                    }
-                    break;
-                case OP_JNO:
-                    if (!overflow.read()) {
-                        condition = true;
-                        jump_08((byte) reg0);
-                    }
-                    break;
-                case OP_JNO_16_32:
-                    if (!op32) {
-                        if (!overflow.read()) {
-                            condition = true;
-                            jump_16((short) reg0);
-                        }
-                    } else {
-                        if (!overflow.read()) {
-                            condition = true;
-                            jump_32(reg0);
-                        }
-                    }
-                    break;
                 case OP_JC:
                     if (carry.read()) {
                         condition = true;
@@ -2209,203 +2276,46 @@ public class Processor {
                         }
                     }
                     break;
-                case OP_JS:
-                    if (sign.read()) {
-                        condition = true;
-                        jump_08((byte) reg0);
-                    }
-                    break;
-                case OP_JS_16_32:
-                    if (!op32) {
-                        if (sign.read()) {
-                            condition = true;
-                            jump_16((short) reg0);
-                        }
-                    } else {
-                        if (sign.read()) {
-                            condition = true;
-                            jump_32(reg0);
-                        }
-                    }
-                    break;
-                case OP_JNS:
-                    if (!sign.read()) {
-                        condition = true;
-                        jump_08((byte) reg0);
-                    }
-                    break;
-                case OP_JNS_16_32:
-                    if (!op32) {
-                        if (!sign.read()) {
-                            condition = true;
-                            jump_16((short) reg0);
-                        }
-                    } else {
-                        if (!sign.read()) {
-                            condition = true;
-                            jump_32(reg0);
-                        }
-                    }
-                    break;
-                case OP_JP:
-                    if (parity.read()) {
-                        condition = true;
-                        jump_08((byte) reg0);
-                    }
-                    break;
-                case OP_JP_16_32:
-                    if (!op32) {
-                        if (parity.read()) {
-                            condition = true;
-                            jump_16((short) reg0);
-                        }
-                    } else {
-                        if (parity.read()) {
-                            condition = true;
-                            jump_32(reg0);
-                        }
-                    }
-                    break;
-                case OP_JNP:
-                    if (!parity.read()) {
-                        condition = true;
-                        jump_08((byte) reg0);
-                    }
-                    break;
-                case OP_JNP_16_32:
-                    if (!op32) {
-                        if (!parity.read()) {
-                            condition = true;
-                            jump_16((short) reg0);
-                        }
-                    } else {
-                        if (!parity.read()) {
-                            condition = true;
-                            jump_32(reg0);
-                        }
-                    }
-                    break;
                 case OP_JA:
                     if ((!carry.read()) && (!zero.read())) {
                         condition = true;
                         jump_08((byte) reg0);
                     }
                     break;
-                case OP_JA_16_32:
-                    if (!op32) {
-                        if ((!carry.read()) && (!zero.read())) {
-                            condition = true;
-                            jump_16((short) reg0);
-                        }
-                    } else {
-                        if ((!carry.read()) && (!zero.read())) {
-                            condition = true;
-                            jump_32(reg0);
-                        }
-                    }
-                    break;
                 case OP_JNA:
                     if (carry.read() || zero.read()) {
                         condition = true;
                         jump_08((byte) reg0);
                     }
                     break;
-                case OP_JNA_16_32:
-                    if (!op32) {
-                        if (carry.read() || zero.read()) {
-                            condition = true;
-                            jump_16((short) reg0);
-                        }
-                    } else {
-                        if (carry.read() || zero.read()) {
-                            condition = true;
-                            jump_32(reg0);
-                        }
-                    }
-                    break;
                 case OP_JL:
                     if (sign.read() != overflow.read()) {
                         condition = true;
                         jump_08((byte) reg0);
                     }
                     break;
-                case OP_JL_16_32:
-                    if (!op32) {
-                        if (sign.read() != overflow.read()) {
-                            condition = true;
-                            jump_16((short) reg0);
-                        }
-                    } else {
-                        if (sign.read() != overflow.read()) {
-                            condition = true;
-                            jump_32(reg0);
-                        }
-                    }
-                    break;
                 case OP_JNL:
                     if (sign.read() == overflow.read()) {
                         condition = true;
                         jump_08((byte) reg0);
                     }
                     break;
-                case OP_JNL_16_32:
-                    if (!op32) {
-                        if (sign.read() == overflow.read()) {
-                            condition = true;
-                            jump_16((short) reg0);
-                        }
-                    } else {
-                        if (sign.read() == overflow.read()) {
-                            condition = true;
-                            jump_32(reg0);
-                        }
-                    }
-                    break;
                 case OP_JG:
                     if ((!zero.read()) && (sign.read() == overflow.read())) {
                         condition = true;
                         jump_08((byte) reg0);
                     }
                     break;
-                case OP_JG_16_32:
-                    if (!op32) {
-                        if ((!zero.read()) && (sign.read() == overflow.read())) {
-                            condition = true;
-                            jump_16((short) reg0);
-                        }
-                    } else {
-                        if ((!zero.read()) && (sign.read() == overflow.read())) {
-                            condition = true;
-                            jump_32(reg0);
-                        }
-                    }
-                    break;
                 case OP_JNG:
                     if (zero.read() || (sign.read() != overflow.read())) {
                         condition = true;
                         jump_08((byte) reg0);
                     }
                     break;
-                case OP_JNG_16_32:
-                    if (!op32) {
-                        if (zero.read() || (sign.read() != overflow.read())) {
-                            condition = true;
-                            jump_16((short) reg0);
-                        }
-                    } else {
-                        if (zero.read() || (sign.read() != overflow.read())) {
-                            condition = true;
-                            jump_32(reg0);
-                        }
-                    }
-                    break;
 
                 case OP_INT:
                     intr(reg0, op32, addr32);
                     break;
-                case OP_INT3:
-                    intr(reg0, op32, addr32);
-                    break;
                 case OP_IRET:
                     reg0 = iret(op32, addr32);
                     break;
@@ -2465,38 +2375,10 @@ public class Processor {
                 case OP_XOR:
                     reg0 = reg0 ^ reg1;
                     break;
-                case OP_ROL_08:
-                    reg2 = reg1 & 0x7;
-                    reg0 = (reg0 << reg2) | (reg0 >>> (8 - reg2));
-                    break;
-                case OP_ROL_16_32:
-                    if (!op32) {
-                        reg2 = reg1 & 0xf;
-                        reg0 = (reg0 << reg2) | (reg0 >>> (16 - reg2));
-                    } else {
-                        reg1 = reg1 & 0x1f;
-                        reg0 = (reg0 << reg1) | (reg0 >>> (32 - reg1));
-                    }
-                    break;
                 case OP_ROR_08:
                     reg1 = reg1 & 0x7;
                     reg0 = (reg0 >>> reg1) | (reg0 << (8 - reg1));
                     break;
-                case OP_ROR_16_32:
-                    if (!op32) {
-                        reg1 = reg1 & 0xf;
-                        reg0 = (reg0 >>> reg1) | (reg0 << (16 - reg1));
-                    } else {
-                        reg1 = reg1 & 0x1f;
-                        reg0 = (reg0 >>> reg1) | (reg0 << (32 - reg1));
-                    }
-                    break;
-                case OP_RCL_08:
-                    reg1 = reg1 & 0x1f;
-                    reg1 = reg1 % 9;
-                    reg0 = reg0 | (carry.read() ? 0x100 : 0);
-                    reg0 = (reg0 << reg1) | (reg0 >>> (9 - reg1));
-                    break;
                 case OP_RCL_16_32:
                     if (!op32) {
                         reg1 = reg1 & 0x1f;
@@ -2509,27 +2391,6 @@ public class Processor {
                         reg0 = (int) (reg0l = (reg0l << reg1) | (reg0l >>> (33 - reg1)));
                     }
                     break;
-                case OP_RCR_08:
-                    reg1 = reg1 & 0x1f;
-                    reg1 = reg1 % 9;
-                    reg0 = reg0 | (carry.read() ? 0x100 : 0);
-                    reg2 = (carry.read() ^ ((reg0 & 0x80) != 0) ? 1 : 0);
-                    reg0 = (reg0 >>> reg1) | (reg0 << (9 - reg1));
-                    break;
-                case OP_RCR_16_32:
-                    if (!op32) {
-                        reg1 = reg1 & 0x1f;
-                        reg1 = reg1 % 17;
-                        reg2 = (carry.read() ^ ((reg0 & 0x8000) != 0) ? 1 : 0);
-                        reg0 = reg0 | (carry.read() ? 0x10000 : 0);
-                        reg0 = (reg0 >>> reg1) | (reg0 << (17 - reg1));
-                    } else {
-                        reg1 = reg1 & 0x1f;
-                        reg0l = (0xffffffffl & reg0) | (carry.read() ? 0x100000000l : 0);
-                        reg2 = (carry.read() ^ ((reg0 & 0x80000000) != 0) ? 1 : 0);
-                        reg0 = (int) (reg0l = (reg0l >>> reg1) | (reg0l << (33 - reg1)));
-                    }
-                    break;
                 case OP_SHL:
                     reg1 &= 0x1f;
                     reg2 = reg0;
@@ -2540,11 +2401,6 @@ public class Processor {
                     reg2 = reg0;
                     reg0 = reg0 >>> reg1;
                     break;
-                case OP_SAR_08:
-                    reg1 = reg1 & 0x1f;
-                    reg2 = reg0;
-                    reg0 = ((byte) reg0) >> reg1;
-                    break;
                 case OP_SAR_16_32:
                     if (!op32) {
                         reg1 = reg1 & 0x1f;
@@ -2569,17 +2425,10 @@ public class Processor {
                     if (!op32) mul_16(reg0);
                     else mul_32(reg0);
                     break;
-                case OP_IMULA_08:
-                    imula_08((byte) reg0);
-                    break;
                 case OP_IMULA_16_32:
                     if (!op32) imula_16((short) reg0);
                     else imula_32(reg0);
                     break;
-                case OP_IMUL_16_32:
-                    if (!op32) reg0 = imul_16((short) reg0, (short) reg1);
-                    else reg0 = imul_32(reg0, reg1);
-                    break;
 
                 case OP_DIV_08:
                     div_08(reg0);
@@ -2588,9 +2437,6 @@ public class Processor {
                     if (!op32) div_16(reg0);
                     else div_32(reg0);
                     break;
-                case OP_IDIV_08:
-                    idiv_08((byte) reg0);
-                    break;
                 case OP_IDIV_16_32:
                     if (!op32) idiv_16((short) reg0);
                     else idiv_32(reg0);
@@ -2600,9 +2446,9 @@ public class Processor {
                 case OP_SCASW: {
                     int a;
                     if (!addr32)
-                        a = edi.getValue() & 0xffff;
+                        a = readRegister(REG_EDI) & 0xffff;
                     else
-                        a = edi.getValue();
+                        a = readRegister(REG_EDI);
                     int i, n;
                     if (microcode == MICROCODE.OP_SCASB) {
                         i = 0xff & es.loadByte(a);
@@ -2619,9 +2465,9 @@ public class Processor {
                     else
                         a += n;
                     if (!addr32)
-                        edi.setValue((edi.getValue() & ~0xffff) | (a & 0xffff));
+                        writeRegister(REG_EDI, (readRegister(REG_EDI) & ~0xffff) | (a & 0xffff));
                     else
-                        edi.setValue(a);
+                        writeRegister(REG_EDI, a);
                     reg2 = reg0;
                     if (microcode == MICROCODE.OP_SCASW && op32)
                         reg0 = (int) ((0xffffffffl & reg0) - (0xffffffffl & i));
@@ -2634,339 +2480,33 @@ public class Processor {
                 case OP_REPNE_SCASB:
                 case OP_REPE_SCASB:
                 case OP_REPNE_SCASW:
-                case OP_REPE_SCASW: {
-                    int count, a;
-                    if (!op32)
-                        count = ecx.getValue() & 0xffff;
-                    else
-                        count = ecx.getValue();
-                    if (!addr32)
-                        a = edi.getValue() & 0xffff;
-                    else
-                        a = edi.getValue();
-                    boolean used = count != 0;
-                    int input = 0;
-                    while (count != 0) {
-                        if (microcode == MICROCODE.OP_REPNE_SCASB || microcode == MICROCODE.OP_REPE_SCASB) {
-                            input = 0xff & es.loadByte(a);
-                            count--;
-                            if (direction.read())
-                                a -= 1;
-                            else
-                                a += 1;
-                        } else if (!op32) {
-                            input = 0xffff & es.loadWord(a);
-                            count--;
-                            if (direction.read())
-                                a -= 2;
-                            else
-                                a += 2;
-                        } else {
-                            input = es.loadDoubleWord(a);
-                            count--;
-                            if (direction.read())
-                                a -= 4;
-                            else
-                                a += 4;
-                        }
-                        if (microcode == MICROCODE.OP_REPNE_SCASB || microcode == MICROCODE.OP_REPNE_SCASW) {
-                            if (reg0 == input) break;
-                        } else {
-                            if (reg0 != input) break;
-                        }
-                    }
-                    if (!op32)
-                        ecx.setValue((ecx.getValue() & ~0xffff) | (count & 0xffff));
-                    else
-                        ecx.setValue(count);
-                    if (!addr32)
-                        edi.setValue((edi.getValue() & ~0xffff) | (a & 0xffff));
-                    else
-                        edi.setValue(a);
-                    reg2 = reg0;
-                    reg1 = input;
-                    reg0 = used ? 1 : 0;
-                }
-                break;
-
-                case OP_CMPSB:
-                case OP_CMPSW: {
-                    int addrOne, addrTwo;
-                    if (!addr32) {
-                        addrOne = esi.getValue() & 0xffff;
-                        addrTwo = edi.getValue() & 0xffff;
-                    } else {
-                        addrOne = esi.getValue();
-                        addrTwo = edi.getValue();
-                    }
-                    int dataOne;
-                    int dataTwo;
-                    int n;
-                    if (microcode == MICROCODE.OP_CMPSB) {
-                        dataOne = 0xff & seg.loadByte(addrOne);
-                        dataTwo = 0xff & es.loadByte(addrTwo);
-                        n = 1;
-                    } else if (!op32) {
-                        dataOne = 0xffff & seg.loadWord(addrOne);
-                        dataTwo = 0xffff & es.loadWord(addrTwo);
-                        n = 2;
-                    } else {
-                        dataOne = seg.loadDoubleWord(addrOne);
-                        dataTwo = es.loadDoubleWord(addrTwo);
-                        n = 4;
-                    }
-                    if (direction.read()) {
-                        addrOne -= n;
-                        addrTwo -= n;
-                    } else {
-                        addrOne += n;
-                        addrTwo += n;
-                    }
-
-                    if (!addr32) {
-                        esi.setValue((esi.getValue() & ~0xffff) | (addrOne & 0xffff));
-                        edi.setValue((edi.getValue() & ~0xffff) | (addrTwo & 0xffff));
-                    } else {
-                        esi.setValue(addrOne);
-                        edi.setValue(addrTwo);
-                    }
-                    reg2 = dataOne;
-                    reg1 = dataTwo;
-                    if (microcode == MICROCODE.OP_CMPSW && op32)
-                        reg0 = (int) ((0xffffffffl & dataOne) - (0xffffffffl & dataTwo));
-                    else
-                        reg0 = dataOne - dataTwo;
-                }
-                break;
+                case OP_REPE_SCASW:
+                    rep_scas(microcode, reg0, op32, addr32);
+                    reg0 = rareReg0;
+                    reg1 = rareReg1;
+                    reg2 = rareReg2;
+                    break;
 
                 case OP_REPNE_CMPSB:
                 case OP_REPE_CMPSB:
                 case OP_REPNE_CMPSW:
-                case OP_REPE_CMPSW: {
-                    int count, addrOne, addrTwo;
-                    if (!op32)
-                        count = ecx.getValue() & 0xffff;
-                    else
-                        count = ecx.getValue();
-                    if (!addr32) {
-                        addrOne = esi.getValue() & 0xffff;
-                        addrTwo = edi.getValue() & 0xffff;
-                    } else {
-                        addrOne = esi.getValue();
-                        addrTwo = edi.getValue();
-                    }
-                    boolean used = count != 0;
-                    int dataOne = 0;
-                    int dataTwo = 0;
-                    while (count != 0) {
-                        if (microcode == MICROCODE.OP_REPE_CMPSB || microcode == MICROCODE.OP_REPNE_CMPSB) {
-                            dataOne = 0xff & seg.loadByte(addrOne);
-                            dataTwo = 0xff & es.loadByte(addrTwo);
-                            count--;
-                            if (direction.read()) {
-                                addrOne -= 1;
-                                addrTwo -= 1;
-                            } else {
-                                addrOne += 1;
-                                addrTwo += 1;
-                            }
-                        } else if (!op32) {
-                            dataOne = 0xffff & seg.loadWord(addrOne);
-                            dataTwo = 0xffff & es.loadWord(addrTwo);
-                            count--;
-                            if (direction.read()) {
-                                addrOne -= 2;
-                                addrTwo -= 2;
-                            } else {
-                                addrOne += 2;
-                                addrTwo += 2;
-                            }
-                        } else {
-                            dataOne = seg.loadDoubleWord(addrOne);
-                            dataTwo = es.loadDoubleWord(addrTwo);
-                            count--;
-                            if (direction.read()) {
-                                addrOne -= 4;
-                                addrTwo -= 4;
-                            } else {
-                                addrOne += 4;
-                                addrTwo += 4;
-                            }
-                        }
-                        if (microcode == MICROCODE.OP_REPE_CMPSB || microcode == MICROCODE.OP_REPE_CMPSW) {
-                            if (dataOne != dataTwo) break;
-                        } else {
-                            if (dataOne == dataTwo) break;
-                        }
-                    }
-                    if (!op32)
-                        ecx.setValue((ecx.getValue() & ~0xffff) | (count & 0xffff));
-                    else
-                        ecx.setValue(count);
-                    if (!addr32) {
-                        esi.setValue((esi.getValue() & ~0xffff) | (addrOne & 0xffff));
-                        edi.setValue((edi.getValue() & ~0xffff) | (addrTwo & 0xffff));
-                    } else {
-                        esi.setValue(addrOne);
-                        edi.setValue(addrTwo);
-                    }
-                    reg0 = used ? 1 : 0;
-                    reg1 = dataTwo;
-                    reg2 = dataOne;
-                }
-                break;
-
-                case OP_BSF:
-                    reg0 = bsf(reg1, reg0);
-                    break;
-                case OP_BSR:
-                    reg0 = bsr(reg1, reg0);
-                    break;
-
-                case OP_BT_MEM:
-                    bt_mem(reg1, seg, addr);
-                    break;
-                case OP_BTS_MEM:
-                    bts_mem(reg1, seg, addr);
-                    break;
-                case OP_BTR_MEM:
-                    btr_mem(reg1, seg, addr);
-                    break;
-                case OP_BTC_MEM:
-                    btc_mem(reg1, seg, addr);
-                    break;
-
-                case OP_BT_16_32:
-                    if (!op32) {
-                        reg1 &= 0xf;
-                    } else {
-                        reg1 &= 0x1f;
-                    }
-                    carry.set(reg0, reg1, Flag.CY_NTH_BIT_SET);
-                    break;
-                case OP_BTS_16_32:
-                    if (!op32) {
-                        reg1 &= 0xf;
-                    } else {
-                        reg1 &= 0x1f;
-                    }
-                    carry.set(reg0, reg1, Flag.CY_NTH_BIT_SET);
-                    reg0 |= (1 << reg1);
-                    break;
-                case OP_BTR_16_32:
-                    if (!op32) {
-                        reg1 &= 0xf;
-                    } else {
-                        reg1 &= 0x1f;
-                    }
-                    carry.set(reg0, reg1, Flag.CY_NTH_BIT_SET);
-                    reg0 &= ~(1 << reg1);
-                    break;
-                case OP_BTC_16_32:
-                    if (!op32) {
-                        reg1 &= 0xf;
-                    } else {
-                        reg1 &= 0x1f;
-                    }
-                    carry.set(reg0, reg1, Flag.CY_NTH_BIT_SET);
-                    reg0 ^= (1 << reg1);
-                    break;
-
-                case OP_SHLD_16_32:
-                    if (!op32) {
-                        int i = reg0;
-                        reg2 &= 0x1f;
-                        if (reg2 < 16) {
-                            reg0 = (reg0 << reg2) | (reg1 >>> (16 - reg2));
-                            reg1 = reg2;
-                            reg2 = i;
-                        } else {
-                            i = (reg1 & 0xFFFF) | (reg0 << 16);
-                            reg0 = (reg1 << (reg2 - 16)) | ((reg0 & 0xFFFF) >>> (32 - reg2));
-                            reg1 = reg2 - 15;
-                            reg2 = i >> 1;
-                        }
-                    } else {
-                        int i = reg0;
-                        reg2 &= 0x1f;
-                        if (reg2 != 0)
-                            reg0 = (reg0 << reg2) | (reg1 >>> (32 - reg2));
-                        reg1 = reg2;
-                        reg2 = i;
-                    }
-                    break;
-
-                case OP_SHRD_16_32:
-                    if (!op32) {
-                        int i = reg0;
-                        reg2 &= 0x1f;
-                        if (reg2 < 16) {
-                            reg0 = (reg0 >>> reg2) | (reg1 << (16 - reg2));
-                            reg1 = reg2;
-                            reg2 = i;
-                        } else {
-                            i = (reg0 & 0xFFFF) | (reg1 << 16);
-                            reg0 = (reg1 >>> (reg2 - 16)) | (reg0 << (32 - reg2));
-                            reg1 = reg2;
-                            reg2 = i;
-                        }
-                    } else {
-                        int i = reg0;
-                        reg2 &= 0x1f;
-                        if (reg2 != 0)
-                            reg0 = (reg0 >>> reg2) | (reg1 << (32 - reg2));
-                        reg1 = reg2;
-                        reg2 = i;
-                    }
+                case OP_REPE_CMPSW:
+                    rep_cmps(microcode, seg, op32, addr32);
+                    reg0 = rareReg0;
+                    reg1 = rareReg1;
+                    reg2 = rareReg2;
                     break;
 
                 case OP_CWD:
                     if (!op32) {
-                        if ((eax.getValue() & 0x8000) == 0) edx.setValue(edx.getValue() & 0xffff0000);
-                        else edx.setValue(edx.getValue() | 0x0000ffff);
+                        if ((readRegister(REG_EAX) & 0x8000) == 0) writeRegister(REG_EDX, readRegister(REG_EDX) & 0xffff0000);
+                        else writeRegister(REG_EDX, readRegister(REG_EDX) | 0x0000ffff);
                     } else {
-                        if ((eax.getValue() & 0x80000000) == 0) edx.setValue(0);
-                        else edx.setValue(-1);
+                        if ((readRegister(REG_EAX) & 0x80000000) == 0) writeRegister(REG_EDX, 0);
+                        else writeRegister(REG_EDX, -1);
                     }
                     break;
 
-                case OP_AAA:
-                    aaa();
-                    break;
-                case OP_AAD:
-                    aad(reg0);
-                    break;
-                case OP_AAM:
-                    reg0 = aam(reg0);
-                    break;
-                case OP_AAS:
-                    aas();
-                    break;
-
-                case OP_DAA:
-                    daa();
-                    break;
-                case OP_DAS:
-                    das();
-                    break;
-
-                case OP_BOUND: {
-                    if (!op32) {
-                        short lower = (short) reg0;
-                        short upper = (short) (reg0 >> 16);
-                        short index = (short) reg1;
-                        if ((index < lower) || (index > (upper + 2)))
-                            throw BOUND_RANGE;
-                    } else {
-                        int lower = (int) reg0l;
-                        int upper = (int) (reg0l >> 32);
-                        int index = reg1;
-                        if ((index < lower) || (index > upper + 4))
-                            throw BOUND_RANGE;
-                    }
-                }
-                break;
-
 
                 //flag instructions
                 case OP_CLC:
@@ -2988,179 +2528,25 @@ public class Processor {
                 case OP_STD:
                     direction.set();
                     break;
-                case OP_CMC:
-                    carry.toggle();
-                    break;
-
-                case OP_SETO:
-                    reg0 = overflow.read() ? 1 : 0;
-                    break;
-                case OP_SETNO:
-                    reg0 = overflow.read() ? 0 : 1;
-                    break;
-                case OP_SETC:
-                    reg0 = carry.read() ? 1 : 0;
-                    break;
-                case OP_SETNC:
-                    reg0 = carry.read() ? 0 : 1;
-                    break;
-                case OP_SETZ:
-                    reg0 = zero.read() ? 1 : 0;
-                    break;
-                case OP_SETNZ:
-                    reg0 = zero.read() ? 0 : 1;
-                    break;
-                case OP_SETNA:
-                    reg0 = carry.read() || zero.read() ? 1 : 0;
-                    break;
-                case OP_SETA:
-                    reg0 = carry.read() || zero.read() ? 0 : 1;
-                    break;
-                case OP_SETS:
-                    reg0 = sign.read() ? 1 : 0;
-                    break;
-                case OP_SETNS:
-                    reg0 = sign.read() ? 0 : 1;
-                    break;
-                case OP_SETP:
-                    reg0 = parity.read() ? 1 : 0;
-                    break;
-                case OP_SETNP:
-                    reg0 = parity.read() ? 0 : 1;
-                    break;
-                case OP_SETL:
-                    reg0 = sign.read() != overflow.read() ? 1 : 0;
-                    break;
-                case OP_SETNL:
-                    reg0 = sign.read() != overflow.read() ? 0 : 1;
-                    break;
-                case OP_SETNG:
-                    reg0 = zero.read() || (sign.read() != overflow.read()) ? 1 : 0;
-                    break;
-                case OP_SETG:
-                    reg0 = zero.read() || (sign.read() != overflow.read()) ? 0 : 1;
-                    break;
-                case OP_SALC:
-                    reg0 = carry.read() ? -1 : 0;
-                    break;
-                case OP_CMOVO:
-                    if (overflow.read()) {
-                        condition = true;
-                        reg0 = reg1;
-                    }
-                    break;
-                case OP_CMOVNO:
-                    if (!overflow.read()) {
-                        condition = true;
-                        reg0 = reg1;
-                    }
-                    break;
-                case OP_CMOVC:
-                    if (carry.read()) {
-                        condition = true;
-                        reg0 = reg1;
-                    }
-                    break;
-                case OP_CMOVNC:
-                    if (!carry.read()) {
-                        condition = true;
-                        reg0 = reg1;
-                    }
-                    break;
-                case OP_CMOVZ:
-                    if (zero.read()) {
-                        condition = true;
-                        reg0 = reg1;
-                    }
-                    break;
-                case OP_CMOVNZ:
-                    if (!zero.read()) {
-                        condition = true;
-                        reg0 = reg1;
-                    }
-                    break;
-                case OP_CMOVNA:
-                    if ((carry.read() || (zero.read()))) {
-                        condition = true;
-                        reg0 = reg1;
-                    }
-                    break;
-                case OP_CMOVA:
-                    if (!(carry.read() || (zero.read()))) {
-                        condition = true;
-                        reg0 = reg1;
-                    }
-                    break;
-                case OP_CMOVS:
-                    if (sign.read()) {
-                        condition = true;
-                        reg0 = reg1;
-                    }
-                    break;
-                case OP_CMOVNS:
-                    if (!sign.read()) {
-                        condition = true;
-                        reg0 = reg1;
-                    }
-                    break;
-                case OP_CMOVP:
-                    if (parity.read()) {
-                        condition = true;
-                        reg0 = reg1;
-                    }
-                    break;
-                case OP_CMOVNP:
-                    if (!parity.read()) {
-                        condition = true;
-                        reg0 = reg1;
-                    }
-                    break;
-                case OP_CMOVL:
-                    if ((sign.read() != overflow.read())) {
-                        condition = true;
-                        reg0 = reg1;
-                    }
-                    break;
-                case OP_CMOVNL:
-                    if (!(sign.read() != overflow.read())) {
-                        condition = true;
-                        reg0 = reg1;
-                    }
-                    break;
-                case OP_CMOVNG:
-                    if ((zero.read() || (sign.read() != overflow.read()))) {
-                        condition = true;
-                        reg0 = reg1;
-                    }
-                    break;
-                case OP_CMOVG:
-                    if (!(zero.read() || (sign.read() != overflow.read()))) {
-                        condition = true;
-                        reg0 = reg1;
-                    }
-                    break;
 
                 case OP_LAHF:
                     lahf();
                     break;
-                case OP_SAHF:
-                    sahf();
-                    break;
 
                 //stack instructions
                 case OP_POP:
                     if (!op32 && !addr32) {
-                        reg0 = ss.loadWord(esp.getValue() & 0xffff);
-                        esp.setValue((esp.getValue() & ~0xffff) | ((esp.getValue() + 2) & 0xffff));
+                        reg0 = ss.loadWord(readRegister(REG_ESP) & 0xffff);
+                        writeRegister(REG_ESP, (readRegister(REG_ESP) & ~0xffff) | ((readRegister(REG_ESP) + 2) & 0xffff));
                     } else if (!op32 && addr32) {
-                        reg0 = ss.loadWord(esp.getValue());
-                        esp.setValue((esp.getValue() + 2));
+                        reg0 = ss.loadWord(readRegister(REG_ESP));
+                        writeRegister(REG_ESP, (readRegister(REG_ESP) + 2));
                     } else if (op32 && !addr32) {
-                        reg0 = ss.loadDoubleWord(esp.getValue() & 0xffff);
-                        esp.setValue((esp.getValue() & ~0xffff) | ((esp.getValue() + 4) & 0xffff));
+                        reg0 = ss.loadDoubleWord(readRegister(REG_ESP) & 0xffff);
+                        writeRegister(REG_ESP, (readRegister(REG_ESP) & ~0xffff) | ((readRegister(REG_ESP) + 4) & 0xffff));
                     } else {
-                        reg0 = ss.loadDoubleWord(esp.getValue() & 0xffffffff);
-                        esp.setValue((esp.getValue() & ~0xffff) | ((esp.getValue() + 4) & 0xffff));
+                        reg0 = ss.loadDoubleWord(readRegister(REG_ESP) & 0xffffffff);
+                        writeRegister(REG_ESP, (readRegister(REG_ESP) & ~0xffff) | ((readRegister(REG_ESP) + 4) & 0xffff));
                     }
                     if (code[codesHandled] == MICROCODE.STORE0_SS)
                         interruptEnable.clear();
@@ -3169,23 +2555,23 @@ public class Processor {
                 case OP_POPF:
                     if (isModeReal()) {
                         if (!op32 && !addr32) {
-                            reg0 = ss.loadWord(esp.getValue() & 0xffff);
-                            esp.setValue((esp.getValue() & ~0xffff) | ((esp.getValue() + 2) & 0xffff));
+                            reg0 = ss.loadWord(readRegister(REG_ESP) & 0xffff);
+                            writeRegister(REG_ESP, (readRegister(REG_ESP) & ~0xffff) | ((readRegister(REG_ESP) + 2) & 0xffff));
                         } else if (op32 && !addr32) {
-                            reg0 = (getFlags() & 0x20000) | (ss.loadDoubleWord(esp.getValue() & 0xffff) & ~0x1a0000);
-                            esp.setValue((esp.getValue() & ~0xffff) | ((esp.getValue() + 4) & 0xffff));
+                            reg0 = (getFlags() & 0x20000) | (ss.loadDoubleWord(readRegister(REG_ESP) & 0xffff) & ~0x1a0000);
+                            writeRegister(REG_ESP, (readRegister(REG_ESP) & ~0xffff) | ((readRegister(REG_ESP) + 4) & 0xffff));
                         } else if (!op32 && addr32) {
-                            reg0 = ss.loadWord(esp.getValue());
-                            esp.setValue(esp.getValue() + 2);
+                            reg0 = ss.loadWord(readRegister(REG_ESP));
+                            writeRegister(REG_ESP, readRegister(REG_ESP) + 2);
                         } else if (op32 && addr32) {
-                            reg0 = (getFlags() & 0x20000) | (ss.loadDoubleWord(esp.getValue()) & ~0x1a0000);
-                            esp.setValue(esp.getValue() + 4);
+                            reg0 = (getFlags() & 0x20000) | (ss.loadDoubleWord(readRegister(REG_ESP)) & ~0x1a0000);
+                            writeRegister(REG_ESP, readRegister(REG_ESP) + 4);
                         }
                     } else {
                         int flagPrivilegeLevel = (ioPrivilegeLevel1.value ? 2 : 0) + (ioPrivilegeLevel0.value ? 1 : 0);
                         if (!op32 && !addr32) {
-                            reg0 = ss.loadWord(esp.getValue() & 0xffff);
-                            esp.setValue((esp.getValue() & ~0xffff) | ((esp.getValue() + 2) & 0xffff));
+                            reg0 = ss.loadWord(readRegister(REG_ESP) & 0xffff);
+                            writeRegister(REG_ESP, (readRegister(REG_ESP) & ~0xffff) | ((readRegister(REG_ESP) + 2) & 0xffff));
 
                             if (current_privilege_level > 0) {
                                 if (current_privilege_level > flagPrivilegeLevel)
@@ -3194,8 +2580,8 @@ public class Processor {
                                     reg0 = (getFlags() & 0x3000) | (reg0 & ~0x3000);
                             }
                         } else if (!op32 && addr32) {
-                            reg0 = ss.loadWord(esp.getValue());
-                            esp.setValue(esp.getValue() + 2);
+                            reg0 = ss.loadWord(readRegister(REG_ESP));
+                            writeRegister(REG_ESP, readRegister(REG_ESP) + 2);
 
                             if (current_privilege_level > 0) {
                                 if (current_privilege_level > flagPrivilegeLevel)
@@ -3204,8 +2590,8 @@ public class Processor {
                                     reg0 = (getFlags() & 0x3000) | (reg0 & ~0x3000);
                             }
                         } else if (op32 && !addr32) {
-                            reg0 = ss.loadDoubleWord(esp.getValue() & 0xffff);
-                            esp.setValue((esp.getValue() & ~0xffff) | ((esp.getValue() + 4) & 0xffff));
+                            reg0 = ss.loadDoubleWord(readRegister(REG_ESP) & 0xffff);
+                            writeRegister(REG_ESP, (readRegister(REG_ESP) & ~0xffff) | ((readRegister(REG_ESP) + 4) & 0xffff));
                             if (current_privilege_level > 0) {
                                 if (current_privilege_level > flagPrivilegeLevel)
                                     reg0 = (getFlags() & 0x23200) | (reg0 & ~(0x23200 | 0x180000));
@@ -3214,8 +2600,8 @@ public class Processor {
                             } else
                                 reg0 = (getFlags() & 0x20000) | (reg0 & ~(0x20000 | 0x180000));
                         } else if (op32 && addr32) {
-                            reg0 = ss.loadDoubleWord(esp.getValue());
-                            esp.setValue(esp.getValue() + 4);
+                            reg0 = ss.loadDoubleWord(readRegister(REG_ESP));
+                            writeRegister(REG_ESP, readRegister(REG_ESP) + 4);
                             if (current_privilege_level > 0) {
                                 if (current_privilege_level > flagPrivilegeLevel)
                                     reg0 = (getFlags() & 0x23200) | (reg0 & ~(0x23200 | 0x180000));
@@ -3243,33 +2629,9 @@ public class Processor {
                     if (!op32) popa();
                     else popad();
                     break;
-
-                case OP_SIGN_EXTEND:
-                    if (!op32) reg0 = 0xffff & ((byte) reg0);
-                    else reg0 = ((short) reg0);
-                    break;
                 case OP_SIGN_EXTEND_8_16:
                     reg0 = 0xffff & ((byte) reg0);
                     break;
-                case OP_SIGN_EXTEND_8_32:
-                    if (op32) reg0 = ((byte) reg0);
-                    break;
-                case OP_SIGN_EXTEND_16_32:
-                    if (op32) reg0 = ((short) reg0);
-                    break;
-
-                case OP_INSB:
-                    ins(reg0, 1, addr32);
-                    break;
-                case OP_INSW:
-                    ins(reg0, op32 ? 4 : 2, addr32);
-                    break;
-                case OP_REP_INSB:
-                    rep_ins(reg0, 1, addr32);
-                    break;
-                case OP_REP_INSW:
-                    rep_ins(reg0, op32 ? 4 : 2, addr32);
-                    break;
 
                 case OP_LODSB:
                     lods(seg, 1, addr32);
@@ -3277,19 +2639,10 @@ public class Processor {
                 case OP_LODSW:
                     lods(seg, op32 ? 4 : 2, addr32);
                     break;
-                case OP_REP_LODSB:
-                    rep_lods(seg, 1, addr32);
-                    break;
-                case OP_REP_LODSW:
-                    rep_lods(seg, op32 ? 4 : 2, addr32);
-                    break;
 
                 case OP_MOVSB:
                     movs(seg, 1, addr32);
                     break;
-                case OP_MOVSW:
-                    movs(seg, op32 ? 4 : 2, addr32);
-                    break;
                 case OP_REP_MOVSB:
                     rep_movs(seg, 1, addr32);
                     break;
@@ -3297,19 +2650,6 @@ public class Processor {
                     rep_movs(seg, op32 ? 4 : 2, addr32);
                     break;
 
-                case OP_OUTSB:
-                    outs(reg0, seg, 1, addr32);
-                    break;
-                case OP_OUTSW:
-                    outs(reg0, seg, op32 ? 4 : 2, addr32);
-                    break;
-                case OP_REP_OUTSB:
-                    rep_outs(reg0, seg, 1, addr32);
-                    break;
-                case OP_REP_OUTSW:
-                    rep_outs(reg0, seg, op32 ? 4 : 2, addr32);
-                    break;
-
                 case OP_STOSB:
                     stos(reg0, 1, addr32);
                     break;
@@ -3325,29 +2665,20 @@ public class Processor {
 
                 case OP_LOOP_CX:
                     if (!op32) {
-                        ecx.setValue((ecx.getValue() & ~0xffff) | ((ecx.getValue() - 1) & 0xffff));
-                        if ((0xffff & ecx.getValue()) != 0) jump_08((byte) reg0);
+                        writeRegister(REG_ECX, (readRegister(REG_ECX) & ~0xffff) | ((readRegister(REG_ECX) - 1) & 0xffff));
+                        if ((0xffff & readRegister(REG_ECX)) != 0) jump_08((byte) reg0);
                     } else {
-                        ecx.setValue(ecx.getValue() - 1);
-                        if (ecx.getValue() != 0) jump_08((byte) reg0);
+                        writeRegister(REG_ECX, readRegister(REG_ECX) - 1);
+                        if (readRegister(REG_ECX) != 0) jump_08((byte) reg0);
                     }
                     break;
                 case OP_LOOPZ_CX:
                     if (!op32) {
-                        ecx.setValue((ecx.getValue() & ~0xffff) | ((ecx.getValue() - 1) & 0xffff));
-                        if (((0xffff & ecx.getValue()) != 0) && zero.read()) jump_08((byte) reg0);
-                    } else {
-                        ecx.setValue(ecx.getValue() - 1);
-                        if ((ecx.getValue() != 0) && zero.read()) jump_08((byte) reg0);
-                    }
-                    break;
-                case OP_LOOPNZ_CX:
-                    if (!op32) {
-                        ecx.setValue((ecx.getValue() & ~0xffff) | ((ecx.getValue() - 1) & 0xffff));
-                        if (((0xffff & ecx.getValue()) != 0) && !zero.read()) jump_08((byte) reg0);
+                        writeRegister(REG_ECX, (readRegister(REG_ECX) & ~0xffff) | ((readRegister(REG_ECX) - 1) & 0xffff));
+                        if (((0xffff & readRegister(REG_ECX)) != 0) && zero.read()) jump_08((byte) reg0);
                     } else {
-                        ecx.setValue(ecx.getValue() - 1);
-                        if ((ecx.getValue() != 0) && !zero.read()) jump_08((byte) reg0);
+                        writeRegister(REG_ECX, readRegister(REG_ECX) - 1);
+                        if ((readRegister(REG_ECX) != 0) && zero.read()) jump_08((byte) reg0);
                     }
                     break;
 
@@ -3356,263 +2687,1701 @@ public class Processor {
                     else jecxz((byte) reg0);
                     break;
 
-                case OP_HALT:
-                    waitForInterrupt();
-                    break;
+                case OP_NOP:
+                    break;
+                case OP_MOV:
+                    break;
+
+                //flag setting commands
+                case FLAG_BITWISE_08:
+                    bitwise_flags((byte) reg0);
+                    break;
+                case FLAG_BITWISE_16:
+                    bitwise_flags((short) reg0);
+                    break;
+                case FLAG_BITWISE_32:
+                    bitwise_flags(reg0);
+                    break;
+                case FLAG_SUB_08:
+                    sub_flags_08(reg0, reg2, reg1);
+                    break;
+                case FLAG_SUB_16:
+                    sub_flags_16(reg0, reg2, reg1);
+                    break;
+                case FLAG_SUB_32:
+                    sub_flags_32(reg0l, reg2, reg1);
+                    break;
+                case FLAG_REP_SUB_08:
+                    rep_sub_flags_08(reg0, reg2, reg1);
+                    break;
+                case FLAG_ADD_08:
+                    add_flags_08(reg0, reg2, reg1);
+                    break;
+                case FLAG_ADD_16:
+                    add_flags_16(reg0, reg2, reg1);
+                    break;
+                case FLAG_ADD_32:
+                    add_flags_32(reg0l, reg2, reg1);
+                    break;
+                case FLAG_ADC_08:
+                    adc_flags_08(reg0, reg2, reg1);
+                    break;
+                case FLAG_ADC_16:
+                    adc_flags_16(reg0, reg2, reg1);
+                    break;
+                case FLAG_SBB_08:
+                    sbb_flags_08(reg0, reg2, reg1);
+                    break;
+                case FLAG_SBB_16:
+                    sbb_flags_16(reg0, reg2, reg1);
+                    break;
+                case FLAG_DEC_08:
+                    dec_flags_08((byte) reg0);
+                    break;
+                case FLAG_DEC_16:
+                    dec_flags_16((short) reg0);
+                    break;
+                case FLAG_INC_08:
+                    inc_flags_08((byte) reg0);
+                    break;
+                case FLAG_INC_16:
+                    inc_flags_16((short) reg0);
+                    break;
+                case FLAG_INC_32:
+                    inc_flags_32(reg0);
+                    break;
+                case FLAG_SHL_08:
+                    shl_flags_08((byte) reg0, (byte) reg2, reg1);
+                    break;
+                case FLAG_SHL_16:
+                    shl_flags_16((short) reg0, (short) reg2, reg1);
+                    break;
+                case FLAG_SHL_32:
+                    shl_flags_32(reg0, reg2, reg1);
+                    break;
+                case FLAG_SHR_08:
+                    shr_flags_08((byte) reg0, reg2, reg1);
+                    break;
+                case FLAG_SHR_16:
+                    shr_flags_16((short) reg0, reg2, reg1);
+                    break;
+                case FLAG_SHR_32:
+                    shr_flags_32(reg0, reg2, reg1);
+                    break;
+                case FLAG_SAR_16:
+                    sar_flags((short) reg0, (short) reg2, reg1);
+                    break;
+                case FLAG_RCL_16:
+                    rcl_flags_16(reg0, reg1);
+                    break;
+                case FLAG_ROR_08:
+                    ror_flags_08((byte) reg0, reg1);
+                    break;
+                case FLAG_NEG_16:
+                    neg_flags_16((short) reg0);
+                    break;
+
+                case FLAG_NONE:
+                    break;
+
+                default:
+                    executeRareMicrocode(microcode, reg0, reg1, reg2, addr, reg0l, seg, condition, displacement, op32, addr32);
+                    reg0 = rareReg0;
+                    reg1 = rareReg1;
+                    reg2 = rareReg2;
+                    addr = rareAddr;
+                    reg0l = rareReg0l;
+                    seg = rareSeg;
+                    condition = rareCondition;
+                    displacement = rareDisplacement;
+            }
+
+            if (processorGUICode != null)
+                processorGUICode.pushMicrocode(microcode, reg0, reg1, reg2, addr, displacement, condition);
+        }
+
+        context.reg0 = reg0;
+        context.reg1 = reg1;
+        context.reg2 = reg2;
+        context.addr = addr;
+        context.reg0l = reg0l;
+        context.seg = seg;
+        context.condition = condition;
+        context.displacement = displacement;
+    }
+
+    //internal registers passed back out of executeRareMicrocode
+    private int rareReg0, rareReg1, rareReg2, rareAddr, rareDisplacement;
+    private long rareReg0l;
+    private Segment rareSeg;
+    private boolean rareCondition;
+
+    //the less common microcodes, split off from executeMicroInstructions so that both methods stay under
+    //HotSpot's huge method limit (8000 bytes of bytecode) and get compiled instead of interpreted
+    private void executeRareMicrocode(MICROCODE microcode, int reg0, int reg1, int reg2, int addr, long reg0l, Segment seg, boolean condition, int displacement, boolean op32, boolean addr32) {
+        switch (microcode) {
+            case LOAD0_ESP:
+                reg0 = esp.getValue();
+                break;
+            case LOAD0_EBP:
+                reg0 = ebp.getValue();
+                break;
+            case LOAD0_ESI:
+                reg0 = esi.getValue();
+                break;
+            case LOAD0_EDI:
+                reg0 = edi.getValue();
+                break;
+            case LOAD0_FS:
+                reg0 = fs.getValue() & 0xffff;
+                break;
+            case LOAD0_GS:
+                reg0 = gs.getValue() & 0xffff;
+                break;
+            case LOAD0_EFLAGS:
+                reg0 = getFlags();
+                break;
+            case LOAD0_CR0:
+                reg0 = cr0.getValue();
+                break;
+            case LOAD0_CR2:
+                reg0 = cr2.getValue();
+                break;
+            case LOAD0_CR3:
+                reg0 = cr3.getValue();
+                break;
+            case LOAD0_CR4:
+                reg0 = cr4.getValue();
+                break;
+            case LOAD0_DR0:
+                reg0 = dr0.getValue();
+                break;
+            case LOAD0_DR1:
+                reg0 = dr1.getValue();
+                break;
+            case LOAD0_DR2:
+                reg0 = dr2.getValue();
+                break;
+            case LOAD0_DR3:
+                reg0 = dr3.getValue();
+                break;
+            case LOAD0_DR6:
+                reg0 = dr6.getValue();
+                break;
+            case LOAD0_DR7:
+                reg0 = dr7.getValue();
+                break;
+            case LOAD1_EBX:
+                reg1 = ebx.getValue();
+                break;
+            case LOAD1_ECX:
+                reg1 = ecx.getValue();
+                break;
+            case LOAD1_ESP:
+                reg1 = esp.getValue();
+                break;
+            case LOAD1_EBP:
+                reg1 = ebp.getValue();
+                break;
+            case LOAD1_ESI:
+                reg1 = esi.getValue();
+                break;
+            case LOAD1_EDI:
+                reg1 = edi.getValue();
+                break;
+            case LOAD1_CS:
+                reg1 = cs.getValue() & 0xffff;
+                break;
+            case LOAD1_SS:
+                reg1 = ss.getValue() & 0xffff;
+                break;
+            case LOAD1_DS:
+                reg1 = ds.getValue() & 0xffff;
+                break;
+            case LOAD1_ES:
+                reg1 = es.getValue() & 0xffff;
+                break;
+            case LOAD1_FS:
+                reg1 = fs.getValue() & 0xffff;
+                break;
+            case LOAD1_GS:
+                reg1 = gs.getValue() & 0xffff;
+                break;
+            case LOAD1_FLAGS:
+                reg1 = getFlags() & 0xffff;
+                break;
+            case LOAD1_EFLAGS:
+                reg1 = getFlags();
+                break;
+
+            case LOAD2_IB:
+                reg2 = getiCode() & 0xff;
+                break;
+            case LOAD2_AL:
+                reg2 = eax.getValue() & 0xff;
+                break;
+            case LOAD2_AX:
+                reg2 = eax.getValue() & 0xffff;
+                break;
+            case LOAD2_EAX:
+                reg2 = eax.getValue();
+                break;
+            case LOAD2_CL:
+                reg2 = ecx.getValue() & 0xff;
+                break;
+            case STORE0_ESP:
+                esp.setValue(reg0);
+                break;
+            case STORE0_EBP:
+                ebp.setValue(reg0);
+                break;
+            case STORE0_ESI:
+                esi.setValue(reg0);
+                break;
+            case STORE0_EDI:
+                edi.setValue(reg0);
+                break;
+            case STORE0_CS:
+                cs.setValue(0xffff & reg0);
+                break;
+            case STORE0_FS:
+                fs.setValue(0xffff & reg0);
+                break;
+            case STORE0_GS:
+                gs.setValue(0xffff & reg0);
+                break;
+            case STORE0_EFLAGS:
+                setFlags(reg0);
+                break;
+            case STORE0_CR0:
+                setCR0(reg0);
+                break;
+            case STORE0_CR2:
+                setCR2(reg0);
+                break;
+            case STORE0_CR3:
+                setCR3(reg0);
+                break;
+            case STORE0_CR4:
+                setCR4(reg0);
+                break;
+            case STORE0_DR0:
+                dr0.setValue(reg0);
+                break;
+            case STORE0_DR1:
+                dr1.setValue(reg0);
+                break;
+            case STORE0_DR2:
+                dr2.setValue(reg0);
+                break;
+            case STORE0_DR3:
+                dr3.setValue(reg0);
+                break;
+            case STORE0_DR6:
+                dr6.setValue(reg0);
+                break;
+            case STORE0_DR7:
+                dr7.setValue(reg0);
+                break;
+            case STORE1_BX:
+                ebx.setLower16Value(0xffff & reg1);
+                break;
+            case STORE1_CX:
+                ecx.setLower16Value(0xffff & reg1);
+                break;
+            case STORE1_DX:
+                edx.setLower16Value(0xffff & reg1);
+                break;
+            case STORE1_SP:
+                esp.setLower16Value(0xffff & reg1);
+                break;
+            case STORE1_BP:
+                ebp.setLower16Value(0xffff & reg1);
+                break;
+            case STORE1_SI:
+                esi.setLower16Value(0xffff & reg1);
+                break;
+            case STORE1_EAX:
+                eax.setValue(reg1);
+                break;
+            case STORE1_EBX:
+                ebx.setValue(reg1);
+                break;
+            case STORE1_ECX:
+                ecx.setValue(reg1);
+                break;
+            case STORE1_EDX:
+                edx.setValue(reg1);
+                break;
+            case STORE1_ESP:
+                esp.setValue(reg1);
+                break;
+            case STORE1_EBP:
+                ebp.setValue(reg1);
+                break;
+            case STORE1_ESI:
+                esi.setValue(reg1);
+                break;
+            case STORE1_EDI:
+                edi.setValue(reg1);
+                break;
+            case STORE1_AL:
+                eax.setLower8Value(0xff & reg1);
+                break;
+            case STORE1_AH:
+                eax.setUpper8Value(0xff & reg1);
+                break;
+            case STORE1_BL:
+                ebx.setLower8Value(0xff & reg1);
+                break;
+            case STORE1_BH:
+                ebx.setUpper8Value(0xff & reg1);
+                break;
+            case STORE1_CH:
+                ecx.setUpper8Value(0xff & reg1);
+                break;
+            case STORE1_DL:
+                edx.setLower8Value(0xff & reg1);
+                break;
+            case STORE1_DH:
+                edx.setUpper8Value(0xff & reg1);
+                break;
+            case STORE1_CS:
+                cs.setValue(0xffff & reg1);
+                break;
+            case STORE1_SS:
+                ss.setValue(0xffff & reg1);
+                break;
+            case STORE1_FS:
+                fs.setValue(0xffff & reg1);
+                break;
+            case STORE1_GS:
+                gs.setValue(0xffff & reg1);
+                break;
+            case STORE1_FLAGS:
+                setFlags(0xffff & reg1);
+                break;
+            case STORE1_EFLAGS:
+                setFlags(reg1);
+                break;
+            case STORE1_MEM_BYTE:
+                seg.storeByte(addr, (byte) reg1);
+                break;
+            case STORE1_MEM_DOUBLE:
+                seg.storeDoubleWord(addr, reg1);
+                break;
+            case LOAD0_MEM_QUAD:
+                reg0l = seg.loadQuadWord(addr);
+                break;
+            case STORE0_MEM_QUAD:
+                seg.storeQuadWord(addr, reg0l);
+                break;
+
+            //addressing
+            case ADDR_AX:
+                addr += (short) eax.getValue();
+                break;
+            case ADDR_AL:
+                addr += ((0xff) & eax.getValue());
+                break;
+            case ADDR_CX:
+                addr += (short) ecx.getValue();
+                break;
+            case ADDR_DX:
+                addr += (short) edx.getValue();
+                break;
+            case ADDR_SP:
+                addr += (short) esp.getValue();
+                break;
+            case ADDR_EAX:
+                addr += eax.getValue();
+                break;
+            case ADDR_EBX:
+                addr += ebx.getValue();
+                break;
+            case ADDR_ECX:
+                addr += ecx.getValue();
+                break;
+            case ADDR_EDX:
+                addr += edx.getValue();
+                break;
+            case ADDR_ESP:
+                addr += esp.getValue();
+                break;
+            case ADDR_EBP:
+                addr += ebp.getValue();
+                break;
+            case ADDR_ESI:
+                addr += esi.getValue();
+                break;
+            case ADDR_EDI:
+                addr += edi.getValue();
+                break;
+
+            case ADDR_2EAX:
+                addr += (eax.getValue() << 1);
+                break;
+            case ADDR_2EBX:
+                addr += (ebx.getValue() << 1);
+                break;
+            case ADDR_2ECX:
+                addr += (ecx.getValue() << 1);
+                break;
+            case ADDR_2EDX:
+                addr += (edx.getValue() << 1);
+                break;
+            case ADDR_2EBP:
+                addr += (ebp.getValue() << 1);
+                break;
+            case ADDR_2ESI:
+                addr += (esi.getValue() << 1);
+                break;
+            case ADDR_2EDI:
+                addr += (edi.getValue() << 1);
+                break;
+
+            case ADDR_4EAX:
+                addr += (eax.getValue() << 2);
+                break;
+            case ADDR_4EBX:
+                addr += (ebx.getValue() << 2);
+                break;
+            case ADDR_4ECX:
+                addr += (ecx.getValue() << 2);
+                break;
+            case ADDR_4EDX:
+                addr += (edx.getValue() << 2);
+                break;
+            case ADDR_4EBP:
+                addr += (ebp.getValue() << 2);
+                break;
+            case ADDR_4ESI:
+                addr += (esi.getValue() << 2);
+                break;
+            case ADDR_4EDI:
+                addr += (edi.getValue() << 2);
+                break;
+
+            case ADDR_8EAX:
+                addr += (eax.getValue() << 3);
+                break;
+            case ADDR_8EBX:
+                addr += (ebx.getValue() << 3);
+                break;
+            case ADDR_8ECX:
+                addr += (ecx.getValue() << 3);
+                break;
+            case ADDR_8EDX:
+                addr += (edx.getValue() << 3);
+                break;
+            case ADDR_8EBP:
+                addr += (ebp.getValue() << 3);
+                break;
+            case ADDR_8ESI:
+                addr += (esi.getValue() << 3);
+                break;
+            case ADDR_8EDI:
+                addr += (edi.getValue() << 3);
+                break;
+            case ADDR_ID:
+                displacement = getiCode();
+                addr += displacement;
+                break;
+            case LOAD_SEG_FS:
+                seg = fs;
+                addr = 0;
+                break;
+            case LOAD_SEG_GS:
+                seg = gs;
+                addr = 0;
+                break;
+            case OP_ENTER:
+                enter(reg0, reg1, op32, addr32);
+                break;
+            case OP_LEAVE:
+                leave(op32, addr32);
+                break;
+            case OP_JO:
+                if (overflow.read()) {
+                    condition = true;
+                    jump_08((byte) reg0);
+                }
+                break;
+            case OP_JO_16_32:
+                if (!op32) {
+                    if (overflow.read()) {
+                        condition = true;
+                        jump_16((short) reg0);
+                    }
+                } else {
+                    if (overflow.read()) {
+                        condition = true;
+                        jump_32(reg0);
+                    }
+                }
+                break;
+            case OP_JNO:
+                if (!overflow.read()) {
+                    condition = true;
+                    jump_08((byte) reg0);
+                }
+                break;
+            case OP_JNO_16_32:
+                if (!op32) {
+                    if (!overflow.read()) {
+                        condition = true;
+                        jump_16((short) reg0);
+                    }
+                } else {
+                    if (!overflow.read()) {
+                        condition = true;
+                        jump_32(reg0);
+                    }
+                }
+                break;
+            case OP_JS:
+                if (sign.read()) {
+                    condition = true;
+                    jump_08((byte) reg0);
+                }
+                break;
+            case OP_JS_16_32:
+                if (!op32) {
+                    if (sign.read()) {
+                        condition = true;
+                        jump_16((short) reg0);
+                    }
+                } else {
+                    if (sign.read()) {
+                        condition = true;
+                        jump_32(reg0);
+                    }
+                }
+                break;
+            case OP_JNS:
+                if (!sign.read()) {
+                    condition = true;
+                    jump_08((byte) reg0);
+                }
+                break;
+            case OP_JNS_16_32:
+                if (!op32) {
+                    if (!sign.read()) {
+                        condition = true;
+                        jump_16((short) reg0);
+                    }
+                } else {
+                    if (!sign.read()) {
+                        condition = true;
+                        jump_32(reg0);
+                    }
+                }
+                break;
+            case OP_JP:
+                if (parity.read()) {
+                    condition = true;
+                    jump_08((byte) reg0);
+                }
+                break;
+            case OP_JP_16_32:
+                if (!op32) {
+                    if (parity.read()) {
+                        condition = true;
+                        jump_16((short) reg0);
+                    }
+                } else {
+                    if (parity.read()) {
+                        condition = true;
+                        jump_32(reg0);
+                    }
+                }
+                break;
+            case OP_JNP:
+                if (!parity.read()) {
+                    condition = true;
+                    jump_08((byte) reg0);
+                }
+                break;
+            case OP_JNP_16_32:
+                if (!op32) {
+                    if (!parity.read()) {
+                        condition = true;
+                        jump_16((short) reg0);
+                    }
+                } else {
+                    if (!parity.read()) {
+                        condition = true;
+                        jump_32(reg0);
+                    }
+                }
+                break;
+            case OP_JA_16_32:
+                if (!op32) {
+                    if ((!carry.read()) && (!zero.read())) {
+                        condition = true;
+                        jump_16((short) reg0);
+                    }
+                } else {
+                    if ((!carry.read()) && (!zero.read())) {
+                        condition = true;
+                        jump_32(reg0);
+                    }
+                }
+                break;
+            case OP_JNA_16_32:
+                if (!op32) {
+                    if (carry.read() || zero.read()) {
+                        condition = true;
+                        jump_16((short) reg0);
+                    }
+                } else {
+                    if (carry.read() || zero.read()) {
+                        condition = true;
+                        jump_32(reg0);
+                    }
+                }
+                break;
+            case OP_JL_16_32:
+                if (!op32) {
+                    if (sign.read() != overflow.read()) {
+                        condition = true;
+                        jump_16((short) reg0);
+                    }
+                } else {
+                    if (sign.read() != overflow.read()) {
+                        condition = true;
+                        jump_32(reg0);
+                    }
+                }
+                break;
+            case OP_JNL_16_32:
+                if (!op32) {
+                    if (sign.read() == overflow.read()) {
+                        condition = true;
+                        jump_16((short) reg0);
+                    }
+                } else {
+                    if (sign.read() == overflow.read()) {
+                        condition = true;
+                        jump_32(reg0);
+                    }
+                }
+                break;
+            case OP_JG_16_32:
+                if (!op32) {
+                    if ((!zero.read()) && (sign.read() == overflow.read())) {
+                        condition = true;
+                        jump_16((short) reg0);
+                    }
+                } else {
+                    if ((!zero.read()) && (sign.read() == overflow.read())) {
+                        condition = true;
+                        jump_32(reg0);
+                    }
+                }
+                break;
+            case OP_JNG_16_32:
+                if (!op32) {
+                    if (zero.read() || (sign.read() != overflow.read())) {
+                        condition = true;
+                        jump_16((short) reg0);
+                    }
+                } else {
+                    if (zero.read() || (sign.read() != overflow.read())) {
+                        condition = true;
+                        jump_32(reg0);
+                    }
+                }
+                break;
+            case OP_INT3:
+                intr(reg0, op32, addr32);
+                break;
+            case OP_ROL_08:
+                reg2 = reg1 & 0x7;
+                reg0 = (reg0 << reg2) | (reg0 >>> (8 - reg2));
+                break;
+            case OP_ROL_16_32:
+                if (!op32) {
+                    reg2 = reg1 & 0xf;
+                    reg0 = (reg0 << reg2) | (reg0 >>> (16 - reg2));
+                } else {
+                    reg1 = reg1 & 0x1f;
+                    reg0 = (reg0 << reg1) | (reg0 >>> (32 - reg1));
+                }
+                break;
+            case OP_ROR_16_32:
+                if (!op32) {
+                    reg1 = reg1 & 0xf;
+                    reg0 = (reg0 >>> reg1) | (reg0 << (16 - reg1));
+                } else {
+                    reg1 = reg1 & 0x1f;
+                    reg0 = (reg0 >>> reg1) | (reg0 << (32 - reg1));
+                }
+                break;
+            case OP_RCL_08:
+                reg1 = reg1 & 0x1f;
+                reg1 = reg1 % 9;
+                reg0 = reg0 | (carry.read() ? 0x100 : 0);
+                reg0 = (reg0 << reg1) | (reg0 >>> (9 - reg1));
+                break;
+            case OP_RCR_08:
+                reg1 = reg1 & 0x1f;
+                reg1 = reg1 % 9;
+                reg0 = reg0 | (carry.read() ? 0x100 : 0);
+                reg2 = (carry.read() ^ ((reg0 & 0x80) != 0) ? 1 : 0);
+                reg0 = (reg0 >>> reg1) | (reg0 << (9 - reg1));
+                break;
+            case OP_RCR_16_32:
+                if (!op32) {
+                    reg1 = reg1 & 0x1f;
+                    reg1 = reg1 % 17;
+                    reg2 = (carry.read() ^ ((reg0 & 0x8000) != 0) ? 1 : 0);
+                    reg0 = reg0 | (carry.read() ? 0x10000 : 0);
+                    reg0 = (reg0 >>> reg1) | (reg0 << (17 - reg1));
+                } else {
+                    reg1 = reg1 & 0x1f;
+                    reg0l = (0xffffffffl & reg0) | (carry.read() ? 0x100000000l : 0);
+                    reg2 = (carry.read() ^ ((reg0 & 0x80000000) != 0) ? 1 : 0);
+                    reg0 = (int) (reg0l = (reg0l >>> reg1) | (reg0l << (33 - reg1)));
+                }
+                break;
+            case OP_SAR_08:
+                reg1 = reg1 & 0x1f;
+                reg2 = reg0;
+                reg0 = ((byte) reg0) >> reg1;
+                break;
+            case OP_IMULA_08:
+                imula_08((byte) reg0);
+                break;
+            case OP_IMUL_16_32:
+                if (!op32) reg0 = imul_16((short) reg0, (short) reg1);
+                else reg0 = imul_32(reg0, reg1);
+                break;
+            case OP_IDIV_08:
+                idiv_08((byte) reg0);
+                break;
+
+            case OP_CMPSB:
+            case OP_CMPSW: {
+                int addrOne, addrTwo;
+                if (!addr32) {
+                    addrOne = esi.getValue() & 0xffff;
+                    addrTwo = edi.getValue() & 0xffff;
+                } else {
+                    addrOne = esi.getValue();
+                    addrTwo = edi.getValue();
+                }
+                int dataOne;
+                int dataTwo;
+                int n;
+                if (microcode == MICROCODE.OP_CMPSB) {
+                    dataOne = 0xff & seg.loadByte(addrOne);
+                    dataTwo = 0xff & es.loadByte(addrTwo);
+                    n = 1;
+                } else if (!op32) {
+                    dataOne = 0xffff & seg.loadWord(addrOne);
+                    dataTwo = 0xffff & es.loadWord(addrTwo);
+                    n = 2;
+                } else {
+                    dataOne = seg.loadDoubleWord(addrOne);
+                    dataTwo = es.loadDoubleWord(addrTwo);
+                    n = 4;
+                }
+                if (direction.read()) {
+                    addrOne -= n;
+                    addrTwo -= n;
+                } else {
+                    addrOne += n;
+                    addrTwo += n;
+                }
+
+                if (!addr32) {
+                    esi.setValue((esi.getValue() & ~0xffff) | (addrOne & 0xffff));
+                    edi.setValue((edi.getValue() & ~0xffff) | (addrTwo & 0xffff));
+                } else {
+                    esi.setValue(addrOne);
+                    edi.setValue(addrTwo);
+                }
+                reg2 = dataOne;
+                reg1 = dataTwo;
+                if (microcode == MICROCODE.OP_CMPSW && op32)
+                    reg0 = (int) ((0xffffffffl & dataOne) - (0xffffffffl & dataTwo));
+                else
+                    reg0 = dataOne - dataTwo;
+            }
+            break;
+
+            case OP_BSF:
+                reg0 = bsf(reg1, reg0);
+                break;
+            case OP_BSR:
+                reg0 = bsr(reg1, reg0);
+                break;
+
+            case OP_BT_MEM:
+                bt_mem(reg1, seg, addr);
+                break;
+            case OP_BTS_MEM:
+                bts_mem(reg1, seg, addr);
+                break;
+            case OP_BTR_MEM:
+                btr_mem(reg1, seg, addr);
+                break;
+            case OP_BTC_MEM:
+                btc_mem(reg1, seg, addr);
+                break;
+
+            case OP_BT_16_32:
+                if (!op32) {
+                    reg1 &= 0xf;
+                } else {
+                    reg1 &= 0x1f;
+                }
+                carry.set(reg0, reg1, Flag.CY_NTH_BIT_SET);
+                break;
+            case OP_BTS_16_32:
+                if (!op32) {
+                    reg1 &= 0xf;
+                } else {
+                    reg1 &= 0x1f;
+                }
+                carry.set(reg0, reg1, Flag.CY_NTH_BIT_SET);
+                reg0 |= (1 << reg1);
+                break;
+            case OP_BTR_16_32:
+                if (!op32) {
+                    reg1 &= 0xf;
+                } else {
+                    reg1 &= 0x1f;
+                }
+                carry.set(reg0, reg1, Flag.CY_NTH_BIT_SET);
+                reg0 &= ~(1 << reg1);
+                break;
+            case OP_BTC_16_32:
+                if (!op32) {
+                    reg1 &= 0xf;
+                } else {
+                    reg1 &= 0x1f;
+                }
+                carry.set(reg0, reg1, Flag.CY_NTH_BIT_SET);
+                reg0 ^= (1 << reg1);
+                break;
+
+            case OP_SHLD_16_32:
+                if (!op32) {
+                    int i = reg0;
+                    reg2 &= 0x1f;
+                    if (reg2 < 16) {
+                        reg0 = (reg0 << reg2) | (reg1 >>> (16 - reg2));
+                        reg1 = reg2;
+                        reg2 = i;
+                    } else {
+                        i = (reg1 & 0xFFFF) | (reg0 << 16);
+                        reg0 = (reg1 << (reg2 - 16)) | ((reg0 & 0xFFFF) >>> (32 - reg2));
+                        reg1 = reg2 - 15;
+                        reg2 = i >> 1;
+                    }
+                } else {
+                    int i = reg0;
+                    reg2 &= 0x1f;
+                    if (reg2 != 0)
+                        reg0 = (reg0 << reg2) | (reg1 >>> (32 - reg2));
+                    reg1 = reg2;
+                    reg2 = i;
+                }
+                break;
+
+            case OP_SHRD_16_32:
+                if (!op32) {
+                    int i = reg0;
+                    reg2 &= 0x1f;
+                    if (reg2 < 16) {
+                        reg0 = (reg0 >>> reg2) | (reg1 << (16 - reg2));
+                        reg1 = reg2;
+                        reg2 = i;
+                    } else {
+                        i = (reg0 & 0xFFFF) | (reg1 << 16);
+                        reg0 = (reg1 >>> (reg2 - 16)) | (reg0 << (32 - reg2));
+                        reg1 = reg2;
+                        reg2 = i;
+                    }
+                } else {
+                    int i = reg0;
+                    reg2 &= 0x1f;
+                    if (reg2 != 0)
+                        reg0 = (reg0 >>> reg2) | (reg1 << (32 - reg2));
+                    reg1 = reg2;
+                    reg2 = i;
+                }
+                break;
+
+            case OP_AAA:
+                aaa();
+                break;
+            case OP_AAD:
+                aad(reg0);
+                break;
+            case OP_AAM:
+                reg0 = aam(reg0);
+                break;
+            case OP_AAS:
+                aas();
+                break;
+
+            case OP_DAA:
+                daa();
+                break;
+            case OP_DAS:
+                das();
+                break;
+
+            case OP_BOUND: {
+                if (!op32) {
+                    short lower = (short) reg0;
+                    short upper = (short) (reg0 >> 16);
+                    short index = (short) reg1;
+                    if ((index < lower) || (index > (upper + 2)))
+                        throw BOUND_RANGE;
+                } else {
+                    int lower = (int) reg0l;
+                    int upper = (int) (reg0l >> 32);
+                    int index = reg1;
+                    if ((index < lower) || (index > upper + 4))
+                        throw BOUND_RANGE;
+                }
+            }
+            break;
+            case OP_CMC:
+                carry.toggle();
+                break;
+
+            case OP_SETO:
+                reg0 = overflow.read() ? 1 : 0;
+                break;
+            case OP_SETNO:
+                reg0 = overflow.read() ? 0 : 1;
+                break;
+            case OP_SETC:
+                reg0 = carry.read() ? 1 : 0;
+                break;
+            case OP_SETNC:
+                reg0 = carry.read() ? 0 : 1;
+                break;
+            case OP_SETZ:
+                reg0 = zero.read() ? 1 : 0;
+                break;
+            case OP_SETNZ:
+                reg0 = zero.read() ? 0 : 1;
+                break;
+            case OP_SETNA:
+                reg0 = carry.read() || zero.read() ? 1 : 0;
+                break;
+            case OP_SETA:
+                reg0 = carry.read() || zero.read() ? 0 : 1;
+                break;
+            case OP_SETS:
+                reg0 = sign.read() ? 1 : 0;
+                break;
+            case OP_SETNS:
+                reg0 = sign.read() ? 0 : 1;
+                break;
+            case OP_SETP:
+                reg0 = parity.read() ? 1 : 0;
+                break;
+            case OP_SETNP:
+                reg0 = parity.read() ? 0 : 1;
+                break;
+            case OP_SETL:
+                reg0 = sign.read() != overflow.read() ? 1 : 0;
+                break;
+            case OP_SETNL:
+                reg0 = sign.read() != overflow.read() ? 0 : 1;
+                break;
+            case OP_SETNG:
+                reg0 = zero.read() || (sign.read() != overflow.read()) ? 1 : 0;
+                break;
+            case OP_SETG:
+                reg0 = zero.read() || (sign.read() != overflow.read()) ? 0 : 1;
+                break;
+            case OP_SALC:
+                reg0 = carry.read() ? -1 : 0;
+                break;
+            case OP_CMOVO:
+                if (overflow.read()) {
+                    condition = true;
+                    reg0 = reg1;
+                }
+                break;
+            case OP_CMOVNO:
+                if (!overflow.read()) {
+                    condition = true;
+                    reg0 = reg1;
+                }
+                break;
+            case OP_CMOVC:
+                if (carry.read()) {
+                    condition = true;
+                    reg0 = reg1;
+                }
+                break;
+            case OP_CMOVNC:
+                if (!carry.read()) {
+                    condition = true;
+                    reg0 = reg1;
+                }
+                break;
+            case OP_CMOVZ:
+                if (zero.read()) {
+                    condition = true;
+                    reg0 = reg1;
+                }
+                break;
+            case OP_CMOVNZ:
+                if (!zero.read()) {
+                    condition = true;
+                    reg0 = reg1;
+                }
+                break;
+            case OP_CMOVNA:
+                if ((carry.read() || (zero.read()))) {
+                    condition = true;
+                    reg0 = reg1;
+                }
+                break;
+            case OP_CMOVA:
+                if (!(carry.read() || (zero.read()))) {
+                    condition = true;
+                    reg0 = reg1;
+                }
+                break;
+            case OP_CMOVS:
+                if (sign.read()) {
+                    condition = true;
+                    reg0 = reg1;
+                }
+                break;
+            case OP_CMOVNS:
+                if (!sign.read()) {
+                    condition = true;
+                    reg0 = reg1;
+                }
+                break;
+            case OP_CMOVP:
+                if (parity.read()) {
+                    condition = true;
+                    reg0 = reg1;
+                }
+                break;
+            case OP_CMOVNP:
+                if (!parity.read()) {
+                    condition = true;
+                    reg0 = reg1;
+                }
+                break;
+            case OP_CMOVL:
+                if ((sign.read() != overflow.read())) {
+                    condition = true;
+                    reg0 = reg1;
+                }
+                break;
+            case OP_CMOVNL:
+                if (!(sign.read() != overflow.read())) {
+                    condition = true;
+                    reg0 = reg1;
+                }
+                break;
+            case OP_CMOVNG:
+                if ((zero.read() || (sign.read() != overflow.read()))) {
+                    condition = true;
+                    reg0 = reg1;
+                }
+                break;
+            case OP_CMOVG:
+                if (!(zero.read() || (sign.read() != overflow.read()))) {
+                    condition = true;
+                    reg0 = reg1;
+                }
+                break;
+            case OP_SAHF:
+                sahf();
+                break;
+
+            case OP_SIGN_EXTEND:
+                if (!op32) reg0 = 0xffff & ((byte) reg0);
+                else reg0 = ((short) reg0);
+                break;
+            case OP_SIGN_EXTEND_8_32:
+                if (op32) reg0 = ((byte) reg0);
+                break;
+            case OP_SIGN_EXTEND_16_32:
+                if (op32) reg0 = ((short) reg0);
+                break;
+
+            case OP_INSB:
+                ins(reg0, 1, addr32);
+                break;
+            case OP_INSW:
+                ins(reg0, op32 ? 4 : 2, addr32);
+                break;
+            case OP_REP_INSB:
+                rep_ins(reg0, 1, addr32);
+                break;
+            case OP_REP_INSW:
+                rep_ins(reg0, op32 ? 4 : 2, addr32);
+                break;
+            case OP_REP_LODSB:
+                rep_lods(seg, 1, addr32);
+                break;
+            case OP_REP_LODSW:
+                rep_lods(seg, op32 ? 4 : 2, addr32);
+                break;
+            case OP_MOVSW:
+                movs(seg, op32 ? 4 : 2, addr32);
+                break;
+
+            case OP_OUTSB:
+                outs(reg0, seg, 1, addr32);
+                break;
+            case OP_OUTSW:
+                outs(reg0, seg, op32 ? 4 : 2, addr32);
+                break;
+            case OP_REP_OUTSB:
+                rep_outs(reg0, seg, 1, addr32);
+                break;
+            case OP_REP_OUTSW:
+                rep_outs(reg0, seg, op32 ? 4 : 2, addr32);
+                break;
+            case OP_LOOPNZ_CX:
+                if (!op32) {
+                    ecx.setValue((ecx.getValue() & ~0xffff) | ((ecx.getValue() - 1) & 0xffff));
+                    if (((0xffff & ecx.getValue()) != 0) && !zero.read()) jump_08((byte) reg0);
+                } else {
+                    ecx.setValue(ecx.getValue() - 1);
+                    if ((ecx.getValue() != 0) && !zero.read()) jump_08((byte) reg0);
+                }
+                break;
+
+            case OP_HALT:
+                waitForInterrupt();
+                break;
+
+            case OP_CPUID:
+                cpuid();
+                break;
+
+            case OP_LGDT:
+                gdtr.setMemory(computer.linearMemory);
+                gdtr.setDescriptorValue(op32 ? reg1 : (reg1 & 0x00ffffff), reg0);
+                descriptorCache.flush();
+                System.out.printf("New GDT starts at %x\n", gdtr.getBase());
+                break;
+            case OP_LIDT:
+                idtr.setMemory(computer.linearMemory);
+                idtr.setDescriptorValue(op32 ? reg1 : (reg1 & 0x00ffffff), reg0);
+                break;
+            case OP_SGDT:
+                if (op32) reg1 = gdtr.getBase();
+                else reg1 = gdtr.getBase() & 0x00ffffff;
+                reg0 = gdtr.getLimit();
+                break;
+            case OP_SIDT:
+                if (op32) reg1 = idtr.getBase();
+                else reg1 = idtr.getBase() & 0x00ffffff;
+                reg0 = gdtr.getLimit();
+                break;
+
+            case OP_SMSW:
+                reg0 = cr0.getValue() & 0xffff;
+                break;
+            case OP_LMSW:
+                setCR0((cr0.getValue() & ~0xf) | (reg0 & 0xf));
+                break;
+
+            case OP_SLDT:
+                reg0 = 0xffff & ldtr.getBase();
+                break;
+            case OP_STR:
+                reg0 = 0xffff & tss.getBase();
+                break;
+            case OP_LLDT:
+                ldtr.setProtectedValue(reg0 & ~0x4);
+                System.out.printf("New LDT starts at %x\n", ldtr.getBase());
+                break;
+            case OP_LTR:
+                tss.setProtectedValue(reg0);
+                System.out.printf("New TSS starts at %x\n", tss.getBase());
+                break;
+
+            case OP_CLTS:
+                setCR3(cr3.getValue() & ~0x4);
+                break;
+
+            case OP_RDTSC:
+                long tsc = rdtsc();
+                reg0 = (int) tsc;
+                reg1 = (int) (tsc >>> 32);
+                break;
+            case OP_FLOAT_NOP:
+                break;
+
+            //prefices
+            case PREFIX_LOCK:
+            case PREFIX_REPNE:
+            case PREFIX_REPE:
+            case PREFIX_CS:
+            case PREFIX_SS:
+            case PREFIX_DS:
+            case PREFIX_ES:
+            case PREFIX_FS:
+            case PREFIX_GS:
+            case PREFIX_OPCODE_32BIT:
+            case PREFIX_ADDRESS_32BIT:
+                break;
+            case FLAG_REP_SUB_16:
+                rep_sub_flags_16(reg0, reg2, reg1);
+                break;
+            case FLAG_REP_SUB_32:
+                rep_sub_flags_32(reg0, reg2, reg1);
+                break;
+            case FLAG_ADC_32:
+                adc_flags_32(reg0l, reg2, reg1);
+                break;
+            case FLAG_SBB_32:
+                sbb_flags_32(reg0l, reg2, reg1);
+                break;
+            case FLAG_DEC_32:
+                dec_flags_32(reg0);
+                break;
+            case FLAG_SAR_08:
+                sar_flags((byte) reg0, (byte) reg2, reg1);
+                break;
+            case FLAG_SAR_32:
+                sar_flags(reg0, reg2, reg1);
+                break;
+            case FLAG_RCL_08:
+                rcl_flags_08(reg0, reg1);
+                break;
+            case FLAG_RCL_32:
+                rcl_flags_32(reg0l, reg1);
+                break;
+            case FLAG_RCR_08:
+                rcr_flags_08(reg0, reg1, reg2);
+                break;
+            case FLAG_RCR_16:
+                rcr_flags_16(reg0, reg1, reg2);
+                break;
+            case FLAG_RCR_32:
+                rcr_flags_32(reg0l, reg1, reg2);
+                break;
+            case FLAG_ROL_08:
+                rol_flags_08((byte) reg0, reg1);
+                break;
+            case FLAG_ROL_16:
+                rol_flags_16((short) reg0, reg1);
+                break;
+            case FLAG_ROL_32:
+                rol_flags_32(reg0, reg1);
+                break;
+            case FLAG_ROR_16:
+                ror_flags_16((short) reg0, reg1);
+                break;
+            case FLAG_ROR_32:
+                ror_flags_32(reg0, reg1);
+                break;
+            case FLAG_NEG_08:
+                neg_flags_08((byte) reg0);
+                break;
+            case FLAG_NEG_32:
+                neg_flags_32(reg0);
+                break;
+            case FLAG_FLOAT_NOP:
+                break;
+
+            //errors
+            case OP_BAD:
+                panic("Bad microcode");
+            case OP_UNIMPLEMENTED:
+                panic("Unimplemented microcode");
+
+            default:
+                //check floating point processor now
+                if (!fpu.executeFloat(microcode, reg0, reg1, reg2, addr, reg0l, seg, condition, displacement)) {
+                    System.out.println(microcode);
+                    panic("Unhandled microcode");
+                } else {
+                    //set internal registers from fpu results
+                    reg0 = fpu.reg0;
+                    reg1 = fpu.reg1;
+                    addr = fpu.addr;
+                    reg0l = fpu.reg0l;
+                    seg = fpu.seg;
+                    condition = fpu.condition;
+                    displacement = fpu.displacement;
+                }
+        }
+
+        rareReg0 = reg0;
+        rareReg1 = reg1;
+        rareReg2 = reg2;
+        rareAddr = addr;
+        rareReg0l = reg0l;
+        rareSeg = seg;
+        rareCondition = condition;
+        rareDisplacement = displacement;
+    }
 
-                case OP_CPUID:
-                    cpuid();
-                    break;
+    //internal registers of the microcode executors
+    class MicrocodeContext {
+        int reg0, reg1, reg2, addr, displacement;
+        long reg0l;
+        Segment seg;
+        boolean condition;
+        boolean op32, addr32;
 
-                case OP_LGDT:
-                    gdtr.memory = computer.linearMemory;
-                    gdtr.setDescriptorValue(op32 ? reg1 : (reg1 & 0x00ffffff), reg0);
-                    System.out.printf("New GDT starts at %x\n", gdtr.getBase());
-                    break;
-                case OP_LIDT:
-                    idtr.memory = computer.linearMemory;
-                    idtr.setDescriptorValue(op32 ? reg1 : (reg1 & 0x00ffffff), reg0);
-                    break;
-                case OP_SGDT:
-                    if (op32) reg1 = gdtr.getBase();
-                    else reg1 = gdtr.getBase() & 0x00ffffff;
-                    reg0 = gdtr.getLimit();
-                    break;
-                case OP_SIDT:
-                    if (op32) reg1 = idtr.getBase();
-                    else reg1 = idtr.getBase() & 0x00ffffff;
-                    reg0 = gdtr.getLimit();
-                    break;
+        void reset(boolean op32, boolean addr32) {
+            reg0 = reg1 = reg2 = addr = displacement = 0;
+            reg0l = 0;
+            seg = null;
+            condition = false;
+            this.op32 = op32;
+            this.addr32 = addr32;
+        }
+    }
 
-                case OP_SMSW:
-                    reg0 = cr0.getValue() & 0xffff;
-                    break;
-                case OP_LMSW:
-                    setCR0((cr0.getValue() & ~0xf) | (reg0 & 0xf));
-                    break;
+    interface MicrocodeHandler {
+        void execute(MicrocodeContext c);
+    }
 
-                case OP_SLDT:
-                    reg0 = 0xffff & ldtr.getBase();
-                    break;
-                case OP_STR:
-                    reg0 = 0xffff & tss.getBase();
-                    break;
-                case OP_LLDT:
-                    ldtr.setProtectedValue(reg0 & ~0x4);
-                    System.out.printf("New LDT starts at %x\n", ldtr.getBase());
-                    break;
-                case OP_LTR:
-                    tss.setProtectedValue(reg0);
-                    System.out.printf("New TSS starts at %x\n", tss.getBase());
-                    break;
+    //two to four handlers run back to back; each part still sees codesHandled pointing just past its own microcode
+    static final class Superinstruction implements MicrocodeHandler {
+        private final Processor processor;
+        private final MicrocodeHandler a, b, c, d;
 
-                case OP_CLTS:
-                    setCR3(cr3.getValue() & ~0x4);
-                    break;
+        Superinstruction(Processor processor, MicrocodeHandler a, MicrocodeHandler b, MicrocodeHandler c, MicrocodeHandler d) {
+            this.processor = processor;
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.d = d;
+        }
 
-                case OP_RDTSC:
-                    long tsc = rdtsc();
-                    reg0 = (int) tsc;
-                    reg1 = (int) (tsc >>> 32);
-                    break;
+        public void execute(MicrocodeContext context) {
+            a.execute(context);
+            processor.codesHandled++;
+            b.execute(context);
+            if (c != null) {
+                processor.codesHandled++;
+                c.execute(context);
+                if (d != null) {
+                    processor.codesHandled++;
+                    d.execute(context);
+                }
+            }
+        }
+    }
 
-                case OP_NOP:
-                    break;
-                case OP_MOV:
-                    break;
-                case OP_FLOAT_NOP:
-                    break;
+    //what newSuperinstruction needs to define copies of Superinstruction, found once when first used:
+    //the class file, and MethodHandles.Lookup.defineHiddenClass, which is only there from Java 15 on and so is
+    //looked up by name; DEFINE is null on an older Java, and superinstructions then share the one class
+    private static final class HiddenSuperinstruction {
+        static final byte[] BYTES;
+        static final java.lang.reflect.Method DEFINE;
+        static final Object NO_OPTIONS;
 
-                //prefices
-                case PREFIX_LOCK:
-                case PREFIX_REPNE:
-                case PREFIX_REPE:
-                case PREFIX_CS:
-                case PREFIX_SS:
-                case PREFIX_DS:
-                case PREFIX_ES:
-                case PREFIX_FS:
-                case PREFIX_GS:
-                case PREFIX_OPCODE_32BIT:
-                case PREFIX_ADDRESS_32BIT:
-                    break;
+        static {
+            byte[] bytes = null;
+            java.lang.reflect.Method define = null;
+            Object options = null;
+            try {
+                Class<?> option = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+                options = java.lang.reflect.Array.newInstance(option, 0);
+                define = java.lang.invoke.MethodHandles.Lookup.class.getMethod("defineHiddenClass", byte[].class, boolean.class, options.getClass());
+                bytes = readClass();
+            } catch (ReflectiveOperationException | java.io.IOException | LinkageError e) {
+                define = null;
+            }
+            BYTES = bytes;
+            DEFINE = define;
+            NO_OPTIONS = options;
+        }
 
-                //flag setting commands
-                case FLAG_BITWISE_08:
-                    bitwise_flags((byte) reg0);
-                    break;
-                case FLAG_BITWISE_16:
-                    bitwise_flags((short) reg0);
-                    break;
-                case FLAG_BITWISE_32:
-                    bitwise_flags(reg0);
-                    break;
-                case FLAG_SUB_08:
-                    sub_flags_08(reg0, reg2, reg1);
-                    break;
-                case FLAG_SUB_16:
-                    sub_flags_16(reg0, reg2, reg1);
-                    break;
-                case FLAG_SUB_32:
-                    sub_flags_32(reg0l, reg2, reg1);
-                    break;
-                case FLAG_REP_SUB_08:
-                    rep_sub_flags_08(reg0, reg2, reg1);
-                    break;
-                case FLAG_REP_SUB_16:
-                    rep_sub_flags_16(reg0, reg2, reg1);
-                    break;
-                case FLAG_REP_SUB_32:
-                    rep_sub_flags_32(reg0, reg2, reg1);
-                    break;
-                case FLAG_ADD_08:
-                    add_flags_08(reg0, reg2, reg1);
-                    break;
-                case FLAG_ADD_16:
-                    add_flags_16(reg0, reg2, reg1);
-                    break;
-                case FLAG_ADD_32:
-                    add_flags_32(reg0l, reg2, reg1);
-                    break;
-                case FLAG_ADC_08:
-                    adc_flags_08(reg0, reg2, reg1);
-                    break;
-                case FLAG_ADC_16:
-                    adc_flags_16(reg0, reg2, reg1);
-                    break;
-                case FLAG_ADC_32:
-                    adc_flags_32(reg0l, reg2, reg1);
-                    break;
-                case FLAG_SBB_08:
-                    sbb_flags_08(reg0, reg2, reg1);
-                    break;
-                case FLAG_SBB_16:
-                    sbb_flags_16(reg0, reg2, reg1);
-                    break;
-                case FLAG_SBB_32:
-                    sbb_flags_32(reg0l, reg2, reg1);
-                    break;
-                case FLAG_DEC_08:
-                    dec_flags_08((byte) reg0);
-                    break;
-                case FLAG_DEC_16:
-                    dec_flags_16((short) reg0);
-                    break;
-                case FLAG_DEC_32:
-                    dec_flags_32(reg0);
-                    break;
-                case FLAG_INC_08:
-                    inc_flags_08((byte) reg0);
-                    break;
-                case FLAG_INC_16:
-                    inc_flags_16((short) reg0);
-                    break;
-                case FLAG_INC_32:
-                    inc_flags_32(reg0);
-                    break;
-                case FLAG_SHL_08:
-                    shl_flags_08((byte) reg0, (byte) reg2, reg1);
-                    break;
-                case FLAG_SHL_16:
-                    shl_flags_16((short) reg0, (short) reg2, reg1);
-                    break;
-                case FLAG_SHL_32:
-                    shl_flags_32(reg0, reg2, reg1);
-                    break;
-                case FLAG_SHR_08:
-                    shr_flags_08((byte) reg0, reg2, reg1);
-                    break;
-                case FLAG_SHR_16:
-                    shr_flags_16((short) reg0, reg2, reg1);
-                    break;
-                case FLAG_SHR_32:
-                    shr_flags_32(reg0, reg2, reg1);
-                    break;
-                case FLAG_SAR_08:
-                    sar_flags((byte) reg0, (byte) reg2, reg1);
-                    break;
-                case FLAG_SAR_16:
-                    sar_flags((short) reg0, (short) reg2, reg1);
-                    break;
-                case FLAG_SAR_32:
-                    sar_flags(reg0, reg2, reg1);
-                    break;
-                case FLAG_RCL_08:
-                    rcl_flags_08(reg0, reg1);
-                    break;
-                case FLAG_RCL_16:
-                    rcl_flags_16(reg0, reg1);
-                    break;
-                case FLAG_RCL_32:
-                    rcl_flags_32(reg0l, reg1);
-                    break;
-                case FLAG_RCR_08:
-                    rcr_flags_08(reg0, reg1, reg2);
-                    break;
-                case FLAG_RCR_16:
-                    rcr_flags_16(reg0, reg1, reg2);
-                    break;
-                case FLAG_RCR_32:
-                    rcr_flags_32(reg0l, reg1, reg2);
-                    break;
-                case FLAG_ROL_08:
-                    rol_flags_08((byte) reg0, reg1);
-                    break;
-                case FLAG_ROL_16:
-                    rol_flags_16((short) reg0, reg1);
-                    break;
-                case FLAG_ROL_32:
-                    rol_flags_32(reg0, reg1);
-                    break;
-                case FLAG_ROR_08:
-                    ror_flags_08((byte) reg0, reg1);
-                    break;
-                case FLAG_ROR_16:
-                    ror_flags_16((short) reg0, reg1);
-                    break;
-                case FLAG_ROR_32:
-                    ror_flags_32(reg0, reg1);
-                    break;
-                case FLAG_NEG_08:
-                    neg_flags_08((byte) reg0);
-                    break;
-                case FLAG_NEG_16:
-                    neg_flags_16((short) reg0);
-                    break;
-                case FLAG_NEG_32:
-                    neg_flags_32(reg0);
-                    break;
+        private static byte[] readClass() throws java.io.IOException {
+            java.io.InputStream in = Superinstruction.class.getResourceAsStream("Processor$Superinstruction.class");
+            if (in == null)
+                throw new java.io.IOException("Processor$Superinstruction.class not found");
+            try {
+                java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                for (int n; (n = in.read(buffer)) > 0; )
+                    out.write(buffer, 0, n);
+                return out.toByteArray();
+            } finally {
+                in.close();
+            }
+        }
+    }
 
-                case FLAG_NONE:
-                    break;
-                case FLAG_FLOAT_NOP:
-                    break;
+    //alternative to the switch: each decoded instruction is turned into an array of handlers, one per microcode,
+    //which is kept with the instruction in the decode cache
+    //microcodes without their own handler go back through the switch one at a time
+    //sequences listed as fusions become a single superinstruction handler (see MicrocodeProfiler)
+    public class ThreadedExecutor {
+        private final MicrocodeHandler[] handlers = new MicrocodeHandler[MICROCODE.values().length];
+        private final MicrocodeHandler fallback = c -> {
+            codesHandled--;
+            executeMicroInstructions(c, codesHandled + 1);
+        };
+        //packed microcode sequence -> superinstruction
+        private final HashMap<Long, MicrocodeHandler> fusions = new HashMap<Long, MicrocodeHandler>();
+        private int longestFusion = 0;
+
+        //the most frequent sequences from booting the FreeDOS images
+        private final MICROCODE[][] DEFAULT_FUSIONS = {
+                {MICROCODE.LOAD_SEG_SS, MICROCODE.ADDR_BP, MICROCODE.ADDR_IB, MICROCODE.ADDR_MASK_16},
+                {MICROCODE.ADDR_BP, MICROCODE.ADDR_IB, MICROCODE.ADDR_MASK_16},
+                {MICROCODE.LOAD_SEG_SS, MICROCODE.ADDR_BP, MICROCODE.ADDR_IB},
+                {MICROCODE.ADDR_MASK_16, MICROCODE.LOAD0_MEM_WORD, MICROCODE.OP_MOV},
+                {MICROCODE.ADDR_IB, MICROCODE.ADDR_MASK_16, MICROCODE.LOAD0_MEM_WORD, MICROCODE.OP_MOV},
+                {MICROCODE.ADDR_BP, MICROCODE.ADDR_IB, MICROCODE.ADDR_MASK_16, MICROCODE.LOAD0_MEM_WORD},
+                {MICROCODE.ADDR_IB, MICROCODE.ADDR_MASK_16, MICROCODE.LOAD0_MEM_WORD},
+                {MICROCODE.ADDR_MASK_16, MICROCODE.LOAD0_MEM_WORD, MICROCODE.OP_MOV, MICROCODE.STORE0_AX},
+                {MICROCODE.ADDR_IB, MICROCODE.ADDR_MASK_16},
+                {MICROCODE.ADDR_MASK_16, MICROCODE.LOAD0_MEM_WORD}};
+
+        public ThreadedExecutor() {
+            //reads and writes
+            handle(MICROCODE.LOAD0_AX, c -> c.reg0 = register16(REG_EAX));
+            handle(MICROCODE.LOAD0_BX, c -> c.reg0 = register16(REG_EBX));
+            handle(MICROCODE.LOAD0_CX, c -> c.reg0 = register16(REG_ECX));
+            handle(MICROCODE.LOAD0_DX, c -> c.reg0 = register16(REG_EDX));
+            handle(MICROCODE.LOAD0_SP, c -> c.reg0 = register16(REG_ESP));
+            handle(MICROCODE.LOAD0_BP, c -> c.reg0 = register16(REG_EBP));
+            handle(MICROCODE.LOAD0_SI, c -> c.reg0 = register16(REG_ESI));
+            handle(MICROCODE.LOAD0_DI, c -> c.reg0 = register16(REG_EDI));
+            handle(MICROCODE.LOAD0_AL, c -> c.reg0 = registerLow8(REG_EAX));
+            handle(MICROCODE.LOAD0_AH, c -> c.reg0 = registerHigh8(REG_EAX));
+            handle(MICROCODE.LOAD0_BH, c -> c.reg0 = registerHigh8(REG_EBX));
+            handle(MICROCODE.LOAD0_DL, c -> c.reg0 = registerLow8(REG_EDX));
+            handle(MICROCODE.LOAD0_DS, c -> c.reg0 = ds.getValue() & 0xffff);
+            handle(MICROCODE.LOAD0_ES, c -> c.reg0 = es.getValue() & 0xffff);
+            handle(MICROCODE.LOAD1_AX, c -> c.reg1 = register16(REG_EAX));
+            handle(MICROCODE.LOAD1_CX, c -> c.reg1 = register16(REG_ECX));
+            handle(MICROCODE.LOAD1_SI, c -> c.reg1 = register16(REG_ESI));
+            handle(MICROCODE.LOAD1_DI, c -> c.reg1 = register16(REG_EDI));
+            handle(MICROCODE.LOAD1_AL, c -> c.reg1 = registerLow8(REG_EAX));
+            handle(MICROCODE.LOAD1_AH, c -> c.reg1 = registerHigh8(REG_EAX));
+            handle(MICROCODE.LOAD1_BH, c -> c.reg1 = registerHigh8(REG_EBX));
+            handle(MICROCODE.STORE0_AX, c -> setRegister16(REG_EAX, c.reg0));
+            handle(MICROCODE.STORE0_BX, c -> setRegister16(REG_EBX, c.reg0));
+            handle(MICROCODE.STORE0_CX, c -> setRegister16(REG_ECX, c.reg0));
+            handle(MICROCODE.STORE0_DX, c -> setRegister16(REG_EDX, c.reg0));
+            handle(MICROCODE.STORE0_SP, c -> setRegister16(REG_ESP, c.reg0));
+            handle(MICROCODE.STORE0_BP, c -> setRegister16(REG_EBP, c.reg0));
+            handle(MICROCODE.STORE0_SI, c -> setRegister16(REG_ESI, c.reg0));
+            handle(MICROCODE.STORE0_DI, c -> setRegister16(REG_EDI, c.reg0));
+            handle(MICROCODE.STORE0_AL, c -> setRegisterLow8(REG_EAX, c.reg0));
+            handle(MICROCODE.STORE0_AH, c -> setRegisterHigh8(REG_EAX, c.reg0));
+            handle(MICROCODE.STORE0_BL, c -> setRegisterLow8(REG_EBX, c.reg0));
+            handle(MICROCODE.STORE0_BH, c -> setRegisterHigh8(REG_EBX, c.reg0));
+            handle(MICROCODE.STORE1_AX, c -> setRegister16(REG_EAX, c.reg1));
+            handle(MICROCODE.LOAD0_MEM_BYTE, c -> c.reg0 = 0xff & c.seg.loadByte(c.addr));
+            handle(MICROCODE.LOAD0_MEM_WORD, c -> c.reg0 = 0xffff & c.seg.loadWord(c.addr));
+            handle(MICROCODE.LOAD1_MEM_BYTE, c -> c.reg1 = 0xff & c.seg.loadByte(c.addr));
+            handle(MICROCODE.LOAD1_MEM_WORD, c -> c.reg1 = 0xffff & c.seg.loadWord(c.addr));
+            handle(MICROCODE.STORE0_MEM_BYTE, c -> c.seg.storeByte(c.addr, (byte) c.reg0));
+            handle(MICROCODE.STORE0_MEM_WORD, c -> c.seg.storeWord(c.addr, (short) c.reg0));
+            handle(MICROCODE.LOAD0_IB, c -> c.reg0 = getiCode() & 0xff);
+            handle(MICROCODE.LOAD0_IW, c -> c.reg0 = getiCode() & 0xffff);
+            handle(MICROCODE.LOAD1_IB, c -> c.reg1 = getiCode() & 0xff);
+            handle(MICROCODE.LOAD1_IW, c -> c.reg1 = getiCode() & 0xffff);
+
+            //addressing
+            handle(MICROCODE.LOAD_SEG_CS, c -> {
+                c.seg = cs;
+                c.addr = 0;
+            });
+            handle(MICROCODE.LOAD_SEG_SS, c -> {
+                c.seg = ss;
+                c.addr = 0;
+            });
+            handle(MICROCODE.LOAD_SEG_DS, c -> {
+                c.seg = ds;
+                c.addr = 0;
+            });
+            handle(MICROCODE.LOAD_SEG_ES, c -> {
+                c.seg = es;
+                c.addr = 0;
+            });
+            handle(MICROCODE.ADDR_BX, c -> c.addr += (short) registers[REG_EBX]);
+            handle(MICROCODE.ADDR_BP, c -> c.addr += (short) registers[REG_EBP]);
+            handle(MICROCODE.ADDR_SI, c -> c.addr += (short) registers[REG_ESI]);
+            handle(MICROCODE.ADDR_DI, c -> c.addr += (short) registers[REG_EDI]);
+            handle(MICROCODE.ADDR_IB, c -> {
+                c.displacement = (byte) getiCode();
+                c.addr += c.displacement;
+            });
+            handle(MICROCODE.ADDR_IW, c -> {
+                c.displacement = (short) getiCode();
+                c.addr += c.displacement;
+            });
+            handle(MICROCODE.ADDR_MASK_16, c -> c.addr = c.addr & 0xffff);
+
+            //operations
+            handle(MICROCODE.OP_MOV, c -> {
+            });
+            handle(MICROCODE.OP_ADD, c -> {
+                c.reg2 = c.reg0;
+                c.reg0 = c.reg2 + c.reg1;
+            });
+            handle(MICROCODE.OP_ADC, c -> {
+                c.reg2 = c.reg0;
+                c.reg0 = c.reg2 + c.reg1 + (carry.read() ? 1 : 0);
+            });
+            handle(MICROCODE.OP_SUB, c -> {
+                c.reg2 = c.reg0;
+                c.reg0 = c.reg2 - c.reg1;
+            });
+            handle(MICROCODE.OP_CMP, c -> {
+                c.reg2 = c.reg0;
+                c.reg0 = c.reg2 - c.reg1;
+            });
+            handle(MICROCODE.OP_AND, c -> c.reg0 = c.reg0 & c.reg1);
+            handle(MICROCODE.OP_TEST, c -> c.reg0 = c.reg0 & c.reg1);
+            handle(MICROCODE.OP_OR, c -> c.reg0 = c.reg0 | c.reg1);
+            handle(MICROCODE.OP_XOR, c -> c.reg0 = c.reg0 ^ c.reg1);
+            handle(MICROCODE.OP_INC, c -> c.reg0 = c.reg0 + 1);
+            handle(MICROCODE.OP_DEC, c -> c.reg0 = c.reg0 - 1);
+
+            //control
+            handle(MICROCODE.OP_PUSH, c -> {
+                if (!c.op32) push_16((short) c.reg0, c.addr32);
+                else push_32(c.reg0, c.addr32);
+            });
+            handle(MICROCODE.OP_CALL, c -> call(c.reg0, c.op32, c.addr32));
+            handle(MICROCODE.OP_RET, c -> ret(c.op32, c.addr32));
+            handle(MICROCODE.OP_JMP_08, c -> jump_08((byte) c.reg0));
+            handle(MICROCODE.OP_JZ, c -> {
+                if (zero.read()) {
+                    c.condition = true;
+                    jump_08((byte) c.reg0);
+                }
+            });
+            handle(MICROCODE.OP_JNZ, c -> {
+                if (!zero.read()) {
+                    c.condition = true;
+                    jump_08((byte) c.reg0);
+                }
+            });
+            handle(MICROCODE.OP_JC, c -> {
+                if (carry.read()) {
+                    c.condition = true;
+                    jump_08((byte) c.reg0);
+                }
+            });
+            handle(MICROCODE.OP_JNC, c -> {
+                if (!carry.read()) {
+                    c.condition = true;
+                    jump_08((byte) c.reg0);
+                }
+            });
+
+            //flags
+            handle(MICROCODE.FLAG_NONE, c -> {
+            });
+            handle(MICROCODE.FLAG_BITWISE_08, c -> bitwise_flags((byte) c.reg0));
+            handle(MICROCODE.FLAG_BITWISE_16, c -> bitwise_flags((short) c.reg0));
+            handle(MICROCODE.FLAG_ADD_08, c -> add_flags_08(c.reg0, c.reg2, c.reg1));
+            handle(MICROCODE.FLAG_ADD_16, c -> add_flags_16(c.reg0, c.reg2, c.reg1));
+            handle(MICROCODE.FLAG_ADC_16, c -> adc_flags_16(c.reg0, c.reg2, c.reg1));
+            handle(MICROCODE.FLAG_SUB_08, c -> sub_flags_08(c.reg0, c.reg2, c.reg1));
+            handle(MICROCODE.FLAG_SUB_16, c -> sub_flags_16(c.reg0, c.reg2, c.reg1));
+            handle(MICROCODE.FLAG_INC_16, c -> inc_flags_16((short) c.reg0));
+            handle(MICROCODE.FLAG_DEC_16, c -> dec_flags_16((short) c.reg0));
+
+            for (MICROCODE[] sequence : DEFAULT_FUSIONS)
+                fuse(sequence);
+        }
+
+        private void handle(MICROCODE microcode, MicrocodeHandler handler) {
+            handlers[microcode.ordinal()] = handler;
+        }
+
+        private MicrocodeHandler handler(MICROCODE microcode) {
+            MicrocodeHandler handler = handlers[microcode.ordinal()];
+            return handler == null ? fallback : handler;
+        }
+
+        //replaces the built-in superinstructions
+        public void setFusions(List<MICROCODE[]> sequences) {
+            fusions.clear();
+            longestFusion = 0;
+            for (MICROCODE[] sequence : sequences)
+                fuse(sequence);
+        }
+
+        private void fuse(MICROCODE[] sequence) {
+            if (sequence.length < 2 || sequence.length > MicrocodeProfiler.MAX_LENGTH)
+                return;
+            MicrocodeHandler[] parts = new MicrocodeHandler[4];
+            for (int i = 0; i < sequence.length; i++)
+                parts[i] = handler(sequence[i]);
+            fusions.put(fusionKey(sequence, 0, sequence.length), newSuperinstruction(parts));
+            longestFusion = Math.max(longestFusion, sequence.length);
+        }
+
+        //each superinstruction gets its own copy of the Superinstruction class, defined as a hidden class,
+        //so HotSpot sees its calls to the parts as monomorphic and inlines them
+        private MicrocodeHandler newSuperinstruction(MicrocodeHandler[] parts) {
+            if (HiddenSuperinstruction.DEFINE != null) {
+                try {
+                    java.lang.invoke.MethodHandles.Lookup lookup = (java.lang.invoke.MethodHandles.Lookup) HiddenSuperinstruction.DEFINE.invoke(
+                            java.lang.invoke.MethodHandles.lookup(), HiddenSuperinstruction.BYTES, true, HiddenSuperinstruction.NO_OPTIONS);
+                    return (MicrocodeHandler) lookup.lookupClass().getDeclaredConstructor(Processor.class, MicrocodeHandler.class, MicrocodeHandler.class, MicrocodeHandler.class, MicrocodeHandler.class).newInstance(Processor.this, parts[0], parts[1], parts[2], parts[3]);
+                } catch (ReflectiveOperationException | LinkageError e) {
+                    //falls through to the shared class
+                }
+            }
+            //works the same, it just shares one profile with every other superinstruction
+            return new Superinstruction(Processor.this, parts[0], parts[1], parts[2], parts[3]);
+        }
 
-                //errors
-                case OP_BAD:
-                    panic("Bad microcode");
-                case OP_UNIMPLEMENTED:
-                    panic("Unimplemented microcode");
+        //10 bits per microcode, length in the top bits
+        private long fusionKey(MICROCODE[] sequence, int start, int length) {
+            long key = 0;
+            for (int i = start; i < start + length; i++)
+                key = (key << 10) | sequence[i].ordinal();
+            return key | ((long) length << 60);
+        }
 
-                default:
-                    //check floating point processor now
-                    if (!fpu.executeFloat(microcode, reg0, reg1, reg2, addr, reg0l, seg, condition, displacement)) {
-                        System.out.println(microcode);
-                        panic("Unhandled microcode");
-                    } else {
-                        //set internal registers from fpu results
-                        reg0 = fpu.reg0;
-                        reg1 = fpu.reg1;
-                        addr = fpu.addr;
-                        reg0l = fpu.reg0l;
-                        seg = fpu.seg;
-                        condition = fpu.condition;
-                        displacement = fpu.displacement;
+        //builds the handler array for the instruction in code[], taking the longest superinstruction at each point
+        private MicrocodeHandler[] compile() {
+            MicrocodeHandler[] compiled = new MicrocodeHandler[codeLength];
+            for (int i = 0; i < codeLength; ) {
+                int n = Math.min(longestFusion, codeLength - i);
+                for (; n >= 2; n--) {
+                    MicrocodeHandler superinstruction = fusions.get(fusionKey(code, i, n));
+                    if (superinstruction != null) {
+                        compiled[i] = superinstruction;
+                        break;
                     }
+                }
+                if (n < 2) {
+                    compiled[i] = handler(code[i]);
+                    n = 1;
+                }
+                i += n;
             }
+            return compiled;
+        }
 
-            if (processorGUICode != null)
-                processorGUICode.pushMicrocode(microcode, reg0, reg1, reg2, addr, displacement, condition);
+        public void execute(MicrocodeContext context) {
+            MicrocodeHandler[] compiled = decodeCache.getHandlers();
+            if (compiled == null) {
+                compiled = compile();
+                decodeCache.setHandlers(compiled);
+            }
+            while (codesHandled < codeLength)
+                compiled[codesHandled++].execute(context);
         }
     }
 
@@ -4292,11 +5061,24 @@ public class Processor {
     }
 
     private void rep_ins(int port, int b, boolean addr32) {
+        //forward transfers move a page at a time unless the processor GUI is tracing every access
+        boolean bulk = !direction.read() && processorGUICode == null;
+        int slow = 0;
         if (!addr32) {
             int count = ecx.getValue() & 0xffff;
             int addr = edi.getValue() & 0xffff;
 
             while (count != 0) {
+                if (bulk && slow == 0) {
+                    int n = bulkPortRun(port, es, addr, count, b, false, true);
+                    if (n > 0) {
+                        count -= n;
+                        addr += n * b;
+                        continue;
+                    }
+                    slow = -n;
+                }
+                if (slow > 0) slow--;
                 if (b == 1)
                     es.storeByte(addr & 0xffff, (byte) computer.ioports.ioPortReadByte(port));
                 else if (b == 2)
@@ -4316,6 +5098,16 @@ public class Processor {
             int addr = edi.getValue();
 
             while (count != 0) {
+                if (bulk && slow == 0) {
+                    int n = bulkPortRun(port, es, addr, count, b, true, true);
+                    if (n > 0) {
+                        count -= n;
+                        addr += n * b;
+                        continue;
+                    }
+                    slow = -n;
+                }
+                if (slow > 0) slow--;
                 if (b == 1)
                     es.storeByte(addr, (byte) computer.ioports.ioPortReadByte(port));
                 else if (b == 2)
@@ -4334,6 +5126,39 @@ public class Processor {
     }
 
 
+    //staging for block port transfers, a page at most
+    private final byte[] portBuffer = new byte[0x1000];
+
+    //REP INS (in) or OUTS: moves as many of count forward elements between the port and memory as stay inside one page
+    //returns how many it did, or minus how many the caller should do one at a time before asking again
+    private int bulkPortRun(int port, Segment seg, int offset, int count, int b, boolean addr32, boolean in) {
+        if (!addr32)
+            offset &= 0xffff;
+        int room = 0x1000 - (seg.address(offset) & 0xfff);
+        if (!addr32) room = Math.min(room, 0x10000 - offset);
+        int elements = room / b;
+        if (elements == 0)
+            return -1;
+        if ((count & 0xffffffffL) < elements)
+            elements = count;
+        int length = elements * b;
+
+        //check memory before touching the device, so a refusal doesn't lose port data
+        if (in) {
+            int address = seg.physicalWriteAddress(offset);
+            if (!computer.physicalMemory.isPlainRAM(address, length, true))
+                return -elements;
+            computer.ioports.ioPortReadBlock(port, portBuffer, 0, elements, b);
+            computer.physicalMemory.write(address, portBuffer, 0, length);
+            seg.invalidateCode(seg.address(offset), length);
+        } else {
+            if (!computer.physicalMemory.read(seg.physicalReadAddress(offset), portBuffer, 0, length))
+                return -elements;
+            computer.ioports.ioPortWriteBlock(port, portBuffer, 0, elements, b);
+        }
+        return elements;
+    }
+
     private void outs(int port, Segment seg, int b, boolean addr32) {
         if (!addr32) {
             int addr = esi.getValue() & 0xffff;
@@ -4373,11 +5198,24 @@ public class Processor {
     }
 
     private void rep_outs(int port, Segment seg, int b, boolean addr32) {
+        //forward transfers move a page at a time unless the processor GUI is tracing every access
+        boolean bulk = !direction.read() && processorGUICode == null;
+        int slow = 0;
         if (!addr32) {
             int count = ecx.getValue() & 0xffff;
             int addr = esi.getValue() & 0xffff;
 
             while (count != 0) {
+                if (bulk && slow == 0) {
+                    int n = bulkPortRun(port, seg, addr, count, b, false, false);
+                    if (n > 0) {
+                        count -= n;
+                        addr += n * b;
+                        continue;
+                    }
+                    slow = -n;
+                }
+                if (slow > 0) slow--;
                 if (b == 1)
                     computer.ioports.ioPortWriteByte(port, 0xff & seg.loadByte(addr & 0xffff));
                 else if (b == 2)
@@ -4397,6 +5235,16 @@ public class Processor {
             int addr = esi.getValue();
 
             while (count != 0) {
+                if (bulk && slow == 0) {
+                    int n = bulkPortRun(port, seg, addr, count, b, true, false);
+                    if (n > 0) {
+                        count -= n;
+                        addr += n * b;
+                        continue;
+                    }
+                    slow = -n;
+                }
+                if (slow > 0) slow--;
                 if (b == 1)
                     computer.ioports.ioPortWriteByte(port, 0xff & seg.loadByte(addr));
                 else if (b == 2)
@@ -4532,7 +5380,21 @@ public class Processor {
             inaddr = edi.getValue();
         }
 
+        //forward copies with nobody watching can go a page at a time
+        boolean bulk = !direction.read() && processorGUICode == null;
+        int slow = 0;
         while (count != 0) {
+            if (bulk && slow == 0) {
+                int n = bulkStringRun(seg, outaddr, es, inaddr, count, b, addr32, 0, false);
+                if (n > 0) {
+                    count -= n;
+                    inaddr += n * b;
+                    outaddr += n * b;
+                    continue;
+                }
+                slow = -n;
+            }
+            if (slow > 0) slow--;
             if (!addr32) {
                 if (b == 1)
                     es.storeByte(inaddr & 0xffff, seg.loadByte(outaddr & 0xffff));
@@ -4557,15 +5419,229 @@ public class Processor {
                 outaddr += b;
             }
         }
-        if (!addr32) {
+        if (!addr32) {
+            ecx.setValue((ecx.getValue() & ~0xffff) | (count & 0xffff));
+            esi.setValue((esi.getValue() & ~0xffff) | (outaddr & 0xffff));
+            edi.setValue((edi.getValue() & ~0xffff) | (inaddr & 0xffff));
+        } else {
+            ecx.setValue(count);
+            esi.setValue(outaddr);
+            edi.setValue(inaddr);
+        }
+    }
+
+    //moves (or with fill, stores data into) as many of count forward elements as stay inside one page on each side
+    //returns how many it did, or minus how many the caller should do one at a time before asking again
+    private int bulkStringRun(Segment from, int fromOffset, Segment to, int toOffset, int count, int b, boolean addr32, int data, boolean fill) {
+        if (!addr32) {
+            fromOffset &= 0xffff;
+            toOffset &= 0xffff;
+        }
+        //elements up to the next page boundary, or 16 bit offset wrap
+        int room = 0x1000 - (to.address(toOffset) & 0xfff);
+        if (!addr32) room = Math.min(room, 0x10000 - toOffset);
+        if (!fill) {
+            room = Math.min(room, 0x1000 - (from.address(fromOffset) & 0xfff));
+            if (!addr32) room = Math.min(room, 0x10000 - fromOffset);
+        }
+        int elements = room / b;
+        if (elements == 0)
+            return -1;
+        if ((count & 0xffffffffL) < elements)
+            elements = count;
+        int length = elements * b;
+
+        int source = fill ? 0 : from.physicalReadAddress(fromOffset);
+        int destination = to.physicalWriteAddress(toOffset);
+        if (fill ? !computer.physicalMemory.fill(destination, length, data, b) : !computer.physicalMemory.copy(source, destination, length))
+            return -elements;
+        to.invalidateCode(to.address(toOffset), length);
+        return elements;
+    }
+
+    //REPE/REPNE SCAS: the flag inputs are left in rareReg0-2 for FLAG_REP_SUB
+    private void rep_scas(MICROCODE microcode, int reg0, boolean op32, boolean addr32) {
+        int count, a;
+        if (!op32)
+            count = ecx.getValue() & 0xffff;
+        else
+            count = ecx.getValue();
+        if (!addr32)
+            a = edi.getValue() & 0xffff;
+        else
+            a = edi.getValue();
+        boolean used = count != 0;
+        int input = 0;
+        //forward scans with nobody watching skip a page at a time to the element that ends them
+        boolean bulk = !direction.read() && processorGUICode == null;
+        boolean repe = microcode == MICROCODE.OP_REPE_SCASB || microcode == MICROCODE.OP_REPE_SCASW;
+        int size = microcode == MICROCODE.OP_REPNE_SCASB || microcode == MICROCODE.OP_REPE_SCASB ? 1 : op32 ? 4 : 2;
+        int slow = 0;
+        while (count != 0) {
+            if (bulk && slow == 0) {
+                int n = bulkScanRun(null, 0, es, a, count, size, reg0, repe);
+                if (n > 0) {
+                    count -= n;
+                    a += n * size;
+                    continue;
+                }
+                slow = n == 0 ? 1 : -n;
+            }
+            if (slow > 0) slow--;
+            if (microcode == MICROCODE.OP_REPNE_SCASB || microcode == MICROCODE.OP_REPE_SCASB) {
+                input = 0xff & es.loadByte(a);
+                count--;
+                if (direction.read())
+                    a -= 1;
+                else
+                    a += 1;
+            } else if (!op32) {
+                input = 0xffff & es.loadWord(a);
+                count--;
+                if (direction.read())
+                    a -= 2;
+                else
+                    a += 2;
+            } else {
+                input = es.loadDoubleWord(a);
+                count--;
+                if (direction.read())
+                    a -= 4;
+                else
+                    a += 4;
+            }
+            if (microcode == MICROCODE.OP_REPNE_SCASB || microcode == MICROCODE.OP_REPNE_SCASW) {
+                if (reg0 == input) break;
+            } else {
+                if (reg0 != input) break;
+            }
+        }
+        if (!op32)
+            ecx.setValue((ecx.getValue() & ~0xffff) | (count & 0xffff));
+        else
+            ecx.setValue(count);
+        if (!addr32)
+            edi.setValue((edi.getValue() & ~0xffff) | (a & 0xffff));
+        else
+            edi.setValue(a);
+        rareReg2 = reg0;
+        rareReg1 = input;
+        rareReg0 = used ? 1 : 0;
+    }
+
+    //REPE/REPNE CMPS: the flag inputs are left in rareReg0-2 for FLAG_REP_SUB
+    private void rep_cmps(MICROCODE microcode, Segment seg, boolean op32, boolean addr32) {
+        int count, addrOne, addrTwo;
+        if (!op32)
+            count = ecx.getValue() & 0xffff;
+        else
+            count = ecx.getValue();
+        if (!addr32) {
+            addrOne = esi.getValue() & 0xffff;
+            addrTwo = edi.getValue() & 0xffff;
+        } else {
+            addrOne = esi.getValue();
+            addrTwo = edi.getValue();
+        }
+        boolean used = count != 0;
+        int dataOne = 0;
+        int dataTwo = 0;
+        //forward compares with nobody watching skip a page at a time to the element that ends them
+        boolean bulk = !direction.read() && processorGUICode == null;
+        boolean repe = microcode == MICROCODE.OP_REPE_CMPSB || microcode == MICROCODE.OP_REPE_CMPSW;
+        int size = microcode == MICROCODE.OP_REPE_CMPSB || microcode == MICROCODE.OP_REPNE_CMPSB ? 1 : op32 ? 4 : 2;
+        int slow = 0;
+        while (count != 0) {
+            if (bulk && slow == 0) {
+                int n = bulkScanRun(seg, addrOne, es, addrTwo, count, size, 0, repe);
+                if (n > 0) {
+                    count -= n;
+                    addrOne += n * size;
+                    addrTwo += n * size;
+                    continue;
+                }
+                slow = n == 0 ? 1 : -n;
+            }
+            if (slow > 0) slow--;
+            if (microcode == MICROCODE.OP_REPE_CMPSB || microcode == MICROCODE.OP_REPNE_CMPSB) {
+                dataOne = 0xff & seg.loadByte(addrOne);
+                dataTwo = 0xff & es.loadByte(addrTwo);
+                count--;
+                if (direction.read()) {
+                    addrOne -= 1;
+                    addrTwo -= 1;
+                } else {
+                    addrOne += 1;
+                    addrTwo += 1;
+                }
+            } else if (!op32) {
+                dataOne = 0xffff & seg.loadWord(addrOne);
+                dataTwo = 0xffff & es.loadWord(addrTwo);
+                count--;
+                if (direction.read()) {
+                    addrOne -= 2;
+                    addrTwo -= 2;
+                } else {
+                    addrOne += 2;
+                    addrTwo += 2;
+                }
+            } else {
+                dataOne = seg.loadDoubleWord(addrOne);
+                dataTwo = es.loadDoubleWord(addrTwo);
+                count--;
+                if (direction.read()) {
+                    addrOne -= 4;
+                    addrTwo -= 4;
+                } else {
+                    addrOne += 4;
+                    addrTwo += 4;
+                }
+            }
+            if (microcode == MICROCODE.OP_REPE_CMPSB || microcode == MICROCODE.OP_REPE_CMPSW) {
+                if (dataOne != dataTwo) break;
+            } else {
+                if (dataOne == dataTwo) break;
+            }
+        }
+        if (!op32)
             ecx.setValue((ecx.getValue() & ~0xffff) | (count & 0xffff));
-            esi.setValue((esi.getValue() & ~0xffff) | (outaddr & 0xffff));
-            edi.setValue((edi.getValue() & ~0xffff) | (inaddr & 0xffff));
-        } else {
+        else
             ecx.setValue(count);
-            esi.setValue(outaddr);
-            edi.setValue(inaddr);
-        }
+        if (!addr32) {
+            esi.setValue((esi.getValue() & ~0xffff) | (addrOne & 0xffff));
+            edi.setValue((edi.getValue() & ~0xffff) | (addrTwo & 0xffff));
+        } else {
+            esi.setValue(addrOne);
+            edi.setValue(addrTwo);
+        }
+        rareReg0 = used ? 1 : 0;
+        rareReg1 = dataTwo;
+        rareReg2 = dataOne;
+    }
+
+    //how many forward SCAS (one == null) or CMPS elements can be skipped without reaching the one that ends the repeat,
+    //looking no further than one page on each side
+    //the last element is always left to the caller so the flags come from it
+    //returns minus how many elements the caller should do one at a time before asking again
+    //(like the element loops, 16 bit offsets aren't wrapped until the repeat is over)
+    private int bulkScanRun(Segment one, int oneOffset, Segment two, int twoOffset, int count, int size, int value, boolean whileEqual) {
+        int room = 0x1000 - (two.address(twoOffset) & 0xfff);
+        if (one != null)
+            room = Math.min(room, 0x1000 - (one.address(oneOffset) & 0xfff));
+        int elements = room / size;
+        if (((count - 1) & 0xffffffffL) < elements)
+            elements = count - 1;
+        if (elements == 0)
+            return -1;
+        int length = elements * size;
+
+        int n;
+        if (one != null) {
+            int first = one.physicalReadAddress(oneOffset);
+            n = computer.physicalMemory.compare(first, two.physicalReadAddress(twoOffset), length, size, whileEqual);
+        } else
+            n = computer.physicalMemory.scan(two.physicalReadAddress(twoOffset), length, size, value, whileEqual);
+        return n < 0 ? -elements : n;
     }
 
     private void stos(int data, int b, boolean addr32) {
@@ -4600,7 +5676,20 @@ public class Processor {
             count = ecx.getValue();
             addr = edi.getValue();
         }
+        //forward fills with nobody watching can go a page at a time
+        boolean bulk = !direction.read() && processorGUICode == null;
+        int slow = 0;
         while (count != 0) {
+            if (bulk && slow == 0) {
+                int n = bulkStringRun(null, 0, es, addr, count, b, addr32, data, true);
+                if (n > 0) {
+                    count -= n;
+                    addr += n * b;
+                    continue;
+                }
+                slow = -n;
+            }
+            if (slow > 0) slow--;
             if (!addr32) {
                 if (b == 1)
                     es.storeByte(addr & 0xffff, (byte) data);
@@ -5043,7 +6132,131 @@ public class Processor {
         }
     }
 
+    //lazy condition codes: the common ALU flag helpers only record the operation and its operands here,
+    //and each flag is worked out the first time it's read
+    static final int LAZY_CARRY = 1, LAZY_PARITY = 2, LAZY_AUXILIARYCARRY = 4, LAZY_ZERO = 8, LAZY_SIGN = 16, LAZY_OVERFLOW = 32;
+    private static final int LAZY_ALL = 63, LAZY_NOT_CARRY = LAZY_ALL & ~LAZY_CARRY, LAZY_NOT_AUXILIARYCARRY = LAZY_ALL & ~LAZY_AUXILIARYCARRY;
+    private static final int LAZY_BITWISE = 0, LAZY_ADD_08 = 1, LAZY_ADD_16 = 2, LAZY_ADD_32 = 3, LAZY_SUB_08 = 4, LAZY_SUB_16 = 5, LAZY_SUB_32 = 6;
+    private static final int LAZY_INC_08 = 7, LAZY_INC_16 = 8, LAZY_INC_32 = 9, LAZY_DEC_08 = 10, LAZY_DEC_16 = 11, LAZY_DEC_32 = 12;
+
+    //flags whose value is still owed by the recorded helper
+    private int lazyFlagsPending = 0;
+    private int lazyFlagOperation;
+    private long lazyFlagResult;
+    private int lazyFlagOperand1, lazyFlagOperand2;
+
+    //returns false if the caller has to set the flags now
+    private boolean deferFlags(int operation, int flags, long result, int operand1, int operand2) {
+        //the GUI shows flags as they're written
+        if (processorGUICode != null)
+            return false;
+        //flags the last operation still owes that this one won't overwrite
+        if ((lazyFlagsPending & ~flags) != 0)
+            evaluateLazyFlags();
+        lazyFlagOperation = operation;
+        lazyFlagResult = result;
+        lazyFlagOperand1 = operand1;
+        lazyFlagOperand2 = operand2;
+        lazyFlagsPending = flags;
+        return true;
+    }
+
+    //settles every flag still owed, for when the flags are going to be saved or copied
+    private void evaluateLazyFlags() {
+        int pending = lazyFlagsPending;
+        if ((pending & LAZY_CARRY) != 0) carry.value = lazyFlag(LAZY_CARRY);
+        if ((pending & LAZY_PARITY) != 0) parity.value = lazyFlag(LAZY_PARITY);
+        if ((pending & LAZY_AUXILIARYCARRY) != 0) auxiliaryCarry.value = lazyFlag(LAZY_AUXILIARYCARRY);
+        if ((pending & LAZY_ZERO) != 0) zero.value = lazyFlag(LAZY_ZERO);
+        if ((pending & LAZY_SIGN) != 0) sign.value = lazyFlag(LAZY_SIGN);
+        if ((pending & LAZY_OVERFLOW) != 0) overflow.value = lazyFlag(LAZY_OVERFLOW);
+        lazyFlagsPending = 0;
+    }
+
+    //works out one flag from the recorded operation, the same way the flag helper below would have
+    private boolean lazyFlag(int flag) {
+        int result = (int) lazyFlagResult;
+        int operand1 = lazyFlagOperand1, operand2 = lazyFlagOperand2;
+        int signbit;
+        switch (lazyFlagOperation) {
+            case LAZY_ADD_08:
+            case LAZY_SUB_08:
+                signbit = 0x80;
+                break;
+            case LAZY_ADD_16:
+            case LAZY_SUB_16:
+                signbit = 0x8000;
+                break;
+            case LAZY_ADD_32:
+            case LAZY_SUB_32:
+                signbit = 0x80000000;
+                break;
+            default:
+                //bitwise, inc and dec are passed an already sign extended result
+                signbit = 0;
+        }
+
+        switch (flag) {
+            case LAZY_ZERO:
+                if (signbit == 0x80) return (byte) result == 0;
+                if (signbit == 0x8000) return (short) result == 0;
+                return result == 0;
+            case LAZY_SIGN:
+                if (signbit == 0x80) return (byte) result < 0;
+                if (signbit == 0x8000) return (short) result < 0;
+                return result < 0;
+            case LAZY_PARITY:
+                return (Integer.bitCount(result & 0xff) & 0x1) == 0;
+            case LAZY_CARRY:
+                if (signbit == 0x80) return (result & (~0xff)) != 0;
+                if (signbit == 0x8000) return (result & (~0xffff)) != 0;
+                if (signbit == 0x80000000) return (lazyFlagResult & (~0xffffffffl)) != 0;
+                return false;
+            case LAZY_AUXILIARYCARRY:
+                switch (lazyFlagOperation) {
+                    case LAZY_INC_08:
+                    case LAZY_INC_16:
+                    case LAZY_INC_32:
+                        return (result & 0xf) == 0x0;
+                    case LAZY_DEC_08:
+                    case LAZY_DEC_16:
+                    case LAZY_DEC_32:
+                        return (result & 0xf) == 0xf;
+                    default:
+                        return (((operand1 ^ operand2) ^ result) & 0x10) != 0;
+                }
+            case LAZY_OVERFLOW:
+                switch (lazyFlagOperation) {
+                    case LAZY_ADD_08:
+                    case LAZY_ADD_16:
+                    case LAZY_ADD_32:
+                        return ((operand1 & signbit) == (operand2 & signbit)) && ((operand1 & signbit) != (result & signbit));
+                    case LAZY_SUB_08:
+                    case LAZY_SUB_16:
+                    case LAZY_SUB_32:
+                        return ((operand1 & signbit) != (operand2 & signbit)) && ((operand1 & signbit) != (result & signbit));
+                    case LAZY_INC_08:
+                        return result == (byte) 0x80;
+                    case LAZY_INC_16:
+                        return result == (short) 0x8000;
+                    case LAZY_INC_32:
+                        return result == 0x80000000;
+                    case LAZY_DEC_08:
+                        return result == 0x7f;
+                    case LAZY_DEC_16:
+                        return result == 0x7fff;
+                    case LAZY_DEC_32:
+                        return result == 0x7fffffff;
+                    default:
+                        return false;
+                }
+        }
+        return false;
+    }
+
     private void bitwise_flags(int result) {
+        if (deferFlags(LAZY_BITWISE, LAZY_NOT_AUXILIARYCARRY, result, 0, 0))
+            return;
         overflow.clear();
         carry.clear();
         zero.set(result);
@@ -5076,17 +6289,23 @@ public class Processor {
     }
 
     private void add_flags_08(int result, int operand1, int operand2) {
+        if (deferFlags(LAZY_ADD_08, LAZY_ALL, result, operand1, operand2))
+            return;
         arithmetic_flags_08(result, operand1, operand2);
         overflow.set(result, operand1, operand2, Flag.OF_ADD_BYTE);
     }
 
     private void add_flags_16(int result, int operand1, int operand2) {
+        if (deferFlags(LAZY_ADD_16, LAZY_ALL, result, operand1, operand2))
+            return;
         arithmetic_flags_16(result, operand1, operand2);
         overflow.set(result, operand1, operand2, Flag.OF_ADD_SHORT);
     }
 
     private void add_flags_32(long result, int operand1, int operand2) {
         long res = (0xffffffffl & operand1) + (0xffffffffl & operand2);
+        if (deferFlags(LAZY_ADD_32, LAZY_ALL, res, operand1, operand2))
+            return;
         arithmetic_flags_32(res, operand1, operand2);
         overflow.set((int) res, operand1, operand2, Flag.OF_ADD_INT);
     }
@@ -5127,17 +6346,23 @@ public class Processor {
     }
 
     private void sub_flags_08(int result, int operand1, int operand2) {
+        if (deferFlags(LAZY_SUB_08, LAZY_ALL, result, operand1, operand2))
+            return;
         arithmetic_flags_08(result, operand1, operand2);
         overflow.set(result, operand1, operand2, Flag.OF_SUB_BYTE);
     }
 
     private void sub_flags_16(int result, int operand1, int operand2) {
+        if (deferFlags(LAZY_SUB_16, LAZY_ALL, result, operand1, operand2))
+            return;
         arithmetic_flags_16(result, operand1, operand2);
         overflow.set(result, operand1, operand2, Flag.OF_SUB_SHORT);
     }
 
     private void sub_flags_32(long result, int operand1, int operand2) {
         long res = (0xffffffffl & operand1) - (0xffffffffl & operand2);
+        if (deferFlags(LAZY_SUB_32, LAZY_ALL, res, operand1, operand2))
+            return;
         arithmetic_flags_32(res, operand1, operand2);
         overflow.set((int) res, operand1, operand2, Flag.OF_SUB_INT);
     }
@@ -5183,6 +6408,8 @@ public class Processor {
     }
 
     private void dec_flags_08(byte result) {
+        if (deferFlags(LAZY_DEC_08, LAZY_NOT_CARRY, result, 0, 0))
+            return;
         zero.set(result);
         parity.set(result);
         sign.set(result);
@@ -5191,6 +6418,8 @@ public class Processor {
     }
 
     private void dec_flags_16(short result) {
+        if (deferFlags(LAZY_DEC_16, LAZY_NOT_CARRY, result, 0, 0))
+            return;
         zero.set(result);
         parity.set(result);
         sign.set(result);
@@ -5199,6 +6428,8 @@ public class Processor {
     }
 
     private void dec_flags_32(int result) {
+        if (deferFlags(LAZY_DEC_32, LAZY_NOT_CARRY, result, 0, 0))
+            return;
         zero.set(result);
         parity.set(result);
         sign.set(result);
@@ -5207,6 +6438,8 @@ public class Processor {
     }
 
     private void inc_flags_08(byte result) {
+        if (deferFlags(LAZY_INC_08, LAZY_NOT_CARRY, result, 0, 0))
+            return;
         zero.set(result);
         parity.set(result);
         sign.set(result);
@@ -5215,6 +6448,8 @@ public class Processor {
     }
 
     private void inc_flags_16(short result) {
+        if (deferFlags(LAZY_INC_16, LAZY_NOT_CARRY, result, 0, 0))
+            return;
         zero.set(result);
         parity.set(result);
         sign.set(result);
@@ -5223,6 +6458,8 @@ public class Processor {
     }
 
     private void inc_flags_32(int result) {
+        if (deferFlags(LAZY_INC_32, LAZY_NOT_CARRY, result, 0, 0))
+            return;
         zero.set(result);
         parity.set(result);
         sign.set(result);
@@ -5431,41 +6668,6 @@ public class Processor {
     }
 
 
-    public void initializeDecoder() {
-        //assemble the table of instruction inputs and outputs by instrution
-        //this will speed processing
-
-        //29 different sources / destinations, + 1 miscellaneous
-        int types = 30;
-        operandTable = new int[0x200][types][4];
-        for (int i = 0; i < types; i++) {
-            for (int j = 0; j < inputTable0[i].length; j++) {
-                int inst = inputTable0[i][j];
-                if (inst >= 0xf00)
-                    inst -= 0xe00;
-                operandTable[inst][i][0] = 1;
-            }
-            for (int j = 0; j < inputTable1[i].length; j++) {
-                int inst = inputTable1[i][j];
-                if (inst >= 0xf00)
-                    inst -= 0xe00;
-                operandTable[inst][i][1] = 1;
-            }
-            for (int j = 0; j < outputTable0[i].length; j++) {
-                int inst = outputTable0[i][j];
-                if (inst >= 0xf00)
-                    inst -= 0xe00;
-                operandTable[inst][i][2] = 1;
-            }
-            for (int j = 0; j < outputTable1[i].length; j++) {
-                int inst = outputTable1[i][j];
-                if (inst >= 0xf00)
-                    inst -= 0xe00;
-                operandTable[inst][i][3] = 1;
-            }
-        }
-    }
-
     //this routine will eventually be turned into a normal exception
     public void panic(String reason) {
         System.out.println("Processor PANIC: " + reason);
@@ -5478,16 +6680,17 @@ public class Processor {
         codeLength = 0;
         icodeLength = 0;
         addressDecoded = false;
-
-        if (is32bit) {
-            pushCode(MICROCODE.PREFIX_OPCODE_32BIT);
-            pushCode(MICROCODE.PREFIX_ADDRESS_32BIT);
-        }
+        prefixFlags = is32bit ? OPERAND32_MASK | ADDRESS32_MASK : 0;
+        segmentOverride = null;
 
         decodePrefix(is32bit);
+        if (isCode(MICROCODE.PREFIX_CS)) segmentOverride = MICROCODE.LOAD_SEG_CS;
+        else if (isCode(MICROCODE.PREFIX_SS)) segmentOverride = MICROCODE.LOAD_SEG_SS;
+        else if (isCode(MICROCODE.PREFIX_DS)) segmentOverride = MICROCODE.LOAD_SEG_DS;
+        else if (isCode(MICROCODE.PREFIX_ES)) segmentOverride = MICROCODE.LOAD_SEG_ES;
+        else if (isCode(MICROCODE.PREFIX_FS)) segmentOverride = MICROCODE.LOAD_SEG_FS;
+        else if (isCode(MICROCODE.PREFIX_GS)) segmentOverride = MICROCODE.LOAD_SEG_GS;
         decodeOpcode();
-        if (isCode(MICROCODE.PREFIX_OPCODE_32BIT))
-            replaceFlags1632();
     }
 
     //returns microinstruction codes
@@ -5501,7 +6704,18 @@ public class Processor {
     }
 
     //add a new microcode to the sequence
+    //prefixes only go into the header bits, and 16-bit flag codes are swapped for their 32-bit versions here
     public void pushCode(MICROCODE code) {
+        int ordinal = code.ordinal();
+        if (ordinal <= LAST_PREFIX) {
+            prefixFlags |= 1 << ordinal;
+            return;
+        }
+        if ((prefixFlags & OPERAND32_MASK) != 0 && FLAGS32[ordinal] != null)
+            code = FLAGS32[ordinal];
+        //FLAG_NONE does nothing, it's only kept so the GUI can show it
+        if (code == MICROCODE.FLAG_NONE && processorGUICode == null)
+            return;
         this.code[codeLength++] = code;
     }
 
@@ -5529,22 +6743,25 @@ public class Processor {
 
     //is a particular microcode already in the array?
     boolean isCode(MICROCODE code) {
+        int ordinal = code.ordinal();
+        if (ordinal <= LAST_PREFIX)
+            return (prefixFlags & (1 << ordinal)) != 0;
         for (int i = 0; i < codeLength; i++)
             if (this.code[i] == code)
                 return true;
         return false;
     }
 
-    private void removeCode(MICROCODE code) {
-        int i;
-        for (i = 0; i < codeLength; i++)
-            if (this.code[i] == code)
-                break;
-        if (i == codeLength)
-            return;
-        for (int j = i; j < codeLength - 1; j++)
-            this.code[j] = this.code[j + 1];
-        codeLength--;
+    boolean isOperand32() {
+        return (prefixFlags & OPERAND32_MASK) != 0;
+    }
+
+    boolean isAddress32() {
+        return (prefixFlags & ADDRESS32_MASK) != 0;
+    }
+
+    boolean isRepeat() {
+        return (prefixFlags & REPEAT_MASK) != 0;
     }
 
     private void decodePrefix(boolean is32bit) {
@@ -5588,13 +6805,13 @@ public class Processor {
                     if (!is32bit)
                         pushCode(MICROCODE.PREFIX_OPCODE_32BIT);
                     else
-                        removeCode(MICROCODE.PREFIX_OPCODE_32BIT);
+                        prefixFlags &= ~OPERAND32_MASK;
                     break;
                 case 0x67:
                     if (!is32bit)
                         pushCode(MICROCODE.PREFIX_ADDRESS_32BIT);
                     else
-                        removeCode(MICROCODE.PREFIX_ADDRESS_32BIT);
+                        prefixFlags &= ~ADDRESS32_MASK;
                     break;
                 case 0xd8:
                 case 0xd9:
@@ -5633,15 +6850,15 @@ public class Processor {
 
         tableindex = opcode;
 
-        if (processorGUICode != null && isCode(MICROCODE.PREFIX_OPCODE_32BIT))
+        if (processorGUICode != null && isOperand32())
             processorGUICode.push(GUICODE.DECODE_PREFIX, "op32");
-        if (processorGUICode != null && isCode(MICROCODE.PREFIX_ADDRESS_32BIT))
+        if (processorGUICode != null && isAddress32())
             processorGUICode.push(GUICODE.DECODE_PREFIX, "addr32");
-        if (processorGUICode != null && !isCode(MICROCODE.PREFIX_OPCODE_32BIT))
+        if (processorGUICode != null && !isOperand32())
             processorGUICode.push(GUICODE.DECODE_PREFIX, "op16");
-        if (processorGUICode != null && !isCode(MICROCODE.PREFIX_ADDRESS_32BIT))
+        if (processorGUICode != null && !isAddress32())
             processorGUICode.push(GUICODE.DECODE_PREFIX, "addr16");
-        if (processorGUICode != null && (isCode(MICROCODE.PREFIX_REPE) || isCode(MICROCODE.PREFIX_REPNE)))
+        if (processorGUICode != null && isRepeat())
             processorGUICode.push(GUICODE.DECODE_PREFIX, "rep");
         if (processorGUICode != null && isCode(MICROCODE.PREFIX_CS)) processorGUICode.push(GUICODE.DECODE_PREFIX, "cs");
         if (processorGUICode != null && isCode(MICROCODE.PREFIX_SS)) processorGUICode.push(GUICODE.DECODE_PREFIX, "ss");
@@ -5681,7 +6898,7 @@ public class Processor {
 
         //the next byte might be the sib
         sib = -1;
-        if (modrm != -1 && isCode(MICROCODE.PREFIX_ADDRESS_32BIT)) {
+        if (modrm != -1 && isAddress32()) {
             if (sibTable[modrm] == 1) {
                 sib = (0xff & fetchQueue.readByte());
                 fetchQueue.advance(1);
@@ -5693,7 +6910,7 @@ public class Processor {
         //get the displacement, if any
         hasdisplacement = 0;
         if (hasDisplacementTable[tableindex] == 1) {
-            if (!isCode(MICROCODE.PREFIX_ADDRESS_32BIT)) {
+            if (!isAddress32()) {
                 if ((modrm & 0xc0) == 0 && (modrm & 0x7) == 0x6)
                     hasdisplacement = 2;
                 else if ((modrm & 0xc0) == 0x40)
@@ -5716,7 +6933,7 @@ public class Processor {
 
         //handle the special a0-a3 case
         if (hasDisplacementTable[tableindex] == 4) {
-            if (!isCode(MICROCODE.PREFIX_ADDRESS_32BIT))
+            if (!isAddress32())
                 hasdisplacement = 2;
             else
                 hasdisplacement = 4;
@@ -5749,7 +6966,7 @@ public class Processor {
         hasimmediate = hasImmediateTable[tableindex];
 
         //since we're in 16-bit mode, change the 32-bit to 20-bit
-        if (!isCode(MICROCODE.PREFIX_OPCODE_32BIT)) {
+        if (!isOperand32()) {
             if (hasimmediate == 4)
                 hasimmediate = 2;
             else if (hasimmediate == 6)
@@ -5759,9 +6976,9 @@ public class Processor {
         //the una instructions (f6 and f7) may or may not have an immediate, depending on modrm
         if (opcode == 0xf6 && (modrm & 0x38) == 0)
             hasimmediate = 1;
-        else if (opcode == 0xf7 && (modrm & 0x38) == 0 && !isCode(MICROCODE.PREFIX_OPCODE_32BIT))
+        else if (opcode == 0xf7 && (modrm & 0x38) == 0 && !isOperand32())
             hasimmediate = 2;
-        else if (opcode == 0xf7 && (modrm & 0x38) == 0 && isCode(MICROCODE.PREFIX_OPCODE_32BIT))
+        else if (opcode == 0xf7 && (modrm & 0x38) == 0 && isOperand32())
             hasimmediate = 4;
 
         immediate = 0;
@@ -5796,8 +7013,6 @@ public class Processor {
     }
 
     private void decodeOperands(int opcode, int modrm, int sib, int displacement, long immediate, boolean inputOperands) {
-        //30 different operand types
-        int types = 30;
         int opcodeLookup = opcode;
         if (opcodeLookup >= 0xf00)
             opcodeLookup -= 0xe00;
@@ -5806,89 +7021,53 @@ public class Processor {
         int start = inputOperands ? 0 : 2;
         int end = inputOperands ? 2 : 4;
         for (int operand = start; operand < end; operand++) {
-            for (int type = 0; type < types; type++) {
-                if (operandTable[opcodeLookup][type][operand] == 0)
-                    continue;
-
-                if (type == 0)
-                    effective_byte(modrm, sib, displacement, operand);
-                else if (type == 1) {
-                    if (isCode(MICROCODE.PREFIX_OPCODE_32BIT))
-                        effective_double(modrm, sib, displacement, operand);
-                    else
-                        effective_word(modrm, sib, displacement, operand);
-                } else if (type == 2)
-                    register_byte(modrm, operand);
-                else if (type == 3) {
-                    if (isCode(MICROCODE.PREFIX_OPCODE_32BIT))
-                        register_double(modrm, operand);
-                    else
-                        register_word(modrm, operand);
-                } else if (type == 4) {
+            int types = operandTable[(opcodeLookup << 2) | operand];
+            if (types == 0)
+                continue;
+            //an operand listed under several types decodes as the lowest one
+            int type = Integer.numberOfTrailingZeros(types);
+
+            if (type == 0)
+                effective_byte(modrm, sib, displacement, operand);
+            else if (type == 1) {
+                if (isOperand32())
+                    effective_double(modrm, sib, displacement, operand);
+                else
+                    effective_word(modrm, sib, displacement, operand);
+            } else if (type == 2)
+                register_byte(modrm, operand);
+            else if (type == 3) {
+                if (isOperand32())
+                    register_double(modrm, operand);
+                else
+                    register_word(modrm, operand);
+            } else if (type == 4) {
+                if (operand == 0)
+                    pushCode(MICROCODE.LOAD0_IB);
+                else if (operand == 1)
+                    pushCode(MICROCODE.LOAD1_IB);
+                pushCode((int) immediate);
+            } else if (type == 5) {
+                if (isOperand32()) {
                     if (operand == 0)
-                        pushCode(MICROCODE.LOAD0_IB);
+                        pushCode(MICROCODE.LOAD0_ID);
                     else if (operand == 1)
-                        pushCode(MICROCODE.LOAD1_IB);
+                        pushCode(MICROCODE.LOAD1_ID);
                     pushCode((int) immediate);
-                } else if (type == 5) {
-                    if (isCode(MICROCODE.PREFIX_OPCODE_32BIT)) {
-                        if (operand == 0)
-                            pushCode(MICROCODE.LOAD0_ID);
-                        else if (operand == 1)
-                            pushCode(MICROCODE.LOAD1_ID);
-                        pushCode((int) immediate);
-                    } else {
-                        if (operand == 0)
-                            pushCode(MICROCODE.LOAD0_IW);
-                        else if (operand == 1)
-                            pushCode(MICROCODE.LOAD1_IW);
-                        pushCode((int) immediate);
-                    }
-                } else if (type >= 6 && type <= 28) {
-                    MICROCODE c = operandRegisterTable[operand * 23 + type - 6];
-                    if (isCode(MICROCODE.PREFIX_OPCODE_32BIT)) {
-                        if (c == MICROCODE.LOAD0_AX) c = MICROCODE.LOAD0_EAX;
-                        else if (c == MICROCODE.LOAD0_BX) c = MICROCODE.LOAD0_EBX;
-                        else if (c == MICROCODE.LOAD0_CX) c = MICROCODE.LOAD0_ECX;
-                        else if (c == MICROCODE.LOAD0_DX) c = MICROCODE.LOAD0_EDX;
-                        else if (c == MICROCODE.LOAD0_SI) c = MICROCODE.LOAD0_ESI;
-                        else if (c == MICROCODE.LOAD0_DI) c = MICROCODE.LOAD0_EDI;
-                        else if (c == MICROCODE.LOAD0_SP) c = MICROCODE.LOAD0_ESP;
-                        else if (c == MICROCODE.LOAD0_BP) c = MICROCODE.LOAD0_EBP;
-                        else if (c == MICROCODE.LOAD0_FLAGS) c = MICROCODE.LOAD0_EFLAGS;
-                        else if (c == MICROCODE.LOAD1_AX) c = MICROCODE.LOAD1_EAX;
-                        else if (c == MICROCODE.LOAD1_BX) c = MICROCODE.LOAD1_EBX;
-                        else if (c == MICROCODE.LOAD1_CX) c = MICROCODE.LOAD1_ECX;
-                        else if (c == MICROCODE.LOAD1_DX) c = MICROCODE.LOAD1_EDX;
-                        else if (c == MICROCODE.LOAD1_SI) c = MICROCODE.LOAD1_ESI;
-                        else if (c == MICROCODE.LOAD1_DI) c = MICROCODE.LOAD1_EDI;
-                        else if (c == MICROCODE.LOAD1_SP) c = MICROCODE.LOAD1_ESP;
-                        else if (c == MICROCODE.LOAD1_BP) c = MICROCODE.LOAD1_EBP;
-                        else if (c == MICROCODE.LOAD1_FLAGS) c = MICROCODE.LOAD1_EFLAGS;
-                        else if (c == MICROCODE.STORE0_AX) c = MICROCODE.STORE0_EAX;
-                        else if (c == MICROCODE.STORE0_BX) c = MICROCODE.STORE0_EBX;
-                        else if (c == MICROCODE.STORE0_CX) c = MICROCODE.STORE0_ECX;
-                        else if (c == MICROCODE.STORE0_DX) c = MICROCODE.STORE0_EDX;
-                        else if (c == MICROCODE.STORE0_SI) c = MICROCODE.STORE0_ESI;
-                        else if (c == MICROCODE.STORE0_DI) c = MICROCODE.STORE0_EDI;
-                        else if (c == MICROCODE.STORE0_SP) c = MICROCODE.STORE0_ESP;
-                        else if (c == MICROCODE.STORE0_BP) c = MICROCODE.STORE0_EBP;
-                        else if (c == MICROCODE.STORE0_FLAGS) c = MICROCODE.STORE0_EFLAGS;
-                        else if (c == MICROCODE.STORE1_AX) c = MICROCODE.STORE1_EAX;
-                        else if (c == MICROCODE.STORE1_BX) c = MICROCODE.STORE1_EBX;
-                        else if (c == MICROCODE.STORE1_CX) c = MICROCODE.STORE1_ECX;
-                        else if (c == MICROCODE.STORE1_DX) c = MICROCODE.STORE1_EDX;
-                        else if (c == MICROCODE.STORE1_SI) c = MICROCODE.STORE1_ESI;
-                        else if (c == MICROCODE.STORE1_DI) c = MICROCODE.STORE1_EDI;
-                        else if (c == MICROCODE.STORE1_SP) c = MICROCODE.STORE1_ESP;
-                        else if (c == MICROCODE.STORE1_BP) c = MICROCODE.STORE1_EBP;
-                        else if (c == MICROCODE.STORE1_FLAGS) c = MICROCODE.STORE1_EFLAGS;
-                    }
-                    pushCode(c);
-                } else
-                    decodeIrregularOperand(opcode, modrm, sib, displacement, immediate, operand);
-                break;
-            }
+                } else {
+                    if (operand == 0)
+                        pushCode(MICROCODE.LOAD0_IW);
+                    else if (operand == 1)
+                        pushCode(MICROCODE.LOAD1_IW);
+                    pushCode((int) immediate);
+                }
+            } else if (type >= 6 && type <= 28) {
+                if (isOperand32())
+                    pushCode(operandRegisterTable32[operand * 23 + type - 6]);
+                else
+                    pushCode(operandRegisterTable[operand * 23 + type - 6]);
+            } else
+                decodeIrregularOperand(opcode, modrm, sib, displacement, immediate, operand);
         }
 
         //a few instructions have a third input
@@ -5907,7 +7086,7 @@ public class Processor {
                     pushCode(MICROCODE.LOAD2_AL);
                     break;
                 case 0xfb1:
-                    if (isCode(MICROCODE.PREFIX_OPCODE_32BIT))
+                    if (isOperand32())
                         pushCode(MICROCODE.LOAD2_EAX);
                     else
                         pushCode(MICROCODE.LOAD2_AX);
@@ -5917,7 +7096,7 @@ public class Processor {
     }
 
     private void effective_byte(int modrm, int sib, int displacement, int operand) {
-        if ((modrm & 0xc7) >= 0xc0 && (modrm & 0xc7) <= 0xc7)
+        if ((modrm & 0xc0) == 0xc0)
             pushCode(modrmRegisterTable[operand * 9 + (modrm & 7)]);
         else {
             decode_memory(modrm, sib, displacement);
@@ -5926,7 +7105,7 @@ public class Processor {
     }
 
     private void effective_word(int modrm, int sib, int displacement, int operand) {
-        if ((modrm & 0xc7) >= 0xc0 && (modrm & 0xc7) <= 0xc7)
+        if ((modrm & 0xc0) == 0xc0)
             pushCode(modrmRegisterTable[36 + operand * 9 + (modrm & 7)]);
         else {
             decode_memory(modrm, sib, displacement);
@@ -5935,7 +7114,7 @@ public class Processor {
     }
 
     private void effective_double(int modrm, int sib, int displacement, int operand) {
-        if ((modrm & 0xc7) >= 0xc0 && (modrm & 0xc7) <= 0xc7)
+        if ((modrm & 0xc0) == 0xc0)
             pushCode(modrmRegisterTable[72 + operand * 9 + (modrm & 7)]);
         else {
             decode_memory(modrm, sib, displacement);
@@ -5944,7 +7123,7 @@ public class Processor {
     }
 
     private void effective_quad(int modrm, int sib, int displacement, int operand) {
-        if ((modrm & 0xc7) >= 0xc0 && (modrm & 0xc7) <= 0xc7)
+        if ((modrm & 0xc0) == 0xc0)
             panic("Invalid modrm for effective quad");
         else {
             decode_memory(modrm, sib, displacement);
@@ -5972,255 +7151,62 @@ public class Processor {
     }
 
     private void store0_Rd(int modrm) {
-        switch (modrm & 0xc7) {
-            case 0xc0:
-                pushCode(MICROCODE.STORE0_EAX);
-                break;
-            case 0xc1:
-                pushCode(MICROCODE.STORE0_ECX);
-                break;
-            case 0xc2:
-                pushCode(MICROCODE.STORE0_EDX);
-                break;
-            case 0xc3:
-                pushCode(MICROCODE.STORE0_EBX);
-                break;
-            case 0xc4:
-                pushCode(MICROCODE.STORE0_ESP);
-                break;
-            case 0xc5:
-                pushCode(MICROCODE.STORE0_EBP);
-                break;
-            case 0xc6:
-                pushCode(MICROCODE.STORE0_ESI);
-                break;
-            case 0xc7:
-                pushCode(MICROCODE.STORE0_EDI);
-                break;
-            default:
-                panic("Bad store0 Rd");
-        }
+        if ((modrm & 0xc0) == 0xc0)
+            pushCode(modrmRegisterTable[72 + 18 + (modrm & 7)]);
+        else
+            panic("Bad store0 Rd");
     }
 
     private void load0_Rd(int modrm) {
-        switch (modrm & 0xc7) {
-            case 0xc0:
-                pushCode(MICROCODE.LOAD0_EAX);
-                break;
-            case 0xc1:
-                pushCode(MICROCODE.LOAD0_ECX);
-                break;
-            case 0xc2:
-                pushCode(MICROCODE.LOAD0_EDX);
-                break;
-            case 0xc3:
-                pushCode(MICROCODE.LOAD0_EBX);
-                break;
-            case 0xc4:
-                pushCode(MICROCODE.LOAD0_ESP);
-                break;
-            case 0xc5:
-                pushCode(MICROCODE.LOAD0_EBP);
-                break;
-            case 0xc6:
-                pushCode(MICROCODE.LOAD0_ESI);
-                break;
-            case 0xc7:
-                pushCode(MICROCODE.LOAD0_EDI);
-                break;
-            default:
-                panic("Bad store0 Rd");
-        }
+        if ((modrm & 0xc0) == 0xc0)
+            pushCode(modrmRegisterTable[72 + (modrm & 7)]);
+        else
+            panic("Bad store0 Rd");
+    }
+
+    //control, debug and segment registers named by the modrm reg field
+    private void registerField(MICROCODE[] table, int modrm, String error) {
+        MICROCODE code = table[(modrm >> 3) & 7];
+        if (code != null)
+            pushCode(code);
+        else if (error != null)
+            panic(error);
     }
 
     private void load0_Cd(int modrm) {
-        switch (modrm & 0x38) {
-            case 0x00:
-                pushCode(MICROCODE.LOAD0_CR0);
-                break;
-            case 0x10:
-                pushCode(MICROCODE.LOAD0_CR2);
-                break;
-            case 0x18:
-                pushCode(MICROCODE.LOAD0_CR3);
-                break;
-            case 0x20:
-                pushCode(MICROCODE.LOAD0_CR4);
-                break;
-            default:
-                panic("Bad load0 Cd");
-        }
+        registerField(controlLoadTable, modrm, "Bad load0 Cd");
     }
 
     private void store0_Cd(int modrm) {
-        switch (modrm & 0x38) {
-            case 0x00:
-                pushCode(MICROCODE.STORE0_CR0);
-                break;
-            case 0x10:
-                pushCode(MICROCODE.STORE0_CR2);
-                break;
-            case 0x18:
-                pushCode(MICROCODE.STORE0_CR3);
-                break;
-            case 0x20:
-                pushCode(MICROCODE.STORE0_CR4);
-                break;
-            default:
-                panic("Bad load0 Cd");
-        }
+        registerField(controlStoreTable, modrm, "Bad load0 Cd");
     }
 
     private void load0_Dd(int modrm) {
-        switch (modrm & 0x38) {
-            case 0x00:
-                pushCode(MICROCODE.LOAD0_DR0);
-                break;
-            case 0x08:
-                pushCode(MICROCODE.LOAD0_DR1);
-                break;
-            case 0x10:
-                pushCode(MICROCODE.LOAD0_DR2);
-                break;
-            case 0x18:
-                pushCode(MICROCODE.LOAD0_DR3);
-                break;
-            case 0x30:
-                pushCode(MICROCODE.LOAD0_DR6);
-                break;
-            case 0x38:
-                pushCode(MICROCODE.LOAD0_DR7);
-                break;
-            default:
-                panic("Bad load0 Dd");
-        }
+        registerField(debugLoadTable, modrm, "Bad load0 Dd");
     }
 
     private void store0_Dd(int modrm) {
-        switch (modrm & 0x38) {
-            case 0x00:
-                pushCode(MICROCODE.STORE0_DR0);
-                break;
-            case 0x08:
-                pushCode(MICROCODE.STORE0_DR1);
-                break;
-            case 0x10:
-                pushCode(MICROCODE.STORE0_DR2);
-                break;
-            case 0x18:
-                pushCode(MICROCODE.STORE0_DR3);
-                break;
-            case 0x30:
-                pushCode(MICROCODE.STORE0_DR6);
-                break;
-            case 0x38:
-                pushCode(MICROCODE.STORE0_DR7);
-                break;
-            default:
-                panic("Bad store0 Dd");
-        }
-    }
-
-    private void load1_Gd(int modrm) {
-        switch (modrm & 0x38) {
-            case 0x00:
-                pushCode(MICROCODE.LOAD1_EAX);
-                break;
-            case 0x08:
-                pushCode(MICROCODE.LOAD1_ECX);
-                break;
-            case 0x10:
-                pushCode(MICROCODE.LOAD1_EDX);
-                break;
-            case 0x18:
-                pushCode(MICROCODE.LOAD1_EBX);
-                break;
-            case 0x20:
-                pushCode(MICROCODE.LOAD1_ESP);
-                break;
-            case 0x28:
-                pushCode(MICROCODE.LOAD1_EBP);
-                break;
-            case 0x30:
-                pushCode(MICROCODE.LOAD1_ESI);
-                break;
-            case 0x38:
-                pushCode(MICROCODE.LOAD1_EDI);
-                break;
-        }
-    }
-
-    private void load1_Gw(int modrm) {
-        switch (modrm & 0x38) {
-            case 0x00:
-                pushCode(MICROCODE.LOAD1_AX);
-                break;
-            case 0x08:
-                pushCode(MICROCODE.LOAD1_CX);
-                break;
-            case 0x10:
-                pushCode(MICROCODE.LOAD1_DX);
-                break;
-            case 0x18:
-                pushCode(MICROCODE.LOAD1_BX);
-                break;
-            case 0x20:
-                pushCode(MICROCODE.LOAD1_SP);
-                break;
-            case 0x28:
-                pushCode(MICROCODE.LOAD1_BP);
-                break;
-            case 0x30:
-                pushCode(MICROCODE.LOAD1_SI);
-                break;
-            case 0x38:
-                pushCode(MICROCODE.LOAD1_DI);
-                break;
-        }
+        registerField(debugStoreTable, modrm, "Bad store0 Dd");
     }
 
     void decode_memory(int modrm, int sib, int displacement) {
         if (isAddressDecoded()) return;
 
-        if (isCode(MICROCODE.PREFIX_ADDRESS_32BIT)) {
-            //first figure out which segment to access
-            if (isCode(MICROCODE.PREFIX_CS))
-                pushCode(MICROCODE.LOAD_SEG_CS);
-            else if (isCode(MICROCODE.PREFIX_SS))
-                pushCode(MICROCODE.LOAD_SEG_SS);
-            else if (isCode(MICROCODE.PREFIX_DS))
-                pushCode(MICROCODE.LOAD_SEG_DS);
-            else if (isCode(MICROCODE.PREFIX_ES))
-                pushCode(MICROCODE.LOAD_SEG_ES);
-            else if (isCode(MICROCODE.PREFIX_FS))
-                pushCode(MICROCODE.LOAD_SEG_FS);
-            else if (isCode(MICROCODE.PREFIX_GS))
-                pushCode(MICROCODE.LOAD_SEG_GS);
-            else if ((modrm & 0xc7) == 0x45 || (modrm & 0xc7) == 0x55)
-                pushCode(MICROCODE.LOAD_SEG_SS);
-            else if ((modrm & 0xc7) == 0x04 || (modrm & 0xc7) == 0x44 || (modrm & 0xc7) == 0x84) {
-            } else
-                pushCode(MICROCODE.LOAD_SEG_DS);
+        int rm = modrm & 7;
+        if (isAddress32()) {
+            //first figure out which segment to access: sib forms leave it to decodeSIB
+            if (segmentOverride != null)
+                pushCode(segmentOverride);
+            else if (segment32Table[modrm] != null)
+                pushCode(segment32Table[modrm]);
 
-            if ((modrm & 0x7) == 0)
-                pushCode(MICROCODE.ADDR_EAX);
-            else if ((modrm & 0x7) == 1)
-                pushCode(MICROCODE.ADDR_ECX);
-            else if ((modrm & 0x7) == 2)
-                pushCode(MICROCODE.ADDR_EDX);
-            else if ((modrm & 0x7) == 3)
-                pushCode(MICROCODE.ADDR_EBX);
-            else if ((modrm & 0x7) == 4) {
+            if (rm == 4)
                 decodeSIB(modrm, sib, displacement);
-            } else if ((modrm & 0x7) == 5 && (modrm & 0xc0) == 0x00) {
+            else if (rm == 5 && (modrm & 0xc0) == 0x00) {
                 pushCode(MICROCODE.ADDR_ID);
                 pushCode(displacement);
-            } else if ((modrm & 0x7) == 5)
-                pushCode(MICROCODE.ADDR_EBP);
-            else if ((modrm & 0x7) == 6)
-                pushCode(MICROCODE.ADDR_ESI);
-            else if ((modrm & 0x7) == 7)
-                pushCode(MICROCODE.ADDR_EDI);
+            } else
+                pushCode(address32Table[rm]);
 
             //now add the displacement
             if ((modrm & 0xc0) == 0x40) {
@@ -6232,42 +7218,19 @@ public class Processor {
             }
         } else {
             //first figure out which segment to access
-            if (isCode(MICROCODE.PREFIX_CS))
-                pushCode(MICROCODE.LOAD_SEG_CS);
-            else if (isCode(MICROCODE.PREFIX_SS))
-                pushCode(MICROCODE.LOAD_SEG_SS);
-            else if (isCode(MICROCODE.PREFIX_DS))
-                pushCode(MICROCODE.LOAD_SEG_DS);
-            else if (isCode(MICROCODE.PREFIX_ES))
-                pushCode(MICROCODE.LOAD_SEG_ES);
-            else if (isCode(MICROCODE.PREFIX_FS))
-                pushCode(MICROCODE.LOAD_SEG_FS);
-            else if (isCode(MICROCODE.PREFIX_GS))
-                pushCode(MICROCODE.LOAD_SEG_GS);
-            else if ((modrm & 0xc7) == 0x02 || (modrm & 0xc7) == 0x03 || (modrm & 0xc7) == 0x42 || (modrm & 0xc7) == 0x43 || (modrm & 0xc7) == 0x46 || (modrm & 0xc7) == 0x82 || (modrm & 0xc7) == 0x83 || (modrm & 0xc7) == 0x86)
-                pushCode(MICROCODE.LOAD_SEG_SS);
+            if (segmentOverride != null)
+                pushCode(segmentOverride);
             else
-                pushCode(MICROCODE.LOAD_SEG_DS);
+                pushCode(segment16Table[modrm]);
 
-            if ((modrm & 0x7) == 0 || (modrm & 0x7) == 1 || (modrm & 0x7) == 7)
-                pushCode(MICROCODE.ADDR_BX);
-            else if ((modrm & 0x7) == 2 || (modrm & 0x7) == 3)
-                pushCode(MICROCODE.ADDR_BP);
-            else if ((modrm & 0x7) == 4)
-                pushCode(MICROCODE.ADDR_SI);
-            else if ((modrm & 0x7) == 5)
-                pushCode(MICROCODE.ADDR_DI);
-            else if ((modrm & 0xc0) != 0)
-                pushCode(MICROCODE.ADDR_BP);
-            else {
+            //base, then SI or DI for the forms that add one
+            if (rm == 6 && (modrm & 0xc0) == 0) {
                 pushCode(MICROCODE.ADDR_IW);
                 pushCode(displacement);
-            }
-            //in some cases SI or DI is added
-            if ((modrm & 0x7) == 0 || (modrm & 0x7) == 2)
-                pushCode(MICROCODE.ADDR_SI);
-            else if ((modrm & 0x7) == 1 || (modrm & 0x7) == 3)
-                pushCode(MICROCODE.ADDR_DI);
+            } else
+                pushCode(address16Table[rm]);
+            if (address16Table[8 + rm] != null)
+                pushCode(address16Table[8 + rm]);
 
             //now add the displacement
             if ((modrm & 0xc0) == 0x40) {
@@ -6282,12 +7245,7 @@ public class Processor {
     }
 
     private void decodeSIB(int modrm, int sib, int displacement) {
-        if (isCode(MICROCODE.PREFIX_CS)) pushCode(MICROCODE.LOAD_SEG_CS);
-        else if (isCode(MICROCODE.PREFIX_SS)) pushCode(MICROCODE.LOAD_SEG_SS);
-        else if (isCode(MICROCODE.PREFIX_DS)) pushCode(MICROCODE.LOAD_SEG_DS);
-        else if (isCode(MICROCODE.PREFIX_ES)) pushCode(MICROCODE.LOAD_SEG_ES);
-        else if (isCode(MICROCODE.PREFIX_FS)) pushCode(MICROCODE.LOAD_SEG_FS);
-        else if (isCode(MICROCODE.PREFIX_GS)) pushCode(MICROCODE.LOAD_SEG_GS);
+        if (segmentOverride != null) pushCode(segmentOverride);
         else {
             if ((sib & 0x7) == 0x4)
                 pushCode(MICROCODE.LOAD_SEG_SS);
@@ -6299,138 +7257,29 @@ public class Processor {
             } else
                 pushCode(MICROCODE.LOAD_SEG_DS);
         }
-        if ((sib & 0x7) == 0) pushCode(MICROCODE.ADDR_EAX);
-        else if ((sib & 0x7) == 1) pushCode(MICROCODE.ADDR_ECX);
-        else if ((sib & 0x7) == 2) pushCode(MICROCODE.ADDR_EDX);
-        else if ((sib & 0x7) == 3) pushCode(MICROCODE.ADDR_EBX);
-        else if ((sib & 0x7) == 4) pushCode(MICROCODE.ADDR_ESP);
-        else if ((sib & 0x7) == 6) pushCode(MICROCODE.ADDR_ESI);
-        else if ((sib & 0x7) == 7) pushCode(MICROCODE.ADDR_EDI);
-        else if ((modrm & 0xc0) != 0) pushCode(MICROCODE.ADDR_EBP);
-        else {
+        //base: EBP becomes a displacement when there's no modrm displacement
+        if ((sib & 0x7) == 5 && (modrm & 0xc0) == 0) {
             pushCode(MICROCODE.ADDR_ID);
             pushCode(displacement);
-        }
+        } else
+            pushCode(address32Table[sib & 7]);
 
-        switch (sib & 0xf8) {
-            case 0x00:
-                pushCode(MICROCODE.ADDR_EAX);
-                break;
-            case 0x08:
-                pushCode(MICROCODE.ADDR_ECX);
-                break;
-            case 0x10:
-                pushCode(MICROCODE.ADDR_EDX);
-                break;
-            case 0x18:
-                pushCode(MICROCODE.ADDR_EBX);
-                break;
-            case 0x28:
-                pushCode(MICROCODE.ADDR_EBP);
-                break;
-            case 0x30:
-                pushCode(MICROCODE.ADDR_ESI);
-                break;
-            case 0x38:
-                pushCode(MICROCODE.ADDR_EDI);
-                break;
-            case 0x40:
-                pushCode(MICROCODE.ADDR_2EAX);
-                break;
-            case 0x48:
-                pushCode(MICROCODE.ADDR_2ECX);
-                break;
-            case 0x50:
-                pushCode(MICROCODE.ADDR_2EDX);
-                break;
-            case 0x58:
-                pushCode(MICROCODE.ADDR_2EBX);
-                break;
-            case 0x68:
-                pushCode(MICROCODE.ADDR_2EBP);
-                break;
-            case 0x70:
-                pushCode(MICROCODE.ADDR_2ESI);
-                break;
-            case 0x78:
-                pushCode(MICROCODE.ADDR_2EDI);
-                break;
-            case 0x80:
-                pushCode(MICROCODE.ADDR_4EAX);
-                break;
-            case 0x88:
-                pushCode(MICROCODE.ADDR_4ECX);
-                break;
-            case 0x90:
-                pushCode(MICROCODE.ADDR_4EDX);
-                break;
-            case 0x98:
-                pushCode(MICROCODE.ADDR_4EBX);
-                break;
-            case 0xa8:
-                pushCode(MICROCODE.ADDR_4EBP);
-                break;
-            case 0xb0:
-                pushCode(MICROCODE.ADDR_4ESI);
-                break;
-            case 0xb8:
-                pushCode(MICROCODE.ADDR_4EDI);
-                break;
-            case 0xc0:
-                pushCode(MICROCODE.ADDR_8EAX);
-                break;
-            case 0xc8:
-                pushCode(MICROCODE.ADDR_8ECX);
-                break;
-            case 0xd0:
-                pushCode(MICROCODE.ADDR_8EDX);
-                break;
-            case 0xd8:
-                pushCode(MICROCODE.ADDR_8EBX);
-                break;
-            case 0xe8:
-                pushCode(MICROCODE.ADDR_8EBP);
-                break;
-            case 0xf0:
-                pushCode(MICROCODE.ADDR_8ESI);
-                break;
-            case 0xf8:
-                pushCode(MICROCODE.ADDR_8EDI);
-                break;
-        }
+        //scaled index, none for ESP
+        if (sibIndexTable[(sib >> 3) & 0x1f] != null)
+            pushCode(sibIndexTable[(sib >> 3) & 0x1f]);
     }
 
     private void decodeSegmentPrefix() {
-        if (isCode(MICROCODE.PREFIX_CS))
-            pushCode(MICROCODE.LOAD_SEG_CS);
-        else if (isCode(MICROCODE.PREFIX_SS))
-            pushCode(MICROCODE.LOAD_SEG_SS);
-        else if (isCode(MICROCODE.PREFIX_DS))
-            pushCode(MICROCODE.LOAD_SEG_DS);
-        else if (isCode(MICROCODE.PREFIX_ES))
-            pushCode(MICROCODE.LOAD_SEG_ES);
-        else if (isCode(MICROCODE.PREFIX_FS))
-            pushCode(MICROCODE.LOAD_SEG_FS);
-        else if (isCode(MICROCODE.PREFIX_GS))
-            pushCode(MICROCODE.LOAD_SEG_GS);
+        if (segmentOverride != null)
+            pushCode(segmentOverride);
         else
             pushCode(MICROCODE.LOAD_SEG_DS);
     }
 
     private void decodeO(int modrm, int displacement) {
         //first figure out which segment to access
-        if (isCode(MICROCODE.PREFIX_CS))
-            pushCode(MICROCODE.LOAD_SEG_CS);
-        else if (isCode(MICROCODE.PREFIX_SS))
-            pushCode(MICROCODE.LOAD_SEG_SS);
-        else if (isCode(MICROCODE.PREFIX_DS))
-            pushCode(MICROCODE.LOAD_SEG_DS);
-        else if (isCode(MICROCODE.PREFIX_ES))
-            pushCode(MICROCODE.LOAD_SEG_ES);
-        else if (isCode(MICROCODE.PREFIX_FS))
-            pushCode(MICROCODE.LOAD_SEG_FS);
-        else if (isCode(MICROCODE.PREFIX_GS))
-            pushCode(MICROCODE.LOAD_SEG_GS);
+        if (segmentOverride != null)
+            pushCode(segmentOverride);
         else if ((modrm & 0xc7) == 0x02 || (modrm & 0xc7) == 0x03 || (modrm & 0xc7) == 0x42 || (modrm & 0xc7) == 0x43 || (modrm & 0xc7) == 0x46 || (modrm & 0xc7) == 0x82 || (modrm & 0xc7) == 0x83 || (modrm & 0xc7) == 0x86)
             pushCode(MICROCODE.LOAD_SEG_SS);
         else
@@ -6438,7 +7287,7 @@ public class Processor {
 
         if (isAddressDecoded()) return;
 
-        if (isCode(MICROCODE.PREFIX_ADDRESS_32BIT))
+        if (isAddress32())
             pushCode(MICROCODE.ADDR_ID);
         else {
             pushCode(MICROCODE.ADDR_IW);
@@ -6473,7 +7322,7 @@ public class Processor {
                     break;
                 case 0xea:
                 case 0x9a:    //far jump or call
-                    if (isCode(MICROCODE.PREFIX_OPCODE_32BIT)) {
+                    if (isOperand32()) {
                         pushCode(MICROCODE.LOAD0_ID);
                         pushCode((int) immediate);
                     } else {
@@ -6486,27 +7335,7 @@ public class Processor {
                     pushCode(MICROCODE.LOAD0_ADDR);
                     break;
                 case 0x8c:    //store to segment register
-                    switch (modrm & 0x38) {
-                        case 0x00:
-                            pushCode(MICROCODE.LOAD0_ES);
-                            break;
-                        case 0x08:
-                            pushCode(MICROCODE.LOAD0_CS);
-                            break;
-                        case 0x10:
-                            pushCode(MICROCODE.LOAD0_SS);
-                            break;
-                        case 0x18:
-                            pushCode(MICROCODE.LOAD0_DS);
-                            break;
-                        case 0x20:
-                            pushCode(MICROCODE.LOAD0_FS);
-                            break;
-                        case 0x28:
-                            pushCode(MICROCODE.LOAD0_GS);
-                            break;
-//				default: panic("Bad segment operand");
-                    }
+                    registerField(segmentLoadTable, modrm, null);
                     break;
                 case 0xa0:
                     decodeO(modrm, displacement);
@@ -6514,7 +7343,7 @@ public class Processor {
                     break;
                 case 0xa1:
                     decodeO(modrm, displacement);
-                    if (isCode(MICROCODE.PREFIX_OPCODE_32BIT))
+                    if (isOperand32())
                         pushCode(MICROCODE.LOAD0_MEM_DOUBLE);
                     else
                         pushCode(MICROCODE.LOAD0_MEM_WORD);
@@ -6538,19 +7367,8 @@ public class Processor {
                     pushCode((int) (0xffffl & immediate));
                     break;
                 case 0xd7:
-                    if (isCode(MICROCODE.PREFIX_CS))
-                        pushCode(MICROCODE.LOAD_SEG_CS);
-                    else if (isCode(MICROCODE.PREFIX_SS))
-                        pushCode(MICROCODE.LOAD_SEG_SS);
-                    else if (isCode(MICROCODE.PREFIX_ES))
-                        pushCode(MICROCODE.LOAD_SEG_ES);
-                    else if (isCode(MICROCODE.PREFIX_FS))
-                        pushCode(MICROCODE.LOAD_SEG_FS);
-                    else if (isCode(MICROCODE.PREFIX_GS))
-                        pushCode(MICROCODE.LOAD_SEG_GS);
-                    else
-                        pushCode(MICROCODE.LOAD_SEG_DS);
-                    if (isCode(MICROCODE.PREFIX_ADDRESS_32BIT)) {
+                    decodeSegmentPrefix();
+                    if (isAddress32()) {
                         pushCode(MICROCODE.ADDR_EBX);
                         pushCode(MICROCODE.ADDR_AL);
                     } else {
@@ -6582,76 +7400,19 @@ public class Processor {
                 case 0xf23:
                     load0_Rd(modrm);
                     break;
-                //bt btr bts btc
-                case 0xfab:
-                case 0xfa3:
-                case 0xfbb:
-                case 0xfb3:
-                case 0xfba:
-                    if (isCode(MICROCODE.PREFIX_OPCODE_32BIT)) {
-                        switch (modrm & 0xc7) {
-                            case 0xc0:
-                                pushCode(MICROCODE.LOAD0_EAX);
-                                break;
-                            case 0xc1:
-                                pushCode(MICROCODE.LOAD0_ECX);
-                                break;
-                            case 0xc2:
-                                pushCode(MICROCODE.LOAD0_EDX);
-                                break;
-                            case 0xc3:
-                                pushCode(MICROCODE.LOAD0_EBX);
-                                break;
-                            case 0xc4:
-                                pushCode(MICROCODE.LOAD0_ESP);
-                                break;
-                            case 0xc5:
-                                pushCode(MICROCODE.LOAD0_EBP);
-                                break;
-                            case 0xc6:
-                                pushCode(MICROCODE.LOAD0_ESI);
-                                break;
-                            case 0xc7:
-                                pushCode(MICROCODE.LOAD0_EDI);
-                                break;
-                            default:
-                                decode_memory(modrm, sib, displacement);
-                                break;
-                        }
-                    } else {
-                        switch (modrm & 0xc7) {
-                            case 0xc0:
-                                pushCode(MICROCODE.LOAD0_AX);
-                                break;
-                            case 0xc1:
-                                pushCode(MICROCODE.LOAD0_CX);
-                                break;
-                            case 0xc2:
-                                pushCode(MICROCODE.LOAD0_DX);
-                                break;
-                            case 0xc3:
-                                pushCode(MICROCODE.LOAD0_BX);
-                                break;
-                            case 0xc4:
-                                pushCode(MICROCODE.LOAD0_SP);
-                                break;
-                            case 0xc5:
-                                pushCode(MICROCODE.LOAD0_BP);
-                                break;
-                            case 0xc6:
-                                pushCode(MICROCODE.LOAD0_SI);
-                                break;
-                            case 0xc7:
-                                pushCode(MICROCODE.LOAD0_DI);
-                                break;
-                            default:
-                                decode_memory(modrm, sib, displacement);
-                                break;
-                        }
-                    }
+                //bt btr bts btc
+                case 0xfab:
+                case 0xfa3:
+                case 0xfbb:
+                case 0xfb3:
+                case 0xfba:
+                    if ((modrm & 0xc0) == 0xc0)
+                        pushCode(modrmRegisterTable[(isOperand32() ? 72 : 36) + (modrm & 7)]);
+                    else
+                        decode_memory(modrm, sib, displacement);
                     break;
                 case 0x62:
-                    if (isCode(MICROCODE.PREFIX_OPCODE_32BIT))
+                    if (isOperand32())
                         effective_quad(modrm, sib, displacement, operand);
                     else
                         effective_double(modrm, sib, displacement, operand);
@@ -6671,7 +7432,7 @@ public class Processor {
                     break;
                 case 0xea:
                 case 0x9a:    //far jump or call
-                    if (isCode(MICROCODE.PREFIX_OPCODE_32BIT)) {
+                    if (isOperand32()) {
                         pushCode(MICROCODE.LOAD1_IW);
                         pushCode((int) (immediate >>> 32));
                     } else {
@@ -6686,7 +7447,7 @@ public class Processor {
                     }
                     break;
                 case 0xf7:    //una
-                    if (isCode(MICROCODE.PREFIX_OPCODE_32BIT)) {
+                    if (isOperand32()) {
                         if ((modrm & 0x38) == 0) {
                             pushCode(MICROCODE.LOAD1_ID);
                             pushCode((int) immediate);
@@ -6701,7 +7462,7 @@ public class Processor {
                 case 0xff:    //various jumps
                     if ((modrm & 0x38) == 0x18 || (modrm & 0x38) == 0x28) {
                         pushCode(MICROCODE.ADDR_IB);
-                        if (isCode(MICROCODE.PREFIX_OPCODE_32BIT))
+                        if (isOperand32())
                             pushCode(4);
                         else
                             pushCode(2);
@@ -6719,7 +7480,7 @@ public class Processor {
                 case 0xfb4:
                 case 0xfb5:
                     pushCode(MICROCODE.ADDR_IB);
-                    if (isCode(MICROCODE.PREFIX_OPCODE_32BIT))
+                    if (isOperand32())
                         pushCode(4);
                     else
                         pushCode(2);
@@ -6742,17 +7503,17 @@ public class Processor {
                 case 0xfa3:
                 case 0xfbb:
                 case 0xfb3:
-                    if (isCode(MICROCODE.PREFIX_OPCODE_32BIT))
-                        load1_Gd(modrm);
+                    if (isOperand32())
+                        register_double(modrm, 1);
                     else
-                        load1_Gw(modrm);
+                        register_word(modrm, 1);
                     break;
                 //bound
                 case 0x62:
-                    if (isCode(MICROCODE.PREFIX_OPCODE_32BIT))
-                        load1_Gd(modrm);
+                    if (isOperand32())
+                        register_double(modrm, 1);
                     else
-                        load1_Gw(modrm);
+                        register_word(modrm, 1);
                     break;
                 default:
                     panic("Need to decode irregular input 1 operand: " + opcode);
@@ -6763,32 +7524,11 @@ public class Processor {
         else if (operand == 2) {
             switch (opcode) {
                 case 0x8e:    //store to segment register
-                    switch (modrm & 0x38) {
-                        case 0x00:
-                            pushCode(MICROCODE.STORE0_ES);
-                            break;
-                        case 0x08:
-                            pushCode(MICROCODE.STORE0_CS);
-                            break;
-                        case 0x10:
-                            pushCode(MICROCODE.STORE0_SS);
-                            break;
-                        case 0x18:
-                            pushCode(MICROCODE.STORE0_DS);
-                            break;
-                        case 0x20:
-                            pushCode(MICROCODE.STORE0_FS);
-                            break;
-                        case 0x28:
-                            pushCode(MICROCODE.STORE0_GS);
-                            break;
-                        default:
-                            panic("Bad segment operand");
-                    }
+                    registerField(segmentStoreTable, modrm, "Bad segment operand");
                     break;
                 case 0xff:
                     if ((modrm & 0x38) == 0x00 || (modrm & 0x38) == 0x08) {
-                        if (isCode(MICROCODE.PREFIX_OPCODE_32BIT))
+                        if (isOperand32())
                             effective_double(modrm, sib, displacement, 2);
                         else
                             effective_word(modrm, sib, displacement, 2);
@@ -6801,7 +7541,7 @@ public class Processor {
                     break;
                 case 0xf7:
                     if ((modrm & 0x38) == 0x10 || (modrm & 0x38) == 0x18) {
-                        if (isCode(MICROCODE.PREFIX_OPCODE_32BIT))
+                        if (isOperand32())
                             effective_double(modrm, sib, displacement, 2);
                         else
                             effective_word(modrm, sib, displacement, 2);
@@ -6813,7 +7553,7 @@ public class Processor {
                     break;
                 case 0xa3:
                     decodeO(modrm, displacement);
-                    if (isCode(MICROCODE.PREFIX_OPCODE_32BIT))
+                    if (isOperand32())
                         pushCode(MICROCODE.STORE0_MEM_DOUBLE);
                     else
                         pushCode(MICROCODE.STORE0_MEM_WORD);
@@ -6826,7 +7566,7 @@ public class Processor {
                 case 0x81:
                 case 0x83:
                     if ((modrm & 0x38) != 0x38) {
-                        if (isCode(MICROCODE.PREFIX_OPCODE_32BIT))
+                        if (isOperand32())
                             effective_double(modrm, sib, displacement, 2);
                         else
                             effective_word(modrm, sib, displacement, 2);
@@ -6837,7 +7577,7 @@ public class Processor {
                 case 0xfb3:
                 case 0xfbb:
                     if ((modrm & 0xc0) == 0xc0) {
-                        if (isCode(MICROCODE.PREFIX_OPCODE_32BIT))
+                        if (isOperand32())
                             effective_double(modrm, sib, displacement, 2);
                         else
                             effective_word(modrm, sib, displacement, 2);
@@ -6847,7 +7587,7 @@ public class Processor {
                 case 0xfba:
                     if ((modrm & 0x38) == 0x28 || (modrm & 0x38) == 0x30 || (modrm & 0x38) == 0x38) {
                         if ((modrm & 0xc0) == 0xc0) {
-                            if (isCode(MICROCODE.PREFIX_OPCODE_32BIT))
+                            if (isOperand32())
                                 effective_double(modrm, sib, displacement, 2);
                             else
                                 effective_word(modrm, sib, displacement, 2);
@@ -6857,39 +7597,14 @@ public class Processor {
                     if ((modrm & 0x38) == 0)
                         effective_word(modrm, sib, displacement, 2);
                     else if ((modrm & 0x38) == 0x8) {
-                        if (isCode(MICROCODE.PREFIX_OPCODE_32BIT)) {
-                            switch (modrm & 0xc7) {
-                                case 0xc0:
-                                    pushCode(MICROCODE.STORE0_EAX);
-                                    break;
-                                case 0xc1:
-                                    pushCode(MICROCODE.STORE0_ECX);
-                                    break;
-                                case 0xc2:
-                                    pushCode(MICROCODE.STORE0_EDX);
-                                    break;
-                                case 0xc3:
-                                    pushCode(MICROCODE.STORE0_EBX);
-                                    break;
-                                case 0xc4:
-                                    pushCode(MICROCODE.STORE0_ESP);
-                                    break;
-                                case 0xc5:
-                                    pushCode(MICROCODE.STORE0_EBP);
-                                    break;
-                                case 0xc6:
-                                    pushCode(MICROCODE.STORE0_ESI);
-                                    break;
-                                case 0xc7:
-                                    pushCode(MICROCODE.STORE0_EDI);
-                                    break;
-                                default:
-                                    decode_memory(modrm, sib, displacement);
-                                    pushCode(MICROCODE.STORE0_MEM_WORD);
-                                    break;
-                            }
-                        } else
+                        if (!isOperand32())
                             effective_word(modrm, sib, displacement, 2);
+                        else if ((modrm & 0xc0) == 0xc0)
+                            pushCode(modrmRegisterTable[72 + 18 + (modrm & 7)]);
+                        else {
+                            decode_memory(modrm, sib, displacement);
+                            pushCode(MICROCODE.STORE0_MEM_WORD);
+                        }
                     }
                     break;
                 case 0xf01:
@@ -6943,121 +7658,21 @@ public class Processor {
         if (tableindex >= 0x0f00)
             tableindex -= 0xe00;
         MICROCODE code = flagTable[tableindex];
-        if (code == MICROCODE.FLAG_ROTATE_08) {
-            int val = ((modrm & 0x38) >> 3);
-            code = rotationTable[val];
-            pushCode(code);
-        } else if (code == MICROCODE.FLAG_ROTATE_16) {
-            int val = ((modrm & 0x38) >> 3);
-            code = rotationTable[8 + val];
-            pushCode(code);
-        } else if (code == MICROCODE.FLAG_80_82) {
-            switch (modrm & 0x38) {
-                case 0x00:
-                    pushCode(MICROCODE.FLAG_ADD_08);
-                    break;
-                case 0x08:
-                    pushCode(MICROCODE.FLAG_BITWISE_08);
-                    break;
-                case 0x10:
-                    pushCode(MICROCODE.FLAG_ADC_08);
-                    break;
-                case 0x18:
-                    pushCode(MICROCODE.FLAG_SBB_08);
-                    break;
-                case 0x20:
-                    pushCode(MICROCODE.FLAG_BITWISE_08);
-                    break;
-                case 0x28:
-                    pushCode(MICROCODE.FLAG_SUB_08);
-                    break;
-                case 0x30:
-                    pushCode(MICROCODE.FLAG_BITWISE_08);
-                    break;
-                case 0x38:
-                    pushCode(MICROCODE.FLAG_SUB_08);
-                    break;
-            }
-        } else if (code == MICROCODE.FLAG_81_83) {
-            switch (modrm & 0x38) {
-                case 0x00:
-                    pushCode(MICROCODE.FLAG_ADD_16);
-                    break;
-                case 0x08:
-                    pushCode(MICROCODE.FLAG_BITWISE_16);
-                    break;
-                case 0x10:
-                    pushCode(MICROCODE.FLAG_ADC_16);
-                    break;
-                case 0x18:
-                    pushCode(MICROCODE.FLAG_SBB_16);
-                    break;
-                case 0x20:
-                    pushCode(MICROCODE.FLAG_BITWISE_16);
-                    break;
-                case 0x28:
-                    pushCode(MICROCODE.FLAG_SUB_16);
-                    break;
-                case 0x30:
-                    pushCode(MICROCODE.FLAG_BITWISE_16);
-                    break;
-                case 0x38:
-                    pushCode(MICROCODE.FLAG_SUB_16);
-                    break;
-            }
+        //group opcodes pick their flags by the modrm reg field
+        MICROCODE[] group = flagGroupTable[tableindex];
+        if (group != null) {
+            if (group[(modrm >> 3) & 7] != null)
+                pushCode(group[(modrm >> 3) & 7]);
         } else if (code == MICROCODE.FLAG_REP_SUB_08) {
-            if (isCode(MICROCODE.PREFIX_REPNE) || isCode(MICROCODE.PREFIX_REPE))
+            if (isRepeat())
                 pushCode(MICROCODE.FLAG_REP_SUB_08);
             else
                 pushCode(MICROCODE.FLAG_SUB_08);
         } else if (code == MICROCODE.FLAG_REP_SUB_16) {
-            if (isCode(MICROCODE.PREFIX_REPNE) || isCode(MICROCODE.PREFIX_REPE))
+            if (isRepeat())
                 pushCode(MICROCODE.FLAG_REP_SUB_16);
             else
                 pushCode(MICROCODE.FLAG_SUB_16);
-        } else if (code == MICROCODE.FLAG_F6) {
-            switch (modrm & 0x38) {
-                case 0x00:
-                    pushCode(MICROCODE.FLAG_BITWISE_08);
-                    break;
-                case 0x18:
-                    pushCode(MICROCODE.FLAG_NEG_08);
-                    break;
-            }
-        } else if (code == MICROCODE.FLAG_F7) {
-            switch (modrm & 0x38) {
-                case 0x00:
-                    pushCode(MICROCODE.FLAG_BITWISE_16);
-                    break;
-                case 0x18:
-                    pushCode(MICROCODE.FLAG_NEG_16);
-                    break;
-            }
-        }
-/*	else if (code==MICROCODE.FLAG_8F)
-	{
-//		panic("Need to implement flags for instruction 0x8F");
-		if(!isCode(MICROCODE.STORE0_SP))
-			pushCode(MICROCODE.STORE1_ESP);
-	}*/
-        else if (code == MICROCODE.FLAG_FE) {
-            switch (modrm & 0x38) {
-                case 0x00:
-                    pushCode(MICROCODE.FLAG_INC_08);
-                    break;
-                case 0x08:
-                    pushCode(MICROCODE.FLAG_DEC_08);
-                    break;
-            }
-        } else if (code == MICROCODE.FLAG_FF) {
-            switch (modrm & 0x38) {
-                case 0x00:
-                    pushCode(MICROCODE.FLAG_INC_16);
-                    break;
-                case 0x08:
-                    pushCode(MICROCODE.FLAG_DEC_16);
-                    break;
-            }
         } else if (code == MICROCODE.FLAG_UNIMPLEMENTED)
             panic("Unimplemented flag code " + opcode);
         else if (code == MICROCODE.FLAG_BAD)
@@ -7076,7 +7691,7 @@ public class Processor {
         //a few codes need to be decoded further
         if (code == MICROCODE.OP_CBW)    //CBW: 0x98
         {
-            if (!isCode(MICROCODE.PREFIX_OPCODE_32BIT)) {
+            if (!isOperand32()) {
                 pushCode(MICROCODE.LOAD0_AL);
                 pushCode(MICROCODE.OP_SIGN_EXTEND_8_16);
                 pushCode(MICROCODE.STORE0_AX);
@@ -7106,206 +7721,18 @@ public class Processor {
             else
                 pushCode(code);
         } else if (code == MICROCODE.OP_FBA) {
-            switch (modrm & 0x38) {
-                case 0x20:
-                    if ((modrm & 0xc7) >= 0xc0 && (modrm & 0xc7) <= 0xc7)
-                        pushCode(MICROCODE.OP_BT_16_32);
-                    else
-                        pushCode(MICROCODE.OP_BT_MEM);
-                    break;
-                case 0x28:
-                    if ((modrm & 0xc7) >= 0xc0 && (modrm & 0xc7) <= 0xc7)
-                        pushCode(MICROCODE.OP_BTS_16_32);
-                    else
-                        pushCode(MICROCODE.OP_BTS_MEM);
-                    break;
-                case 0x30:
-                    if ((modrm & 0xc7) >= 0xc0 && (modrm & 0xc7) <= 0xc7)
-                        pushCode(MICROCODE.OP_BTR_16_32);
-                    else
-                        pushCode(MICROCODE.OP_BTR_MEM);
-                    break;
-                case 0x38:
-                    if ((modrm & 0xc7) >= 0xc0 && (modrm & 0xc7) <= 0xc7)
-                        pushCode(MICROCODE.OP_BTC_16_32);
-                    else
-                        pushCode(MICROCODE.OP_BTC_MEM);
-                    break;
-                default:
-                    panic("invalid OP_FBA");
-            }
-        } else if (code == MICROCODE.OP_ROTATE_08)    //rotates: 0xc0, 0xd0, 0xd2
-        {
-            int val = ((modrm & 0x38) >> 3);
-            code = rotationTable[16 + val];
-            pushCode(code);
-        } else if (code == MICROCODE.OP_ROTATE_16_32)    //rotates: 0xc1, 0xd1, 0xd3
-        {
-            int val = ((modrm & 0x38) >> 3);
-            code = rotationTable[24 + val];
-            pushCode(code);
-        } else if (code == MICROCODE.OP_80_83)    //imm: 80, 81, 82, 83
-        {
-            switch (modrm & 0x38) {
-                case 0x00:
-                    pushCode(MICROCODE.OP_ADD);
-                    break;
-                case 0x08:
-                    pushCode(MICROCODE.OP_OR);
-                    break;
-                case 0x10:
-                    pushCode(MICROCODE.OP_ADC);
-                    break;
-                case 0x18:
-                    pushCode(MICROCODE.OP_SBB);
-                    break;
-                case 0x20:
-                    pushCode(MICROCODE.OP_AND);
-                    break;
-                case 0x28:
-                    pushCode(MICROCODE.OP_SUB);
-                    break;
-                case 0x30:
-                    pushCode(MICROCODE.OP_XOR);
-                    break;
-                case 0x38:
-                    pushCode(MICROCODE.OP_SUB);
-                    break;
-            }
-        } else if (code == MICROCODE.OP_F6)    //una
-        {
-            switch (modrm & 0x38) {
-                case 0x00:
-                    pushCode(MICROCODE.OP_AND);
-                    break;
-                case 0x10:
-                    pushCode(MICROCODE.OP_NOT);
-                    break;
-                case 0x18:
-                    pushCode(MICROCODE.OP_NEG);
-                    break;
-                case 0x20:
-                    pushCode(MICROCODE.OP_MUL_08);
-                    break;
-                case 0x28:
-                    pushCode(MICROCODE.OP_IMULA_08);
-                    break;
-                case 0x30:
-                    pushCode(MICROCODE.OP_DIV_08);
-                    break;
-                case 0x38:
-                    pushCode(MICROCODE.OP_IDIV_08);
-                    break;
-//			default:	panic("Bad UNA F6");
-            }
-        } else if (code == MICROCODE.OP_F7)    //una
-        {
-            switch (modrm & 0x38) {
-                case 0x00:
-                    pushCode(MICROCODE.OP_AND);
-                    break;
-                case 0x10:
-                    pushCode(MICROCODE.OP_NOT);
-                    break;
-                case 0x18:
-                    pushCode(MICROCODE.OP_NEG);
-                    break;
-                case 0x20:
-                    pushCode(MICROCODE.OP_MUL_16_32);
-                    break;
-                case 0x28:
-                    pushCode(MICROCODE.OP_IMULA_16_32);
-                    break;
-                case 0x30:
-                    pushCode(MICROCODE.OP_DIV_16_32);
-                    break;
-                case 0x38:
-                    pushCode(MICROCODE.OP_IDIV_16_32);
-                    break;
-//			default:	panic("Bad UNA F7");
-            }
-        } else if (code == MICROCODE.OP_FE) {
-            switch (modrm & 0x38) {
-                case 0x00:
-                    pushCode(MICROCODE.OP_INC);
-                    break;
-                case 0x08:
-                    pushCode(MICROCODE.OP_DEC);
-                    break;
-            }
-        } else if (code == MICROCODE.OP_FF) {
-            switch (modrm & 0x38) {
-                case 0x00:
-                    pushCode(MICROCODE.OP_INC);
-                    break;
-                case 0x08:
-                    pushCode(MICROCODE.OP_DEC);
-                    break;
-                case 0x10:
-                    pushCode(MICROCODE.OP_CALL_ABS);
-                    break;
-                case 0x18:
-                    pushCode(MICROCODE.OP_CALL_FAR);
-                    break;
-                case 0x20:
-                    pushCode(MICROCODE.OP_JMP_ABS);
-                    break;
-                case 0x28:
-                    pushCode(MICROCODE.OP_JMP_FAR);
-                    break;
-                case 0x30:
-                    pushCode(MICROCODE.OP_PUSH);
-                    break;
-                default:    //panic("Invalid operation FF code");
-            }
-        } else if (code == MICROCODE.OP_F00) {
-            switch (modrm & 0x38) {
-                case 0x00:
-                    pushCode(MICROCODE.OP_SLDT);
-                    break;
-                case 0x08:
-                    pushCode(MICROCODE.OP_STR);
-                    break;
-                case 0x10:
-                    pushCode(MICROCODE.OP_LLDT);
-                    break;
-                case 0x18:
-                    pushCode(MICROCODE.OP_LTR);
-                    break;
-                case 0x20:
-                    pushCode(MICROCODE.OP_VERR);
-                    break;
-                case 0x28:
-                    pushCode(MICROCODE.OP_VERW);
-                    break;
-                default:
-                    panic("Invalid operation F00 code: " + (modrm & 0x38));
-                    break;
-            }
-        } else if (code == MICROCODE.OP_F01) {
-            switch (modrm & 0x38) {
-                case 0x00:
-                    pushCode(MICROCODE.OP_SGDT);
-                    break;
-                case 0x08:
-                    pushCode(MICROCODE.OP_SIDT);
-                    break;
-                case 0x10:
-                    pushCode(MICROCODE.OP_LGDT);
-                    break;
-                case 0x18:
-                    pushCode(MICROCODE.OP_LIDT);
-                    break;
-                case 0x20:
-                    pushCode(MICROCODE.OP_SMSW);
-                    break;
-                case 0x30:
-                    pushCode(MICROCODE.OP_LMSW);
-                    break;
-                default:
-                    panic("Invalid operation F01 code");
-                    break;
-            }
+            MICROCODE[] group = (modrm & 0xc0) == 0xc0 ? groupFBARegisterTable : groupFBAMemoryTable;
+            if (group[(modrm >> 3) & 7] != null)
+                pushCode(group[(modrm >> 3) & 7]);
+            else
+                panic("invalid OP_FBA");
+        } else if (operationGroupTable[tableindex] != null) {
+            //group opcodes pick their operation by the modrm reg field
+            MICROCODE[] group = operationGroupTable[tableindex];
+            if (group[(modrm >> 3) & 7] != null)
+                pushCode(group[(modrm >> 3) & 7]);
+            else if (code == MICROCODE.OP_F00 || code == MICROCODE.OP_F01)
+                panic("Invalid operation " + code + " code: " + (modrm & 0x38));
         } else if (code == MICROCODE.OP_BAD) {
             panic("Invalid instruction " + opcode);
             return;
@@ -7315,82 +7742,43 @@ public class Processor {
             return;
         } else {
             //handle repeat codes
-            if (isCode(MICROCODE.PREFIX_REPE) || isCode(MICROCODE.PREFIX_REPNE))
-                switch (opcode) {
-                    case 0x6c:
-                        pushCode(MICROCODE.OP_REP_INSB);
-                        break;
-                    case 0x6d:
-                        pushCode(MICROCODE.OP_REP_INSW);
-                        break;
-                    case 0x6e:
-                        pushCode(MICROCODE.OP_REP_OUTSB);
-                        break;
-                    case 0x6f:
-                        pushCode(MICROCODE.OP_REP_OUTSW);
-                        break;
-                    case 0xa4:
-                        pushCode(MICROCODE.OP_REP_MOVSB);
-                        break;
-                    case 0xa5:
-                        pushCode(MICROCODE.OP_REP_MOVSW);
-                        break;
-                    case 0xaa:
-                        pushCode(MICROCODE.OP_REP_STOSB);
-                        break;
-                    case 0xab:
-                        pushCode(MICROCODE.OP_REP_STOSW);
-                        break;
-                    case 0xac:
-                        pushCode(MICROCODE.OP_REP_LODSB);
-                        break;
-                    case 0xad:
-                        pushCode(MICROCODE.OP_REP_LODSW);
-                        break;
-                    case 0xa6:
-                        if (isCode(MICROCODE.PREFIX_REPE)) pushCode(MICROCODE.OP_REPE_CMPSB);
-                        else pushCode(MICROCODE.OP_REPNE_CMPSB);
-                        break;
-                    case 0xa7:
-                        if (isCode(MICROCODE.PREFIX_REPE)) pushCode(MICROCODE.OP_REPE_CMPSW);
-                        else pushCode(MICROCODE.OP_REPNE_CMPSW);
-                        break;
-                    case 0xae:
-                        if (isCode(MICROCODE.PREFIX_REPE)) pushCode(MICROCODE.OP_REPE_SCASB);
-                        else pushCode(MICROCODE.OP_REPNE_SCASB);
-                        break;
-                    case 0xaf:
-                        if (isCode(MICROCODE.PREFIX_REPE)) pushCode(MICROCODE.OP_REPE_SCASW);
-                        else pushCode(MICROCODE.OP_REPNE_SCASW);
-                        break;
-                }
+            if (isRepeat()) {
+                if (opcode < 0x100 && isCode(MICROCODE.PREFIX_REPE) && repeTable[opcode] != null)
+                    pushCode(repeTable[opcode]);
+                else if (opcode < 0x100 && repneTable[opcode] != null)
+                    pushCode(repneTable[opcode]);
+            }
                 //normal instructions: repush
             else
                 pushCode(code);
         }
         //put in the instruction's opcode gui code
-        if (processorGUICode != null) processorGUICode.pushInstruction(this.code[codeLength - 1], opcode);
-    }
-
-    private void replaceFlags1632() {
-        for (int i = 0; i < codeLength; i++) {
-            if (code[i] == MICROCODE.FLAG_BITWISE_16) code[i] = MICROCODE.FLAG_BITWISE_32;
-            else if (code[i] == MICROCODE.FLAG_ADD_16) code[i] = MICROCODE.FLAG_ADD_32;
-            else if (code[i] == MICROCODE.FLAG_ADC_16) code[i] = MICROCODE.FLAG_ADC_32;
-            else if (code[i] == MICROCODE.FLAG_SUB_16) code[i] = MICROCODE.FLAG_SUB_32;
-            else if (code[i] == MICROCODE.FLAG_SBB_16) code[i] = MICROCODE.FLAG_SBB_32;
-            else if (code[i] == MICROCODE.FLAG_SHL_16) code[i] = MICROCODE.FLAG_SHL_32;
-            else if (code[i] == MICROCODE.FLAG_SHR_16) code[i] = MICROCODE.FLAG_SHR_32;
-            else if (code[i] == MICROCODE.FLAG_SAR_16) code[i] = MICROCODE.FLAG_SAR_32;
-            else if (code[i] == MICROCODE.FLAG_ROL_16) code[i] = MICROCODE.FLAG_ROL_32;
-            else if (code[i] == MICROCODE.FLAG_ROR_16) code[i] = MICROCODE.FLAG_ROR_32;
-            else if (code[i] == MICROCODE.FLAG_RCL_16) code[i] = MICROCODE.FLAG_RCL_32;
-            else if (code[i] == MICROCODE.FLAG_RCR_16) code[i] = MICROCODE.FLAG_RCR_32;
-            else if (code[i] == MICROCODE.FLAG_NEG_16) code[i] = MICROCODE.FLAG_NEG_32;
-            else if (code[i] == MICROCODE.FLAG_REP_SUB_16) code[i] = MICROCODE.FLAG_REP_SUB_32;
-            else if (code[i] == MICROCODE.FLAG_INC_16) code[i] = MICROCODE.FLAG_INC_32;
-            else if (code[i] == MICROCODE.FLAG_DEC_16) code[i] = MICROCODE.FLAG_DEC_32;
-        }
+        if (processorGUICode != null && codeLength > 0) processorGUICode.pushInstruction(this.code[codeLength - 1], opcode);
+    }
+
+    //16-bit flag microcode -> 32-bit version, indexed by ordinal
+    private static final MICROCODE[] FLAGS32 = new MICROCODE[MICROCODE.values().length];
+
+    static {
+        MICROCODE[][] pairs = {
+                {MICROCODE.FLAG_BITWISE_16, MICROCODE.FLAG_BITWISE_32},
+                {MICROCODE.FLAG_ADD_16, MICROCODE.FLAG_ADD_32},
+                {MICROCODE.FLAG_ADC_16, MICROCODE.FLAG_ADC_32},
+                {MICROCODE.FLAG_SUB_16, MICROCODE.FLAG_SUB_32},
+                {MICROCODE.FLAG_SBB_16, MICROCODE.FLAG_SBB_32},
+                {MICROCODE.FLAG_SHL_16, MICROCODE.FLAG_SHL_32},
+                {MICROCODE.FLAG_SHR_16, MICROCODE.FLAG_SHR_32},
+                {MICROCODE.FLAG_SAR_16, MICROCODE.FLAG_SAR_32},
+                {MICROCODE.FLAG_ROL_16, MICROCODE.FLAG_ROL_32},
+                {MICROCODE.FLAG_ROR_16, MICROCODE.FLAG_ROR_32},
+                {MICROCODE.FLAG_RCL_16, MICROCODE.FLAG_RCL_32},
+                {MICROCODE.FLAG_RCR_16, MICROCODE.FLAG_RCR_32},
+                {MICROCODE.FLAG_NEG_16, MICROCODE.FLAG_NEG_32},
+                {MICROCODE.FLAG_REP_SUB_16, MICROCODE.FLAG_REP_SUB_32},
+                {MICROCODE.FLAG_INC_16, MICROCODE.FLAG_INC_32},
+                {MICROCODE.FLAG_DEC_16, MICROCODE.FLAG_DEC_32}};
+        for (MICROCODE[] pair : pairs)
+            FLAGS32[pair[0].ordinal()] = pair[1];
     }
 
     public final Processor_Exception DIVIDE_ERROR = new Processor_Exception(0x00);
@@ -7412,21 +7800,37 @@ public class Processor {
     public final Processor_Exception MACHINE_CHECK = new Processor_Exception(0x12);
     public final Processor_Exception SIMD_FLOATING_POINT = new Processor_Exception(0x13);
 
+    //one page fault per error code, so a faulting guest doesn't allocate
+    private final Processor_Exception[] pageFaults = new Processor_Exception[8];
+
+    {
+        for (int errorcode = 0; errorcode < pageFaults.length; errorcode++)
+            pageFaults[errorcode] = new Processor_Exception(PAGE_FAULT, errorcode);
+    }
+
+    public Processor_Exception pageFault(int errorcode) {
+        return pageFaults[errorcode];
+    }
+
     public static class Processor_Exception extends RuntimeException {
         private static final long serialVersionUID = 1L;
         int vector;
         boolean haserrorcode = false;
         int errorcode;
 
+        //guest exceptions are control flow, not bugs: skip the stack trace
         public Processor_Exception(int vector) {
+            super(null, null, false, false);
             this.vector = vector;
         }
 
         public Processor_Exception(Processor_Exception e) {
+            super(null, null, false, false);
             vector = e.vector;
         }
 
         public Processor_Exception(Processor_Exception e, int errorcode) {
+            super(null, null, false, false);
             vector = e.vector;
             haserrorcode = true;
             this.errorcode = errorcode;
@@ -10174,4 +10578,257 @@ public class Processor {
                     MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD, MICROCODE.OP_BAD //0xfd0-0xfff
             };
 
+
+//modrm and sib decode tables, indexed by the reg or r/m field
+
+    //32-bit base register by r/m or sib base field
+    private static final MICROCODE[] address32Table = new MICROCODE[]
+            {
+                    MICROCODE.ADDR_EAX, MICROCODE.ADDR_ECX, MICROCODE.ADDR_EDX, MICROCODE.ADDR_EBX, MICROCODE.ADDR_ESP, MICROCODE.ADDR_EBP, MICROCODE.ADDR_ESI, MICROCODE.ADDR_EDI
+            };
+
+    //16-bit base by r/m field, then the SI or DI added to it
+    private static final MICROCODE[] address16Table = new MICROCODE[]
+            {
+                    MICROCODE.ADDR_BX, MICROCODE.ADDR_BX, MICROCODE.ADDR_BP, MICROCODE.ADDR_BP, MICROCODE.ADDR_SI, MICROCODE.ADDR_DI, MICROCODE.ADDR_BP, MICROCODE.ADDR_BX,
+                    MICROCODE.ADDR_SI, MICROCODE.ADDR_DI, MICROCODE.ADDR_SI, MICROCODE.ADDR_DI, null, null, null, null
+            };
+
+    //scaled index by sib bits 3-7, null where the index is ESP (none)
+    private static final MICROCODE[] sibIndexTable = new MICROCODE[]
+            {
+                    MICROCODE.ADDR_EAX, MICROCODE.ADDR_ECX, MICROCODE.ADDR_EDX, MICROCODE.ADDR_EBX, null, MICROCODE.ADDR_EBP, MICROCODE.ADDR_ESI, MICROCODE.ADDR_EDI,
+                    MICROCODE.ADDR_2EAX, MICROCODE.ADDR_2ECX, MICROCODE.ADDR_2EDX, MICROCODE.ADDR_2EBX, null, MICROCODE.ADDR_2EBP, MICROCODE.ADDR_2ESI, MICROCODE.ADDR_2EDI,
+                    MICROCODE.ADDR_4EAX, MICROCODE.ADDR_4ECX, MICROCODE.ADDR_4EDX, MICROCODE.ADDR_4EBX, null, MICROCODE.ADDR_4EBP, MICROCODE.ADDR_4ESI, MICROCODE.ADDR_4EDI,
+                    MICROCODE.ADDR_8EAX, MICROCODE.ADDR_8ECX, MICROCODE.ADDR_8EDX, MICROCODE.ADDR_8EBX, null, MICROCODE.ADDR_8EBP, MICROCODE.ADDR_8ESI, MICROCODE.ADDR_8EDI
+            };
+
+    private static final MICROCODE[] controlLoadTable = new MICROCODE[]
+            {
+                    MICROCODE.LOAD0_CR0, null, MICROCODE.LOAD0_CR2, MICROCODE.LOAD0_CR3, MICROCODE.LOAD0_CR4, null, null, null
+            };
+
+    private static final MICROCODE[] controlStoreTable = new MICROCODE[]
+            {
+                    MICROCODE.STORE0_CR0, null, MICROCODE.STORE0_CR2, MICROCODE.STORE0_CR3, MICROCODE.STORE0_CR4, null, null, null
+            };
+
+    private static final MICROCODE[] debugLoadTable = new MICROCODE[]
+            {
+                    MICROCODE.LOAD0_DR0, MICROCODE.LOAD0_DR1, MICROCODE.LOAD0_DR2, MICROCODE.LOAD0_DR3, null, null, MICROCODE.LOAD0_DR6, MICROCODE.LOAD0_DR7
+            };
+
+    private static final MICROCODE[] debugStoreTable = new MICROCODE[]
+            {
+                    MICROCODE.STORE0_DR0, MICROCODE.STORE0_DR1, MICROCODE.STORE0_DR2, MICROCODE.STORE0_DR3, null, null, MICROCODE.STORE0_DR6, MICROCODE.STORE0_DR7
+            };
+
+    private static final MICROCODE[] segmentLoadTable = new MICROCODE[]
+            {
+                    MICROCODE.LOAD0_ES, MICROCODE.LOAD0_CS, MICROCODE.LOAD0_SS, MICROCODE.LOAD0_DS, MICROCODE.LOAD0_FS, MICROCODE.LOAD0_GS, null, null
+            };
+
+    private static final MICROCODE[] segmentStoreTable = new MICROCODE[]
+            {
+                    MICROCODE.STORE0_ES, MICROCODE.STORE0_CS, MICROCODE.STORE0_SS, MICROCODE.STORE0_DS, MICROCODE.STORE0_FS, MICROCODE.STORE0_GS, null, null
+            };
+
+//group opcodes: the operation or flags by modrm reg field, null for none
+
+    private static final MICROCODE[] group80Table = new MICROCODE[]
+            {
+                    MICROCODE.OP_ADD, MICROCODE.OP_OR, MICROCODE.OP_ADC, MICROCODE.OP_SBB, MICROCODE.OP_AND, MICROCODE.OP_SUB, MICROCODE.OP_XOR, MICROCODE.OP_SUB
+            };
+
+    private static final MICROCODE[] groupF6Table = new MICROCODE[]
+            {
+                    MICROCODE.OP_AND, null, MICROCODE.OP_NOT, MICROCODE.OP_NEG, MICROCODE.OP_MUL_08, MICROCODE.OP_IMULA_08, MICROCODE.OP_DIV_08, MICROCODE.OP_IDIV_08
+            };
+
+    private static final MICROCODE[] groupF7Table = new MICROCODE[]
+            {
+                    MICROCODE.OP_AND, null, MICROCODE.OP_NOT, MICROCODE.OP_NEG, MICROCODE.OP_MUL_16_32, MICROCODE.OP_IMULA_16_32, MICROCODE.OP_DIV_16_32, MICROCODE.OP_IDIV_16_32
+            };
+
+    private static final MICROCODE[] groupFETable = new MICROCODE[]
+            {
+                    MICROCODE.OP_INC, MICROCODE.OP_DEC, null, null, null, null, null, null
+            };
+
+    private static final MICROCODE[] groupFFTable = new MICROCODE[]
+            {
+                    MICROCODE.OP_INC, MICROCODE.OP_DEC, MICROCODE.OP_CALL_ABS, MICROCODE.OP_CALL_FAR, MICROCODE.OP_JMP_ABS, MICROCODE.OP_JMP_FAR, MICROCODE.OP_PUSH, null
+            };
+
+    private static final MICROCODE[] groupF00Table = new MICROCODE[]
+            {
+                    MICROCODE.OP_SLDT, MICROCODE.OP_STR, MICROCODE.OP_LLDT, MICROCODE.OP_LTR, MICROCODE.OP_VERR, MICROCODE.OP_VERW, null, null
+            };
+
+    private static final MICROCODE[] groupF01Table = new MICROCODE[]
+            {
+                    MICROCODE.OP_SGDT, MICROCODE.OP_SIDT, MICROCODE.OP_LGDT, MICROCODE.OP_LIDT, MICROCODE.OP_SMSW, null, MICROCODE.OP_LMSW, null
+            };
+
+    private static final MICROCODE[] groupFBARegisterTable = new MICROCODE[]
+            {
+                    null, null, null, null, MICROCODE.OP_BT_16_32, MICROCODE.OP_BTS_16_32, MICROCODE.OP_BTR_16_32, MICROCODE.OP_BTC_16_32
+            };
+
+    private static final MICROCODE[] groupFBAMemoryTable = new MICROCODE[]
+            {
+                    null, null, null, null, MICROCODE.OP_BT_MEM, MICROCODE.OP_BTS_MEM, MICROCODE.OP_BTR_MEM, MICROCODE.OP_BTC_MEM
+            };
+
+    private static final MICROCODE[] flag80Table = new MICROCODE[]
+            {
+                    MICROCODE.FLAG_ADD_08, MICROCODE.FLAG_BITWISE_08, MICROCODE.FLAG_ADC_08, MICROCODE.FLAG_SBB_08, MICROCODE.FLAG_BITWISE_08, MICROCODE.FLAG_SUB_08, MICROCODE.FLAG_BITWISE_08, MICROCODE.FLAG_SUB_08
+            };
+
+    private static final MICROCODE[] flag81Table = new MICROCODE[]
+            {
+                    MICROCODE.FLAG_ADD_16, MICROCODE.FLAG_BITWISE_16, MICROCODE.FLAG_ADC_16, MICROCODE.FLAG_SBB_16, MICROCODE.FLAG_BITWISE_16, MICROCODE.FLAG_SUB_16, MICROCODE.FLAG_BITWISE_16, MICROCODE.FLAG_SUB_16
+            };
+
+    private static final MICROCODE[] flagF6Table = new MICROCODE[]
+            {
+                    MICROCODE.FLAG_BITWISE_08, null, null, MICROCODE.FLAG_NEG_08, null, null, null, null
+            };
+
+    private static final MICROCODE[] flagF7Table = new MICROCODE[]
+            {
+                    MICROCODE.FLAG_BITWISE_16, null, null, MICROCODE.FLAG_NEG_16, null, null, null, null
+            };
+
+    private static final MICROCODE[] flagFETable = new MICROCODE[]
+            {
+                    MICROCODE.FLAG_INC_08, MICROCODE.FLAG_DEC_08, null, null, null, null, null, null
+            };
+
+    private static final MICROCODE[] flagFFTable = new MICROCODE[]
+            {
+                    MICROCODE.FLAG_INC_16, MICROCODE.FLAG_DEC_16, null, null, null, null, null, null
+            };
+
+    //per opcode (0x0f opcodes at 0x100-0x1ff): the group table to index by the modrm reg field, or null
+    private static final MICROCODE[][] operationGroupTable = new MICROCODE[0x200][];
+    private static final MICROCODE[][] flagGroupTable = new MICROCODE[0x200][];
+    //default segment by modrm, null where a sib byte decides
+    private static final MICROCODE[] segment16Table = new MICROCODE[0x100];
+    private static final MICROCODE[] segment32Table = new MICROCODE[0x100];
+    //string instructions under a REPE or REPNE prefix
+    private static final MICROCODE[] repeTable = new MICROCODE[0x100];
+    private static final MICROCODE[] repneTable = new MICROCODE[0x100];
+    //for each opcode, a bitmask of the 30 operand types (29 sources / destinations + 1 miscellaneous)
+    //used by load 0, load 1, store 0 and store 1, at (opcode << 2) | operand
+    public static final int[] operandTable = new int[0x200 * 4];
+    //operandRegisterTable with the 16-bit registers widened
+    private static final MICROCODE[] operandRegisterTable32 = new MICROCODE[operandRegisterTable.length];
+
+    static {
+        for (int i = 0; i < 0x200; i++) {
+            switch (opcodeTable[i]) {
+                case OP_ROTATE_08:
+                    operationGroupTable[i] = Arrays.copyOfRange(rotationTable, 16, 24);
+                    break;
+                case OP_ROTATE_16_32:
+                    operationGroupTable[i] = Arrays.copyOfRange(rotationTable, 24, 32);
+                    break;
+                case OP_80_83:
+                    operationGroupTable[i] = group80Table;
+                    break;
+                case OP_F6:
+                    operationGroupTable[i] = groupF6Table;
+                    break;
+                case OP_F7:
+                    operationGroupTable[i] = groupF7Table;
+                    break;
+                case OP_FE:
+                    operationGroupTable[i] = groupFETable;
+                    break;
+                case OP_FF:
+                    operationGroupTable[i] = groupFFTable;
+                    break;
+                case OP_F00:
+                    operationGroupTable[i] = groupF00Table;
+                    break;
+                case OP_F01:
+                    operationGroupTable[i] = groupF01Table;
+                    break;
+            }
+            switch (flagTable[i]) {
+                case FLAG_ROTATE_08:
+                    flagGroupTable[i] = Arrays.copyOfRange(rotationTable, 0, 8);
+                    break;
+                case FLAG_ROTATE_16:
+                    flagGroupTable[i] = Arrays.copyOfRange(rotationTable, 8, 16);
+                    break;
+                case FLAG_80_82:
+                    flagGroupTable[i] = flag80Table;
+                    break;
+                case FLAG_81_83:
+                    flagGroupTable[i] = flag81Table;
+                    break;
+                case FLAG_F6:
+                    flagGroupTable[i] = flagF6Table;
+                    break;
+                case FLAG_F7:
+                    flagGroupTable[i] = flagF7Table;
+                    break;
+                case FLAG_FE:
+                    flagGroupTable[i] = flagFETable;
+                    break;
+                case FLAG_FF:
+                    flagGroupTable[i] = flagFFTable;
+                    break;
+            }
+        }
+
+        for (int modrm = 0; modrm < 0x100; modrm++) {
+            int m = modrm & 0xc7;
+            //bp-based 16-bit forms use the stack segment
+            if (m == 0x02 || m == 0x03 || m == 0x42 || m == 0x43 || m == 0x46 || m == 0x82 || m == 0x83 || m == 0x86)
+                segment16Table[modrm] = MICROCODE.LOAD_SEG_SS;
+            else
+                segment16Table[modrm] = MICROCODE.LOAD_SEG_DS;
+            if (m == 0x45)
+                segment32Table[modrm] = MICROCODE.LOAD_SEG_SS;
+            else if (m != 0x04 && m != 0x44 && m != 0x84)
+                segment32Table[modrm] = MICROCODE.LOAD_SEG_DS;
+        }
+
+        MICROCODE[][] strings = {
+                {MICROCODE.OP_REP_INSB, MICROCODE.OP_REP_INSB}, {MICROCODE.OP_REP_INSW, MICROCODE.OP_REP_INSW},
+                {MICROCODE.OP_REP_OUTSB, MICROCODE.OP_REP_OUTSB}, {MICROCODE.OP_REP_OUTSW, MICROCODE.OP_REP_OUTSW},
+                {MICROCODE.OP_REP_MOVSB, MICROCODE.OP_REP_MOVSB}, {MICROCODE.OP_REP_MOVSW, MICROCODE.OP_REP_MOVSW},
+                {MICROCODE.OP_REPE_CMPSB, MICROCODE.OP_REPNE_CMPSB}, {MICROCODE.OP_REPE_CMPSW, MICROCODE.OP_REPNE_CMPSW},
+                {MICROCODE.OP_REP_STOSB, MICROCODE.OP_REP_STOSB}, {MICROCODE.OP_REP_STOSW, MICROCODE.OP_REP_STOSW},
+                {MICROCODE.OP_REP_LODSB, MICROCODE.OP_REP_LODSB}, {MICROCODE.OP_REP_LODSW, MICROCODE.OP_REP_LODSW},
+                {MICROCODE.OP_REPE_SCASB, MICROCODE.OP_REPNE_SCASB}, {MICROCODE.OP_REPE_SCASW, MICROCODE.OP_REPNE_SCASW}};
+        int[] stringOpcodes = {0x6c, 0x6d, 0x6e, 0x6f, 0xa4, 0xa5, 0xa6, 0xa7, 0xaa, 0xab, 0xac, 0xad, 0xae, 0xaf};
+        for (int i = 0; i < stringOpcodes.length; i++) {
+            repeTable[stringOpcodes[i]] = strings[i][0];
+            repneTable[stringOpcodes[i]] = strings[i][1];
+        }
+
+        int[][][] operandTables = {inputTable0, inputTable1, outputTable0, outputTable1};
+        for (int operand = 0; operand < 4; operand++)
+            for (int type = 0; type < operandTables[operand].length; type++)
+                for (int inst : operandTables[operand][type]) {
+                    if (inst >= 0xf00)
+                        inst -= 0xe00;
+                    operandTable[(inst << 2) | operand] |= 1 << type;
+                }
+
+        //AX -> EAX and so on, everything else stays
+        List<String> widened = Arrays.asList("AX", "BX", "CX", "DX", "SI", "DI", "SP", "BP", "FLAGS");
+        for (int i = 0; i < operandRegisterTable.length; i++) {
+            String name = operandRegisterTable[i].name();
+            String register = name.substring(name.indexOf('_') + 1);
+            if (widened.contains(register))
+                operandRegisterTable32[i] = MICROCODE.valueOf(name.substring(0, name.indexOf('_') + 1) + "E" + register);
+            else
+                operandRegisterTable32[i] = operandRegisterTable[i];
+        }
+    }
 }
@@ -127,6 +127,7 @@ public class Timer extends IODevice {
             id = s.nextInt();
             enabled = s.nextInt() == 1;
             expireTime = s.nextLong();
+            computer.clock.reschedule();
         }
 
         public Channel(int id) {
@@ -263,6 +264,7 @@ public class Timer extends IODevice {
                 enabled = false;
                 if (computer.timerGUI != null) computer.timerGUI.endTimer(id);
             }
+            computer.clock.reschedule();
         }
 
         private int getOut(long currentTime) {
@@ -347,6 +349,13 @@ public class Timer extends IODevice {
                 irqTimerUpdate(time);
             }
         }
+
+        public long nextEventTime() {
+            if (!enabled) return Long.MAX_VALUE;
+            //the timer GUI animates on every tick
+            if (computer.timerGUI != null) return 0;
+            return expireTime;
+        }
     }
 }
 
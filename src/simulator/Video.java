@@ -371,7 +371,7 @@ import java.awt.event.*;
 import java.util.Scanner;
 import java.lang.*;
 
-public class Video extends IODevice {
+public class Video extends IODevice implements MemoryMappedDevice {
     //////WCP additions/////////////////////////
     /* Source: FreeVGA
      *
@@ -1157,6 +1157,14 @@ public class Video extends IODevice {
         }
     }
 
+    public void memoryRead(int address) {
+        updateVideoRead(address);
+    }
+
+    public void memoryWrite(int address, byte value) {
+        updateVideoWrite(address, value);
+    }
+
     public void updateVideoRead(int address) {
         if (address >= 0xa0000 && address <= 0xaffff) {
             if ((mapMaskRegister & 1) != 0)
@@ -1354,6 +1362,8 @@ public class Video extends IODevice {
         initStandardPalette();
 
         computer.ioports.requestPorts(this, new int[]{0x3b4, 0x3b5, 0x3c0, 0x3c1, 0x3c4, 0x3c5, 0x3ce, 0x3cf, 0x3d4, 0x3d5, 0x3da}, "Video", new String[]{"CRT Index", "CRT Register", "Attribute Index", "Attribute Register", "Sequencer Index", "Sequencer Register", "Graphics Index", "Graphics Register", "CRT Index", "CRT Register", "Attribute Flip-Flop"});
+        //the graphics and text windows
+        computer.physicalMemory.requestMemory(this, 0xa0000, 0xbffff);
 
 //		videoGUI=new VideoGUI();
 /*
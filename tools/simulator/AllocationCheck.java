@@ -0,0 +1,56 @@
+/*
+AllocationCheck.java
+
+Checks that the processor allocates next to nothing per instruction
+when no GUI is attached.  It boots a floppy image on a machine with no
+desktop, warms it up, then counts what the thread allocates over a fixed
+run with ThreadMXBean.getThreadAllocatedBytes.  If that comes to more
+than the budget per instruction, it exits with status 1.
+
+	java simulator.AllocationCheck <floppy image> [instructions] [bytes per instruction] [engine]
+
+The defaults are a million instructions after a million of warm-up, a
+budget of 1 byte per instruction, and the switch engine.  The budget
+isn't zero because filling the decode cache allocates its entries.
+*/
+package simulator;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+
+public class AllocationCheck {
+    private static final int WARMUP = 1000000;
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: java simulator.AllocationCheck <floppy image> [instructions] [bytes per instruction] [engine]");
+            System.exit(2);
+        }
+        int instructions = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        double budget = args.length > 2 ? Double.parseDouble(args[2]) : 1.0;
+
+        PrintStream out = HeadlessMachine.quiet();
+
+        Computer computer = HeadlessMachine.boot(args[0], args.length > 3 ? args[3] : null);
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        while (computer.icount < WARMUP)
+            computer.runBatch();
+        int start = computer.icount;
+        long before = threads.getThreadAllocatedBytes(thread);
+        while (computer.icount - start < instructions)
+            computer.runBatch();
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        double perInstruction = (double) allocated / (computer.icount - start);
+        out.printf("%d bytes over %d instructions, %.3f bytes per instruction (budget %.3f)%n", allocated, computer.icount - start, perInstruction, budget);
+        if (perInstruction > budget) {
+            out.println("FAILED: over the allocation budget");
+            System.exit(1);
+        }
+        out.println("passed");
+        System.exit(0);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+EngineComparison.java
+
+Runs the switch and threaded engines side by side on the same floppy
+image and checks that they stay in step.  Each machine runs the same
+stretch of instructions in turn; after every stretch the registers,
+flags and first megabyte of the two are compared, and the first
+difference stops the run.  The time each engine spent is reported as
+MIPS, so the comparison also serves as the benchmark between them.
+
+	java simulator.EngineComparison <floppy image> [instructions] [stretch]
+
+The defaults are 30 million instructions in stretches of a million.
+Exits with status 1 if the engines disagree.
+*/
+package simulator;
+
+import java.io.PrintStream;
+
+public class EngineComparison {
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: java simulator.EngineComparison <floppy image> [instructions] [stretch]");
+            System.exit(2);
+        }
+        int instructions = args.length > 1 ? Integer.parseInt(args[1]) : 30000000;
+        int stretch = args.length > 2 ? Integer.parseInt(args[2]) : 1000000;
+
+        PrintStream out = HeadlessMachine.quiet();
+
+        Computer switched = HeadlessMachine.boot(args[0], "switch");
+        Computer threaded = HeadlessMachine.boot(args[0], "threaded");
+        long switchTime = 0, threadedTime = 0;
+
+        for (int end = stretch; ; end = Math.min(end + stretch, instructions)) {
+            switchTime += run(switched, end);
+            threadedTime += run(threaded, end);
+            long switchState = HeadlessMachine.stateHash(switched);
+            long threadedState = HeadlessMachine.stateHash(threaded);
+            if (switchState != threadedState || switched.icount != threaded.icount) {
+                out.printf("engines differ by instruction %d: switch %016x at eip %x, threaded %016x at eip %x%n", end,
+                        switchState, switched.processor.eip.getValue(), threadedState, threaded.processor.eip.getValue());
+                System.exit(1);
+            }
+            if (end >= instructions)
+                break;
+        }
+
+        out.printf("%d instructions, same state %016x%n", switched.icount, HeadlessMachine.stateHash(switched));
+        out.printf("switch   %.2fs, %.2f MIPS%n", switchTime / 1e9, switched.icount * 1e3 / switchTime);
+        out.printf("threaded %.2fs, %.2f MIPS%n", threadedTime / 1e9, threaded.icount * 1e3 / threadedTime);
+        System.exit(0);
+    }
+
+    //runs up to instruction end, returning the nanoseconds it took
+    private static long run(Computer computer, int end) {
+        long start = System.nanoTime();
+        while (computer.icount < end)
+            computer.runBatch();
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+HeadlessMachine.java
+
+The machine the tools in this directory run on: booted from a floppy
+image (or from nothing) with no desktop, on the engine asked for, with
+the devices' reports to System.out thrown away.  It also hashes the
+state of a machine, so runs can be checked against each other.
+
+The tools are not part of simulator.jar.  Compile them with the
+simulator and run them from src/, with src/ on the class path for the
+ROM images in resource/:
+
+	cd src
+	javac -d <classes> simulator/*.java ../tools/simulator/*.java
+	java -cp <classes>:. simulator.<tool> ...
+*/
+package simulator;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+final class HeadlessMachine {
+    private HeadlessMachine() {
+    }
+
+    //stops the devices reporting what they do on System.out, and returns the real System.out for the tool
+    static PrintStream quiet() {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            public void write(int b) {
+            }
+
+            public void write(byte[] b, int offset, int length) {
+            }
+        }));
+        return out;
+    }
+
+    //floppyImage may be null for a machine with no disk, engine null for the default switch engine
+    static Computer boot(String floppyImage, String engine) {
+        return boot(floppyImage, engine, false);
+    }
+
+    static Computer boot(String floppyImage, String engine, boolean flatMemory) {
+        Computer computer = new Computer(floppyImage, true);
+        if (engine != null)
+            computer.bootgui.executionEngine = engine;
+        computer.bootgui.flatMemory = flatMemory;
+        computer.initializeMachine();
+        return computer;
+    }
+
+    //registers, flags, segment selectors and the first megabyte of memory
+    static long stateHash(Computer computer) {
+        Processor p = computer.processor;
+        int[] state = {p.eax.getValue(), p.ebx.getValue(), p.ecx.getValue(), p.edx.getValue(), p.esi.getValue(), p.edi.getValue(),
+                p.esp.getValue(), p.ebp.getValue(), p.eip.getValue(), p.cs.getValue(), p.ds.getValue(), p.ss.getValue(), p.es.getValue(),
+                p.fs.getValue(), p.gs.getValue(), p.getFlags()};
+        long hash = 17;
+        for (int value : state)
+            hash = hash * 31 + value;
+        for (int address = 0; address < 0x100000; address++)
+            hash = hash * 31 + computer.physicalMemory.getByte(address);
+        return hash;
+    }
+}
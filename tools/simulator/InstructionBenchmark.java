@@ -0,0 +1,55 @@
+/*
+InstructionBenchmark.java
+
+Measures what an instruction costs.  It boots a floppy image on a
+machine with no desktop and times a fixed number of instructions,
+printing nanoseconds per instruction and MIPS.  At the end it prints a
+hash of the registers, flags and first megabyte of memory, so a run on
+one build can be checked against the same run on another.
+
+	java simulator.InstructionBenchmark <floppy image> [instructions] [engine]
+
+The defaults are 30 million instructions and the switch engine; the
+first two million are reported separately as warm-up.
+*/
+package simulator;
+
+import java.io.PrintStream;
+
+public class InstructionBenchmark {
+    private static final int WARMUP = 2000000;
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: java simulator.InstructionBenchmark <floppy image> [instructions] [engine]");
+            System.exit(2);
+        }
+        int instructions = args.length > 1 ? Integer.parseInt(args[1]) : 30000000;
+
+        PrintStream out = HeadlessMachine.quiet();
+
+        Computer computer = HeadlessMachine.boot(args[0], args.length > 2 ? args[2] : null);
+
+        long start = System.nanoTime();
+        while (computer.icount < Math.min(WARMUP, instructions))
+            computer.runBatch();
+        long warm = System.nanoTime();
+        int counted = computer.icount;
+        while (computer.icount < instructions)
+            computer.runBatch();
+        long end = System.nanoTime();
+
+        report(out, "warm-up", counted, warm - start);
+        report(out, "measured", computer.icount - counted, end - warm);
+        report(out, "total", computer.icount, end - start);
+        out.printf("state %016x%n", HeadlessMachine.stateHash(computer));
+        System.exit(0);
+    }
+
+    private static void report(PrintStream out, String what, int instructions, long nanoseconds) {
+        if (instructions == 0)
+            return;
+        out.printf("%-8s %d instructions in %.2fs: %.1f ns per instruction, %.2f MIPS%n", what, instructions, nanoseconds / 1e9,
+                (double) nanoseconds / instructions, instructions * 1e3 / nanoseconds);
+    }
+}
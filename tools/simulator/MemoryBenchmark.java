@@ -0,0 +1,74 @@
+/*
+MemoryBenchmark.java
+
+Times PhysicalMemory's word and doubleword accessors, the ones that go
+straight to a RAM block's bytes when the whole access falls inside it.
+Each round reads and writes back every doubleword of base memory below
+the video window, then every word of a megabyte of extended memory, then
+the same megabyte again one byte off alignment so every 64K block
+boundary is crossed by a split access.  Times are per access, reads and
+writes counted separately.
+
+	java simulator.MemoryBenchmark [rounds] [flat]
+
+The default is 8 rounds; the first few are the JIT warming up.  With
+"flat", memory is FlatPhysicalMemory instead of the block backing.
+*/
+package simulator;
+
+import java.io.PrintStream;
+
+public class MemoryBenchmark {
+    private static final int REPEAT = 50;
+    private static final int EXTENDED = 0x200000;
+
+    public static void main(String[] args) {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+
+        PrintStream out = HeadlessMachine.quiet();
+
+        Computer computer = HeadlessMachine.boot(null, null, args.length > 1 && args[1].equals("flat"));
+        PhysicalMemory memory = computer.physicalMemory;
+        out.println("using " + memory.getClass().getSimpleName());
+
+        for (int i = 0; i < 0x100000; i += 4)
+            memory.setDoubleWord(EXTENDED + i, i);
+
+        int sum = 0;
+        for (int round = 1; round <= rounds; round++) {
+            long start = System.nanoTime();
+            for (int r = 0; r < REPEAT; r++) {
+                for (int i = 0x1000; i < 0x90000; i += 4) {
+                    sum += memory.getDoubleWord(i);
+                    memory.setDoubleWord(i, sum);
+                }
+            }
+            long base = System.nanoTime();
+            for (int r = 0; r < REPEAT; r++) {
+                for (int i = 0; i < 0x100000; i += 2) {
+                    sum += memory.getWord(EXTENDED + i);
+                    memory.setWord(EXTENDED + i, (short) sum);
+                }
+            }
+            long extended = System.nanoTime();
+            for (int r = 0; r < REPEAT; r++) {
+                for (int i = 1; i < 0x100000; i += 4) {
+                    sum += memory.getDoubleWord(EXTENDED + i);
+                    memory.setDoubleWord(EXTENDED + i, sum);
+                }
+            }
+            long unaligned = System.nanoTime();
+
+            out.printf("round %d: base dwords %.2f ns, extended words %.2f ns, unaligned dwords %.2f ns per access%n", round,
+                    perAccess(base - start, (0x90000 - 0x1000) / 4), perAccess(extended - base, 0x100000 / 2),
+                    perAccess(unaligned - extended, 0x100000 / 4));
+        }
+        //so the loops can't be optimized away
+        out.println("checksum " + Integer.toHexString(sum));
+        System.exit(0);
+    }
+
+    private static double perAccess(long nanoseconds, int accessesPerPass) {
+        return (double) nanoseconds / (2L * REPEAT * accessesPerPass);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+StringScanDiff.java
+
+Differential test for the page-at-a-time REPE/REPNE SCAS and CMPS
+paths.  Each trial builds a random REP SCAS or CMPS: byte, word or
+dword, 16 or 32 bit addressing, either direction, counts that cross
+pages, and data that is mostly equal (or mostly different) so the
+repeat runs a long way before the element that ends it.  Some trials
+point ES at video memory, which the bulk path has to leave to the
+element loop.  The instruction runs twice in real mode from the same
+state: once normally, and once with the GUI hook on, which forces the
+element loop.  ECX, ESI, EDI, EIP and the flags must come out the same.
+
+	java simulator.StringScanDiff [trials] [seed]
+
+The defaults are 5000 trials from seed 1.  Exits with status 1 on the
+first mismatch, printing the trial that caused it.
+*/
+package simulator;
+
+import java.io.PrintStream;
+import java.util.Random;
+
+public class StringScanDiff {
+    //the instruction goes at 0800:0000, below any of the data
+    private static final int CODE_SEGMENT = 0x0800;
+    private static final int MAX_COUNT = 0x3000;
+
+    private Computer computer;
+    private Processor processor;
+    private Random random;
+
+    //one trial
+    private boolean cmps, repe, op32, addr32, down, override;
+    private int size, count, value, flags;
+    private int ds, es, si, di;
+
+    public static void main(String[] args) {
+        int trials = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+
+        PrintStream out = HeadlessMachine.quiet();
+
+        StringScanDiff diff = new StringScanDiff(seed);
+        long elements = 0;
+        for (int trial = 0; trial < trials; trial++) {
+            diff.newTrial();
+            int[] bulk = diff.run(false);
+            int[] slow = diff.run(true);
+            for (int i = 0; i < bulk.length; i++) {
+                if (bulk[i] != slow[i]) {
+                    out.println("trial " + trial + " differs: " + diff);
+                    out.printf("  bulk    ecx %x esi %x edi %x eip %x flags %x%n", bulk[0], bulk[1], bulk[2], bulk[3], bulk[4]);
+                    out.printf("  element ecx %x esi %x edi %x eip %x flags %x%n", slow[0], slow[1], slow[2], slow[3], slow[4]);
+                    System.exit(1);
+                }
+            }
+            elements += diff.count - (diff.op32 ? slow[0] : slow[0] & 0xffff);
+        }
+        out.println(trials + " trials, " + elements + " elements compared, no differences");
+        System.exit(0);
+    }
+
+    private StringScanDiff(long seed) {
+        computer = HeadlessMachine.boot(null, null);
+        processor = computer.processor;
+        random = new Random(seed);
+    }
+
+    private void newTrial() {
+        cmps = random.nextBoolean();
+        repe = random.nextBoolean();
+        op32 = random.nextBoolean();
+        addr32 = random.nextBoolean();
+        down = random.nextInt(4) == 0;
+        override = cmps && random.nextBoolean();
+        size = random.nextBoolean() ? 1 : op32 ? 4 : 2;
+        count = random.nextInt(8) == 0 ? random.nextInt(4) : random.nextInt(MAX_COUNT);
+        //the status flags going in, so a zero count that leaves them alone is checked too
+        flags = random.nextInt() & 0x8d5;
+
+        ds = 0x2000 + random.nextInt(0x5000);
+        es = random.nextInt(8) == 0 ? 0xb000 : 0x2000 + random.nextInt(0x5000);
+        si = random.nextInt(addr32 ? 0x20000 : 0x10000);
+        di = random.nextInt(addr32 ? 0x20000 : 0x10000);
+
+        int fill = random.nextInt(0x100);
+        int pattern = fill * 0x01010101;
+        int span = count * size + 4;
+        if (cmps) {
+            //the destination is random, the source a copy of it (REPE) or its complement (REPNE)
+            int destination = (es << 4) + di;
+            int source = (ds << 4) + si;
+            for (int i = -span; i < span; i++)
+                setByte(destination + i, (byte) random.nextInt(0x100));
+            for (int i = -span; i < span; i++) {
+                byte b = computer.physicalMemory.getByte(destination + i);
+                setByte(source + i, repe ? b : (byte) ~b);
+            }
+            perturb(source, destination);
+        } else {
+            //a run of the fill byte, searched for itself (REPE) or for something else (REPNE)
+            int destination = (es << 4) + di;
+            for (int i = -span; i < span; i++)
+                setByte(destination + i, (byte) fill);
+            value = repe ? pattern : pattern ^ (random.nextInt() | 1);
+            perturb(-1, destination);
+        }
+    }
+
+    //puts up to three elements that end the repeat somewhere in its path
+    private void perturb(int source, int destination) {
+        int changes = random.nextInt(4);
+        for (int c = 0; c < changes && count > 0; c++) {
+            int element = random.nextInt(count);
+            int offset = (down ? -element : element) * size + random.nextInt(size);
+            if (source >= 0)
+                setByte(source + offset, (byte) (computer.physicalMemory.getByte(destination + offset) ^ (repe ? 1 + random.nextInt(0xff) : 0)));
+            else if (repe)
+                setByte(destination + offset, (byte) random.nextInt(0x100));
+            else
+                setByte(destination + offset, (byte) (value >> ((offset & (size - 1)) << 3)));
+        }
+    }
+
+    private void setByte(int address, byte b) {
+        computer.physicalMemory.setByte(address, b);
+    }
+
+    //runs the trial's instruction, with the element loop forced if slow, and returns ecx, esi, edi, eip and the flags
+    private int[] run(boolean slow) {
+        int address = CODE_SEGMENT << 4;
+        int length = 0;
+        if (op32) computer.physicalMemory.setByte(address + length++, (byte) 0x66);
+        if (addr32) computer.physicalMemory.setByte(address + length++, (byte) 0x67);
+        if (override) computer.physicalMemory.setByte(address + length++, (byte) 0x26);
+        computer.physicalMemory.setByte(address + length++, (byte) (repe ? 0xf3 : 0xf2));
+        computer.physicalMemory.setByte(address + length++, (byte) ((cmps ? 0xa6 : 0xae) | (size == 1 ? 0 : 1)));
+        computer.physicalMemory.setByte(address + length++, (byte) 0x90);
+        processor.invalidatePhysical(address, length);
+
+        processor.cs.setValue(CODE_SEGMENT);
+        processor.eip.setValue(0);
+        processor.ds.setValue(ds);
+        processor.es.setValue(es);
+        processor.eax.setValue(value);
+        processor.ecx.setValue(count);
+        processor.esi.setValue(si);
+        processor.edi.setValue(di);
+        processor.setFlags(0x2 | flags | (down ? 0x400 : 0));
+
+        //with the GUI hook on, the processor records every access and the bulk paths stand aside
+        computer.updateGUIOnPlay = slow;
+        processor.executeAnInstruction();
+        computer.updateGUIOnPlay = false;
+
+        return new int[]{processor.ecx.getValue(), processor.esi.getValue(), processor.edi.getValue(), processor.eip.getValue(), processor.getFlags()};
+    }
+
+    public String toString() {
+        return String.format("%s %s%d op%d addr%d %s count %x ds:si %x:%x es:di %x:%x eax %x flags %x",
+                repe ? "repe" : "repne", cmps ? "cmps" : "scas", size * 8, op32 ? 32 : 16, addr32 ? 32 : 16, down ? "down" : "up",
+                count, ds, si, es, di, value, flags);
+    }
+}